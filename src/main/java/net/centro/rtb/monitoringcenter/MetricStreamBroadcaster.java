@@ -0,0 +1,359 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes metric deltas to Server-Sent Events subscribers of the MonitoringCenterServlet. All subscribers are served by
+ * a single sampling loop, which ticks once a second: on every tick, the registry snapshot is retrieved once, and every
+ * metric needed by the due subscribers is serialized once, regardless of the number of subscribers. Each subscriber
+ * receives the metrics selected by its filter, which changed since its previous event (removed metrics are sent as
+ * <tt>null</tt>); the first event carries all selected metrics.
+ *
+ * <p>
+ *     Events are written with the non-blocking I/O of Servlet 3.1, so that a slow client never stalls the sampling
+ *     loop. If a client falls too far behind, its pending events are discarded, and the next event carries all of its
+ *     metrics again.
+ * </p>
+ */
+class MetricStreamBroadcaster {
+    private static final Logger logger = LoggerFactory.getLogger(MetricStreamBroadcaster.class);
+
+    static final long TICK_INTERVAL_IN_MILLIS = 1000;
+
+    private static final int MAX_PENDING_EVENTS = 16;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final Supplier<RegistrySnapshot> registrySnapshotSupplier;
+    private final Counter bytesWrittenCounter;
+    private final Set<Subscriber> subscribers;
+
+    private ScheduledExecutorService executorService;
+    private long tickCount;
+    private Map<String, JsonNode> previousSampleByNames;
+
+    /**
+     * Constructs a broadcaster. The sampling loop is started on the first subscription.
+     *
+     * @param objectMapper the object mapper to serialize metrics with.
+     * @param registrySnapshotSupplier the supplier of the registry snapshot to sample.
+     * @param bytesWrittenCounter the counter to account the bytes written to subscribers in.
+     */
+    MetricStreamBroadcaster(ObjectMapper objectMapper, Supplier<RegistrySnapshot> registrySnapshotSupplier, Counter bytesWrittenCounter) {
+        this.objectMapper = Preconditions.checkNotNull(objectMapper);
+        this.registrySnapshotSupplier = Preconditions.checkNotNull(registrySnapshotSupplier);
+        this.bytesWrittenCounter = Preconditions.checkNotNull(bytesWrittenCounter);
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.previousSampleByNames = new HashMap<>();
+    }
+
+    /**
+     * Subscribes an asynchronous request to the stream. The request is completed once the client disconnects or this
+     * broadcaster is shut down.
+     *
+     * @param asyncContext the context of the request, whose response will receive the events.
+     * @param nameFilter the filter selecting the metrics to stream.
+     * @param intervalInSeconds the number of seconds between events.
+     * @throws IOException if the output stream of the response could not be obtained.
+     */
+    void subscribe(AsyncContext asyncContext, CompiledMetricFilter nameFilter, int intervalInSeconds) throws IOException {
+        Preconditions.checkArgument(intervalInSeconds > 0, "intervalInSeconds must be positive");
+
+        final Subscriber subscriber = new Subscriber(asyncContext, nameFilter, intervalInSeconds);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                subscribers.remove(subscriber);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                subscriber.close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                subscriber.close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        // The listener must be in place before the sampling loop may write to the stream
+        subscriber.outputStream.setWriteListener(subscriber);
+
+        synchronized (this) {
+            subscriber.firstTick = tickCount + 1;
+            subscribers.add(subscriber);
+            if (executorService == null) {
+                executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("MetricStreamBroadcaster-%d").setDaemon(true).build());
+                executorService.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            tick();
+                        } catch (Exception e) {
+                            logger.debug("Error streaming metrics", e);
+                        }
+                    }
+                }, TICK_INTERVAL_IN_MILLIS, TICK_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of connected subscribers.
+     *
+     * @return the number of subscribers.
+     */
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Stops the sampling loop and completes the requests of all subscribers.
+     */
+    synchronized void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Runs a single iteration of the sampling loop.
+     */
+    synchronized void tick() {
+        tickCount++;
+        if (subscribers.isEmpty()) {
+            previousSampleByNames = new HashMap<>();
+            return;
+        }
+
+        RegistrySnapshot registrySnapshot = null;
+        Map<String, Metric> metricsByNames = null;
+        Map<String, JsonNode> sampleByNames = new HashMap<>();
+        for (Subscriber subscriber : subscribers) {
+            if ((tickCount - subscriber.firstTick) % subscriber.intervalInSeconds != 0) {
+                continue;
+            }
+
+            if (registrySnapshot == null) {
+                registrySnapshot = registrySnapshotSupplier.get();
+                metricsByNames = registrySnapshot.getMetrics();
+            }
+            try {
+                subscriber.enqueue(buildEvent(subscriber, registrySnapshot.getCollectionTimeInMillis(), metricsByNames, sampleByNames));
+            } catch (IOException | RuntimeException e) {
+                // A failing subscriber must not deprive the others of their events
+                logger.debug("Error streaming metrics to a subscriber", e);
+                subscriber.close();
+            }
+        }
+
+        // Metrics that did not change keep their serialized instance, so that subscribers compare them by reference
+        previousSampleByNames = sampleByNames;
+    }
+
+    private byte[] buildEvent(Subscriber subscriber, long collectionTimeInMillis, Map<String, Metric> metricsByNames,
+                              Map<String, JsonNode> sampleByNames) throws IOException {
+        Map<String, JsonNode> sentSampleByNames = new HashMap<>();
+        Map<String, JsonNode> changedSampleByNames = new HashMap<>();
+        for (Map.Entry<String, Metric> entry : metricsByNames.entrySet()) {
+            String name = entry.getKey();
+            if (!subscriber.nameFilter.matches(name)) {
+                continue;
+            }
+
+            JsonNode sample = sample(name, entry.getValue(), sampleByNames);
+            sentSampleByNames.put(name, sample);
+
+            JsonNode previouslySentSample = subscriber.lastSentSampleByNames.get(name);
+            if (previouslySentSample != sample && !sample.equals(previouslySentSample)) {
+                changedSampleByNames.put(name, sample);
+            }
+        }
+
+        Set<String> removedNames = subscriber.lastSentSampleByNames.keySet();
+        removedNames.removeAll(sentSampleByNames.keySet());
+        subscriber.lastSentSampleByNames = sentSampleByNames;
+
+        if (changedSampleByNames.isEmpty() && removedNames.isEmpty()) {
+            return HEARTBEAT;
+        }
+
+        ByteArrayOutputStream eventOutputStream = new ByteArrayOutputStream();
+        eventOutputStream.write(("event: metrics\nid: " + tickCount + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(eventOutputStream)) {
+            generator.writeStartObject();
+            generator.writeNumberField("timestamp", collectionTimeInMillis);
+            generator.writeObjectFieldStart("metrics");
+            for (Map.Entry<String, JsonNode> entry : changedSampleByNames.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                generator.writeTree(entry.getValue());
+            }
+            for (String removedName : removedNames) {
+                generator.writeNullField(removedName);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        eventOutputStream.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        return eventOutputStream.toByteArray();
+    }
+
+    private JsonNode sample(String name, Metric metric, Map<String, JsonNode> sampleByNames) {
+        JsonNode sample = sampleByNames.get(name);
+        if (sample == null) {
+            sample = objectMapper.valueToTree(metric);
+            JsonNode previousSample = previousSampleByNames.get(name);
+            if (sample.equals(previousSample)) {
+                sample = previousSample;
+            }
+            sampleByNames.put(name, sample);
+        }
+        return sample;
+    }
+
+    private class Subscriber implements WriteListener {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream outputStream;
+        private final CompiledMetricFilter nameFilter;
+        private final int intervalInSeconds;
+
+        private final Queue<byte[]> pendingEvents;
+        private long firstTick;
+        private Map<String, JsonNode> lastSentSampleByNames;
+        private boolean closed;
+
+        private Subscriber(AsyncContext asyncContext, CompiledMetricFilter nameFilter, int intervalInSeconds) throws IOException {
+            this.asyncContext = asyncContext;
+            this.outputStream = asyncContext.getResponse().getOutputStream();
+            this.nameFilter = nameFilter;
+            this.intervalInSeconds = intervalInSeconds;
+            this.pendingEvents = new ArrayDeque<>();
+            this.lastSentSampleByNames = new HashMap<>();
+        }
+
+        private synchronized void enqueue(byte[] event) {
+            if (closed) {
+                return;
+            }
+
+            if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                // The client is too slow; deltas against the discarded events would be meaningless
+                pendingEvents.clear();
+                lastSentSampleByNames = new HashMap<>();
+                return;
+            }
+            pendingEvents.add(event);
+            drain();
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.debug("Metric stream subscriber disconnected", throwable);
+            close();
+        }
+
+        private synchronized void drain() {
+            if (closed) {
+                return;
+            }
+
+            try {
+                boolean written = false;
+                while (!pendingEvents.isEmpty() && outputStream.isReady()) {
+                    byte[] event = pendingEvents.poll();
+                    outputStream.write(event);
+                    bytesWrittenCounter.inc(event.length);
+                    written = true;
+                }
+                if (written && outputStream.isReady()) {
+                    outputStream.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Metric stream subscriber disconnected", e);
+                close();
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pendingEvents.clear();
+            }
+
+            subscribers.remove(this);
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException ignore) {
+                // Already completed by the container
+            }
+        }
+    }
+}
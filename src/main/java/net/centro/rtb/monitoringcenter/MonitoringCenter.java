@@ -39,17 +39,43 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import net.centro.rtb.monitoringcenter.config.Configurator;
 import net.centro.rtb.monitoringcenter.config.GraphiteReporterConfig;
 import net.centro.rtb.monitoringcenter.config.HostAndPort;
+import net.centro.rtb.monitoringcenter.config.InfluxReporterConfig;
+import net.centro.rtb.monitoringcenter.config.JmxExportMode;
 import net.centro.rtb.monitoringcenter.config.JmxReporterConfig;
+import net.centro.rtb.monitoringcenter.config.JsonLogReporterConfig;
 import net.centro.rtb.monitoringcenter.config.MetricCollectionConfig;
+import net.centro.rtb.monitoringcenter.config.MetricHistoryConfig;
+import net.centro.rtb.monitoringcenter.config.MetricReportingConfig;
 import net.centro.rtb.monitoringcenter.config.MonitoringCenterConfig;
 import net.centro.rtb.monitoringcenter.config.NamingConfig;
+import net.centro.rtb.monitoringcenter.config.StatsdReporterConfig;
 import net.centro.rtb.monitoringcenter.infos.AppInfo;
 import net.centro.rtb.monitoringcenter.infos.NodeInfo;
 import net.centro.rtb.monitoringcenter.infos.SystemInfo;
+import net.centro.rtb.monitoringcenter.metrics.DynamicMetricSet;
+import net.centro.rtb.monitoringcenter.metrics.MetricNameIndex;
+import net.centro.rtb.monitoringcenter.metrics.RegistrySizeTracker;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.ParallelMetricCollector;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshotCollector;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.SnapshotMetricRegistry;
 import net.centro.rtb.monitoringcenter.metrics.system.SystemMetricSet;
 import net.centro.rtb.monitoringcenter.metrics.system.SystemStatus;
 import net.centro.rtb.monitoringcenter.metrics.tomcat.TomcatMetricSet;
 import net.centro.rtb.monitoringcenter.metrics.tomcat.TomcatStatus;
+import net.centro.rtb.monitoringcenter.reporting.AlignedReportingScheduler;
+import net.centro.rtb.monitoringcenter.reporting.graphite.ShardedGraphiteSender;
+import net.centro.rtb.monitoringcenter.reporting.graphite.SpoolingGraphiteSender;
+import net.centro.rtb.monitoringcenter.reporting.history.MetricHistoryReporter;
+import net.centro.rtb.monitoringcenter.reporting.history.MetricHistoryStore;
+import net.centro.rtb.monitoringcenter.reporting.influx.InfluxReporter;
+import net.centro.rtb.monitoringcenter.reporting.influx.InfluxSender;
+import net.centro.rtb.monitoringcenter.reporting.jmx.NamespaceJmxReporter;
+import net.centro.rtb.monitoringcenter.reporting.log.JsonLogReporter;
+import net.centro.rtb.monitoringcenter.reporting.statsd.StatsdReporter;
+import net.centro.rtb.monitoringcenter.reporting.statsd.StatsdSender;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
 import net.centro.rtb.monitoringcenter.util.ConfigFileUtil;
 import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -57,15 +83,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -109,11 +141,25 @@ public class MonitoringCenter {
     private static final String TOMCAT_METRIC_NAMESPACE = "tomcat";
     private static final String DB_METRIC_NAMESPACE = "dbs";
 
+    // The MonitoringCenter's own metrics; see startMonitoringCenterMetrics()
+    private static final String MONITORING_CENTER_METRIC_NAMESPACE = "monitoringCenter";
+    private static final String GRAPHITE_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "graphite");
+    private static final String INFLUX_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "influx");
+    private static final String JSON_LOG_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "jsonLog");
+    private static final String STATSD_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "statsd");
+    private static final String SNAPSHOTS_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "snapshots");
+    private static final String REGISTRY_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "registry");
+    private static final String HISTORY_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "history");
+    private static final String SAMPLING_METRIC_NAMESPACE = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, "sampling");
+
     private static final Set<String> RESERVED_NAMESPACES = Collections.unmodifiableSet(new HashSet<String>() {{
         add(SYSTEM_METRIC_NAMESPACE);
         add(TOMCAT_METRIC_NAMESPACE);
+        add(MONITORING_CENTER_METRIC_NAMESPACE);
     }});
 
+    private static final int REPORTER_FILTER_DECISION_CACHE_SIZE = 100000;
+
     private static final SortedMap<String, ? extends Metric> EMPTY_METRIC_MAP = new TreeMap<>();
     private static final SortedMap<String, HealthCheck.Result> EMPTY_HEALTHCHECK_MAP = new TreeMap<>();
 
@@ -127,16 +173,39 @@ public class MonitoringCenter {
 
     private static ScheduledExecutorService executorService;
 
+    private static SamplingScheduler samplingScheduler;
+    private static DynamicMetricSet.Listener samplingMetricsListener;
+
     private static MetricRegistry metricRegistry;
+    private static ParallelMetricCollector parallelMetricCollector;
+    private static RegistrySnapshotCollector registrySnapshotCollector;
+    private static SnapshotMetricRegistry snapshotMetricRegistry;
+    private static RegistrySizeTracker registrySizeTracker;
+    private static MetricNameIndex metricNameIndex;
+    private static final ConcurrentMap<String, MetricSet> internalMetricSetsBySubNamespaces = new ConcurrentHashMap<>();
 
     private static GraphiteReporter graphiteReporter;
+    private static AlignedReportingScheduler graphiteReportingScheduler;
+    private static ShardedGraphiteSender shardedGraphiteSender;
+    private static SpoolingGraphiteSender spoolingGraphiteSender;
     private static JmxReporter jmxReporter;
+    private static NamespaceJmxReporter namespaceJmxReporter;
+    private static StatsdReporter statsdReporter;
+    private static AlignedReportingScheduler statsdReportingScheduler;
+    private static InfluxReporter influxReporter;
+    private static AlignedReportingScheduler influxReportingScheduler;
+    private static JsonLogReporter jsonLogReporter;
+    private static AlignedReportingScheduler jsonLogReportingScheduler;
+    private static volatile MetricHistoryReporter metricHistoryReporter;
+    private static AlignedReportingScheduler metricHistoryScheduler;
+    private static MetricHistoryStore metricHistoryStore;
     private static ConsoleReporter consoleReporter;
     private static Cache<String, Slf4jReporter> slf4jReportersByLoggerNames;
 
     private static HealthCheckRegistry healthCheckRegistry;
 
     private static SystemMetricSet systemMetricSet;
+    private static DynamicMetricSet.Listener systemMetricsListener;
     private static TomcatMetricSet tomcatMetricSet;
 
     private static SystemInfo systemInfo;
@@ -181,7 +250,7 @@ public class MonitoringCenter {
      * from the main namespace and the optional additional namespaces.
      * <br><br>
      * The main namespace will be sanitized in accordance with {@link MetricNamingUtil#sanitize(String)}. Plus, it
-     * cannot be one of the reserved namespaces: "system" and "tomcat". The additional namespaces will be sanitized as
+     * cannot be one of the reserved namespaces: "system", "tomcat", and "monitoringCenter". The additional namespaces will be sanitized as
      * described in {@link MetricNamingUtil#join(String, String...)}.
      * <br><br>
      * This method triggers the MonitoringCenter auto-configuration, if the {@link #configure(MonitoringCenterConfig)}
@@ -471,6 +540,21 @@ public class MonitoringCenter {
         metricRegistry.removeMatching(MetricFilter.ALL);
     }
 
+    /**
+     * Retrieves a point-in-time snapshot of all registered metrics. All gauges in the snapshot have been evaluated, and
+     * the snapshots of all timers and histograms have been computed. The returned snapshot is shared with the
+     * reporters, and it may be up to {@link MetricReportingConfig#getSnapshotFreshnessWindowInMillis()} old. The metric
+     * names in the snapshot do not have the node-specific prefix appended.
+     *
+     * @return a registry snapshot or an empty snapshot if the MonitoringCenter has not been configured.
+     */
+    public static RegistrySnapshot getRegistrySnapshot() {
+        if (!configured.get()) {
+            return RegistrySnapshot.empty();
+        }
+        return registrySnapshotCollector.getSnapshot();
+    }
+
     /**
      * Outputs all registered metrics to the standard output stream (<tt>System.out</tt>).
      */
@@ -499,7 +583,7 @@ public class MonitoringCenter {
              slf4jReporter = slf4jReportersByLoggerNames.get(logger.getName(), new Callable<Slf4jReporter>() {
                 @Override
                 public Slf4jReporter call() throws Exception {
-                    return Slf4jReporter.forRegistry(metricRegistry)
+                    return Slf4jReporter.forRegistry(snapshotMetricRegistry)
                             .convertRatesTo(TimeUnit.SECONDS)
                             .convertDurationsTo(TimeUnit.MICROSECONDS)
                             .outputTo(logger)
@@ -673,6 +757,11 @@ public class MonitoringCenter {
             MoreExecutors.shutdownAndAwaitTermination(executorService, 1, TimeUnit.SECONDS);
         }
 
+        // Once the sampling scheduler is down, no collector is sampled while the metric sets shut down
+        if (samplingScheduler != null) {
+            samplingScheduler.shutdown();
+        }
+
         if (graphiteReporter != null) {
             MonitoringCenterConfig config = currentConfig;
             if (config != null && config.getMetricReportingConfig() != null) {
@@ -681,11 +770,27 @@ public class MonitoringCenter {
                     graphiteReporter.report();
                 }
             }
-            graphiteReporter.stop();
+            stopGraphiteReporter();
         }
 
-        if (jmxReporter != null) {
-            jmxReporter.stop();
+        if (jmxReporter != null || namespaceJmxReporter != null) {
+            stopJmxReporter();
+        }
+
+        if (statsdReporter != null) {
+            stopStatsdReporter();
+        }
+
+        if (influxReporter != null) {
+            stopInfluxReporter();
+        }
+
+        if (jsonLogReporter != null) {
+            stopJsonLogReporter();
+        }
+
+        if (metricHistoryReporter != null) {
+            stopMetricHistory();
         }
 
         if (consoleReporter != null) {
@@ -705,6 +810,24 @@ public class MonitoringCenter {
         if (tomcatMetricSet != null) {
             tomcatMetricSet.shutdown();
         }
+
+        if (snapshotMetricRegistry != null) {
+            snapshotMetricRegistry.close();
+            registrySnapshotCollector.close();
+        }
+
+        if (registrySizeTracker != null) {
+            registrySizeTracker.close();
+            registrySizeTracker = null;
+        }
+
+        if (metricNameIndex != null) {
+            metricNameIndex.close();
+        }
+
+        if (parallelMetricCollector != null) {
+            parallelMetricCollector.shutdown();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -713,16 +836,203 @@ public class MonitoringCenter {
             return (SortedMap<String, T>) EMPTY_METRIC_MAP;
         }
 
+        return filterMetricsByNames(metricRegistry.getMetrics(), appendPrefix, CompiledMetricFilter.compile(startsWithFilters), metricClass);
+    }
+
+    /**
+     * Retrieves the node-specific prefix, without the trailing separator.
+     *
+     * @return the node-specific prefix or <tt>null</tt> if the MonitoringCenter has not been configured.
+     */
+    static String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Retrieves the index of the names of the registered metrics.
+     *
+     * @return the metric name index or <tt>null</tt> if the MonitoringCenter has not been configured.
+     */
+    static MetricNameIndex getMetricNameIndex() {
+        return metricNameIndex;
+    }
+
+    /**
+     * Retrieves the cached registry snapshot if it is still within the freshness window, without triggering a
+     * collection.
+     *
+     * @return a fresh registry snapshot or <tt>null</tt> if there is none, or if the MonitoringCenter has not been
+     * configured.
+     */
+    static RegistrySnapshot getCachedRegistrySnapshot() {
+        if (!configured.get()) {
+            return null;
+        }
+        return registrySnapshotCollector.getCachedSnapshot();
+    }
+
+    /**
+     * Retrieves the live registry, e.g., to read a few metrics without freezing the whole registry.
+     *
+     * @return the registry or <tt>null</tt> if the MonitoringCenter has not been configured.
+     */
+    static MetricRegistry getMetricRegistry() {
+        if (!configured.get()) {
+            return null;
+        }
+        return metricRegistry;
+    }
+
+    /**
+     * Retrieves the in-process metric history.
+     *
+     * @return the metric history or <tt>null</tt> if the history is not enabled.
+     */
+    static MetricHistoryReporter getMetricHistoryReporter() {
+        return metricHistoryReporter;
+    }
+
+    /**
+     * Filters a map of metrics by names and types, optionally appending the node-specific prefix to the names. This
+     * method applies the same rules as the public <tt>get*ByNames()</tt> methods, so that it can be used on the
+     * metrics of a {@link RegistrySnapshot}.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Metric> SortedMap<String, T> filterMetricsByNames(Map<String, ? extends Metric> metrics, boolean appendPrefix, final CompiledMetricFilter nameFilter, final Class<T> metricClass) {
+        MetricFilter metricFilter = new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return (metricClass == null || metricClass.isAssignableFrom(metric.getClass())) && nameFilter.matches(name);
+            }
+        };
+
+        ParallelMetricCollector collector = parallelMetricCollector != null ? parallelMetricCollector : ParallelMetricCollector.sequential();
+        SortedMap<String, T> filteredMetrics = (SortedMap<String, T>) collector.filter(metrics, metricFilter);
+        if (!appendPrefix) {
+            return filteredMetrics;
+        }
+
         SortedMap<String, T> metricsByNames = new TreeMap<>();
-        for (Map.Entry<String, Metric> entry : metricRegistry.getMetrics().entrySet()) {
-            if (metricClass == null || metricClass.isAssignableFrom(entry.getValue().getClass())) {
-                if (startsWithFilters == null || matchesStartsWithFilters(entry.getKey(), startsWithFilters)) {
-                    String metricName = (appendPrefix ? prefix + MetricNamingUtil.SEPARATOR : StringUtils.EMPTY) + entry.getKey();
-                    metricsByNames.put(metricName, (T) entry.getValue());
+        for (Map.Entry<String, T> entry : filteredMetrics.entrySet()) {
+            metricsByNames.put(prefix + MetricNamingUtil.SEPARATOR + entry.getKey(), entry.getValue());
+        }
+        return metricsByNames;
+    }
+
+    /**
+     * Registers a metric set of a MonitoringCenter component (e.g., the servlet) under the "monitoringCenter"
+     * namespace. The metric set is retained, and it is registered whenever the self-instrumentation is enabled (see
+     * {@link MetricCollectionConfig#isEnableMonitoringCenterMetrics()}). A metric set previously registered under the
+     * same sub-namespace is replaced.
+     *
+     * @param subNamespace the namespace within "monitoringCenter" to register the metrics under.
+     * @param metricSet the metrics to register.
+     */
+    static synchronized void registerInternalMetricSet(String subNamespace, MetricSet metricSet) {
+        internalMetricSetsBySubNamespaces.put(subNamespace, metricSet);
+
+        if (registrySizeTracker != null) {
+            String namespace = MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, subNamespace);
+            removeMetricsByNamespace(namespace);
+            metricRegistry.register(namespace, metricSet);
+        }
+    }
+
+    private static synchronized void startMonitoringCenterMetrics() {
+        registrySizeTracker = new RegistrySizeTracker(metricRegistry, REGISTRY_METRIC_NAMESPACE);
+        metricRegistry.register(SNAPSHOTS_METRIC_NAMESPACE, registrySnapshotCollector);
+        metricRegistry.register(SAMPLING_METRIC_NAMESPACE, samplingScheduler);
+        samplingMetricsListener = createRegisteringListener(SAMPLING_METRIC_NAMESPACE);
+        samplingScheduler.addListener(samplingMetricsListener);
+        for (Map.Entry<String, MetricSet> entry : internalMetricSetsBySubNamespaces.entrySet()) {
+            metricRegistry.register(MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private static synchronized void stopMonitoringCenterMetrics() {
+        registrySizeTracker.close();
+        registrySizeTracker = null;
+
+        samplingScheduler.removeListener(samplingMetricsListener);
+        samplingMetricsListener = null;
+
+        removeMetricsByNamespace(REGISTRY_METRIC_NAMESPACE);
+        removeMetricsByNamespace(SNAPSHOTS_METRIC_NAMESPACE);
+        removeMetricsByNamespace(SAMPLING_METRIC_NAMESPACE);
+        for (String subNamespace : internalMetricSetsBySubNamespaces.keySet()) {
+            removeMetricsByNamespace(MetricNamingUtil.join(MONITORING_CENTER_METRIC_NAMESPACE, subNamespace));
+        }
+    }
+
+    private static synchronized void startSystemMetrics(MetricCollectionConfig metricCollectionConfig) {
+        systemMetricSet = new SystemMetricSet(samplingScheduler, metricCollectionConfig.getNetworkInterfaceSamplingIntervalInSeconds(),
+                metricCollectionConfig.getDeadlockDetectionIntervalInSeconds());
+
+        // The metrics added later (e.g., for newly discovered network interfaces or thread pools) are not part of the flattened set.
+        // The listener is attached first, so that no metric added during the registration is missed; duplicates are ignored.
+        systemMetricsListener = createRegisteringListener(SYSTEM_METRIC_NAMESPACE);
+        systemMetricSet.addListener(systemMetricsListener);
+        registerIgnoringDuplicates(SYSTEM_METRIC_NAMESPACE, systemMetricSet);
+    }
+
+    private static synchronized void stopSystemMetrics() {
+        systemMetricSet.removeListener(systemMetricsListener);
+        systemMetricsListener = null;
+
+        removeMetricsByNamespace(SYSTEM_METRIC_NAMESPACE);
+        systemMetricSet.shutdown();
+        systemMetricSet = null;
+    }
+
+    /**
+     * Creates a listener, which (un)registers the metrics added to or removed from a dynamic metric set after it has
+     * been registered under the given namespace.
+     */
+    private static DynamicMetricSet.Listener createRegisteringListener(final String namespace) {
+        return new DynamicMetricSet.Listener() {
+            @Override
+            public void onMetricAdded(String name, Metric metric) {
+                try {
+                    metricRegistry.register(MetricNamingUtil.join(namespace, name), metric);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("Metric {} has already been registered under {}", name, namespace);
+                }
+            }
+
+            @Override
+            public void onMetricRemoved(String name) {
+                metricRegistry.remove(MetricNamingUtil.join(namespace, name));
+            }
+        };
+    }
+
+    /**
+     * Registers the metrics of a metric set under the given namespace, the same way as
+     * {@link MetricRegistry#register(String, Metric)} does, but skips the metrics, which have already been registered
+     * (e.g., by a listener of a dynamic metric set).
+     */
+    private static void registerIgnoringDuplicates(String namespace, MetricSet metricSet) {
+        for (Map.Entry<String, Metric> entry : metricSet.getMetrics().entrySet()) {
+            String name = MetricRegistry.name(namespace, entry.getKey());
+            if (entry.getValue() instanceof MetricSet) {
+                registerIgnoringDuplicates(name, (MetricSet) entry.getValue());
+            } else {
+                try {
+                    metricRegistry.register(name, entry.getValue());
+                } catch (IllegalArgumentException e) {
+                    logger.debug("Metric {} has already been registered", name);
                 }
             }
         }
-        return metricsByNames;
+    }
+
+    private static void removeMetricsByNamespace(final String namespace) {
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(namespace + MetricNamingUtil.SEPARATOR);
+            }
+        });
     }
 
     private static synchronized void configure(MonitoringCenterConfig config, boolean internalCall) {
@@ -746,24 +1056,37 @@ public class MonitoringCenter {
         initialConfig = config;
         currentConfig = config;
         metricRegistry = new MetricRegistry();
+        MetricReportingConfig metricReportingConfig = config.getMetricReportingConfig();
+        parallelMetricCollector = new ParallelMetricCollector(metricReportingConfig.getCollectionParallelism(),
+                metricReportingConfig.getParallelCollectionThreshold());
+        registrySnapshotCollector = new RegistrySnapshotCollector(metricRegistry,
+                metricReportingConfig.getSnapshotFreshnessWindowInMillis(), parallelMetricCollector);
+        snapshotMetricRegistry = new SnapshotMetricRegistry(metricRegistry, registrySnapshotCollector);
+        metricNameIndex = new MetricNameIndex(metricRegistry);
         healthCheckRegistry = new HealthCheckRegistry();
 
+        // All built-in collectors are sampled on a single thread
+        samplingScheduler = new SamplingScheduler("MonitoringCenter-Sampling");
+
         // Set up default metric sets
         MetricCollectionConfig metricCollectionConfig = config.getMetricCollectionConfig();
         if (metricCollectionConfig != null) {
             if (metricCollectionConfig.isEnableSystemMetrics()) {
-                systemMetricSet = new SystemMetricSet();
-                metricRegistry.register(SYSTEM_METRIC_NAMESPACE, systemMetricSet);
+                startSystemMetrics(metricCollectionConfig);
             }
 
             if (metricCollectionConfig.isEnableTomcatMetrics()) {
-                tomcatMetricSet = new TomcatMetricSet();
+                tomcatMetricSet = new TomcatMetricSet(samplingScheduler);
                 metricRegistry.register(TOMCAT_METRIC_NAMESPACE, tomcatMetricSet);
             }
+
+            if (metricCollectionConfig.isEnableMonitoringCenterMetrics()) {
+                startMonitoringCenterMetrics();
+            }
         }
 
         // Configure reporters
-        consoleReporter = ConsoleReporter.forRegistry(metricRegistry)
+        consoleReporter = ConsoleReporter.forRegistry(snapshotMetricRegistry)
                 .convertRatesTo(TimeUnit.SECONDS)
                 .convertDurationsTo(TimeUnit.MICROSECONDS)
                 .build();
@@ -796,6 +1119,30 @@ public class MonitoringCenter {
                 initJmxReporter(jmxReporterConfig);
                 logger.info("Started JmxReporter: {}", jmxReporterConfig.toString());
             }
+
+            StatsdReporterConfig statsdReporterConfig = config.getMetricReportingConfig().getStatsdReporterConfig();
+            if (statsdReporterConfig != null && statsdReporterConfig.isEnableReporter()) {
+                initStatsdReporter(statsdReporterConfig);
+                logger.info("Started StatsdReporter: {}", statsdReporterConfig.toString());
+            }
+
+            InfluxReporterConfig influxReporterConfig = config.getMetricReportingConfig().getInfluxReporterConfig();
+            if (influxReporterConfig != null && influxReporterConfig.isEnableReporter()) {
+                initInfluxReporter(influxReporterConfig);
+                logger.info("Started InfluxReporter: {}", influxReporterConfig.toString());
+            }
+
+            JsonLogReporterConfig jsonLogReporterConfig = config.getMetricReportingConfig().getJsonLogReporterConfig();
+            if (jsonLogReporterConfig != null && jsonLogReporterConfig.isEnableReporter()) {
+                initJsonLogReporter(jsonLogReporterConfig);
+                logger.info("Started JsonLogReporter: {}", jsonLogReporterConfig.toString());
+            }
+
+            MetricHistoryConfig metricHistoryConfig = config.getMetricReportingConfig().getMetricHistoryConfig();
+            if (metricHistoryConfig != null && metricHistoryConfig.isEnableHistory()) {
+                initMetricHistory(metricHistoryConfig);
+                logger.info("Started metric history: {}", metricHistoryConfig.toString());
+            }
         }
 
         // Init infos
@@ -807,6 +1154,7 @@ public class MonitoringCenter {
         if (config.getConfigFile() != null && config.getConfigFile().exists()) {
             ConfigFileUtil.createEffectiveConfigFile(config);
 
+            // A reload restarts the reporters, which may take seconds; it must not hold up the sampling thread
             executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("MonitoringCenter-%d").build());
             executorService.scheduleWithFixedDelay(new Runnable() {
                 @Override
@@ -854,27 +1202,25 @@ public class MonitoringCenter {
 
             if (newMetricCollectionConfig.isEnableSystemMetrics()) {
                 if (oldMetricCollectionConfig == null || !oldMetricCollectionConfig.isEnableSystemMetrics()) {
-                    systemMetricSet = new SystemMetricSet();
-                    metricRegistry.register(SYSTEM_METRIC_NAMESPACE, systemMetricSet);
+                    startSystemMetrics(newMetricCollectionConfig);
+                } else if (oldMetricCollectionConfig.getNetworkInterfaceSamplingIntervalInSeconds() != newMetricCollectionConfig.getNetworkInterfaceSamplingIntervalInSeconds()
+                        || oldMetricCollectionConfig.getDeadlockDetectionIntervalInSeconds() != newMetricCollectionConfig.getDeadlockDetectionIntervalInSeconds()) {
+                    if (systemMetricSet != null) {
+                        stopSystemMetrics();
+                    }
+                    startSystemMetrics(newMetricCollectionConfig);
                 }
             } else {
                 if (oldMetricCollectionConfig != null && oldMetricCollectionConfig.isEnableSystemMetrics()) {
                     if (systemMetricSet != null) {
-                        metricRegistry.removeMatching(new MetricFilter() {
-                            @Override
-                            public boolean matches(String name, Metric metric) {
-                                return name.startsWith(SYSTEM_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
-                            }
-                        });
-                        systemMetricSet.shutdown();
-                        systemMetricSet = null;
+                        stopSystemMetrics();
                     }
                 }
             }
 
             if (newMetricCollectionConfig.isEnableTomcatMetrics()) {
                 if (oldMetricCollectionConfig == null || !oldMetricCollectionConfig.isEnableTomcatMetrics()) {
-                    tomcatMetricSet = new TomcatMetricSet();
+                    tomcatMetricSet = new TomcatMetricSet(samplingScheduler);
                     metricRegistry.register(TOMCAT_METRIC_NAMESPACE, tomcatMetricSet);
                 }
             } else {
@@ -891,6 +1237,16 @@ public class MonitoringCenter {
                     }
                 }
             }
+
+            if (newMetricCollectionConfig.isEnableMonitoringCenterMetrics()) {
+                if (oldMetricCollectionConfig == null || !oldMetricCollectionConfig.isEnableMonitoringCenterMetrics()) {
+                    startMonitoringCenterMetrics();
+                }
+            } else {
+                if (oldMetricCollectionConfig != null && oldMetricCollectionConfig.isEnableMonitoringCenterMetrics()) {
+                    stopMonitoringCenterMetrics();
+                }
+            }
         }
 
         // Reload GraphiteReporter
@@ -906,8 +1262,7 @@ public class MonitoringCenter {
 
         if (graphiteReporter != null && (oldGraphiteReporterConfig != null && oldGraphiteReporterConfig.isEnableReporter())) {
             if (newGraphiteReporterConfig == null || !newGraphiteReporterConfig.equals(oldGraphiteReporterConfig)) {
-                graphiteReporter.stop();
-                graphiteReporter = null;
+                stopGraphiteReporter();
 
                 if (newGraphiteReporterConfig != null && newGraphiteReporterConfig.isEnableReporter()) {
                     initGraphiteReporter(newGraphiteReporterConfig);
@@ -934,10 +1289,9 @@ public class MonitoringCenter {
             newJmxReporterConfig = newConfig.getMetricReportingConfig().getJmxReporterConfig();
         }
 
-        if (jmxReporter != null && (oldJmxReporterConfig != null && oldJmxReporterConfig.isEnableReporter())) {
+        if ((jmxReporter != null || namespaceJmxReporter != null) && (oldJmxReporterConfig != null && oldJmxReporterConfig.isEnableReporter())) {
             if (newJmxReporterConfig == null || !newJmxReporterConfig.equals(oldJmxReporterConfig)) {
-                jmxReporter.stop();
-                jmxReporter = null;
+                stopJmxReporter();
 
                 if (newJmxReporterConfig != null && newJmxReporterConfig.isEnableReporter()) {
                     initJmxReporter(newJmxReporterConfig);
@@ -953,121 +1307,428 @@ public class MonitoringCenter {
             }
         }
 
+        // Reload StatsdReporter
+        StatsdReporterConfig oldStatsdReporterConfig = null;
+        if (currentConfig.getMetricReportingConfig() != null) {
+            oldStatsdReporterConfig = currentConfig.getMetricReportingConfig().getStatsdReporterConfig();
+        }
+
+        StatsdReporterConfig newStatsdReporterConfig = null;
+        if (newConfig.getMetricReportingConfig() != null) {
+            newStatsdReporterConfig = newConfig.getMetricReportingConfig().getStatsdReporterConfig();
+        }
+
+        if (statsdReporter != null && (oldStatsdReporterConfig != null && oldStatsdReporterConfig.isEnableReporter())) {
+            if (newStatsdReporterConfig == null || !newStatsdReporterConfig.equals(oldStatsdReporterConfig)) {
+                stopStatsdReporter();
+
+                if (newStatsdReporterConfig != null && newStatsdReporterConfig.isEnableReporter()) {
+                    initStatsdReporter(newStatsdReporterConfig);
+                    logger.info("StatsdReporter has been updated: {}", newStatsdReporterConfig.toString());
+                } else {
+                    logger.info("StatsdReporter has been turned off");
+                }
+            }
+        } else {
+            if (newStatsdReporterConfig != null && newStatsdReporterConfig.isEnableReporter()) {
+                initStatsdReporter(newStatsdReporterConfig);
+                logger.info("Started StatsdReporter: {}", newStatsdReporterConfig.toString());
+            }
+        }
+
+        // Reload InfluxReporter
+        InfluxReporterConfig oldInfluxReporterConfig = null;
+        if (currentConfig.getMetricReportingConfig() != null) {
+            oldInfluxReporterConfig = currentConfig.getMetricReportingConfig().getInfluxReporterConfig();
+        }
+
+        InfluxReporterConfig newInfluxReporterConfig = null;
+        if (newConfig.getMetricReportingConfig() != null) {
+            newInfluxReporterConfig = newConfig.getMetricReportingConfig().getInfluxReporterConfig();
+        }
+
+        if (influxReporter != null && (oldInfluxReporterConfig != null && oldInfluxReporterConfig.isEnableReporter())) {
+            if (newInfluxReporterConfig == null || !newInfluxReporterConfig.equals(oldInfluxReporterConfig)) {
+                stopInfluxReporter();
+
+                if (newInfluxReporterConfig != null && newInfluxReporterConfig.isEnableReporter()) {
+                    initInfluxReporter(newInfluxReporterConfig);
+                    logger.info("InfluxReporter has been updated: {}", newInfluxReporterConfig.toString());
+                } else {
+                    logger.info("InfluxReporter has been turned off");
+                }
+            }
+        } else {
+            if (newInfluxReporterConfig != null && newInfluxReporterConfig.isEnableReporter()) {
+                initInfluxReporter(newInfluxReporterConfig);
+                logger.info("Started InfluxReporter: {}", newInfluxReporterConfig.toString());
+            }
+        }
+
+        // Reload JsonLogReporter
+        JsonLogReporterConfig oldJsonLogReporterConfig = null;
+        if (currentConfig.getMetricReportingConfig() != null) {
+            oldJsonLogReporterConfig = currentConfig.getMetricReportingConfig().getJsonLogReporterConfig();
+        }
+
+        JsonLogReporterConfig newJsonLogReporterConfig = null;
+        if (newConfig.getMetricReportingConfig() != null) {
+            newJsonLogReporterConfig = newConfig.getMetricReportingConfig().getJsonLogReporterConfig();
+        }
+
+        if (jsonLogReporter != null && (oldJsonLogReporterConfig != null && oldJsonLogReporterConfig.isEnableReporter())) {
+            if (newJsonLogReporterConfig == null || !newJsonLogReporterConfig.equals(oldJsonLogReporterConfig)) {
+                stopJsonLogReporter();
+
+                if (newJsonLogReporterConfig != null && newJsonLogReporterConfig.isEnableReporter()) {
+                    initJsonLogReporter(newJsonLogReporterConfig);
+                    logger.info("JsonLogReporter has been updated: {}", newJsonLogReporterConfig.toString());
+                } else {
+                    logger.info("JsonLogReporter has been turned off");
+                }
+            }
+        } else {
+            if (newJsonLogReporterConfig != null && newJsonLogReporterConfig.isEnableReporter()) {
+                initJsonLogReporter(newJsonLogReporterConfig);
+                logger.info("Started JsonLogReporter: {}", newJsonLogReporterConfig.toString());
+            }
+        }
+
+        // Reload the metric history
+        MetricHistoryConfig oldMetricHistoryConfig = null;
+        if (currentConfig.getMetricReportingConfig() != null) {
+            oldMetricHistoryConfig = currentConfig.getMetricReportingConfig().getMetricHistoryConfig();
+        }
+
+        MetricHistoryConfig newMetricHistoryConfig = null;
+        if (newConfig.getMetricReportingConfig() != null) {
+            newMetricHistoryConfig = newConfig.getMetricReportingConfig().getMetricHistoryConfig();
+        }
+
+        if (metricHistoryReporter != null && (oldMetricHistoryConfig != null && oldMetricHistoryConfig.isEnableHistory())) {
+            if (newMetricHistoryConfig == null || !newMetricHistoryConfig.equals(oldMetricHistoryConfig)) {
+                stopMetricHistory();
+
+                if (newMetricHistoryConfig != null && newMetricHistoryConfig.isEnableHistory()) {
+                    initMetricHistory(newMetricHistoryConfig);
+                    logger.info("Metric history has been updated: {}", newMetricHistoryConfig.toString());
+                } else {
+                    logger.info("Metric history has been turned off");
+                }
+            }
+        } else {
+            if (newMetricHistoryConfig != null && newMetricHistoryConfig.isEnableHistory()) {
+                initMetricHistory(newMetricHistoryConfig);
+                logger.info("Started metric history: {}", newMetricHistoryConfig.toString());
+            }
+        }
+
+        // Update the snapshot freshness window and the collection parallelism
+        MetricReportingConfig newMetricReportingConfig = newConfig.getMetricReportingConfig();
+        if (newMetricReportingConfig != null) {
+            registrySnapshotCollector.setFreshnessWindowInMillis(newMetricReportingConfig.getSnapshotFreshnessWindowInMillis());
+
+            for (AlignedReportingScheduler reportingScheduler : Arrays.asList(graphiteReportingScheduler, statsdReportingScheduler, influxReportingScheduler,
+                    jsonLogReportingScheduler, metricHistoryScheduler)) {
+                if (reportingScheduler != null) {
+                    reportingScheduler.setJitterBudgetInMillis(newMetricReportingConfig.getReportingJitterBudgetInMillis());
+                }
+            }
+
+            if (newMetricReportingConfig.getCollectionParallelism() != parallelMetricCollector.getParallelism() ||
+                    newMetricReportingConfig.getParallelCollectionThreshold() != parallelMetricCollector.getSequentialThreshold()) {
+                ParallelMetricCollector oldParallelMetricCollector = parallelMetricCollector;
+                parallelMetricCollector = new ParallelMetricCollector(newMetricReportingConfig.getCollectionParallelism(),
+                        newMetricReportingConfig.getParallelCollectionThreshold());
+                registrySnapshotCollector.setParallelMetricCollector(parallelMetricCollector);
+                oldParallelMetricCollector.shutdown();
+                logger.info("Collection parallelism has been updated: {} threads, threshold of {} metrics",
+                        newMetricReportingConfig.getCollectionParallelism(), newMetricReportingConfig.getParallelCollectionThreshold());
+            }
+        }
+
         currentConfig = newConfig;
     }
 
     private static void initGraphiteReporter(final GraphiteReporterConfig graphiteReporterConfig) {
-        HostAndPort hostAndPort = graphiteReporterConfig.getAddress();
-        InetSocketAddress inetSocketAddress = new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort());
+        GraphiteSender graphiteSender;
+        if (graphiteReporterConfig.isSharded()) {
+            shardedGraphiteSender = new ShardedGraphiteSender(graphiteReporterConfig.getAddresses(),
+                    graphiteReporterConfig.isEnableBatching(),
+                    TimeUnit.SECONDS.toMillis(graphiteReporterConfig.getReportingIntervalInSeconds()));
+            metricRegistry.register(GRAPHITE_METRIC_NAMESPACE, shardedGraphiteSender);
+            graphiteSender = shardedGraphiteSender;
+        } else {
+            HostAndPort hostAndPort = graphiteReporterConfig.getAddress();
+            InetSocketAddress inetSocketAddress = new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort());
 
-        GraphiteSender graphiteSender = graphiteReporterConfig.isEnableBatching()
-                ? new PickledGraphite(inetSocketAddress)
-                : new Graphite(inetSocketAddress);
+            graphiteSender = graphiteReporterConfig.isEnableBatching()
+                    ? new PickledGraphite(inetSocketAddress)
+                    : new Graphite(inetSocketAddress);
+        }
 
-        graphiteReporter = GraphiteReporter.forRegistry(metricRegistry)
+        if (graphiteReporterConfig.isEnableSpooling()) {
+            try {
+                spoolingGraphiteSender = new SpoolingGraphiteSender(graphiteSender,
+                        new File(graphiteReporterConfig.getSpoolDirectory()),
+                        graphiteReporterConfig.getMaxSpoolSizeInBytes(),
+                        graphiteReporterConfig.getSpoolReplayRatePerSecond());
+                metricRegistry.register(MetricNamingUtil.join(GRAPHITE_METRIC_NAMESPACE, "spool"), spoolingGraphiteSender);
+                graphiteSender = spoolingGraphiteSender;
+            } catch (IOException e) {
+                logger.error("Unable to initialize the Graphite spool in {}. Undelivered metrics will be dropped.",
+                        graphiteReporterConfig.getSpoolDirectory(), e);
+            }
+        }
+
+        graphiteReporter = GraphiteReporter.forRegistry(snapshotMetricRegistry)
                 .prefixedWith(prefix)
                 .convertRatesTo(TimeUnit.SECONDS)
                 .convertDurationsTo(TimeUnit.MICROSECONDS)
-                .withClock(new Clock() {
-                    private long lastReportingTime = 0;
+                .filter(CompiledMetricFilter.compile(graphiteReporterConfig.getStartsWithFilters(), graphiteReporterConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE))
+                .build(graphiteSender);
 
-                    @Override
-                    public long getTick() {
-                        return System.nanoTime();
-                    }
+        // Reports are stamped with the actual collection time, while the ticks are aligned across the fleet
+        graphiteReportingScheduler = createReportingScheduler(graphiteReporter, "GraphiteReporter", graphiteReporterConfig.getReportingIntervalInSeconds());
+        metricRegistry.register(MetricNamingUtil.join(GRAPHITE_METRIC_NAMESPACE, "scheduler"), graphiteReportingScheduler);
+        graphiteReportingScheduler.start();
+    }
 
-                    @Override
-                    public synchronized long getTime() {
-                        if (lastReportingTime == 0) {
-                            lastReportingTime = System.currentTimeMillis();
-                            return lastReportingTime;
-                        }
-                        lastReportingTime += graphiteReporterConfig.getReportingIntervalInSeconds() * 1000;
-                        return lastReportingTime;
-                    }
-                })
-                .filter(buildMetricFilter(graphiteReporterConfig.getStartsWithFilters(), graphiteReporterConfig.getBlockedStartsWithFilters()))
-                .build(graphiteSender);
+    private static AlignedReportingScheduler createReportingScheduler(ScheduledReporter reporter, String name, long reportingIntervalInSeconds) {
+        long reportingJitterBudgetInMillis = MonitoringCenterConfig.Builder.DEFAULT_REPORTING_JITTER_BUDGET_IN_MILLIS;
+        if (currentConfig != null && currentConfig.getMetricReportingConfig() != null) {
+            reportingJitterBudgetInMillis = currentConfig.getMetricReportingConfig().getReportingJitterBudgetInMillis();
+        }
+        return new AlignedReportingScheduler(reporter, name, reportingIntervalInSeconds, TimeUnit.SECONDS, reportingJitterBudgetInMillis, prefix);
+    }
+
+    private static void stopGraphiteReporter() {
+        graphiteReportingScheduler.stop();
+        graphiteReportingScheduler = null;
+
+        graphiteReporter.stop();
+        graphiteReporter = null;
+
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(GRAPHITE_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
+            }
+        });
 
-        graphiteReporter.start(graphiteReporterConfig.getReportingIntervalInSeconds(), TimeUnit.SECONDS);
+        if (spoolingGraphiteSender != null) {
+            spoolingGraphiteSender.shutdown();
+            spoolingGraphiteSender = null;
+        }
+
+        if (shardedGraphiteSender != null) {
+            shardedGraphiteSender.shutdown();
+            shardedGraphiteSender = null;
+        }
     }
 
     private static void initJmxReporter(final JmxReporterConfig jmxReporterConfig) {
-        jmxReporter = JmxReporter.forRegistry(metricRegistry)
+        CompiledMetricFilter filter = CompiledMetricFilter.compile(jmxReporterConfig.getStartsWithFilters(), jmxReporterConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE);
+
+        if (jmxReporterConfig.getExportMode() == JmxExportMode.PER_NAMESPACE) {
+            namespaceJmxReporter = new NamespaceJmxReporter(snapshotMetricRegistry, ManagementFactory.getPlatformMBeanServer(),
+                    NamespaceJmxReporter.DEFAULT_DOMAIN, filter, TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+            namespaceJmxReporter.start();
+            return;
+        }
+
+        jmxReporter = JmxReporter.forRegistry(snapshotMetricRegistry)
                 .convertRatesTo(TimeUnit.SECONDS)
                 .convertDurationsTo(TimeUnit.MICROSECONDS)
-                .filter(buildMetricFilter(jmxReporterConfig.getStartsWithFilters(), jmxReporterConfig.getBlockedStartsWithFilters()))
+                .filter(filter)
                 .build();
 
         jmxReporter.start();
     }
 
-    private static MetricFilter buildMetricFilter(final Set<String> startsWithFilters, final Set<String> blockedStartsWithFilters) {
-        return new MetricFilter() {
+    private static void stopJmxReporter() {
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+
+        if (namespaceJmxReporter != null) {
+            namespaceJmxReporter.stop();
+            namespaceJmxReporter = null;
+        }
+    }
+
+    private static void initStatsdReporter(final StatsdReporterConfig statsdReporterConfig) {
+        StatsdReporter.Builder statsdReporterBuilder = StatsdReporter.forRegistry(snapshotMetricRegistry)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .filter(CompiledMetricFilter.compile(statsdReporterConfig.getStartsWithFilters(), statsdReporterConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE));
+
+        if (statsdReporterConfig.isEnableTags()) {
+            // The node-specific parts of the prefix are sent as tags, so that they can be aggregated over by the agent
+            NamingConfig namingConfig = initialConfig.getNamingConfig();
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("datacenter", namingConfig.getDatacenterName());
+            tags.put("node_group", namingConfig.getNodeGroupName());
+            tags.put("node_id", namingConfig.getNodeId());
+            statsdReporterBuilder.prefixedWith(namingConfig.getApplicationName()).withTags(tags);
+        } else {
+            statsdReporterBuilder.prefixedWith(prefix);
+        }
+
+        HostAndPort address = statsdReporterConfig.getAddress();
+        statsdReporter = statsdReporterBuilder.build(new StatsdSender(address.getHost(), address.getPort(), statsdReporterConfig.getMaxPacketSizeInBytes()));
+        statsdReportingScheduler = createReportingScheduler(statsdReporter, "StatsdReporter", statsdReporterConfig.getReportingIntervalInSeconds());
+        metricRegistry.register(MetricNamingUtil.join(STATSD_METRIC_NAMESPACE, "scheduler"), statsdReportingScheduler);
+        statsdReportingScheduler.start();
+    }
+
+    private static void stopStatsdReporter() {
+        statsdReportingScheduler.stop();
+        statsdReportingScheduler = null;
+
+        statsdReporter.stop();
+        statsdReporter = null;
+
+        metricRegistry.removeMatching(new MetricFilter() {
             @Override
             public boolean matches(String name, Metric metric) {
-                boolean passedWhitelist = false;
-                if (startsWithFilters == null || startsWithFilters.isEmpty()) {
-                    passedWhitelist = true;
-                } else {
-                    passedWhitelist = matchesStartsWithFilters(name, startsWithFilters.toArray(new String[] {}));
-                }
+                return name.startsWith(STATSD_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
+            }
+        });
+    }
 
-                if (!passedWhitelist) {
-                    return false;
-                }
+    private static void initInfluxReporter(final InfluxReporterConfig influxReporterConfig) {
+        InfluxSender influxSender = new InfluxSender(influxReporterConfig.getUrl(), influxReporterConfig.getDatabase(),
+                influxReporterConfig.getRetentionPolicy(), influxReporterConfig.isEnableCompression(),
+                influxReporterConfig.getMaxRetryQueueSize(), influxReporterConfig.getTimeoutInMillis());
+        metricRegistry.register(INFLUX_METRIC_NAMESPACE, influxSender);
+
+        // The node-specific information is written as tags rather than as a prefix, so that the series names stay short
+        NamingConfig namingConfig = initialConfig.getNamingConfig();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("application", namingConfig.getApplicationName());
+        tags.put("datacenter", namingConfig.getDatacenterName());
+        tags.put("node_group", namingConfig.getNodeGroupName());
+        tags.put("node_id", namingConfig.getNodeId());
+
+        influxReporter = InfluxReporter.forRegistry(snapshotMetricRegistry)
+                .withTags(tags)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MICROSECONDS)
+                .maxLinesPerRequest(influxReporterConfig.getMaxLinesPerRequest())
+                .filter(CompiledMetricFilter.compile(influxReporterConfig.getStartsWithFilters(), influxReporterConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE))
+                .build(influxSender);
 
-                if (blockedStartsWithFilters == null || blockedStartsWithFilters.isEmpty()) {
-                    return true;
-                } else {
-                    return !matchesStartsWithFilters(name, blockedStartsWithFilters.toArray(new String[] {}));
-                }
-            }
-        };
+        influxReportingScheduler = createReportingScheduler(influxReporter, "InfluxReporter", influxReporterConfig.getReportingIntervalInSeconds());
+        metricRegistry.register(MetricNamingUtil.join(INFLUX_METRIC_NAMESPACE, "scheduler"), influxReportingScheduler);
+        influxReportingScheduler.start();
     }
 
-    private static String normalizeHealthCheckName(String name) {
-        Preconditions.checkArgument(StringUtils.isNotBlank(name), "name cannot be blank");
+    private static void stopInfluxReporter() {
+        influxReportingScheduler.stop();
+        influxReportingScheduler = null;
 
-        String sanitizedName = MetricNamingUtil.sanitize(name);
-        if (initialConfig.getNamingConfig() != null && initialConfig.getNamingConfig().isAppendTypeToHealthCheckNames()) {
-            if (!sanitizedName.endsWith(HEALTH_CHECK_POSTFIX)) {
-                sanitizedName += HEALTH_CHECK_POSTFIX;
+        influxReporter.stop();
+        influxReporter = null;
+
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(INFLUX_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
             }
-        }
+        });
+    }
 
-        return sanitizedName;
+    private static void initJsonLogReporter(final JsonLogReporterConfig jsonLogReporterConfig) {
+        jsonLogReporter = JsonLogReporter.forRegistry(snapshotMetricRegistry)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MICROSECONDS)
+                .maxMetricsPerLine(jsonLogReporterConfig.getMaxMetricsPerLine())
+                .filter(CompiledMetricFilter.compile(jsonLogReporterConfig.getStartsWithFilters(), jsonLogReporterConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE))
+                .build(LoggerFactory.getLogger(jsonLogReporterConfig.getLoggerName()));
+
+        jsonLogReportingScheduler = createReportingScheduler(jsonLogReporter, "JsonLogReporter", jsonLogReporterConfig.getReportingIntervalInSeconds());
+        metricRegistry.register(MetricNamingUtil.join(JSON_LOG_METRIC_NAMESPACE, "scheduler"), jsonLogReportingScheduler);
+        jsonLogReportingScheduler.start();
     }
 
-    private static boolean matchesStartsWithFilters(String name, String[] startsWithFilters) {
-        if (startsWithFilters == null || startsWithFilters.length == 0) {
-            return true;
-        }
+    private static void stopJsonLogReporter() {
+        jsonLogReportingScheduler.stop();
+        jsonLogReportingScheduler = null;
+
+        jsonLogReporter.stop();
+        jsonLogReporter = null;
 
-        for (String startsWithFilter : startsWithFilters) {
-            if (matchesStartsWithFilter(name, startsWithFilter)) {
-                return true;
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(JSON_LOG_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
+            }
+        });
+    }
+
+    private static void initMetricHistory(final MetricHistoryConfig metricHistoryConfig) {
+        MetricHistoryReporter.Builder metricHistoryReporterBuilder = MetricHistoryReporter.forRegistry(snapshotMetricRegistry)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MICROSECONDS)
+                .samplingInterval(metricHistoryConfig.getSamplingIntervalInSeconds(), TimeUnit.SECONDS)
+                .samplesPerMetric(metricHistoryConfig.getSamplesPerMetric())
+                .maxMetrics(metricHistoryConfig.getMaxMetrics())
+                .filter(CompiledMetricFilter.compile(metricHistoryConfig.getStartsWithFilters(), metricHistoryConfig.getBlockedStartsWithFilters(), REPORTER_FILTER_DECISION_CACHE_SIZE));
+
+        if (metricHistoryConfig.isEnablePersistence()) {
+            try {
+                metricHistoryStore = new MetricHistoryStore(new File(metricHistoryConfig.getPersistenceDirectory()),
+                        TimeUnit.HOURS.toMillis(metricHistoryConfig.getRetentionInHours()));
+                metricRegistry.register(MetricNamingUtil.join(HISTORY_METRIC_NAMESPACE, "store"), metricHistoryStore);
+                metricHistoryReporterBuilder.persistTo(metricHistoryStore);
+            } catch (IOException e) {
+                logger.error("Unable to initialize the metric history store in {}. The history will be kept in memory only.",
+                        metricHistoryConfig.getPersistenceDirectory(), e);
             }
         }
 
-        return false;
+        MetricHistoryReporter metricHistoryReporter = metricHistoryReporterBuilder.build();
+        metricRegistry.register(HISTORY_METRIC_NAMESPACE, metricHistoryReporter);
+
+        metricHistoryScheduler = createReportingScheduler(metricHistoryReporter, "MetricHistory", metricHistoryConfig.getSamplingIntervalInSeconds());
+        metricRegistry.register(MetricNamingUtil.join(HISTORY_METRIC_NAMESPACE, "scheduler"), metricHistoryScheduler);
+        metricHistoryScheduler.start();
+
+        MonitoringCenter.metricHistoryReporter = metricHistoryReporter;
     }
 
-    private static boolean matchesStartsWithFilter(String name, String startsWithFilter) {
-        startsWithFilter = StringUtils.trimToNull(startsWithFilter);
-        if (startsWithFilter == null) {
-            return true;
+    private static void stopMetricHistory() {
+        metricHistoryScheduler.stop();
+        metricHistoryScheduler = null;
+
+        metricHistoryReporter.stop();
+        metricHistoryReporter = null;
+
+        if (metricHistoryStore != null) {
+            metricHistoryStore.close();
+            metricHistoryStore = null;
         }
 
-        if (startsWithFilter.indexOf('*') == -1) {
-            return name.startsWith(startsWithFilter);
-        } else {
-            if (!startsWithFilter.endsWith("*")) {
-                startsWithFilter += "*";
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return name.startsWith(HISTORY_METRIC_NAMESPACE + MetricNamingUtil.SEPARATOR);
             }
+        });
+    }
+
+    private static String normalizeHealthCheckName(String name) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(name), "name cannot be blank");
 
-            String regex = ("\\Q" + startsWithFilter + "\\E").replace("*", "\\E.*\\Q");
-            return name.matches(regex);
+        String sanitizedName = MetricNamingUtil.sanitize(name);
+        if (initialConfig.getNamingConfig() != null && initialConfig.getNamingConfig().isAppendTypeToHealthCheckNames()) {
+            if (!sanitizedName.endsWith(HEALTH_CHECK_POSTFIX)) {
+                sanitizedName += HEALTH_CHECK_POSTFIX;
+            }
         }
+
+        return sanitizedName;
     }
 }
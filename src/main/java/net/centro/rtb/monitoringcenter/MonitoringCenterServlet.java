@@ -21,40 +21,90 @@
 
 package net.centro.rtb.monitoringcenter;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.health.HealthCheck;
 import com.codahale.metrics.json.HealthCheckModule;
 import com.codahale.metrics.json.MetricsModule;
 import com.codahale.metrics.jvm.ThreadDump;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
+import net.centro.rtb.monitoringcenter.infos.AppInfo;
+import net.centro.rtb.monitoringcenter.infos.NodeInfo;
 import net.centro.rtb.monitoringcenter.infos.ServerInfo;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.reporting.history.MetricHistoryReporter;
+import net.centro.rtb.monitoringcenter.reporting.history.MetricHistorySeries;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
 import net.centro.rtb.monitoringcenter.util.GraphiteMetricFormatter;
+import net.centro.rtb.monitoringcenter.util.MetricFieldProjection;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import net.centro.rtb.monitoringcenter.util.MetricQuery;
+import net.centro.rtb.monitoringcenter.util.PrometheusMetricWriter;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This servlet exposes the various facets of the {@link MonitoringCenter}. The exposed endpoints provide the user with
@@ -123,8 +173,16 @@ public class MonitoringCenterServlet extends HttpServlet {
     private static final String DISABLE_AUTHORIZATION_INIT_PARAM = "disableAuthorization";
     private static final String USERNAME_INIT_PARAM = "username";
     private static final String PASSWORD_INIT_PARAM = "password";
+    private static final String GZIP_COMPRESSION_LEVEL_INIT_PARAM = "gzipCompressionLevel";
+    private static final String RESPONSE_CACHE_MAX_AGE_INIT_PARAM = "responseCacheMaxAgeInMillis";
+    private static final String RESPONSE_CACHE_MAX_BODY_SIZE_INIT_PARAM = "responseCacheMaxBodySizeInBytes";
+    private static final String MAX_CONCURRENT_REQUESTS_INIT_PARAM = "maxConcurrentRequests";
 
+    private static final String PATH_ROOT = "/";
     private static final String PATH_METRICS = "/metrics";
+    private static final String PATH_METRICS_STREAM = "/metrics/stream";
+    private static final String PATH_METRICS_HISTORY = "/metrics/history";
+    private static final String PATH_METRICS_QUERY = "/metrics/query";
     private static final String PATH_HEALTHCHECKS = "/healthChecks";
     private static final String PATH_PING = "/ping";
     private static final String PATH_THREADDUMP = "/threadDump";
@@ -136,7 +194,10 @@ public class MonitoringCenterServlet extends HttpServlet {
 
     public static final List<EndpointDescription> ENDPOINT_DESCRIPTIONS = Collections.unmodifiableList(new ArrayList<EndpointDescription>() {{
         add(new EndpointDescription(PATH_METRICS, "Retrieves current readings from registered metrics.")
-                .queryParam("format", "Serialization format. Supported formats are JSON (\"json\") and Graphite-ready string (\"graphite\"). " +
+                .queryParam("format", "Serialization format. Supported formats are JSON (\"json\"), Graphite-ready string (\"graphite\"), " +
+                        "Prometheus text exposition format (\"prometheus\"), OpenMetrics text format (\"openmetrics\"), and the binary JSON " +
+                        "formats Smile (\"smile\") and CBOR (\"cbor\"). In the Prometheus and OpenMetrics formats, the node-specific prefix is " +
+                        "expressed via labels. Smile and CBOR carry the same structure as JSON, but are cheaper to encode and decode. " +
                         "By default, JSON will be served.")
                 .queryParam("startsWithFilter", "Filters to be applied to metric names. A filter can include multiple wildcards, expressed as \"*\". " +
                         "Multiple filters can be specified; at least one filter must match for a metric to be included in the response. The filters " +
@@ -144,7 +205,37 @@ public class MonitoringCenterServlet extends HttpServlet {
                 .queryParam("prettyPrint", "Indicates whether to nicely format the output or not. Only applies to JSON. Boolean values must be specified as " +
                         "\"true\" or \"false\". By default, the output will not be pretty printed.")
                 .queryParam("appendPrefix", "Indicates whether to append the node-specific prefix to metric names or not. Boolean values must be specified as " +
-                        "\"true\" or \"false\". By default, the prefix will not be appended."));
+                        "\"true\" or \"false\". By default, the prefix will not be appended.")
+                .queryParam("fields", "Comma-separated list of fields to return for every metric (e.g., \"count,p99,m1_rate\"). Supported fields are " +
+                        "value, count, min, max, mean, stddev, p50, p75, p95, p98, p99, p999, m1_rate, m5_rate, m15_rate, and mean_rate; fields that " +
+                        "do not apply to a metric type are omitted. Only applies to JSON, Smile, and CBOR. By default, all fields will be returned.")
+                .queryParam("limit", "Maximum number of metrics to return, across all metric types, in the order of metric names. If more metrics " +
+                        "remain, the response contains a \"nextCursor\" field. Only applies to JSON, Smile, and CBOR. By default, all metrics will be returned.")
+                .queryParam("cursor", "Name of the metric, after which to start the response; the \"nextCursor\" of the previous page. " +
+                        "Only applies to JSON, Smile, and CBOR."));
+        add(new EndpointDescription(PATH_METRICS_STREAM, "Streams the readings of registered metrics as Server-Sent Events. Every event carries " +
+                "the metrics that changed since the previous event, in the format of the JSON output of the metrics endpoint; removed metrics are " +
+                "sent as null. The first event carries all selected metrics. Requires the servlet to support asynchronous processing.")
+                .queryParam("startsWithFilter", "Filters to be applied to metric names, as for the metrics endpoint. By default, all registered " +
+                        "metrics will be streamed.")
+                .queryParam("intervalInSeconds", "Number of seconds between events, from 1 to 300. By default, an event will be sent every second."));
+        add(new EndpointDescription(PATH_METRICS_HISTORY, "Retrieves the recent values of a metric from the in-process metric history, " +
+                "as arrays of sample timestamps and of the values of every recorded field. Only available if the history is enabled. " +
+                "If the history is persisted, ranges exceeding the in-memory history are served from disk, in 1-minute or 10-minute rollups.")
+                .queryParam("name", "Name of the metric, with no regard to the node-specific prefix. This is a required param.")
+                .queryParam("range", "Maximum age of the samples to return, as a number followed by a unit: \"s\" (seconds), \"m\" (minutes), " +
+                        "\"h\" (hours), or \"d\" (days); e.g., \"10m\". A number with no unit denotes seconds. By default, the whole history will be returned.")
+                .queryParam("prettyPrint", "Indicates whether to nicely format the output or not. Boolean values must be specified as " +
+                        "\"true\" or \"false\". By default, the output will not be pretty printed."));
+        add(new EndpointDescription(PATH_METRICS_QUERY, "Evaluates an ad-hoc query over the current readings of registered metrics. A query " +
+                "selects metrics by a filter with an optional field, e.g., \"dbs.*:p99\", and optionally aggregates the selected values by sum, avg, " +
+                "max, min, or topk, e.g., \"sum(*.bids.wonCounter:count)\" or \"topk(5, dbs.*:p99)\". The response holds the aggregated value " +
+                "or the selected values by metric names, along with the number of matched metrics.")
+                .queryParam("q", "The query. The filter follows the rules of the startsWithFilter of the metrics endpoint. The supported fields are " +
+                        "the ones of the fields param of the metrics endpoint; by default, the value of gauges and the count of the other metrics is " +
+                        "selected. Metrics, for which the field does not apply, are skipped. This is a required param.")
+                .queryParam("prettyPrint", "Indicates whether to nicely format the output or not. Boolean values must be specified as " +
+                        "\"true\" or \"false\". By default, the output will not be pretty printed."));
         add(new EndpointDescription(PATH_HEALTHCHECKS, "Runs all registered health checks and returns their results as JSON.")
                 .queryParam("prettyPrint", "Indicates whether to nicely format the output or not. Boolean values must be specified as " +
                         "\"true\" or \"false\". By default, the output will not be pretty printed."));
@@ -167,14 +258,58 @@ public class MonitoringCenterServlet extends HttpServlet {
                         "\"true\" or \"false\". By default, the output will not be pretty printed."));
     }});
 
+    // Resolved by prefix, in this order
+    private static final List<String> ENDPOINT_PATHS = Collections.unmodifiableList(Arrays.asList(PATH_METRICS_STREAM, PATH_METRICS_HISTORY, PATH_METRICS_QUERY, PATH_METRICS,
+            PATH_HEALTHCHECKS, PATH_PING, PATH_THREADDUMP, PATH_SYSTEM_INFO, PATH_NODE_INFO, PATH_SERVER_INFO, PATH_APP_INFO));
+
+    private static final String SERVLET_METRIC_NAMESPACE = "servlet";
+
+    // The endpoints, which walk the registry or dump threads, are cached and limited. Health checks are left out, as probes
+    // must neither be rejected nor see a stale result.
+    private static final Set<String> GUARDED_ENDPOINT_PATHS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(PATH_METRICS,
+            PATH_THREADDUMP)));
+    private static final List<String> CACHE_KEY_QUERY_PARAMS = Collections.unmodifiableList(Arrays.asList("format", "startsWithFilter",
+            "prettyPrint", "appendPrefix", "fields", "limit", "cursor"));
+    private static final int DEFAULT_RESPONSE_CACHE_MAX_AGE_IN_MILLIS = 0;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 0;
+    private static final int DEFAULT_RESPONSE_CACHE_MAX_BODY_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    // The cache holds up to this many bodies of the max size
+    private static final int RESPONSE_CACHE_MAX_BODY_COUNT = 8;
+    // Under load, a cached response is served for up to this many max ages before it expires
+    private static final int RESPONSE_CACHE_STALE_AGE_FACTOR = 10;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final int DEFAULT_STREAM_INTERVAL_IN_SECONDS = 1;
+    private static final int MAX_STREAM_INTERVAL_IN_SECONDS = 300;
+
+    private static final List<String> METRIC_SECTION_NAMES = Collections.unmodifiableList(Arrays.asList("gauges", "counters",
+            "histograms", "meters", "timers"));
+
     private static final String FORMAT_GRAPHITE = "graphite";
+    private static final String FORMAT_PROMETHEUS = "prometheus";
+    private static final String FORMAT_OPENMETRICS = "openmetrics";
+    private static final String FORMAT_SMILE = "smile";
+    private static final String FORMAT_CBOR = "cbor";
+
+    private static final int STREAMING_BUFFER_SIZE = 64 * 1024;
 
     private static final String CONTENT_TYPE_APPLICATION_JSON = "application/json";
     private static final String CONTENT_TYPE_TEXT_PLAIN = "text/plain";
+    private static final String CONTENT_TYPE_APPLICATION_SMILE = "application/x-jackson-smile";
+    private static final String CONTENT_TYPE_APPLICATION_CBOR = "application/cbor";
+    private static final String CONTENT_TYPE_TEXT_EVENT_STREAM = "text/event-stream";
 
     private static final String PING_RESPONSE = "pong";
 
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+    // Metric payloads are large and served often; the fastest level gets most of the size reduction at a fraction of the CPU
+    private static final int DEFAULT_GZIP_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
     private ObjectMapper objectMapper;
+    private ObjectMapper smileObjectMapper;
+    private ObjectMapper cborObjectMapper;
     private GraphiteMetricFormatter graphiteMetricFormatter;
 
     private ThreadDump threadDumpGenerator;
@@ -183,6 +318,22 @@ public class MonitoringCenterServlet extends HttpServlet {
 
     private ServerInfo serverInfo;
 
+    private int gzipCompressionLevel;
+    private ConcurrentMap<String, StaticJsonResponse> staticJsonResponsesByKeys;
+
+    private long responseCacheMaxAgeInMillis;
+    private int responseCacheMaxBodySizeInBytes;
+    private Cache<String, CachedResponse> responseCache;
+    private Semaphore requestSemaphore;
+
+    private MetricStreamBroadcaster metricStreamBroadcaster;
+
+    private Map<String, Metric> servletMetricsByNames;
+    private Map<String, Timer> requestTimersByEndpointPaths;
+    private Counter bytesWrittenCounter;
+    private Counter servedFromCacheCounter;
+    private Counter rejectedRequestsCounter;
+
     @Override
     public void init(ServletConfig servletConfig) throws ServletException {
         super.init(servletConfig);
@@ -202,12 +353,9 @@ public class MonitoringCenterServlet extends HttpServlet {
             this.encodedCredentials = BaseEncoding.base64().encode(credentials.getBytes());
         }
 
-        this.objectMapper = new ObjectMapper()
-                .registerModule(new MetricsModule(TimeUnit.SECONDS, TimeUnit.MICROSECONDS, false))
-                .registerModule(new HealthCheckModule())
-                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-                .setTimeZone(TimeZone.getDefault())
-                .setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"));
+        this.objectMapper = createObjectMapper(new JsonFactory());
+        this.smileObjectMapper = createObjectMapper(new SmileFactory());
+        this.cborObjectMapper = createObjectMapper(new CBORFactory());
 
         this.graphiteMetricFormatter = new GraphiteMetricFormatter(TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
 
@@ -216,11 +364,101 @@ public class MonitoringCenterServlet extends HttpServlet {
         } catch (NoClassDefFoundError ignore) {
         }
 
+        this.gzipCompressionLevel = DEFAULT_GZIP_COMPRESSION_LEVEL;
+        String gzipCompressionLevelParam = StringUtils.trimToNull(servletConfig.getInitParameter(GZIP_COMPRESSION_LEVEL_INIT_PARAM));
+        if (gzipCompressionLevelParam != null) {
+            try {
+                this.gzipCompressionLevel = Integer.parseInt(gzipCompressionLevelParam);
+            } catch (NumberFormatException e) {
+                this.gzipCompressionLevel = -1;
+            }
+            if (gzipCompressionLevel < Deflater.NO_COMPRESSION || gzipCompressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new ServletException(GZIP_COMPRESSION_LEVEL_INIT_PARAM + " must be an integer within [0, 9]; 0 disables gzip");
+            }
+        }
+        this.staticJsonResponsesByKeys = new ConcurrentHashMap<>();
+
+        this.responseCacheMaxAgeInMillis = getIntInitParameter(servletConfig, RESPONSE_CACHE_MAX_AGE_INIT_PARAM, DEFAULT_RESPONSE_CACHE_MAX_AGE_IN_MILLIS);
+        if (responseCacheMaxAgeInMillis < 0) {
+            throw new ServletException(RESPONSE_CACHE_MAX_AGE_INIT_PARAM + " cannot be negative; 0 disables the response cache");
+        }
+        this.responseCacheMaxBodySizeInBytes = getIntInitParameter(servletConfig, RESPONSE_CACHE_MAX_BODY_SIZE_INIT_PARAM,
+                DEFAULT_RESPONSE_CACHE_MAX_BODY_SIZE_IN_BYTES);
+        if (responseCacheMaxBodySizeInBytes <= 0) {
+            throw new ServletException(RESPONSE_CACHE_MAX_BODY_SIZE_INIT_PARAM + " must be positive");
+        }
+        if (responseCacheMaxAgeInMillis > 0) {
+            // Guava splits the max weight evenly across segments; a single segment lets any body up to the max size be cached
+            this.responseCache = CacheBuilder.newBuilder()
+                    .concurrencyLevel(1)
+                    .maximumWeight((long) responseCacheMaxBodySizeInBytes * RESPONSE_CACHE_MAX_BODY_COUNT)
+                    .weigher(new Weigher<String, CachedResponse>() {
+                        @Override
+                        public int weigh(String cacheKey, CachedResponse cachedResponse) {
+                            return cachedResponse.body.length;
+                        }
+                    })
+                    .expireAfterWrite(responseCacheMaxAgeInMillis * RESPONSE_CACHE_STALE_AGE_FACTOR, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        int maxConcurrentRequests = getIntInitParameter(servletConfig, MAX_CONCURRENT_REQUESTS_INIT_PARAM, DEFAULT_MAX_CONCURRENT_REQUESTS);
+        if (maxConcurrentRequests < 0) {
+            throw new ServletException(MAX_CONCURRENT_REQUESTS_INIT_PARAM + " cannot be negative; 0 disables the limit");
+        }
+        if (maxConcurrentRequests > 0) {
+            this.requestSemaphore = new Semaphore(maxConcurrentRequests);
+        }
+
+        final Map<String, Metric> servletMetricsByNames = new HashMap<>();
+        this.requestTimersByEndpointPaths = new HashMap<>();
+        for (String endpointPath : Iterables.concat(Collections.singletonList(PATH_ROOT), ENDPOINT_PATHS)) {
+            Timer requestTimer = new Timer();
+            requestTimersByEndpointPaths.put(endpointPath, requestTimer);
+            String endpointName = PATH_ROOT.equals(endpointPath) ? "root" : endpointPath.substring(1).replace("/", MetricNamingUtil.SEPARATOR);
+            servletMetricsByNames.put(MetricNamingUtil.join(endpointName, "requestTimer"), requestTimer);
+        }
+        this.bytesWrittenCounter = new Counter();
+        servletMetricsByNames.put("bytesWrittenCounter", bytesWrittenCounter);
+        this.servedFromCacheCounter = new Counter();
+        servletMetricsByNames.put("servedFromCacheCounter", servedFromCacheCounter);
+        this.rejectedRequestsCounter = new Counter();
+        servletMetricsByNames.put("rejectedRequestsCounter", rejectedRequestsCounter);
+
+        this.metricStreamBroadcaster = new MetricStreamBroadcaster(objectMapper, new Supplier<RegistrySnapshot>() {
+            @Override
+            public RegistrySnapshot get() {
+                return MonitoringCenter.getRegistrySnapshot();
+            }
+        }, bytesWrittenCounter);
+        servletMetricsByNames.put("streamSubscribers", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return metricStreamBroadcaster.getSubscriberCount();
+            }
+        });
+
+        this.servletMetricsByNames = Collections.unmodifiableMap(servletMetricsByNames);
+        MonitoringCenter.registerInternalMetricSet(SERVLET_METRIC_NAMESPACE, new MetricSet() {
+            @Override
+            public Map<String, Metric> getMetrics() {
+                return MonitoringCenterServlet.this.servletMetricsByNames;
+            }
+        });
+
         ServletContext servletContext = servletConfig.getServletContext();
         String servletSpecVersion = servletContext.getMajorVersion() + "." + servletContext.getMinorVersion();
         this.serverInfo = ServerInfo.create(servletContext.getServerInfo(), servletSpecVersion);
     }
 
+    @Override
+    public void destroy() {
+        if (metricStreamBroadcaster != null) {
+            metricStreamBroadcaster.shutdown();
+        }
+        super.destroy();
+    }
+
     @Override
     protected void doGet(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException {
         httpServletResponse.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
@@ -233,58 +471,550 @@ public class MonitoringCenterServlet extends HttpServlet {
             return;
         }
 
-        final String path = httpServletRequest.getPathInfo();
-
-        if (path == null || path.equals("/")) {
-            handlePathDescriptions(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_METRICS)) {
-            handleMetrics(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_HEALTHCHECKS)) {
-            handleHealthChecks(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_PING)) {
-            handlePing(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_THREADDUMP)) {
-            handleThreadDump(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_SYSTEM_INFO)) {
-            handleSystemInfo(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_NODE_INFO)) {
-            handleNodeInfo(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_SERVER_INFO)) {
-            handleServerInfo(httpServletRequest, httpServletResponse);
-        } else if (path.startsWith(PATH_APP_INFO)) {
-            handleAppInfo(httpServletRequest, httpServletResponse);
-        } else {
+        final String endpointPath = resolveEndpointPath(httpServletRequest.getPathInfo());
+        if (endpointPath == null) {
             httpServletResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Timer.Context requestTimerContext = requestTimersByEndpointPaths.get(endpointPath).time();
+        try {
+            if (GUARDED_ENDPOINT_PATHS.contains(endpointPath)) {
+                handleGuardedEndpoint(endpointPath, httpServletRequest, httpServletResponse);
+            } else {
+                handleEndpoint(endpointPath, httpServletRequest, httpServletResponse);
+            }
+        } finally {
+            requestTimerContext.stop();
+        }
+    }
+
+    private void handleEndpoint(String endpointPath, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        switch (endpointPath) {
+            case PATH_METRICS_STREAM:
+                handleMetricsStream(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_METRICS_HISTORY:
+                handleMetricsHistory(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_METRICS_QUERY:
+                handleMetricsQuery(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_METRICS:
+                handleMetrics(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_HEALTHCHECKS:
+                handleHealthChecks(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_PING:
+                handlePing(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_THREADDUMP:
+                handleThreadDump(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_SYSTEM_INFO:
+                handleSystemInfo(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_NODE_INFO:
+                handleNodeInfo(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_SERVER_INFO:
+                handleServerInfo(httpServletRequest, httpServletResponse);
+                break;
+            case PATH_APP_INFO:
+                handleAppInfo(httpServletRequest, httpServletResponse);
+                break;
+            default:
+                handlePathDescriptions(httpServletRequest, httpServletResponse);
+        }
+    }
+
+    /**
+     * Handles an expensive endpoint, protecting the node from scrape storms. Both protections are opt-in. A response
+     * younger than the configured max age is served from the cache. Otherwise, the response is rendered, unless the
+     * maximum number of concurrent requests is reached; in that case, the cached response is served if it has not yet
+     * expired, or the request is rejected with 429 (Too Many Requests) if there is none. Bodies too large to cache are
+     * streamed through as they are rendered.
+     */
+    private void handleGuardedEndpoint(String endpointPath, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        String cacheKey = responseCache != null ? buildCacheKey(httpServletRequest) : null;
+        CachedResponse cachedResponse = cacheKey != null ? responseCache.getIfPresent(cacheKey) : null;
+        if (cachedResponse != null && System.currentTimeMillis() - cachedResponse.creationTimeInMillis <= responseCacheMaxAgeInMillis) {
+            writeCachedResponse(httpServletResponse, cachedResponse);
+            return;
+        }
+
+        if (requestSemaphore == null) {
+            renderGuardedEndpoint(endpointPath, cacheKey, httpServletRequest, httpServletResponse);
+            return;
+        }
+
+        if (!requestSemaphore.tryAcquire()) {
+            if (cachedResponse != null) {
+                writeCachedResponse(httpServletResponse, cachedResponse);
+            } else {
+                rejectedRequestsCounter.inc();
+                httpServletResponse.setHeader("Retry-After", "1");
+                httpServletResponse.sendError(SC_TOO_MANY_REQUESTS);
+            }
+            return;
+        }
+
+        try {
+            renderGuardedEndpoint(endpointPath, cacheKey, httpServletRequest, httpServletResponse);
+        } finally {
+            requestSemaphore.release();
         }
     }
 
+    private void renderGuardedEndpoint(String endpointPath, String cacheKey, HttpServletRequest httpServletRequest,
+                                       HttpServletResponse httpServletResponse) throws IOException {
+        if (cacheKey == null) {
+            handleEndpoint(endpointPath, httpServletRequest, httpServletResponse);
+            return;
+        }
+
+        BufferingResponse bufferingResponse = new BufferingResponse(httpServletResponse, responseCacheMaxBodySizeInBytes);
+        handleEndpoint(endpointPath, httpServletRequest, bufferingResponse);
+        if (bufferingResponse.errorSent) {
+            return;
+        }
+
+        if (bufferingResponse.isOverflowed()) {
+            bufferingResponse.finishOverflowed();
+            return;
+        }
+
+        byte[] body = bufferingResponse.getBody();
+        if (bufferingResponse.status == HttpServletResponse.SC_OK) {
+            responseCache.put(cacheKey, new CachedResponse(bufferingResponse, body));
+        }
+        try (OutputStream output = httpServletResponse.getOutputStream()) {
+            output.write(body);
+        }
+    }
+
+    private String buildCacheKey(HttpServletRequest httpServletRequest) {
+        StringBuilder cacheKeyBuilder = new StringBuilder(String.valueOf(httpServletRequest.getPathInfo()));
+        for (String queryParam : CACHE_KEY_QUERY_PARAMS) {
+            String[] values = httpServletRequest.getParameterValues(queryParam);
+            if (values != null) {
+                for (String value : values) {
+                    cacheKeyBuilder.append('&').append(queryParam).append('=').append(value);
+                }
+            }
+        }
+
+        // Compressed and uncompressed bodies are cached separately
+        if (acceptsGzip(httpServletRequest)) {
+            cacheKeyBuilder.append('&').append(ENCODING_GZIP);
+        }
+        return cacheKeyBuilder.toString();
+    }
+
+    private void writeCachedResponse(HttpServletResponse httpServletResponse, CachedResponse cachedResponse) throws IOException {
+        servedFromCacheCounter.inc();
+
+        if (cachedResponse.characterEncoding != null) {
+            httpServletResponse.setCharacterEncoding(cachedResponse.characterEncoding);
+        }
+        if (cachedResponse.contentType != null) {
+            httpServletResponse.setContentType(cachedResponse.contentType);
+        }
+        if (gzipCompressionLevel != Deflater.NO_COMPRESSION) {
+            httpServletResponse.setHeader("Vary", "Accept-Encoding");
+        }
+        if (cachedResponse.contentEncoding != null) {
+            httpServletResponse.setHeader("Content-Encoding", cachedResponse.contentEncoding);
+        }
+
+        try (OutputStream output = new CountingOutputStream(httpServletResponse.getOutputStream(), bytesWrittenCounter)) {
+            output.write(cachedResponse.body);
+        }
+    }
+
+    private static int getIntInitParameter(ServletConfig servletConfig, String name, int defaultValue) throws ServletException {
+        String value = StringUtils.trimToNull(servletConfig.getInitParameter(name));
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServletException(name + " must be an integer", e);
+        }
+    }
+
+    private static String resolveEndpointPath(String path) {
+        if (path == null || path.equals(PATH_ROOT)) {
+            return PATH_ROOT;
+        }
+
+        for (String endpointPath : ENDPOINT_PATHS) {
+            if (path.startsWith(endpointPath)) {
+                return endpointPath;
+            }
+        }
+        return null;
+    }
+
     private void handlePathDescriptions(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
         writeAsJson(httpServletRequest, httpServletResponse, ENDPOINT_DESCRIPTIONS);
     }
 
     private void handleMetrics(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
         String format = StringUtils.trimToNull(httpServletRequest.getParameter("format"));
-        String[] startsWithFilters = httpServletRequest.getParameterValues("startsWithFilter");
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(httpServletRequest.getParameterValues("startsWithFilter"));
+
+        // Scrapes share the registry snapshot with the reporters
+        RegistrySnapshot registrySnapshot = MonitoringCenter.getRegistrySnapshot();
 
         if (FORMAT_GRAPHITE.equalsIgnoreCase(format)) {
             httpServletResponse.setContentType(CONTENT_TYPE_TEXT_PLAIN);
+            httpServletResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+            SortedMap<String, Metric> metricsByNames = MonitoringCenter.filterMetricsByNames(registrySnapshot.getMetrics(), true, nameFilter, Metric.class);
+            String formattedMetrics = graphiteMetricFormatter.format(metricsByNames);
+            try (Writer writer = new OutputStreamWriter(openOutputStream(httpServletRequest, httpServletResponse), StandardCharsets.UTF_8)) {
+                writer.write(formattedMetrics);
+            }
+        } else if (FORMAT_PROMETHEUS.equalsIgnoreCase(format) || FORMAT_OPENMETRICS.equalsIgnoreCase(format)) {
+            boolean openMetrics = FORMAT_OPENMETRICS.equalsIgnoreCase(format);
+            httpServletResponse.setContentType(openMetrics ? PrometheusMetricWriter.CONTENT_TYPE_OPENMETRICS : PrometheusMetricWriter.CONTENT_TYPE_PROMETHEUS);
 
-            try (PrintWriter printWriter = httpServletResponse.getWriter()) {
-                SortedMap<String, Metric> metricsByNames = MonitoringCenter.getMetricsByNames(true, startsWithFilters);
-                printWriter.write(graphiteMetricFormatter.format(metricsByNames));
+            SortedMap<String, Metric> metricsByNames = MonitoringCenter.filterMetricsByNames(registrySnapshot.getMetrics(), false, nameFilter, Metric.class);
+            PrometheusMetricWriter prometheusMetricWriter = new PrometheusMetricWriter(getPrometheusLabels(), openMetrics);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(openOutputStream(httpServletRequest, httpServletResponse), StandardCharsets.UTF_8), STREAMING_BUFFER_SIZE)) {
+                prometheusMetricWriter.write(metricsByNames, writer);
             }
         } else {
             boolean appendPrefix = Boolean.TRUE.toString().equalsIgnoreCase(StringUtils.trimToNull(httpServletRequest.getParameter("appendPrefix")));
+            String namePrefix = appendPrefix ? MonitoringCenter.getPrefix() + MetricNamingUtil.SEPARATOR : null;
+
+            MetricFieldProjection fieldProjection = null;
+            int limit = 0;
+            try {
+                String fieldList = StringUtils.trimToNull(httpServletRequest.getParameter("fields"));
+                if (fieldList != null) {
+                    fieldProjection = MetricFieldProjection.parse(fieldList, TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+                }
+
+                String limitParam = StringUtils.trimToNull(httpServletRequest.getParameter("limit"));
+                if (limitParam != null) {
+                    limit = Integer.parseInt(limitParam);
+                    if (limit <= 0) {
+                        throw new IllegalArgumentException("limit must be positive");
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            String cursor = StringUtils.trimToNull(httpServletRequest.getParameter("cursor"));
+
+            ObjectMapper metricObjectMapper = objectMapper;
+            String contentType = CONTENT_TYPE_APPLICATION_JSON;
+            boolean prettyPrint = false;
+            if (FORMAT_SMILE.equalsIgnoreCase(format)) {
+                metricObjectMapper = smileObjectMapper;
+                contentType = CONTENT_TYPE_APPLICATION_SMILE;
+            } else if (FORMAT_CBOR.equalsIgnoreCase(format)) {
+                metricObjectMapper = cborObjectMapper;
+                contentType = CONTENT_TYPE_APPLICATION_CBOR;
+            } else {
+                prettyPrint = Boolean.TRUE.toString().equalsIgnoreCase(StringUtils.trimToNull(httpServletRequest.getParameter("prettyPrint")));
+            }
+
+            httpServletResponse.setContentType(contentType);
+
+            try (OutputStream output = openOutputStream(httpServletRequest, httpServletResponse);
+                 JsonGenerator generator = metricObjectMapper.getFactory().createGenerator(output)) {
+                if (prettyPrint) {
+                    generator.useDefaultPrettyPrinter();
+                }
+                writeMetrics(metricObjectMapper, generator, registrySnapshot, nameFilter, namePrefix, fieldProjection, cursor, limit);
+            }
+        }
+    }
+
+    private void handleMetricsStream(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        if (!httpServletRequest.isAsyncSupported()) {
+            httpServletResponse.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, "Asynchronous processing must be enabled for this servlet " +
+                    "(<async-supported>true</async-supported> in web.xml) to stream metrics");
+            return;
+        }
+
+        int intervalInSeconds = DEFAULT_STREAM_INTERVAL_IN_SECONDS;
+        String intervalParam = StringUtils.trimToNull(httpServletRequest.getParameter("intervalInSeconds"));
+        if (intervalParam != null) {
+            try {
+                intervalInSeconds = Integer.parseInt(intervalParam);
+            } catch (NumberFormatException e) {
+                intervalInSeconds = -1;
+            }
+            if (intervalInSeconds < 1 || intervalInSeconds > MAX_STREAM_INTERVAL_IN_SECONDS) {
+                httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "intervalInSeconds must be an integer within [1, " +
+                        MAX_STREAM_INTERVAL_IN_SECONDS + "]");
+                return;
+            }
+        }
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(httpServletRequest.getParameterValues("startsWithFilter"));
+
+        httpServletResponse.setContentType(CONTENT_TYPE_TEXT_EVENT_STREAM);
+        httpServletResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        httpServletResponse.flushBuffer();
+
+        AsyncContext asyncContext = httpServletRequest.startAsync();
+        asyncContext.setTimeout(0);
+        metricStreamBroadcaster.subscribe(asyncContext, nameFilter, intervalInSeconds);
+    }
+
+    private void handleMetricsHistory(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        MetricHistoryReporter metricHistoryReporter = MonitoringCenter.getMetricHistoryReporter();
+        if (metricHistoryReporter == null) {
+            httpServletResponse.sendError(HttpServletResponse.SC_NOT_FOUND, "Metric history is not enabled");
+            return;
+        }
+
+        String name = StringUtils.trimToNull(httpServletRequest.getParameter("name"));
+        if (name == null) {
+            httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "name is required");
+            return;
+        }
+
+        long rangeInMillis = metricHistoryReporter.getSpanInMillis();
+        String rangeParam = StringUtils.trimToNull(httpServletRequest.getParameter("range"));
+        if (rangeParam != null) {
+            try {
+                rangeInMillis = parseRangeInMillis(rangeParam);
+            } catch (IllegalArgumentException e) {
+                httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+        }
+
+        MetricHistorySeries series = metricHistoryReporter.getSeries(name, rangeInMillis);
+        if (series == null) {
+            httpServletResponse.sendError(HttpServletResponse.SC_NOT_FOUND, "No history for " + name);
+            return;
+        }
+
+        Map<String, double[]> valuesByFieldNames = new LinkedHashMap<>();
+        for (String fieldName : series.getType().getFieldNames()) {
+            valuesByFieldNames.put(fieldName, series.getValues(fieldName));
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("name", series.getName());
+        response.put("type", series.getType().name().toLowerCase());
+        response.put("timestamps", series.getTimestamps());
+        response.put("values", valuesByFieldNames);
+        writeAsJson(httpServletRequest, httpServletResponse, response);
+    }
+
+    private void handleMetricsQuery(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        String expression = StringUtils.trimToNull(httpServletRequest.getParameter("q"));
+        if (expression == null) {
+            httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "q is required");
+            return;
+        }
 
-            Map<String, SortedMap<String, ? extends Metric>> responseMap = new LinkedHashMap<>();
-            responseMap.put("gauges", MonitoringCenter.getGaugesByNames(appendPrefix, startsWithFilters));
-            responseMap.put("counters", MonitoringCenter.getCountersByNames(appendPrefix, startsWithFilters));
-            responseMap.put("histograms", MonitoringCenter.getHistogramsByNames(appendPrefix, startsWithFilters));
-            responseMap.put("meters", MonitoringCenter.getMetersByNames(appendPrefix, startsWithFilters));
-            responseMap.put("timers", MonitoringCenter.getTimersByNames(appendPrefix, startsWithFilters));
+        MetricQuery metricQuery;
+        try {
+            metricQuery = MetricQuery.parse(expression, TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+        } catch (IllegalArgumentException e) {
+            httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        // A fresh snapshot is reused; otherwise, only the selected metrics are read from the live registry
+        MetricQuery.Result result;
+        RegistrySnapshot registrySnapshot = MonitoringCenter.getCachedRegistrySnapshot();
+        MetricRegistry metricRegistry = MonitoringCenter.getMetricRegistry();
+        if (registrySnapshot != null || metricRegistry == null) {
+            result = metricQuery.evaluate(registrySnapshot != null ? registrySnapshot : RegistrySnapshot.empty(), MonitoringCenter.getMetricNameIndex());
+        } else {
+            result = metricQuery.evaluate(metricRegistry, MonitoringCenter.getMetricNameIndex());
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("query", metricQuery.getExpression());
+        response.put("matched", result.getMatchedMetrics());
+        if (result.getValuesByNames() != null) {
+            response.put("metrics", result.getValuesByNames());
+        } else {
+            response.put("value", result.getValue());
+            if (result.getMetricName() != null) {
+                response.put("metric", result.getMetricName());
+            }
+        }
+        writeAsJson(httpServletRequest, httpServletResponse, response);
+    }
+
+    /**
+     * Parses a range, such as "30s", "10m", "1h", or "2d"; a number with no unit denotes seconds.
+     */
+    static long parseRangeInMillis(String range) {
+        TimeUnit timeUnit;
+        String amount = range.substring(0, range.length() - 1);
+        switch (Character.toLowerCase(range.charAt(range.length() - 1))) {
+            case 's':
+                timeUnit = TimeUnit.SECONDS;
+                break;
+            case 'm':
+                timeUnit = TimeUnit.MINUTES;
+                break;
+            case 'h':
+                timeUnit = TimeUnit.HOURS;
+                break;
+            case 'd':
+                timeUnit = TimeUnit.DAYS;
+                break;
+            default:
+                timeUnit = TimeUnit.SECONDS;
+                amount = range;
+        }
+
+        try {
+            long parsedAmount = Long.parseLong(amount.trim());
+            if (parsedAmount >= 0) {
+                return timeUnit.toMillis(parsedAmount);
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException("range must be a non-negative number followed by s, m, h, or d; e.g., 10m");
+    }
+
+    /**
+     * Streams the metrics of a registry snapshot as an object with the "gauges", "counters", "histograms", "meters", and
+     * "timers" sections. The sections of the snapshot are already sorted by names, so the metrics are filtered and
+     * written in a single pass, without building intermediate maps. The output is identical to the one of serializing
+     * a map of the filtered sections with the given object mapper.
+     *
+     * @param objectMapper the object mapper to serialize individual metrics with.
+     * @param generator the generator to write to.
+     * @param registrySnapshot the snapshot to write.
+     * @param nameFilter the filter to apply to metric names.
+     * @param namePrefix the prefix to prepend to metric names; <tt>null</tt> for none.
+     * @throws IOException if the metrics could not be written.
+     */
+    static void writeMetrics(ObjectMapper objectMapper, JsonGenerator generator, RegistrySnapshot registrySnapshot, CompiledMetricFilter nameFilter,
+                             String namePrefix) throws IOException {
+        writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, namePrefix, null, null, 0);
+    }
+
+    /**
+     * Streams a page of the metrics of a registry snapshot, optionally projected onto a subset of fields. Pages are
+     * taken over the sorted names of the filtered metrics, regardless of the metric types (metric names are unique
+     * across the types). A page holds up to <tt>limit</tt> metrics, whose names follow the cursor; if more metrics
+     * remain, the name of the last metric in the page is written as the "nextCursor" field, to be passed as the cursor
+     * for the next page.
+     *
+     * @param objectMapper the object mapper to serialize individual metrics with.
+     * @param generator the generator to write to.
+     * @param registrySnapshot the snapshot to write.
+     * @param nameFilter the filter to apply to metric names.
+     * @param namePrefix the prefix to prepend to metric names; <tt>null</tt> for none.
+     * @param fieldProjection the fields to write for every metric; <tt>null</tt> to write all fields.
+     * @param cursor the name after which the page starts (exclusive); <tt>null</tt> to start from the first metric.
+     * @param limit the maximum number of metrics in the page; 0 for no limit.
+     * @throws IOException if the metrics could not be written.
+     */
+    static void writeMetrics(ObjectMapper objectMapper, JsonGenerator generator, RegistrySnapshot registrySnapshot, CompiledMetricFilter nameFilter,
+                             String namePrefix, MetricFieldProjection fieldProjection, String cursor, int limit) throws IOException {
+        List<SortedMap<String, ? extends Metric>> sections = new ArrayList<>(METRIC_SECTION_NAMES.size());
+        sections.add(pageStart(registrySnapshot.getGauges(), cursor));
+        sections.add(pageStart(registrySnapshot.getCounters(), cursor));
+        sections.add(pageStart(registrySnapshot.getHistograms(), cursor));
+        sections.add(pageStart(registrySnapshot.getMeters(), cursor));
+        sections.add(pageStart(registrySnapshot.getTimers(), cursor));
+
+        String lastName = null;
+        String nextCursor = null;
+        if (limit > 0) {
+            Iterator<String> nameIterator = mergeNames(sections, nameFilter);
+            int nameCount = 0;
+            while (nameCount < limit && nameIterator.hasNext()) {
+                lastName = nameIterator.next();
+                nameCount++;
+            }
+
+            if (nameCount < limit) {
+                lastName = null;    // The rest of the metrics fits into the page
+            } else if (nameIterator.hasNext()) {
+                nextCursor = lastName;
+            }
+        }
+
+        // Flushing after every metric would defeat the buffering of the response
+        ObjectWriter metricWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        generator.writeStartObject();
+        for (int i = 0; i < sections.size(); i++) {
+            generator.writeFieldName(METRIC_SECTION_NAMES.get(i));
+            generator.writeStartObject();
+            for (Map.Entry<String, ? extends Metric> entry : sections.get(i).entrySet()) {
+                String name = entry.getKey();
+                if (lastName != null && name.compareTo(lastName) > 0) {
+                    break;
+                }
+                if (!nameFilter.matches(name)) {
+                    continue;
+                }
+
+                generator.writeFieldName(namePrefix != null ? namePrefix + name : name);
+                if (fieldProjection != null) {
+                    fieldProjection.write(generator, entry.getValue());
+                } else {
+                    metricWriter.writeValue(generator, entry.getValue());
+                }
+            }
+            generator.writeEndObject();
+        }
+        if (nextCursor != null) {
+            generator.writeStringField("nextCursor", nextCursor);
+        }
+        generator.writeEndObject();
+    }
+
+    private static <T extends Metric> SortedMap<String, T> pageStart(SortedMap<String, T> metricsByNames, String cursor) {
+        // The smallest string greater than the cursor is the cursor followed by the null character
+        return cursor != null ? metricsByNames.tailMap(cursor + '\u0000') : metricsByNames;
+    }
+
+    /**
+     * Merges the sorted names of the sections, which match the filter, into a single sorted sequence.
+     */
+    private static Iterator<String> mergeNames(List<SortedMap<String, ? extends Metric>> sections, final CompiledMetricFilter nameFilter) {
+        List<Iterator<String>> nameIterators = new ArrayList<>(sections.size());
+        for (SortedMap<String, ? extends Metric> section : sections) {
+            nameIterators.add(Iterators.filter(section.keySet().iterator(), new Predicate<String>() {
+                @Override
+                public boolean apply(String name) {
+                    return nameFilter.matches(name);
+                }
+            }));
+        }
+        return Iterators.mergeSorted(nameIterators, Ordering.<String>natural());
+    }
+
+    private Map<String, String> getPrometheusLabels() {
+        Map<String, String> labels = new LinkedHashMap<>();
+
+        AppInfo appInfo = MonitoringCenter.getAppInfo();
+        if (appInfo != null) {
+            labels.put("application", appInfo.getApplicationName());
+        }
 
-            writeAsJson(httpServletRequest, httpServletResponse, responseMap);
+        NodeInfo nodeInfo = MonitoringCenter.getNodeInfo();
+        if (nodeInfo != null) {
+            labels.put("datacenter", nodeInfo.getDatacenterName());
+            labels.put("node_group", nodeInfo.getNodeGroupName());
+            labels.put("node_id", nodeInfo.getNodeId());
         }
+
+        return labels;
     }
 
     private void handleHealthChecks(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
@@ -335,19 +1065,56 @@ public class MonitoringCenterServlet extends HttpServlet {
     }
 
     private void handleSystemInfo(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
-        writeAsJson(httpServletRequest, httpServletResponse, MonitoringCenter.getSystemInfo());
+        writeAsStaticJson(httpServletRequest, httpServletResponse, PATH_SYSTEM_INFO, MonitoringCenter.getSystemInfo());
     }
 
     private void handleNodeInfo(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
-        writeAsJson(httpServletRequest, httpServletResponse, MonitoringCenter.getNodeInfo());
+        writeAsStaticJson(httpServletRequest, httpServletResponse, PATH_NODE_INFO, MonitoringCenter.getNodeInfo());
     }
 
     private void handleAppInfo(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
-        writeAsJson(httpServletRequest, httpServletResponse, MonitoringCenter.getAppInfo());
+        writeAsStaticJson(httpServletRequest, httpServletResponse, PATH_APP_INFO, MonitoringCenter.getAppInfo());
     }
 
     private void handleServerInfo(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
-        writeAsJson(httpServletRequest, httpServletResponse, serverInfo);
+        writeAsStaticJson(httpServletRequest, httpServletResponse, PATH_SERVER_INFO, serverInfo);
+    }
+
+    /**
+     * Writes an object, which does not change once created, as JSON. The serialized form and its ETag are computed once
+     * per object; a request carrying a matching <tt>If-None-Match</tt> header is answered with 304 (Not Modified).
+     */
+    private void writeAsStaticJson(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, String path, Object object) throws IOException {
+        boolean prettyPrint = Boolean.TRUE.toString().equalsIgnoreCase(StringUtils.trimToNull(httpServletRequest.getParameter("prettyPrint")));
+
+        String key = path + (prettyPrint ? "?prettyPrint" : "");
+        StaticJsonResponse staticJsonResponse = staticJsonResponsesByKeys.get(key);
+        if (staticJsonResponse == null || staticJsonResponse.source != object) {
+            byte[] body = prettyPrint ? objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(object) : objectMapper.writeValueAsBytes(object);
+            staticJsonResponse = new StaticJsonResponse(object, body);
+            staticJsonResponsesByKeys.put(key, staticJsonResponse);
+        }
+
+        boolean gzip = acceptsGzip(httpServletRequest);
+        String etag = gzip ? staticJsonResponse.gzipEtag : staticJsonResponse.etag;
+
+        // The payload can be cached, as long as it is revalidated
+        httpServletResponse.setHeader("Cache-Control", "private,no-cache");
+        httpServletResponse.setHeader("ETag", etag);
+        if (gzipCompressionLevel != Deflater.NO_COMPRESSION) {
+            httpServletResponse.setHeader("Vary", "Accept-Encoding");
+        }
+
+        if (matchesEtag(httpServletRequest.getHeader("If-None-Match"), etag)) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        httpServletResponse.setContentType(CONTENT_TYPE_APPLICATION_JSON);
+
+        try (OutputStream output = openOutputStream(httpServletRequest, httpServletResponse)) {
+            output.write(staticJsonResponse.body);
+        }
     }
 
     private void writeAsJson(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Object object) throws IOException {
@@ -355,7 +1122,7 @@ public class MonitoringCenterServlet extends HttpServlet {
 
         httpServletResponse.setContentType(CONTENT_TYPE_APPLICATION_JSON);
 
-        try (OutputStream output = httpServletResponse.getOutputStream()) {
+        try (OutputStream output = openOutputStream(httpServletRequest, httpServletResponse)) {
             if (prettyPrint) {
                 objectMapper.writerWithDefaultPrettyPrinter().writeValue(output, object);
             } else {
@@ -364,6 +1131,103 @@ public class MonitoringCenterServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Retrieves the metrics of this servlet, which are registered under the "monitoringCenter.servlet" namespace.
+     *
+     * @return the metrics of this servlet by names.
+     */
+    Map<String, Metric> getServletMetrics() {
+        return servletMetricsByNames;
+    }
+
+    /**
+     * Creates an object mapper, which serializes metrics and health check results into the format of the given factory.
+     * Binary formats (e.g., Smile and CBOR) share the structure and the serializers with JSON.
+     *
+     * @param jsonFactory the factory for the serialization format.
+     * @return an object mapper.
+     */
+    static ObjectMapper createObjectMapper(JsonFactory jsonFactory) {
+        return new ObjectMapper(jsonFactory)
+                .registerModule(new MetricsModule(TimeUnit.SECONDS, TimeUnit.MICROSECONDS, false))
+                .registerModule(new HealthCheckModule())
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .setTimeZone(TimeZone.getDefault())
+                .setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"));
+    }
+
+    /**
+     * Opens the response output stream, which compresses the response with gzip if the client accepts it.
+     */
+    private OutputStream openOutputStream(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws IOException {
+        OutputStream output = new CountingOutputStream(httpServletResponse.getOutputStream(), bytesWrittenCounter);
+        if (gzipCompressionLevel == Deflater.NO_COMPRESSION) {
+            return output;
+        }
+
+        httpServletResponse.setHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(httpServletRequest)) {
+            return output;
+        }
+
+        httpServletResponse.setHeader("Content-Encoding", ENCODING_GZIP);
+        return new GZIPOutputStream(output, STREAMING_BUFFER_SIZE) {
+            {
+                def.setLevel(gzipCompressionLevel);
+            }
+        };
+    }
+
+    private boolean acceptsGzip(HttpServletRequest httpServletRequest) {
+        if (gzipCompressionLevel == Deflater.NO_COMPRESSION) {
+            return false;
+        }
+
+        String acceptEncodingHeader = httpServletRequest.getHeader("Accept-Encoding");
+        if (acceptEncodingHeader == null) {
+            return false;
+        }
+
+        for (String encoding : acceptEncodingHeader.split(",")) {
+            String[] encodingParts = encoding.split(";");
+            String coding = encodingParts[0].trim();
+            if (!ENCODING_GZIP.equalsIgnoreCase(coding) && !"x-gzip".equalsIgnoreCase(coding)) {
+                continue;
+            }
+
+            for (int i = 1; i < encodingParts.length; i++) {
+                String parameter = encodingParts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matchesEtag(String ifNoneMatchHeader, String etag) {
+        if (ifNoneMatchHeader == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatchHeader.split(",")) {
+            candidate = candidate.trim();
+            // Weak comparison applies to If-None-Match
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean checkAuthorization(HttpServletRequest httpServletRequest) {
         if (encodedCredentials == null) {
             return true;
@@ -379,4 +1243,207 @@ public class MonitoringCenterServlet extends HttpServlet {
         }
         return false;
     }
+
+    /**
+     * Counts the bytes written to the response, after compression.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final Counter bytesWrittenCounter;
+
+        private CountingOutputStream(OutputStream output, Counter bytesWrittenCounter) {
+            super(output);
+            this.bytesWrittenCounter = bytesWrittenCounter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWrittenCounter.inc();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWrittenCounter.inc(len);
+        }
+    }
+
+    /**
+     * Buffers a response for caching, up to the given number of bytes. Once a body outgrows it, the buffered bytes and
+     * the rest of the body are written straight through to the wrapped response, and the body is not cached.
+     */
+    private static class BufferingResponse extends HttpServletResponseWrapper {
+        private final int maxBufferedBytes;
+        private ByteArrayOutputStream buffer;
+        private OutputStream overflowOutputStream;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private int status;
+        private boolean errorSent;
+        private String contentType;
+        private String characterEncoding;
+        private String contentEncoding;
+
+        private BufferingResponse(HttpServletResponse httpServletResponse, int maxBufferedBytes) {
+            super(httpServletResponse);
+            this.maxBufferedBytes = maxBufferedBytes;
+            this.buffer = new ByteArrayOutputStream(STREAMING_BUFFER_SIZE);
+            this.status = HttpServletResponse.SC_OK;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        if (overflowOutputStream == null && buffer.size() + 1 > maxBufferedBytes) {
+                            overflow();
+                        }
+                        if (overflowOutputStream != null) {
+                            overflowOutputStream.write(b);
+                        } else {
+                            buffer.write(b);
+                        }
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (overflowOutputStream == null && buffer.size() + len > maxBufferedBytes) {
+                            overflow();
+                        }
+                        if (overflowOutputStream != null) {
+                            overflowOutputStream.write(b, off, len);
+                        } else {
+                            buffer.write(b, off, len);
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        if (overflowOutputStream != null) {
+                            overflowOutputStream.flush();
+                        }
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                Charset charset = characterEncoding != null ? Charset.forName(characterEncoding) : StandardCharsets.UTF_8;
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+            }
+            return writer;
+        }
+
+        private void overflow() throws IOException {
+            overflowOutputStream = super.getOutputStream();
+            buffer.writeTo(overflowOutputStream);
+            buffer = null;
+        }
+
+        private boolean isOverflowed() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return overflowOutputStream != null;
+        }
+
+        private void finishOverflowed() throws IOException {
+            overflowOutputStream.close();
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+            super.setStatus(status);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            this.status = status;
+            this.errorSent = true;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            this.status = status;
+            this.errorSent = true;
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+            super.setContentType(contentType);
+        }
+
+        @Override
+        public void setCharacterEncoding(String characterEncoding) {
+            this.characterEncoding = characterEncoding;
+            super.setCharacterEncoding(characterEncoding);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Encoding".equalsIgnoreCase(name)) {
+                this.contentEncoding = value;
+            }
+            super.setHeader(name, value);
+        }
+
+        private byte[] getBody() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private static class CachedResponse {
+        private final long creationTimeInMillis;
+        private final String contentType;
+        private final String characterEncoding;
+        private final String contentEncoding;
+        private final byte[] body;
+
+        private CachedResponse(BufferingResponse bufferingResponse, byte[] body) {
+            this.creationTimeInMillis = System.currentTimeMillis();
+            this.contentType = bufferingResponse.contentType;
+            this.characterEncoding = bufferingResponse.characterEncoding;
+            this.contentEncoding = bufferingResponse.contentEncoding;
+            this.body = body;
+        }
+    }
+
+    private static class StaticJsonResponse {
+        private final Object source;
+        private final byte[] body;
+        private final String etag;
+        private final String gzipEtag;
+
+        private StaticJsonResponse(Object source, byte[] body) {
+            this.source = source;
+            this.body = body;
+
+            String hash = Hashing.murmur3_128().hashBytes(body).toString();
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + GZIP_ETAG_SUFFIX + "\"";
+        }
+    }
 }
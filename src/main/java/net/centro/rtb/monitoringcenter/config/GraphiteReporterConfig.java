@@ -21,7 +21,9 @@
 
 package net.centro.rtb.monitoringcenter.config;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -33,21 +35,27 @@ import java.util.concurrent.TimeUnit;
  */
 public class GraphiteReporterConfig {
     private boolean enableReporter;
-    private HostAndPort address;
+    private List<HostAndPort> addresses;
     private long reportingIntervalInSeconds;
     private boolean enableBatching;
     private boolean reportOnShutdown;
     private Set<String> startsWithFilters;
     private Set<String> blockedStartsWithFilters;
+    private String spoolDirectory;
+    private long maxSpoolSizeInBytes;
+    private int spoolReplayRatePerSecond;
 
     private GraphiteReporterConfig(Builder builder) {
         this.enableReporter = builder.enableReporter;
-        this.address = builder.address;
+        this.addresses = Collections.unmodifiableList(new ArrayList<>(builder.addresses));
         this.reportingIntervalInSeconds = builder.reportingIntervalInSeconds;
         this.enableBatching = builder.enableBatching;
         this.reportOnShutdown = builder.reportOnShutdown;
         this.startsWithFilters = Collections.unmodifiableSet(builder.startsWithFilters);
         this.blockedStartsWithFilters = Collections.unmodifiableSet(builder.blockedStartsWithFilters);
+        this.spoolDirectory = builder.spoolDirectory;
+        this.maxSpoolSizeInBytes = builder.maxSpoolSizeInBytes;
+        this.spoolReplayRatePerSecond = builder.spoolReplayRatePerSecond;
     }
 
     /**
@@ -61,12 +69,32 @@ public class GraphiteReporterConfig {
 
     /**
      * Retrieves the address (host and port) of the Graphite instance to push metrics to. This field is guaranteed to be
-     * non-null.
+     * non-null. If multiple addresses have been configured, the first one is returned.
      *
      * @return the address (host and port) of the Graphite instance to push metrics to.
      */
     public HostAndPort getAddress() {
-        return address;
+        return addresses.get(0);
+    }
+
+    /**
+     * Retrieves the addresses (hosts and ports) of the Graphite instances to push metrics to. If more than one address
+     * is present, metrics will be sharded across the instances by means of consistent hashing of metric names,
+     * compatible with Carbon relay's <tt>consistent-hashing</tt> relay method. This list is guaranteed to be non-empty.
+     *
+     * @return the addresses (hosts and ports) of the Graphite instances to push metrics to.
+     */
+    public List<HostAndPort> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Indicates whether metrics should be sharded across multiple Graphite instances or not.
+     *
+     * @return <tt>true</tt> if more than one address has been configured; <tt>false</tt> otherwise.
+     */
+    public boolean isSharded() {
+        return addresses.size() > 1;
     }
 
     /**
@@ -119,6 +147,47 @@ public class GraphiteReporterConfig {
         return blockedStartsWithFilters;
     }
 
+    /**
+     * Retrieves the directory, in which data points that could not be delivered to Graphite are spooled. If the
+     * spooling is not enabled, <tt>null</tt> is returned.
+     *
+     * @return the spool directory or <tt>null</tt>.
+     */
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Indicates whether data points that could not be delivered to Graphite should be spooled to disk and replayed
+     * later or not. Spooling is enabled if and only if a spool directory has been set.
+     *
+     * @return whether the spooling is enabled or not.
+     */
+    public boolean isEnableSpooling() {
+        return spoolDirectory != null;
+    }
+
+    /**
+     * Retrieves the maximum size of the spool on disk. Once this size is reached, the oldest spooled data points are
+     * discarded. By default, this size is {@link Builder#DEFAULT_MAX_SPOOL_SIZE_IN_BYTES}.
+     *
+     * @return the maximum size of the spool in bytes.
+     */
+    public long getMaxSpoolSizeInBytes() {
+        return maxSpoolSizeInBytes;
+    }
+
+    /**
+     * Retrieves the maximum number of spooled data points to replay per second, once Graphite becomes available again.
+     * Spooled data points are sent ahead of the live ones. By default, this rate is
+     * {@link Builder#DEFAULT_SPOOL_REPLAY_RATE_PER_SECOND}.
+     *
+     * @return the maximum number of spooled data points to replay per second.
+     */
+    public int getSpoolReplayRatePerSecond() {
+        return spoolReplayRatePerSecond;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -130,21 +199,28 @@ public class GraphiteReporterConfig {
         if (reportingIntervalInSeconds != that.reportingIntervalInSeconds) return false;
         if (enableBatching != that.enableBatching) return false;
         if (reportOnShutdown != that.reportOnShutdown) return false;
-        if (address != null ? !address.equals(that.address) : that.address != null) return false;
+        if (maxSpoolSizeInBytes != that.maxSpoolSizeInBytes) return false;
+        if (spoolReplayRatePerSecond != that.spoolReplayRatePerSecond) return false;
+        if (addresses != null ? !addresses.equals(that.addresses) : that.addresses != null) return false;
         if (startsWithFilters != null ? !startsWithFilters.equals(that.startsWithFilters) : that.startsWithFilters != null)
             return false;
+        if (spoolDirectory != null ? !spoolDirectory.equals(that.spoolDirectory) : that.spoolDirectory != null)
+            return false;
         return blockedStartsWithFilters != null ? blockedStartsWithFilters.equals(that.blockedStartsWithFilters) : that.blockedStartsWithFilters == null;
     }
 
     @Override
     public int hashCode() {
         int result = (enableReporter ? 1 : 0);
-        result = 31 * result + (address != null ? address.hashCode() : 0);
+        result = 31 * result + (addresses != null ? addresses.hashCode() : 0);
         result = 31 * result + (int) (reportingIntervalInSeconds ^ (reportingIntervalInSeconds >>> 32));
         result = 31 * result + (enableBatching ? 1 : 0);
         result = 31 * result + (reportOnShutdown ? 1 : 0);
         result = 31 * result + (startsWithFilters != null ? startsWithFilters.hashCode() : 0);
         result = 31 * result + (blockedStartsWithFilters != null ? blockedStartsWithFilters.hashCode() : 0);
+        result = 31 * result + (spoolDirectory != null ? spoolDirectory.hashCode() : 0);
+        result = 31 * result + (int) (maxSpoolSizeInBytes ^ (maxSpoolSizeInBytes >>> 32));
+        result = 31 * result + spoolReplayRatePerSecond;
         return result;
     }
 
@@ -152,12 +228,15 @@ public class GraphiteReporterConfig {
     public String toString() {
         final StringBuilder sb = new StringBuilder("GraphiteReporterConfig{");
         sb.append("enableReporter=").append(enableReporter);
-        sb.append(", address=").append(address);
+        sb.append(", addresses=").append(addresses);
         sb.append(", reportingIntervalInSeconds=").append(reportingIntervalInSeconds);
         sb.append(", enableBatching=").append(enableBatching);
         sb.append(", reportOnShutdown=").append(reportOnShutdown);
         sb.append(", startsWithFilters=").append(startsWithFilters);
         sb.append(", blockedStartsWithFilters=").append(blockedStartsWithFilters);
+        sb.append(", spoolDirectory='").append(spoolDirectory).append('\'');
+        sb.append(", maxSpoolSizeInBytes=").append(maxSpoolSizeInBytes);
+        sb.append(", spoolReplayRatePerSecond=").append(spoolReplayRatePerSecond);
         sb.append('}');
         return sb.toString();
     }
@@ -168,14 +247,19 @@ public class GraphiteReporterConfig {
 
     public static class Builder {
         public static final long DEFAULT_REPORTING_INTERVAL_IN_SECONDS = TimeUnit.MINUTES.toSeconds(1);
+        public static final long DEFAULT_MAX_SPOOL_SIZE_IN_BYTES = 256L * 1024 * 1024;
+        public static final int DEFAULT_SPOOL_REPLAY_RATE_PER_SECOND = 5000;
 
         private boolean enableReporter;
-        private HostAndPort address;
+        private List<HostAndPort> addresses;
         private long reportingIntervalInSeconds;
         private boolean enableBatching;
         private boolean reportOnShutdown;
         private Set<String> startsWithFilters;
         private Set<String> blockedStartsWithFilters;
+        private String spoolDirectory;
+        private long maxSpoolSizeInBytes;
+        private int spoolReplayRatePerSecond;
 
         public Builder() {
             this.enableReporter = true;
@@ -184,6 +268,8 @@ public class GraphiteReporterConfig {
             this.reportOnShutdown = true;
             this.startsWithFilters = Collections.emptySet();
             this.blockedStartsWithFilters = Collections.emptySet();
+            this.maxSpoolSizeInBytes = DEFAULT_MAX_SPOOL_SIZE_IN_BYTES;
+            this.spoolReplayRatePerSecond = DEFAULT_SPOOL_REPLAY_RATE_PER_SECOND;
         }
 
         /**
@@ -209,7 +295,33 @@ public class GraphiteReporterConfig {
          * @throws IllegalArgumentException if <tt>port</tt> is outside of the valid range of [0, 65535].
          */
         public Builder address(String host, int port) {
-            this.address = HostAndPort.of(host, port);
+            this.addresses = Collections.singletonList(HostAndPort.of(host, port));
+            return this;
+        }
+
+        /**
+         * Sets the hosts and ports for connecting to the Graphite instances. When more than one address is provided,
+         * each metric will be sent to exactly one of the instances, chosen by means of consistent hashing of the
+         * metric name. The hashing is compatible with Carbon relay's <tt>consistent-hashing</tt> relay method, provided
+         * that the relay's destinations list the same hosts and instances. Should an instance be unavailable, its
+         * metrics will fail over to the next instance on the hash ring.
+         *
+         * Either this method or {@link #address(String, int)} must be called.
+         *
+         * @param addresses a list of Graphite instance addresses.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>addresses</tt> is empty or contains <tt>null</tt> elements.
+         */
+        public Builder addresses(List<HostAndPort> addresses) {
+            if (addresses == null || addresses.isEmpty()) {
+                throw new IllegalArgumentException("addresses cannot be empty");
+            }
+            for (HostAndPort address : addresses) {
+                if (address == null) {
+                    throw new IllegalArgumentException("addresses cannot contain null elements");
+                }
+            }
+            this.addresses = new ArrayList<>(addresses);
             return this;
         }
 
@@ -293,8 +405,57 @@ public class GraphiteReporterConfig {
             return this;
         }
 
+        /**
+         * Sets the directory, in which to spool data points that could not be delivered to Graphite. The spooled data
+         * points are stored in segmented, memory-mapped files and replayed once Graphite is reachable again. By
+         * default, spooling is disabled and undelivered data points are dropped.
+         *
+         * @param spoolDirectory a path to the spool directory; <tt>null</tt> disables the spooling.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>spoolDirectory</tt> is an empty or blank string.
+         */
+        public Builder spoolDirectory(String spoolDirectory) {
+            if (spoolDirectory != null && spoolDirectory.trim().isEmpty()) {
+                throw new IllegalArgumentException("spoolDirectory cannot be blank");
+            }
+            this.spoolDirectory = spoolDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of the spool on disk. Once this size is reached, the oldest spooled data points are
+         * discarded. By default, the maximum size is 256 MB.
+         *
+         * @param maxSpoolSizeInBytes the maximum size of the spool in bytes.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>maxSpoolSizeInBytes</tt> is less than 1 MB.
+         */
+        public Builder maxSpoolSizeInBytes(long maxSpoolSizeInBytes) {
+            if (maxSpoolSizeInBytes < 1024 * 1024) {
+                throw new IllegalArgumentException("maxSpoolSizeInBytes must be at least 1 MB");
+            }
+            this.maxSpoolSizeInBytes = maxSpoolSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of spooled data points to replay per second. By default, the replay rate is 5000
+         * data points per second.
+         *
+         * @param spoolReplayRatePerSecond the maximum number of spooled data points to replay per second.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>spoolReplayRatePerSecond</tt> is less than or equal to 0.
+         */
+        public Builder spoolReplayRatePerSecond(int spoolReplayRatePerSecond) {
+            if (spoolReplayRatePerSecond <= 0) {
+                throw new IllegalArgumentException("spoolReplayRatePerSecond must be positive");
+            }
+            this.spoolReplayRatePerSecond = spoolReplayRatePerSecond;
+            return this;
+        }
+
         public GraphiteReporterConfig build() {
-            if (address == null) {
+            if (addresses == null) {
                 throw new IllegalStateException("address must be set");
             }
             return new GraphiteReporterConfig(this);
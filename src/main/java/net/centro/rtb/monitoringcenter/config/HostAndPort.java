@@ -21,17 +21,23 @@
 
 package net.centro.rtb.monitoringcenter.config;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.commons.lang3.StringUtils;
 
 /**
- * A simplistic immutable representation of a host and port.
+ * A simplistic immutable representation of a host and port. Optionally, an instance name can be attached to the host
+ * and port; it is used to tell apart multiple Carbon daemons running on the same host, in the same way Carbon relays do
+ * it (i.e., <tt>host:port:instance</tt>).
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class HostAndPort {
     private String host;
     private int port;
+    private String instance;
 
     /**
      * Constructs an immutable instance given a host and a port.
@@ -41,7 +47,21 @@ public class HostAndPort {
      * @throws IllegalArgumentException if <tt>host</tt> is blank.
      * @throws IllegalArgumentException if <tt>port</tt> is outside of the valid range of [0, 65535].
      */
-    public HostAndPort(@JsonProperty("host") String host, @JsonProperty("port") int port) {
+    public HostAndPort(String host, int port) {
+        this(host, port, null);
+    }
+
+    /**
+     * Constructs an immutable instance given a host, a port, and an instance name.
+     *
+     * @param host hostname or IP address.
+     * @param port port number.
+     * @param instance instance name; may be <tt>null</tt>.
+     * @throws IllegalArgumentException if <tt>host</tt> is blank.
+     * @throws IllegalArgumentException if <tt>port</tt> is outside of the valid range of [0, 65535].
+     */
+    @JsonCreator
+    public HostAndPort(@JsonProperty("host") String host, @JsonProperty("port") int port, @JsonProperty("instance") String instance) {
         if (StringUtils.isBlank(host)) {
             throw new IllegalArgumentException("host cannot be blank");
         }
@@ -51,11 +71,14 @@ public class HostAndPort {
 
         this.host = host.trim();
         this.port = port;
+        this.instance = StringUtils.trimToNull(instance);
     }
 
     /**
      * Parses a host and port from a string and instantiates an instance of HostAndPort using the obtained values.
      *
+     * The expected format is <tt>host:port</tt> or <tt>host:port:instance</tt>.
+     *
      * @param hostAndPortStr a string to parse.
      * @return an instance of HostAndPort containing the host and port values parsed from the passed in string.
      * @throws NullPointerException if the passed in string is <tt>null</tt>.
@@ -70,7 +93,7 @@ public class HostAndPort {
         }
 
         String[] hostAndPortStrParts = hostAndPortStr.split(":");
-        if (hostAndPortStrParts.length == 2) {
+        if (hostAndPortStrParts.length == 2 || hostAndPortStrParts.length == 3) {
             String host = hostAndPortStrParts[0].trim();
             String portStr = hostAndPortStrParts[1].trim();
 
@@ -81,9 +104,11 @@ public class HostAndPort {
                 throw new IllegalArgumentException("Port cannot be parsed from " + portStr, e);
             }
 
-            return new HostAndPort(host, port);
+            String instance = hostAndPortStrParts.length == 3 ? hostAndPortStrParts[2] : null;
+
+            return new HostAndPort(host, port, instance);
         } else {
-            throw new IllegalArgumentException("Invalid format: " + hostAndPortStr + ". Expected host:port.");
+            throw new IllegalArgumentException("Invalid format: " + hostAndPortStr + ". Expected host:port or host:port:instance.");
         }
     }
 
@@ -117,11 +142,23 @@ public class HostAndPort {
         return port;
     }
 
+    /**
+     * Retrieves the instance name.
+     *
+     * @return the instance name; <tt>null</tt> if no instance name was specified.
+     */
+    public String getInstance() {
+        return instance;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("HostAndPort{");
         sb.append("host='").append(host).append('\'');
         sb.append(", port=").append(port);
+        if (instance != null) {
+            sb.append(", instance='").append(instance).append('\'');
+        }
         sb.append('}');
         return sb.toString();
     }
@@ -134,7 +171,8 @@ public class HostAndPort {
         HostAndPort that = (HostAndPort) o;
 
         if (port != that.port) return false;
-        return !(host != null ? !host.equals(that.host) : that.host != null);
+        if (host != null ? !host.equals(that.host) : that.host != null) return false;
+        return instance != null ? instance.equals(that.instance) : that.instance == null;
 
     }
 
@@ -142,6 +180,7 @@ public class HostAndPort {
     public int hashCode() {
         int result = host != null ? host.hashCode() : 0;
         result = 31 * result + port;
+        result = 31 * result + (instance != null ? instance.hashCode() : 0);
         return result;
     }
 }
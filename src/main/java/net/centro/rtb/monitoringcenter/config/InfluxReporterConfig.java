@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class encompasses the configuration parameters for the InfluxDB push reporter, which writes metrics in the
+ * InfluxDB line protocol over HTTP. By default, this reporter is not configured--that is, it not enabled in the
+ * MonitoringCenter, unless explicitly indicated in the config file or programmatically. All configuration parameters
+ * in this class can be reloaded dynamically, if the reloading is enabled (i.e., a config file was used).
+ */
+public class InfluxReporterConfig {
+    private boolean enableReporter;
+    private String url;
+    private String database;
+    private String retentionPolicy;
+    private long reportingIntervalInSeconds;
+    private int maxLinesPerRequest;
+    private boolean enableCompression;
+    private int maxRetryQueueSize;
+    private int timeoutInMillis;
+    private Set<String> startsWithFilters;
+    private Set<String> blockedStartsWithFilters;
+
+    private InfluxReporterConfig(Builder builder) {
+        this.enableReporter = builder.enableReporter;
+        this.url = builder.url;
+        this.database = builder.database;
+        this.retentionPolicy = builder.retentionPolicy;
+        this.reportingIntervalInSeconds = builder.reportingIntervalInSeconds;
+        this.maxLinesPerRequest = builder.maxLinesPerRequest;
+        this.enableCompression = builder.enableCompression;
+        this.maxRetryQueueSize = builder.maxRetryQueueSize;
+        this.timeoutInMillis = builder.timeoutInMillis;
+        this.startsWithFilters = Collections.unmodifiableSet(builder.startsWithFilters);
+        this.blockedStartsWithFilters = Collections.unmodifiableSet(builder.blockedStartsWithFilters);
+    }
+
+    /**
+     * Indicates whether the reporter should be enabled or not. By default, the reporter is enabled, if configured.
+     *
+     * @return whether the reporter should be enabled or not.
+     */
+    public boolean isEnableReporter() {
+        return enableReporter;
+    }
+
+    /**
+     * Retrieves the base URL of the InfluxDB HTTP API (e.g., <tt>http://influxdb:8086</tt>). This field is guaranteed
+     * to be non-null.
+     *
+     * @return the base URL of the InfluxDB HTTP API.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Retrieves the name of the InfluxDB database to write metrics to. This field is guaranteed to be non-null.
+     *
+     * @return the name of the InfluxDB database.
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Retrieves the retention policy to write metrics with. If not set, the default retention policy of the database
+     * is used and <tt>null</tt> is returned.
+     *
+     * @return the retention policy or <tt>null</tt>.
+     */
+    public String getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Retrieves the reporting interval in seconds. By default, this interval is
+     * {@link Builder#DEFAULT_REPORTING_INTERVAL_IN_SECONDS}.
+     *
+     * @return the reporting interval in seconds.
+     */
+    public long getReportingIntervalInSeconds() {
+        return reportingIntervalInSeconds;
+    }
+
+    /**
+     * Retrieves the maximum number of lines written in a single HTTP request. By default, this number is
+     * {@link Builder#DEFAULT_MAX_LINES_PER_REQUEST}.
+     *
+     * @return the maximum number of lines per HTTP request.
+     */
+    public int getMaxLinesPerRequest() {
+        return maxLinesPerRequest;
+    }
+
+    /**
+     * Indicates whether the request bodies should be gzip-compressed. By default, compression is enabled.
+     *
+     * @return whether the request bodies should be gzip-compressed or not.
+     */
+    public boolean isEnableCompression() {
+        return enableCompression;
+    }
+
+    /**
+     * Retrieves the maximum number of failed requests kept in memory to be retried during the subsequent reporting
+     * cycles. Once this number is exceeded, the oldest requests are discarded. By default, this number is
+     * {@link Builder#DEFAULT_MAX_RETRY_QUEUE_SIZE}.
+     *
+     * @return the maximum number of requests to retry.
+     */
+    public int getMaxRetryQueueSize() {
+        return maxRetryQueueSize;
+    }
+
+    /**
+     * Retrieves the connect and read timeout for HTTP requests in milliseconds. By default, this timeout is
+     * {@link Builder#DEFAULT_TIMEOUT_IN_MILLIS}.
+     *
+     * @return the timeout for HTTP requests in milliseconds.
+     */
+    public int getTimeoutInMillis() {
+        return timeoutInMillis;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should be reported to InfluxDB. If
+     * no filters are specified, an empty set is returned.
+     *
+     * @return the whitelist filters to apply to metrics.
+     */
+    public Set<String> getStartsWithFilters() {
+        return startsWithFilters;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should not be reported to InfluxDB.
+     * If no filters are specified, an empty set is returned.
+     *
+     * @return the blacklist filters to apply to metrics.
+     */
+    public Set<String> getBlockedStartsWithFilters() {
+        return blockedStartsWithFilters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        InfluxReporterConfig that = (InfluxReporterConfig) o;
+
+        if (enableReporter != that.enableReporter) return false;
+        if (reportingIntervalInSeconds != that.reportingIntervalInSeconds) return false;
+        if (maxLinesPerRequest != that.maxLinesPerRequest) return false;
+        if (enableCompression != that.enableCompression) return false;
+        if (maxRetryQueueSize != that.maxRetryQueueSize) return false;
+        if (timeoutInMillis != that.timeoutInMillis) return false;
+        if (url != null ? !url.equals(that.url) : that.url != null) return false;
+        if (database != null ? !database.equals(that.database) : that.database != null) return false;
+        if (retentionPolicy != null ? !retentionPolicy.equals(that.retentionPolicy) : that.retentionPolicy != null)
+            return false;
+        if (startsWithFilters != null ? !startsWithFilters.equals(that.startsWithFilters) : that.startsWithFilters != null)
+            return false;
+        return blockedStartsWithFilters != null ? blockedStartsWithFilters.equals(that.blockedStartsWithFilters) : that.blockedStartsWithFilters == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (enableReporter ? 1 : 0);
+        result = 31 * result + (url != null ? url.hashCode() : 0);
+        result = 31 * result + (database != null ? database.hashCode() : 0);
+        result = 31 * result + (retentionPolicy != null ? retentionPolicy.hashCode() : 0);
+        result = 31 * result + (int) (reportingIntervalInSeconds ^ (reportingIntervalInSeconds >>> 32));
+        result = 31 * result + maxLinesPerRequest;
+        result = 31 * result + (enableCompression ? 1 : 0);
+        result = 31 * result + maxRetryQueueSize;
+        result = 31 * result + timeoutInMillis;
+        result = 31 * result + (startsWithFilters != null ? startsWithFilters.hashCode() : 0);
+        result = 31 * result + (blockedStartsWithFilters != null ? blockedStartsWithFilters.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InfluxReporterConfig{");
+        sb.append("enableReporter=").append(enableReporter);
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", database='").append(database).append('\'');
+        sb.append(", retentionPolicy='").append(retentionPolicy).append('\'');
+        sb.append(", reportingIntervalInSeconds=").append(reportingIntervalInSeconds);
+        sb.append(", maxLinesPerRequest=").append(maxLinesPerRequest);
+        sb.append(", enableCompression=").append(enableCompression);
+        sb.append(", maxRetryQueueSize=").append(maxRetryQueueSize);
+        sb.append(", timeoutInMillis=").append(timeoutInMillis);
+        sb.append(", startsWithFilters=").append(startsWithFilters);
+        sb.append(", blockedStartsWithFilters=").append(blockedStartsWithFilters);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        public static final long DEFAULT_REPORTING_INTERVAL_IN_SECONDS = 60;
+        public static final int DEFAULT_MAX_LINES_PER_REQUEST = 5000;
+        public static final int DEFAULT_MAX_RETRY_QUEUE_SIZE = 10;
+        public static final int DEFAULT_TIMEOUT_IN_MILLIS = 5000;
+
+        private boolean enableReporter;
+        private String url;
+        private String database;
+        private String retentionPolicy;
+        private long reportingIntervalInSeconds;
+        private int maxLinesPerRequest;
+        private boolean enableCompression;
+        private int maxRetryQueueSize;
+        private int timeoutInMillis;
+        private Set<String> startsWithFilters;
+        private Set<String> blockedStartsWithFilters;
+
+        public Builder() {
+            this.enableReporter = true;
+            this.reportingIntervalInSeconds = DEFAULT_REPORTING_INTERVAL_IN_SECONDS;
+            this.maxLinesPerRequest = DEFAULT_MAX_LINES_PER_REQUEST;
+            this.enableCompression = true;
+            this.maxRetryQueueSize = DEFAULT_MAX_RETRY_QUEUE_SIZE;
+            this.timeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
+            this.startsWithFilters = Collections.emptySet();
+            this.blockedStartsWithFilters = Collections.emptySet();
+        }
+
+        /**
+         * Indicates whether the reporter should be enabled or not. By default, the reporter will be enabled.
+         *
+         * @param enableReporter indicates whether the reporter should be enabled or not.
+         * @return this builder.
+         */
+        public Builder enableReporter(boolean enableReporter) {
+            this.enableReporter = enableReporter;
+            return this;
+        }
+
+        /**
+         * Sets the base URL of the InfluxDB HTTP API (e.g., <tt>http://influxdb:8086</tt>). Metrics are written to
+         * the <tt>/write</tt> endpoint under this URL.
+         *
+         * This is a required field.
+         *
+         * @param url the base URL of the InfluxDB HTTP API.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>url</tt> is blank.
+         */
+        public Builder url(String url) {
+            if (StringUtils.isBlank(url)) {
+                throw new IllegalArgumentException("url cannot be blank");
+            }
+            this.url = StringUtils.removeEnd(url.trim(), "/");
+            return this;
+        }
+
+        /**
+         * Sets the name of the InfluxDB database to write metrics to.
+         *
+         * This is a required field.
+         *
+         * @param database the name of the InfluxDB database.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>database</tt> is blank.
+         */
+        public Builder database(String database) {
+            if (StringUtils.isBlank(database)) {
+                throw new IllegalArgumentException("database cannot be blank");
+            }
+            this.database = database;
+            return this;
+        }
+
+        /**
+         * Sets the retention policy to write metrics with. By default, the default retention policy of the database
+         * is used.
+         *
+         * @param retentionPolicy the retention policy; <tt>null</tt> for the default retention policy.
+         * @return this builder.
+         */
+        public Builder retentionPolicy(String retentionPolicy) {
+            this.retentionPolicy = StringUtils.trimToNull(retentionPolicy);
+            return this;
+        }
+
+        /**
+         * Sets the reporting interval. By default, the reporting interval is 60 seconds.
+         *
+         * @param period an interval at which to push data to InfluxDB.
+         * @param timeUnit the unit for <tt>period</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>period</tt> is less than or equal to 0.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder reportingInterval(long period, TimeUnit timeUnit) {
+            if (period <= 0) {
+                throw new IllegalArgumentException("period must be positive");
+            }
+
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            this.reportingIntervalInSeconds = timeUnit.toSeconds(period);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of lines written in a single HTTP request. The lines of a reporting cycle are split
+         * into batches of this size. By default, this number is 5000, as recommended by InfluxDB.
+         *
+         * @param maxLinesPerRequest the maximum number of lines per HTTP request.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>maxLinesPerRequest</tt> is less than or equal to 0.
+         */
+        public Builder maxLinesPerRequest(int maxLinesPerRequest) {
+            if (maxLinesPerRequest <= 0) {
+                throw new IllegalArgumentException("maxLinesPerRequest must be positive");
+            }
+            this.maxLinesPerRequest = maxLinesPerRequest;
+            return this;
+        }
+
+        /**
+         * Indicates whether the request bodies should be gzip-compressed. By default, compression is enabled.
+         *
+         * @param enableCompression indicates whether the request bodies should be gzip-compressed or not.
+         * @return this builder.
+         */
+        public Builder enableCompression(boolean enableCompression) {
+            this.enableCompression = enableCompression;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of failed requests kept in memory to be retried during the subsequent reporting
+         * cycles. By default, up to 10 requests are retried. A value of 0 disables the retries.
+         *
+         * @param maxRetryQueueSize the maximum number of requests to retry.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>maxRetryQueueSize</tt> is negative.
+         */
+        public Builder maxRetryQueueSize(int maxRetryQueueSize) {
+            if (maxRetryQueueSize < 0) {
+                throw new IllegalArgumentException("maxRetryQueueSize cannot be negative");
+            }
+            this.maxRetryQueueSize = maxRetryQueueSize;
+            return this;
+        }
+
+        /**
+         * Sets the connect and read timeout for HTTP requests. By default, the timeout is 5 seconds.
+         *
+         * @param timeout the timeout for HTTP requests.
+         * @param timeUnit the unit for <tt>timeout</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>timeout</tt> is less than or equal to 0.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder timeout(long timeout, TimeUnit timeUnit) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            this.timeoutInMillis = (int) Math.min(Integer.MAX_VALUE, timeUnit.toMillis(timeout));
+            return this;
+        }
+
+        /**
+         * Sets the whitelist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param startsWithFilters whitelist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder startsWithFilters(Set<String> startsWithFilters) {
+            if (startsWithFilters == null) {
+                this.startsWithFilters = Collections.emptySet();
+            } else {
+                this.startsWithFilters = startsWithFilters;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the blacklist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param blockedStartsWithFilters blacklist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder blockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
+            if (blockedStartsWithFilters == null) {
+                this.blockedStartsWithFilters = Collections.emptySet();
+            } else {
+                this.blockedStartsWithFilters = blockedStartsWithFilters;
+            }
+            return this;
+        }
+
+        public InfluxReporterConfig build() {
+            if (url == null) {
+                throw new IllegalStateException("url must be set");
+            }
+            if (database == null) {
+                throw new IllegalStateException("database must be set");
+            }
+            return new InfluxReporterConfig(this);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config;
+
+/**
+ * The way metrics are exported via JMX.
+ */
+public enum JmxExportMode {
+    /**
+     * Register one MBean per metric, as done by Dropwizard's <tt>JmxReporter</tt>.
+     */
+    PER_METRIC,
+    /**
+     * Register one MBean per top-level namespace, whose attributes are the fields of the metrics in the namespace.
+     * This mode is recommended for registries holding a large number of metrics.
+     */
+    PER_NAMESPACE;
+}
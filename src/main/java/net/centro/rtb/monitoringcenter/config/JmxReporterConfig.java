@@ -32,11 +32,13 @@ import java.util.Set;
  */
 public class JmxReporterConfig {
     private boolean enableReporter;
+    private JmxExportMode exportMode;
     private Set<String> startsWithFilters;
     private Set<String> blockedStartsWithFilters;
 
     private JmxReporterConfig(Builder builder) {
         this.enableReporter = builder.enableReporter;
+        this.exportMode = builder.exportMode;
         this.startsWithFilters = Collections.unmodifiableSet(builder.startsWithFilters);
         this.blockedStartsWithFilters = Collections.unmodifiableSet(builder.blockedStartsWithFilters);
     }
@@ -50,6 +52,15 @@ public class JmxReporterConfig {
         return enableReporter;
     }
 
+    /**
+     * Retrieves the way metrics are exported via JMX. By default, one MBean is registered per metric.
+     *
+     * @return the JMX export mode.
+     */
+    public JmxExportMode getExportMode() {
+        return exportMode;
+    }
+
     /**
      * Retrieves the filters to apply to metrics in order to decide which metrics should be exposed via JMX. If no
      * filters are specified, an empty set is returned.
@@ -78,6 +89,7 @@ public class JmxReporterConfig {
         JmxReporterConfig that = (JmxReporterConfig) o;
 
         if (enableReporter != that.enableReporter) return false;
+        if (exportMode != that.exportMode) return false;
         if (startsWithFilters != null ? !startsWithFilters.equals(that.startsWithFilters) : that.startsWithFilters != null)
             return false;
         return blockedStartsWithFilters != null ? blockedStartsWithFilters.equals(that.blockedStartsWithFilters) : that.blockedStartsWithFilters == null;
@@ -86,6 +98,7 @@ public class JmxReporterConfig {
     @Override
     public int hashCode() {
         int result = (enableReporter ? 1 : 0);
+        result = 31 * result + (exportMode != null ? exportMode.hashCode() : 0);
         result = 31 * result + (startsWithFilters != null ? startsWithFilters.hashCode() : 0);
         result = 31 * result + (blockedStartsWithFilters != null ? blockedStartsWithFilters.hashCode() : 0);
         return result;
@@ -95,6 +108,7 @@ public class JmxReporterConfig {
     public String toString() {
         final StringBuilder sb = new StringBuilder("JmxReporterConfig{");
         sb.append("enableReporter=").append(enableReporter);
+        sb.append(", exportMode=").append(exportMode);
         sb.append(", startsWithFilters=").append(startsWithFilters);
         sb.append(", blockedStartsWithFilters=").append(blockedStartsWithFilters);
         sb.append('}');
@@ -107,11 +121,13 @@ public class JmxReporterConfig {
 
     public static class Builder {
         private boolean enableReporter;
+        private JmxExportMode exportMode;
         private Set<String> startsWithFilters;
         private Set<String> blockedStartsWithFilters;
 
         public Builder() {
             this.enableReporter = true;
+            this.exportMode = JmxExportMode.PER_METRIC;
             this.startsWithFilters = Collections.emptySet();
             this.blockedStartsWithFilters = Collections.emptySet();
         }
@@ -127,6 +143,21 @@ public class JmxReporterConfig {
             return this;
         }
 
+        /**
+         * Sets the way metrics are exported via JMX. By default, one MBean is registered per metric; with a large
+         * number of metrics, {@link JmxExportMode#PER_NAMESPACE} keeps the MBeanServer small and the startup fast.
+         *
+         * @param exportMode the JMX export mode.
+         * @return this builder.
+         */
+        public Builder exportMode(JmxExportMode exportMode) {
+            if (exportMode == null) {
+                throw new IllegalArgumentException("exportMode cannot be null");
+            }
+            this.exportMode = exportMode;
+            return this;
+        }
+
         /**
          * Sets the whitelist filters to be applied to metric names. These filters can include the
          * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
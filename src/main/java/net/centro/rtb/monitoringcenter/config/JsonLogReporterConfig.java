@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class encompasses the configuration parameters for the JSON log reporter, which periodically writes metrics as
+ * JSON lines--one line per top-level namespace chunk--to a dedicated SLF4J logger. By default, this reporter is not
+ * configured--that is, it not enabled in the MonitoringCenter, unless explicitly indicated in the config file or
+ * programmatically. All configuration parameters in this class can be reloaded dynamically, if the reloading is
+ * enabled (i.e., a config file was used).
+ */
+public class JsonLogReporterConfig {
+    private boolean enableReporter;
+    private String loggerName;
+    private long reportingIntervalInSeconds;
+    private int maxMetricsPerLine;
+    private Set<String> startsWithFilters;
+    private Set<String> blockedStartsWithFilters;
+
+    private JsonLogReporterConfig(Builder builder) {
+        this.enableReporter = builder.enableReporter;
+        this.loggerName = builder.loggerName;
+        this.reportingIntervalInSeconds = builder.reportingIntervalInSeconds;
+        this.maxMetricsPerLine = builder.maxMetricsPerLine;
+        this.startsWithFilters = Collections.unmodifiableSet(builder.startsWithFilters);
+        this.blockedStartsWithFilters = Collections.unmodifiableSet(builder.blockedStartsWithFilters);
+    }
+
+    /**
+     * Indicates whether the reporter should be enabled or not. By default, the reporter is enabled, if configured.
+     *
+     * @return whether the reporter should be enabled or not.
+     */
+    public boolean isEnableReporter() {
+        return enableReporter;
+    }
+
+    /**
+     * Retrieves the name of the SLF4J logger to write metrics to. By default, this name is
+     * {@link Builder#DEFAULT_LOGGER_NAME}.
+     *
+     * @return the name of the logger to write metrics to.
+     */
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    /**
+     * Retrieves the reporting interval in seconds. By default, this interval is
+     * {@link Builder#DEFAULT_REPORTING_INTERVAL_IN_SECONDS}.
+     *
+     * @return the reporting interval in seconds.
+     */
+    public long getReportingIntervalInSeconds() {
+        return reportingIntervalInSeconds;
+    }
+
+    /**
+     * Retrieves the maximum number of metrics written in a single line. By default, this number is
+     * {@link Builder#DEFAULT_MAX_METRICS_PER_LINE}.
+     *
+     * @return the maximum number of metrics per line.
+     */
+    public int getMaxMetricsPerLine() {
+        return maxMetricsPerLine;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should be logged. If no filters are
+     * specified, an empty set is returned.
+     *
+     * @return the whitelist filters to apply to metrics.
+     */
+    public Set<String> getStartsWithFilters() {
+        return startsWithFilters;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should not be logged. If no filters
+     * are specified, an empty set is returned.
+     *
+     * @return the blacklist filters to apply to metrics.
+     */
+    public Set<String> getBlockedStartsWithFilters() {
+        return blockedStartsWithFilters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        JsonLogReporterConfig that = (JsonLogReporterConfig) o;
+
+        if (enableReporter != that.enableReporter) return false;
+        if (reportingIntervalInSeconds != that.reportingIntervalInSeconds) return false;
+        if (maxMetricsPerLine != that.maxMetricsPerLine) return false;
+        if (loggerName != null ? !loggerName.equals(that.loggerName) : that.loggerName != null) return false;
+        if (startsWithFilters != null ? !startsWithFilters.equals(that.startsWithFilters) : that.startsWithFilters != null)
+            return false;
+        return blockedStartsWithFilters != null ? blockedStartsWithFilters.equals(that.blockedStartsWithFilters) : that.blockedStartsWithFilters == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (enableReporter ? 1 : 0);
+        result = 31 * result + (loggerName != null ? loggerName.hashCode() : 0);
+        result = 31 * result + (int) (reportingIntervalInSeconds ^ (reportingIntervalInSeconds >>> 32));
+        result = 31 * result + maxMetricsPerLine;
+        result = 31 * result + (startsWithFilters != null ? startsWithFilters.hashCode() : 0);
+        result = 31 * result + (blockedStartsWithFilters != null ? blockedStartsWithFilters.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("JsonLogReporterConfig{");
+        sb.append("enableReporter=").append(enableReporter);
+        sb.append(", loggerName='").append(loggerName).append('\'');
+        sb.append(", reportingIntervalInSeconds=").append(reportingIntervalInSeconds);
+        sb.append(", maxMetricsPerLine=").append(maxMetricsPerLine);
+        sb.append(", startsWithFilters=").append(startsWithFilters);
+        sb.append(", blockedStartsWithFilters=").append(blockedStartsWithFilters);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        public static final String DEFAULT_LOGGER_NAME = "monitoringcenter.metrics";
+        public static final long DEFAULT_REPORTING_INTERVAL_IN_SECONDS = 60;
+        public static final int DEFAULT_MAX_METRICS_PER_LINE = 1000;
+
+        private boolean enableReporter;
+        private String loggerName;
+        private long reportingIntervalInSeconds;
+        private int maxMetricsPerLine;
+        private Set<String> startsWithFilters;
+        private Set<String> blockedStartsWithFilters;
+
+        public Builder() {
+            this.enableReporter = true;
+            this.loggerName = DEFAULT_LOGGER_NAME;
+            this.reportingIntervalInSeconds = DEFAULT_REPORTING_INTERVAL_IN_SECONDS;
+            this.maxMetricsPerLine = DEFAULT_MAX_METRICS_PER_LINE;
+            this.startsWithFilters = Collections.emptySet();
+            this.blockedStartsWithFilters = Collections.emptySet();
+        }
+
+        /**
+         * Indicates whether the reporter should be enabled or not. By default, the reporter will be enabled.
+         *
+         * @param enableReporter indicates whether the reporter should be enabled or not.
+         * @return this builder.
+         */
+        public Builder enableReporter(boolean enableReporter) {
+            this.enableReporter = enableReporter;
+            return this;
+        }
+
+        /**
+         * Sets the name of the SLF4J logger to write metrics to. The lines are logged at the INFO level; a dedicated
+         * appender (e.g., a rolling file) can be attached to this logger in the logging configuration. By default, the
+         * logger is named "monitoringcenter.metrics".
+         *
+         * @param loggerName the name of the logger to write metrics to.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>loggerName</tt> is blank.
+         */
+        public Builder loggerName(String loggerName) {
+            if (StringUtils.isBlank(loggerName)) {
+                throw new IllegalArgumentException("loggerName cannot be blank");
+            }
+            this.loggerName = loggerName.trim();
+            return this;
+        }
+
+        /**
+         * Sets the reporting interval. By default, the reporting interval is 60 seconds.
+         *
+         * @param period an interval at which to write metrics to the logger.
+         * @param timeUnit the unit for <tt>period</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>period</tt> is less than or equal to 0.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder reportingInterval(long period, TimeUnit timeUnit) {
+            if (period <= 0) {
+                throw new IllegalArgumentException("period must be positive");
+            }
+
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            this.reportingIntervalInSeconds = timeUnit.toSeconds(period);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of metrics written in a single line. The metrics of a namespace are split into
+         * several lines, if the namespace holds more metrics. By default, this number is 1000.
+         *
+         * @param maxMetricsPerLine the maximum number of metrics per line.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>maxMetricsPerLine</tt> is less than or equal to 0.
+         */
+        public Builder maxMetricsPerLine(int maxMetricsPerLine) {
+            if (maxMetricsPerLine <= 0) {
+                throw new IllegalArgumentException("maxMetricsPerLine must be positive");
+            }
+            this.maxMetricsPerLine = maxMetricsPerLine;
+            return this;
+        }
+
+        /**
+         * Sets the whitelist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param startsWithFilters whitelist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder startsWithFilters(Set<String> startsWithFilters) {
+            if (startsWithFilters == null) {
+                this.startsWithFilters = Collections.emptySet();
+            } else {
+                this.startsWithFilters = startsWithFilters;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the blacklist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param blockedStartsWithFilters blacklist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder blockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
+            if (blockedStartsWithFilters == null) {
+                this.blockedStartsWithFilters = Collections.emptySet();
+            } else {
+                this.blockedStartsWithFilters = blockedStartsWithFilters;
+            }
+            return this;
+        }
+
+        public JsonLogReporterConfig build() {
+            return new JsonLogReporterConfig(this);
+        }
+    }
+}
@@ -28,10 +28,17 @@ package net.centro.rtb.monitoringcenter.config;
 public class MetricCollectionConfig {
     private boolean enableSystemMetrics;
     private boolean enableTomcatMetrics;
+    private boolean enableMonitoringCenterMetrics;
+    private long networkInterfaceSamplingIntervalInSeconds;
+    private long deadlockDetectionIntervalInSeconds;
 
-    MetricCollectionConfig(boolean enableSystemMetrics, boolean enableTomcatMetrics) {
+    MetricCollectionConfig(boolean enableSystemMetrics, boolean enableTomcatMetrics, boolean enableMonitoringCenterMetrics,
+                           long networkInterfaceSamplingIntervalInSeconds, long deadlockDetectionIntervalInSeconds) {
         this.enableSystemMetrics = enableSystemMetrics;
         this.enableTomcatMetrics = enableTomcatMetrics;
+        this.enableMonitoringCenterMetrics = enableMonitoringCenterMetrics;
+        this.networkInterfaceSamplingIntervalInSeconds = networkInterfaceSamplingIntervalInSeconds;
+        this.deadlockDetectionIntervalInSeconds = deadlockDetectionIntervalInSeconds;
     }
 
     /**
@@ -55,6 +62,41 @@ public class MetricCollectionConfig {
         return enableTomcatMetrics;
     }
 
+    /**
+     * Indicates whether the MonitoringCenter should instrument itself or not. The self-instrumentation metrics are
+     * registered under the "monitoringCenter" namespace, and include the snapshot collection and gauge evaluation
+     * times, the number of metrics per top-level namespace, and the request latencies and bytes written by the
+     * servlet. By default, the self-instrumentation is disabled. The timings of the push reporters are collected
+     * regardless of this flag.
+     *
+     * @return whether the self-instrumentation should be enabled or not.
+     */
+    public boolean isEnableMonitoringCenterMetrics() {
+        return enableMonitoringCenterMetrics;
+    }
+
+    /**
+     * Retrieves the interval between two samples of the network interface counters, which are part of the system
+     * metrics. The per-second rates of the network interfaces are averaged over this interval, and interfaces added
+     * later are discovered within this interval. By default, the network interfaces are sampled every 10 seconds.
+     *
+     * @return the network interface sampling interval in seconds.
+     */
+    public long getNetworkInterfaceSamplingIntervalInSeconds() {
+        return networkInterfaceSamplingIntervalInSeconds;
+    }
+
+    /**
+     * Retrieves the interval between two runs of the JVM thread deadlock detection, which is part of the system
+     * metrics. The detection runs in the background; the number of deadlocked threads reported reflects the latest
+     * run. By default, deadlocks are detected every 60 seconds.
+     *
+     * @return the deadlock detection interval in seconds.
+     */
+    public long getDeadlockDetectionIntervalInSeconds() {
+        return deadlockDetectionIntervalInSeconds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -63,13 +105,19 @@ public class MetricCollectionConfig {
         MetricCollectionConfig that = (MetricCollectionConfig) o;
 
         if (enableSystemMetrics != that.enableSystemMetrics) return false;
-        return enableTomcatMetrics == that.enableTomcatMetrics;
+        if (enableTomcatMetrics != that.enableTomcatMetrics) return false;
+        if (enableMonitoringCenterMetrics != that.enableMonitoringCenterMetrics) return false;
+        if (networkInterfaceSamplingIntervalInSeconds != that.networkInterfaceSamplingIntervalInSeconds) return false;
+        return deadlockDetectionIntervalInSeconds == that.deadlockDetectionIntervalInSeconds;
     }
 
     @Override
     public int hashCode() {
         int result = (enableSystemMetrics ? 1 : 0);
         result = 31 * result + (enableTomcatMetrics ? 1 : 0);
+        result = 31 * result + (enableMonitoringCenterMetrics ? 1 : 0);
+        result = 31 * result + (int) (networkInterfaceSamplingIntervalInSeconds ^ (networkInterfaceSamplingIntervalInSeconds >>> 32));
+        result = 31 * result + (int) (deadlockDetectionIntervalInSeconds ^ (deadlockDetectionIntervalInSeconds >>> 32));
         return result;
     }
 
@@ -78,6 +126,9 @@ public class MetricCollectionConfig {
         final StringBuilder sb = new StringBuilder("MetricCollectionConfig{");
         sb.append("enableSystemMetrics=").append(enableSystemMetrics);
         sb.append(", enableTomcatMetrics=").append(enableTomcatMetrics);
+        sb.append(", enableMonitoringCenterMetrics=").append(enableMonitoringCenterMetrics);
+        sb.append(", networkInterfaceSamplingIntervalInSeconds=").append(networkInterfaceSamplingIntervalInSeconds);
+        sb.append(", deadlockDetectionIntervalInSeconds=").append(deadlockDetectionIntervalInSeconds);
         sb.append('}');
         return sb.toString();
     }
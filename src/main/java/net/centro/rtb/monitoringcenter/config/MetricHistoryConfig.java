@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class encompasses the configuration parameters for the in-process metric history. The history samples the
+ * selected metrics at a fixed interval into fixed-size ring buffers, so that their recent values can be inspected via
+ * the MonitoringCenterServlet even if the remote backends lag or are unreachable. The memory held by the history is
+ * bounded by <tt>maxMetrics * samplesPerMetric * (1 + number of fields) * 8</tt> bytes, where the number of fields is
+ * at most 6 (for timers). If a persistence directory is set, the history is also stored on disk, in raw and rolled up
+ * resolutions, for the retention period; it survives restarts. By default, the history is not configured--that is, it not enabled in the MonitoringCenter,
+ * unless explicitly indicated in the config file or programmatically. All configuration parameters in this class can
+ * be reloaded dynamically, if the reloading is enabled (i.e., a config file was used); changing them discards the
+ * recorded history.
+ */
+public class MetricHistoryConfig {
+    private boolean enableHistory;
+    private long samplingIntervalInSeconds;
+    private int samplesPerMetric;
+    private int maxMetrics;
+    private Set<String> startsWithFilters;
+    private Set<String> blockedStartsWithFilters;
+    private String persistenceDirectory;
+    private int retentionInHours;
+
+    private MetricHistoryConfig(Builder builder) {
+        this.enableHistory = builder.enableHistory;
+        this.samplingIntervalInSeconds = builder.samplingIntervalInSeconds;
+        this.samplesPerMetric = builder.samplesPerMetric;
+        this.maxMetrics = builder.maxMetrics;
+        this.startsWithFilters = Collections.unmodifiableSet(builder.startsWithFilters);
+        this.blockedStartsWithFilters = Collections.unmodifiableSet(builder.blockedStartsWithFilters);
+        this.persistenceDirectory = builder.persistenceDirectory;
+        this.retentionInHours = builder.retentionInHours;
+    }
+
+    /**
+     * Indicates whether the history should be enabled or not. By default, the history is enabled, if configured.
+     *
+     * @return whether the history should be enabled or not.
+     */
+    public boolean isEnableHistory() {
+        return enableHistory;
+    }
+
+    /**
+     * Retrieves the sampling interval in seconds. By default, this interval is
+     * {@link Builder#DEFAULT_SAMPLING_INTERVAL_IN_SECONDS}.
+     *
+     * @return the sampling interval in seconds.
+     */
+    public long getSamplingIntervalInSeconds() {
+        return samplingIntervalInSeconds;
+    }
+
+    /**
+     * Retrieves the number of samples retained per metric; the oldest sample is overwritten once a ring buffer is full.
+     * By default, this number is {@link Builder#DEFAULT_SAMPLES_PER_METRIC}, which covers an hour at the default
+     * sampling interval.
+     *
+     * @return the number of samples retained per metric.
+     */
+    public int getSamplesPerMetric() {
+        return samplesPerMetric;
+    }
+
+    /**
+     * Retrieves the maximum number of metrics to keep the history for. Metrics beyond this number are not sampled
+     * until the history of other metrics expires. By default, this number is {@link Builder#DEFAULT_MAX_METRICS}.
+     *
+     * @return the maximum number of metrics in the history.
+     */
+    public int getMaxMetrics() {
+        return maxMetrics;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should be sampled into the history.
+     * If no filters are specified, an empty set is returned.
+     *
+     * @return the whitelist filters to apply to metrics.
+     */
+    public Set<String> getStartsWithFilters() {
+        return startsWithFilters;
+    }
+
+    /**
+     * Retrieves the filters to apply to metrics in order to decide which metrics should not be sampled into the
+     * history. If no filters are specified, an empty set is returned.
+     *
+     * @return the blacklist filters to apply to metrics.
+     */
+    public Set<String> getBlockedStartsWithFilters() {
+        return blockedStartsWithFilters;
+    }
+
+    /**
+     * Retrieves the directory, in which the history is stored on disk. If the persistence is not enabled, <tt>null</tt>
+     * is returned.
+     *
+     * @return the persistence directory or <tt>null</tt>.
+     */
+    public String getPersistenceDirectory() {
+        return persistenceDirectory;
+    }
+
+    /**
+     * Indicates whether the history should be stored on disk or not. The persistence is enabled if and only if a
+     * persistence directory has been set.
+     *
+     * @return whether the persistence is enabled or not.
+     */
+    public boolean isEnablePersistence() {
+        return persistenceDirectory != null;
+    }
+
+    /**
+     * Retrieves the number of hours to retain the history on disk for. Raw samples are retained for up to 2 hours and
+     * 1-minute rollups for up to 12 hours; 10-minute rollups are retained for the whole period. By default, this
+     * number is {@link Builder#DEFAULT_RETENTION_IN_HOURS}.
+     *
+     * @return the retention of the history on disk in hours.
+     */
+    public int getRetentionInHours() {
+        return retentionInHours;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MetricHistoryConfig that = (MetricHistoryConfig) o;
+
+        if (enableHistory != that.enableHistory) return false;
+        if (samplingIntervalInSeconds != that.samplingIntervalInSeconds) return false;
+        if (samplesPerMetric != that.samplesPerMetric) return false;
+        if (maxMetrics != that.maxMetrics) return false;
+        if (retentionInHours != that.retentionInHours) return false;
+        if (startsWithFilters != null ? !startsWithFilters.equals(that.startsWithFilters) : that.startsWithFilters != null)
+            return false;
+        if (blockedStartsWithFilters != null ? !blockedStartsWithFilters.equals(that.blockedStartsWithFilters) : that.blockedStartsWithFilters != null)
+            return false;
+        return persistenceDirectory != null ? persistenceDirectory.equals(that.persistenceDirectory) : that.persistenceDirectory == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (enableHistory ? 1 : 0);
+        result = 31 * result + (int) (samplingIntervalInSeconds ^ (samplingIntervalInSeconds >>> 32));
+        result = 31 * result + samplesPerMetric;
+        result = 31 * result + maxMetrics;
+        result = 31 * result + (startsWithFilters != null ? startsWithFilters.hashCode() : 0);
+        result = 31 * result + (blockedStartsWithFilters != null ? blockedStartsWithFilters.hashCode() : 0);
+        result = 31 * result + (persistenceDirectory != null ? persistenceDirectory.hashCode() : 0);
+        result = 31 * result + retentionInHours;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("MetricHistoryConfig{");
+        sb.append("enableHistory=").append(enableHistory);
+        sb.append(", samplingIntervalInSeconds=").append(samplingIntervalInSeconds);
+        sb.append(", samplesPerMetric=").append(samplesPerMetric);
+        sb.append(", maxMetrics=").append(maxMetrics);
+        sb.append(", startsWithFilters=").append(startsWithFilters);
+        sb.append(", blockedStartsWithFilters=").append(blockedStartsWithFilters);
+        sb.append(", persistenceDirectory='").append(persistenceDirectory).append('\'');
+        sb.append(", retentionInHours=").append(retentionInHours);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        public static final long DEFAULT_SAMPLING_INTERVAL_IN_SECONDS = 10;
+        public static final int DEFAULT_SAMPLES_PER_METRIC = 360;
+        public static final int DEFAULT_MAX_METRICS = 1000;
+        public static final int DEFAULT_RETENTION_IN_HOURS = 24;
+
+        private boolean enableHistory;
+        private long samplingIntervalInSeconds;
+        private int samplesPerMetric;
+        private int maxMetrics;
+        private Set<String> startsWithFilters;
+        private Set<String> blockedStartsWithFilters;
+        private String persistenceDirectory;
+        private int retentionInHours;
+
+        public Builder() {
+            this.enableHistory = true;
+            this.samplingIntervalInSeconds = DEFAULT_SAMPLING_INTERVAL_IN_SECONDS;
+            this.samplesPerMetric = DEFAULT_SAMPLES_PER_METRIC;
+            this.maxMetrics = DEFAULT_MAX_METRICS;
+            this.startsWithFilters = Collections.emptySet();
+            this.blockedStartsWithFilters = Collections.emptySet();
+            this.retentionInHours = DEFAULT_RETENTION_IN_HOURS;
+        }
+
+        /**
+         * Indicates whether the history should be enabled or not. By default, the history will be enabled.
+         *
+         * @param enableHistory indicates whether the history should be enabled or not.
+         * @return this builder.
+         */
+        public Builder enableHistory(boolean enableHistory) {
+            this.enableHistory = enableHistory;
+            return this;
+        }
+
+        /**
+         * Sets the sampling interval. By default, the sampling interval is 10 seconds.
+         *
+         * @param period an interval at which to sample metrics into the history.
+         * @param timeUnit the unit for <tt>period</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>period</tt> is less than 1 second.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder samplingInterval(long period, TimeUnit timeUnit) {
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            if (timeUnit.toSeconds(period) <= 0) {
+                throw new IllegalArgumentException("period must be at least 1 second");
+            }
+
+            this.samplingIntervalInSeconds = timeUnit.toSeconds(period);
+            return this;
+        }
+
+        /**
+         * Sets the number of samples retained per metric. By default, 360 samples are retained.
+         *
+         * @param samplesPerMetric the number of samples retained per metric.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>samplesPerMetric</tt> is less than 2 or greater than 100000.
+         */
+        public Builder samplesPerMetric(int samplesPerMetric) {
+            if (samplesPerMetric < 2 || samplesPerMetric > 100000) {
+                throw new IllegalArgumentException("samplesPerMetric must be within [2, 100000]");
+            }
+            this.samplesPerMetric = samplesPerMetric;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of metrics to keep the history for. By default, this number is 1000.
+         *
+         * @param maxMetrics the maximum number of metrics in the history.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>maxMetrics</tt> is not positive.
+         */
+        public Builder maxMetrics(int maxMetrics) {
+            if (maxMetrics <= 0) {
+                throw new IllegalArgumentException("maxMetrics must be positive");
+            }
+            this.maxMetrics = maxMetrics;
+            return this;
+        }
+
+        /**
+         * Sets the whitelist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param startsWithFilters whitelist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder startsWithFilters(Set<String> startsWithFilters) {
+            if (startsWithFilters == null) {
+                this.startsWithFilters = Collections.emptySet();
+            } else {
+                this.startsWithFilters = startsWithFilters;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the blacklist filters to be applied to metric names. These filters can include the
+         * {@link net.centro.rtb.monitoringcenter.util.MetricNamingUtil#SEPARATOR} and multiple wildcards denoted as
+         * <tt>*</tt>.
+         *
+         * @param blockedStartsWithFilters blacklist filters to be applied to metric names.
+         * @return this builder.
+         */
+        public Builder blockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
+            if (blockedStartsWithFilters == null) {
+                this.blockedStartsWithFilters = Collections.emptySet();
+            } else {
+                this.blockedStartsWithFilters = blockedStartsWithFilters;
+            }
+            return this;
+        }
+
+        /**
+         * Sets the directory, in which to store the history on disk. The history is stored in compressed blocks in
+         * memory-mapped segment files, and is recovered upon restart. By default, the persistence is disabled and the
+         * history is kept in memory only.
+         *
+         * @param persistenceDirectory a path to the persistence directory; <tt>null</tt> disables the persistence.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>persistenceDirectory</tt> is an empty or blank string.
+         */
+        public Builder persistenceDirectory(String persistenceDirectory) {
+            if (persistenceDirectory != null && persistenceDirectory.trim().isEmpty()) {
+                throw new IllegalArgumentException("persistenceDirectory cannot be blank");
+            }
+            this.persistenceDirectory = persistenceDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the number of hours to retain the history on disk for. By default, the history is retained for 24
+         * hours.
+         *
+         * @param retentionInHours the retention of the history on disk in hours.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>retentionInHours</tt> is not positive.
+         */
+        public Builder retentionInHours(int retentionInHours) {
+            if (retentionInHours <= 0) {
+                throw new IllegalArgumentException("retentionInHours must be positive");
+            }
+            this.retentionInHours = retentionInHours;
+            return this;
+        }
+
+        public MetricHistoryConfig build() {
+            return new MetricHistoryConfig(this);
+        }
+    }
+}
@@ -28,10 +28,30 @@ package net.centro.rtb.monitoringcenter.config;
 public class MetricReportingConfig {
     private GraphiteReporterConfig graphiteReporterConfig;
     private JmxReporterConfig jmxReporterConfig;
+    private StatsdReporterConfig statsdReporterConfig;
+    private InfluxReporterConfig influxReporterConfig;
+    private JsonLogReporterConfig jsonLogReporterConfig;
+    private MetricHistoryConfig metricHistoryConfig;
+    private long snapshotFreshnessWindowInMillis;
+    private int collectionParallelism;
+    private int parallelCollectionThreshold;
+    private long reportingJitterBudgetInMillis;
 
-    MetricReportingConfig(GraphiteReporterConfig graphiteReporterConfig, JmxReporterConfig jmxReporterConfig) {
+    MetricReportingConfig(GraphiteReporterConfig graphiteReporterConfig, JmxReporterConfig jmxReporterConfig,
+                          StatsdReporterConfig statsdReporterConfig, InfluxReporterConfig influxReporterConfig,
+                          JsonLogReporterConfig jsonLogReporterConfig, MetricHistoryConfig metricHistoryConfig,
+                          long snapshotFreshnessWindowInMillis, int collectionParallelism, int parallelCollectionThreshold,
+                          long reportingJitterBudgetInMillis) {
         this.graphiteReporterConfig = graphiteReporterConfig;
         this.jmxReporterConfig = jmxReporterConfig;
+        this.statsdReporterConfig = statsdReporterConfig;
+        this.influxReporterConfig = influxReporterConfig;
+        this.jsonLogReporterConfig = jsonLogReporterConfig;
+        this.metricHistoryConfig = metricHistoryConfig;
+        this.snapshotFreshnessWindowInMillis = snapshotFreshnessWindowInMillis;
+        this.collectionParallelism = collectionParallelism;
+        this.parallelCollectionThreshold = parallelCollectionThreshold;
+        this.reportingJitterBudgetInMillis = reportingJitterBudgetInMillis;
     }
 
     /**
@@ -52,6 +72,88 @@ public class MetricReportingConfig {
         return jmxReporterConfig;
     }
 
+    /**
+     * Retrieves the StatsD reporter configuration.
+     *
+     * @return the StatsD reporter configuration.
+     */
+    public StatsdReporterConfig getStatsdReporterConfig() {
+        return statsdReporterConfig;
+    }
+
+    /**
+     * Retrieves the InfluxDB reporter configuration.
+     *
+     * @return the InfluxDB reporter configuration.
+     */
+    public InfluxReporterConfig getInfluxReporterConfig() {
+        return influxReporterConfig;
+    }
+
+    /**
+     * Retrieves the JSON log reporter configuration.
+     *
+     * @return the JSON log reporter configuration.
+     */
+    public JsonLogReporterConfig getJsonLogReporterConfig() {
+        return jsonLogReporterConfig;
+    }
+
+    /**
+     * Retrieves the in-process metric history configuration.
+     *
+     * @return the metric history configuration.
+     */
+    public MetricHistoryConfig getMetricHistoryConfig() {
+        return metricHistoryConfig;
+    }
+
+    /**
+     * Retrieves the freshness window for registry snapshots. All reporters and the MonitoringCenterServlet read metric
+     * values from a shared registry snapshot; a new snapshot is only collected if the current one is older than this
+     * window. By default, this window is
+     * {@link MonitoringCenterConfig.Builder#DEFAULT_SNAPSHOT_FRESHNESS_WINDOW_IN_MILLIS}. A value of 0 disables the
+     * caching, while still coalescing concurrent collections.
+     *
+     * @return the freshness window for registry snapshots in milliseconds.
+     */
+    public long getSnapshotFreshnessWindowInMillis() {
+        return snapshotFreshnessWindowInMillis;
+    }
+
+    /**
+     * Retrieves the maximum number of threads used to collect metric values and to filter metrics by names. By
+     * default, this is {@link MonitoringCenterConfig.Builder#DEFAULT_COLLECTION_PARALLELISM}.
+     *
+     * @return the collection parallelism; 1 if the parallel collection is disabled.
+     */
+    public int getCollectionParallelism() {
+        return collectionParallelism;
+    }
+
+    /**
+     * Retrieves the number of metrics, below which the registry is collected sequentially. By default, this is
+     * {@link MonitoringCenterConfig.Builder#DEFAULT_PARALLEL_COLLECTION_THRESHOLD}.
+     *
+     * @return the minimum number of metrics for the parallel collection.
+     */
+    public int getParallelCollectionThreshold() {
+        return parallelCollectionThreshold;
+    }
+
+    /**
+     * Retrieves the jitter budget for push reporters. Push reporters fire on wall-clock boundaries that are multiples
+     * of their reporting intervals (e.g., at :00, :10, :20 for a 10 second interval), delayed by a per-node offset
+     * within this budget, so that the nodes of a fleet report the same intervals without hitting the backend at the
+     * same instant. By default, this budget is
+     * {@link MonitoringCenterConfig.Builder#DEFAULT_REPORTING_JITTER_BUDGET_IN_MILLIS}.
+     *
+     * @return the jitter budget for push reporters in milliseconds.
+     */
+    public long getReportingJitterBudgetInMillis() {
+        return reportingJitterBudgetInMillis;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -59,15 +161,35 @@ public class MetricReportingConfig {
 
         MetricReportingConfig that = (MetricReportingConfig) o;
 
+        if (snapshotFreshnessWindowInMillis != that.snapshotFreshnessWindowInMillis) return false;
+        if (collectionParallelism != that.collectionParallelism) return false;
+        if (parallelCollectionThreshold != that.parallelCollectionThreshold) return false;
+        if (reportingJitterBudgetInMillis != that.reportingJitterBudgetInMillis) return false;
         if (graphiteReporterConfig != null ? !graphiteReporterConfig.equals(that.graphiteReporterConfig) : that.graphiteReporterConfig != null)
             return false;
-        return jmxReporterConfig != null ? jmxReporterConfig.equals(that.jmxReporterConfig) : that.jmxReporterConfig == null;
+        if (jmxReporterConfig != null ? !jmxReporterConfig.equals(that.jmxReporterConfig) : that.jmxReporterConfig != null)
+            return false;
+        if (statsdReporterConfig != null ? !statsdReporterConfig.equals(that.statsdReporterConfig) : that.statsdReporterConfig != null)
+            return false;
+        if (influxReporterConfig != null ? !influxReporterConfig.equals(that.influxReporterConfig) : that.influxReporterConfig != null)
+            return false;
+        if (jsonLogReporterConfig != null ? !jsonLogReporterConfig.equals(that.jsonLogReporterConfig) : that.jsonLogReporterConfig != null)
+            return false;
+        return metricHistoryConfig != null ? metricHistoryConfig.equals(that.metricHistoryConfig) : that.metricHistoryConfig == null;
     }
 
     @Override
     public int hashCode() {
         int result = graphiteReporterConfig != null ? graphiteReporterConfig.hashCode() : 0;
         result = 31 * result + (jmxReporterConfig != null ? jmxReporterConfig.hashCode() : 0);
+        result = 31 * result + (statsdReporterConfig != null ? statsdReporterConfig.hashCode() : 0);
+        result = 31 * result + (influxReporterConfig != null ? influxReporterConfig.hashCode() : 0);
+        result = 31 * result + (jsonLogReporterConfig != null ? jsonLogReporterConfig.hashCode() : 0);
+        result = 31 * result + (metricHistoryConfig != null ? metricHistoryConfig.hashCode() : 0);
+        result = 31 * result + (int) (snapshotFreshnessWindowInMillis ^ (snapshotFreshnessWindowInMillis >>> 32));
+        result = 31 * result + collectionParallelism;
+        result = 31 * result + parallelCollectionThreshold;
+        result = 31 * result + (int) (reportingJitterBudgetInMillis ^ (reportingJitterBudgetInMillis >>> 32));
         return result;
     }
 
@@ -76,6 +198,14 @@ public class MetricReportingConfig {
         final StringBuilder sb = new StringBuilder("MetricReportingConfig{");
         sb.append("graphiteReporterConfig=").append(graphiteReporterConfig);
         sb.append(", jmxReporterConfig=").append(jmxReporterConfig);
+        sb.append(", statsdReporterConfig=").append(statsdReporterConfig);
+        sb.append(", influxReporterConfig=").append(influxReporterConfig);
+        sb.append(", jsonLogReporterConfig=").append(jsonLogReporterConfig);
+        sb.append(", metricHistoryConfig=").append(metricHistoryConfig);
+        sb.append(", snapshotFreshnessWindowInMillis=").append(snapshotFreshnessWindowInMillis);
+        sb.append(", collectionParallelism=").append(collectionParallelism);
+        sb.append(", parallelCollectionThreshold=").append(parallelCollectionThreshold);
+        sb.append(", reportingJitterBudgetInMillis=").append(reportingJitterBudgetInMillis);
         sb.append('}');
         return sb.toString();
     }
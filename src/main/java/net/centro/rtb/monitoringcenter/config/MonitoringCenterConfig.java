@@ -25,6 +25,7 @@ import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MonitoringCenterConfig encapsulates the configuration parameters for the MonitoringCenter. It is intended to be
@@ -42,8 +43,11 @@ public class MonitoringCenterConfig {
 
         this.namingConfig = new NamingConfig(builder.applicationName, builder.datacenterName, builder.nodeGroupName,
                 builder.nodeId, builder.metricNamePostfixPolicy, builder.appendTypeToHealthCheckNames);
-        this.metricCollectionConfig = new MetricCollectionConfig(builder.enableSystemMetrics, builder.enableTomcatMetrics);
-        this.metricReportingConfig = new MetricReportingConfig(builder.graphiteReporterConfig, builder.jmxReporterConfig);
+        this.metricCollectionConfig = new MetricCollectionConfig(builder.enableSystemMetrics, builder.enableTomcatMetrics, builder.enableMonitoringCenterMetrics,
+                builder.networkInterfaceSamplingIntervalInSeconds, builder.deadlockDetectionIntervalInSeconds);
+        this.metricReportingConfig = new MetricReportingConfig(builder.graphiteReporterConfig, builder.jmxReporterConfig,
+                builder.statsdReporterConfig, builder.influxReporterConfig, builder.jsonLogReporterConfig, builder.metricHistoryConfig, builder.snapshotFreshnessWindowInMillis, builder.collectionParallelism, builder.parallelCollectionThreshold,
+                builder.reportingJitterBudgetInMillis);
     }
 
     /**
@@ -108,6 +112,13 @@ public class MonitoringCenterConfig {
 
         public static final String NONE = "none";
 
+        public static final long DEFAULT_SNAPSHOT_FRESHNESS_WINDOW_IN_MILLIS = 1000;
+        public static final int DEFAULT_COLLECTION_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+        public static final int DEFAULT_PARALLEL_COLLECTION_THRESHOLD = 10000;
+        public static final long DEFAULT_REPORTING_JITTER_BUDGET_IN_MILLIS = 1000;
+        public static final long DEFAULT_NETWORK_INTERFACE_SAMPLING_INTERVAL_IN_SECONDS = 10;
+        public static final long DEFAULT_DEADLOCK_DETECTION_INTERVAL_IN_SECONDS = 60;
+
         private String applicationName;
         private String datacenterName;
         private String nodeGroupName;
@@ -117,9 +128,20 @@ public class MonitoringCenterConfig {
 
         private boolean enableSystemMetrics;
         private boolean enableTomcatMetrics;
+        private boolean enableMonitoringCenterMetrics;
+        private long networkInterfaceSamplingIntervalInSeconds;
+        private long deadlockDetectionIntervalInSeconds;
 
         private GraphiteReporterConfig graphiteReporterConfig;
         private JmxReporterConfig jmxReporterConfig;
+        private StatsdReporterConfig statsdReporterConfig;
+        private InfluxReporterConfig influxReporterConfig;
+        private JsonLogReporterConfig jsonLogReporterConfig;
+        private MetricHistoryConfig metricHistoryConfig;
+        private long snapshotFreshnessWindowInMillis;
+        private int collectionParallelism;
+        private int parallelCollectionThreshold;
+        private long reportingJitterBudgetInMillis;
 
         private File configFile;
 
@@ -135,6 +157,14 @@ public class MonitoringCenterConfig {
 
             this.enableSystemMetrics = false;
             this.enableTomcatMetrics = false;
+            this.enableMonitoringCenterMetrics = false;
+            this.networkInterfaceSamplingIntervalInSeconds = DEFAULT_NETWORK_INTERFACE_SAMPLING_INTERVAL_IN_SECONDS;
+            this.deadlockDetectionIntervalInSeconds = DEFAULT_DEADLOCK_DETECTION_INTERVAL_IN_SECONDS;
+
+            this.snapshotFreshnessWindowInMillis = DEFAULT_SNAPSHOT_FRESHNESS_WINDOW_IN_MILLIS;
+            this.collectionParallelism = DEFAULT_COLLECTION_PARALLELISM;
+            this.parallelCollectionThreshold = DEFAULT_PARALLEL_COLLECTION_THRESHOLD;
+            this.reportingJitterBudgetInMillis = DEFAULT_REPORTING_JITTER_BUDGET_IN_MILLIS;
         }
 
         /**
@@ -267,6 +297,69 @@ public class MonitoringCenterConfig {
             return this;
         }
 
+        /**
+         * Indicates whether the MonitoringCenter should instrument itself or not. See
+         * {@link MetricCollectionConfig#isEnableMonitoringCenterMetrics()} for the collected metrics. By default, the
+         * self-instrumentation is disabled.
+         *
+         * @param enableMonitoringCenterMetrics whether the self-instrumentation should be enabled or not.
+         * @return this builder.
+         */
+        public Builder enableMonitoringCenterMetrics(boolean enableMonitoringCenterMetrics) {
+            this.enableMonitoringCenterMetrics = enableMonitoringCenterMetrics;
+            return this;
+        }
+
+        /**
+         * Sets the interval between two samples of the network interface counters (Linux only). The per-second rates
+         * of the network interfaces are averaged over this interval, and interfaces added later are discovered within
+         * this interval. By default, the network interfaces are sampled every 10 seconds.
+         *
+         * @param networkInterfaceSamplingInterval the network interface sampling interval.
+         * @param timeUnit the unit for <tt>networkInterfaceSamplingInterval</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>networkInterfaceSamplingInterval</tt> is less than 1 second.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder networkInterfaceSamplingInterval(long networkInterfaceSamplingInterval, TimeUnit timeUnit) {
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            long networkInterfaceSamplingIntervalInSeconds = timeUnit.toSeconds(networkInterfaceSamplingInterval);
+            if (networkInterfaceSamplingIntervalInSeconds < 1) {
+                throw new IllegalArgumentException("networkInterfaceSamplingInterval must be at least 1 second");
+            }
+
+            this.networkInterfaceSamplingIntervalInSeconds = networkInterfaceSamplingIntervalInSeconds;
+            return this;
+        }
+
+        /**
+         * Sets the interval between two runs of the JVM thread deadlock detection. The detection runs in the
+         * background, so that reading the number of deadlocked threads does not walk the threads. By default,
+         * deadlocks are detected every 60 seconds.
+         *
+         * @param deadlockDetectionInterval the deadlock detection interval.
+         * @param timeUnit the unit for <tt>deadlockDetectionInterval</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>deadlockDetectionInterval</tt> is less than 1 second.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder deadlockDetectionInterval(long deadlockDetectionInterval, TimeUnit timeUnit) {
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            long deadlockDetectionIntervalInSeconds = timeUnit.toSeconds(deadlockDetectionInterval);
+            if (deadlockDetectionIntervalInSeconds < 1) {
+                throw new IllegalArgumentException("deadlockDetectionInterval must be at least 1 second");
+            }
+
+            this.deadlockDetectionIntervalInSeconds = deadlockDetectionIntervalInSeconds;
+            return this;
+        }
+
         /**
          * Sets the configuration for the GraphiteReporter. By default, the GraphiteReporter will not be configured.
          *
@@ -289,6 +382,136 @@ public class MonitoringCenterConfig {
             return this;
         }
 
+        /**
+         * Sets the configuration for the StatsdReporter. By default, the StatsdReporter will not be configured.
+         *
+         * @param statsdReporterConfig a StatsD reporter configuration.
+         * @return this builder.
+         */
+        public Builder statsdReporterConfig(StatsdReporterConfig statsdReporterConfig) {
+            this.statsdReporterConfig = statsdReporterConfig;
+            return this;
+        }
+
+        /**
+         * Sets the configuration for the InfluxReporter. By default, the InfluxReporter will not be configured.
+         *
+         * @param influxReporterConfig an InfluxDB reporter configuration.
+         * @return this builder.
+         */
+        public Builder influxReporterConfig(InfluxReporterConfig influxReporterConfig) {
+            this.influxReporterConfig = influxReporterConfig;
+            return this;
+        }
+
+        /**
+         * Sets the configuration for the JsonLogReporter. By default, the JsonLogReporter will not be configured.
+         *
+         * @param jsonLogReporterConfig a JSON log reporter configuration.
+         * @return this builder.
+         */
+        public Builder jsonLogReporterConfig(JsonLogReporterConfig jsonLogReporterConfig) {
+            this.jsonLogReporterConfig = jsonLogReporterConfig;
+            return this;
+        }
+
+        /**
+         * Sets the configuration for the in-process metric history. By default, the history will not be configured.
+         *
+         * @param metricHistoryConfig a metric history configuration.
+         * @return this builder.
+         */
+        public Builder metricHistoryConfig(MetricHistoryConfig metricHistoryConfig) {
+            this.metricHistoryConfig = metricHistoryConfig;
+            return this;
+        }
+
+        /**
+         * Sets the freshness window for registry snapshots. Reporters and the MonitoringCenterServlet share registry
+         * snapshots, in which all gauges are evaluated and all reservoir snapshots are computed exactly once. A snapshot
+         * is reused until it becomes older than the freshness window. By default, the freshness window is 1 second.
+         *
+         * @param snapshotFreshnessWindow the maximum age of a reused registry snapshot; 0 disables the reuse.
+         * @param timeUnit the unit for <tt>snapshotFreshnessWindow</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>snapshotFreshnessWindow</tt> is negative.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder snapshotFreshnessWindow(long snapshotFreshnessWindow, TimeUnit timeUnit) {
+            if (snapshotFreshnessWindow < 0) {
+                throw new IllegalArgumentException("snapshotFreshnessWindow cannot be negative");
+            }
+
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            this.snapshotFreshnessWindowInMillis = timeUnit.toMillis(snapshotFreshnessWindow);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of threads used to collect metric values (i.e., to evaluate gauges and compute
+         * reservoir snapshots) and to filter metrics by names. The registry is partitioned into chunks, which are
+         * processed in a bounded fork-join pool. By default, the parallelism is the number of available processors,
+         * capped at 4. A value of 1 disables the parallel collection.
+         *
+         * @param collectionParallelism the number of collection threads.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>collectionParallelism</tt> is not positive.
+         */
+        public Builder collectionParallelism(int collectionParallelism) {
+            if (collectionParallelism <= 0) {
+                throw new IllegalArgumentException("collectionParallelism must be positive");
+            }
+
+            this.collectionParallelism = collectionParallelism;
+            return this;
+        }
+
+        /**
+         * Sets the number of metrics, below which the registry is collected sequentially on the calling thread. For
+         * small registries, the overhead of the fork-join pool outweighs the gains. By default, the threshold is 10000
+         * metrics.
+         *
+         * @param parallelCollectionThreshold the minimum number of metrics for the parallel collection.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>parallelCollectionThreshold</tt> is negative.
+         */
+        public Builder parallelCollectionThreshold(int parallelCollectionThreshold) {
+            if (parallelCollectionThreshold < 0) {
+                throw new IllegalArgumentException("parallelCollectionThreshold cannot be negative");
+            }
+
+            this.parallelCollectionThreshold = parallelCollectionThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the jitter budget for push reporters (Graphite, StatsD, and InfluxDB). These reporters fire on
+         * wall-clock boundaries that are multiples of their reporting intervals, delayed by a per-node offset, which is
+         * derived from the node-specific prefix and lies within this budget (and within the reporting interval). By
+         * default, the jitter budget is 1 second. A value of 0 makes all nodes fire exactly on the boundaries.
+         *
+         * @param reportingJitterBudget the maximum per-node delay of a report.
+         * @param timeUnit the unit for <tt>reportingJitterBudget</tt>.
+         * @return this builder.
+         * @throws IllegalArgumentException if <tt>reportingJitterBudget</tt> is negative.
+         * @throws IllegalArgumentException if <tt>timeUnit</tt> is <tt>null</tt>.
+         */
+        public Builder reportingJitterBudget(long reportingJitterBudget, TimeUnit timeUnit) {
+            if (reportingJitterBudget < 0) {
+                throw new IllegalArgumentException("reportingJitterBudget cannot be negative");
+            }
+
+            if (timeUnit == null) {
+                throw new IllegalArgumentException("timeUnit cannot be null");
+            }
+
+            this.reportingJitterBudgetInMillis = timeUnit.toMillis(reportingJitterBudget);
+            return this;
+        }
+
         public MonitoringCenterConfig build() {
             if (applicationName == null) {
                 throw new IllegalStateException("applicationName cannot be blank");
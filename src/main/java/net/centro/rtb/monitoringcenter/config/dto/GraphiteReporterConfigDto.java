@@ -24,17 +24,22 @@ package net.centro.rtb.monitoringcenter.config.dto;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import net.centro.rtb.monitoringcenter.config.HostAndPort;
 
+import java.util.List;
 import java.util.Set;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class GraphiteReporterConfigDto {
     private Boolean enableReporter;
     private HostAndPort address;
+    private List<HostAndPort> addresses;
     private Long reportingIntervalInSeconds;
     private Boolean enableBatching;
     private Boolean reportOnShutdown;
     private Set<String> startsWithFilters;
     private Set<String> blockedStartsWithFilters;
+    private String spoolDirectory;
+    private Long maxSpoolSizeInBytes;
+    private Integer spoolReplayRatePerSecond;
 
     public Boolean getEnableReporter() {
         return enableReporter;
@@ -52,6 +57,14 @@ public class GraphiteReporterConfigDto {
         this.address = address;
     }
 
+    public List<HostAndPort> getAddresses() {
+        return addresses;
+    }
+
+    public void setAddresses(List<HostAndPort> addresses) {
+        this.addresses = addresses;
+    }
+
     public Long getReportingIntervalInSeconds() {
         return reportingIntervalInSeconds;
     }
@@ -91,4 +104,28 @@ public class GraphiteReporterConfigDto {
     public void setBlockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
         this.blockedStartsWithFilters = blockedStartsWithFilters;
     }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public Long getMaxSpoolSizeInBytes() {
+        return maxSpoolSizeInBytes;
+    }
+
+    public void setMaxSpoolSizeInBytes(Long maxSpoolSizeInBytes) {
+        this.maxSpoolSizeInBytes = maxSpoolSizeInBytes;
+    }
+
+    public Integer getSpoolReplayRatePerSecond() {
+        return spoolReplayRatePerSecond;
+    }
+
+    public void setSpoolReplayRatePerSecond(Integer spoolReplayRatePerSecond) {
+        this.spoolReplayRatePerSecond = spoolReplayRatePerSecond;
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Set;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class InfluxReporterConfigDto {
+    private Boolean enableReporter;
+    private String url;
+    private String database;
+    private String retentionPolicy;
+    private Long reportingIntervalInSeconds;
+    private Integer maxLinesPerRequest;
+    private Boolean enableCompression;
+    private Integer maxRetryQueueSize;
+    private Integer timeoutInMillis;
+    private Set<String> startsWithFilters;
+    private Set<String> blockedStartsWithFilters;
+
+    public Boolean getEnableReporter() {
+        return enableReporter;
+    }
+
+    public void setEnableReporter(Boolean enableReporter) {
+        this.enableReporter = enableReporter;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public String getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    public void setRetentionPolicy(String retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    public Long getReportingIntervalInSeconds() {
+        return reportingIntervalInSeconds;
+    }
+
+    public void setReportingIntervalInSeconds(Long reportingIntervalInSeconds) {
+        this.reportingIntervalInSeconds = reportingIntervalInSeconds;
+    }
+
+    public Integer getMaxLinesPerRequest() {
+        return maxLinesPerRequest;
+    }
+
+    public void setMaxLinesPerRequest(Integer maxLinesPerRequest) {
+        this.maxLinesPerRequest = maxLinesPerRequest;
+    }
+
+    public Boolean getEnableCompression() {
+        return enableCompression;
+    }
+
+    public void setEnableCompression(Boolean enableCompression) {
+        this.enableCompression = enableCompression;
+    }
+
+    public Integer getMaxRetryQueueSize() {
+        return maxRetryQueueSize;
+    }
+
+    public void setMaxRetryQueueSize(Integer maxRetryQueueSize) {
+        this.maxRetryQueueSize = maxRetryQueueSize;
+    }
+
+    public Integer getTimeoutInMillis() {
+        return timeoutInMillis;
+    }
+
+    public void setTimeoutInMillis(Integer timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    public Set<String> getStartsWithFilters() {
+        return startsWithFilters;
+    }
+
+    public void setStartsWithFilters(Set<String> startsWithFilters) {
+        this.startsWithFilters = startsWithFilters;
+    }
+
+    public Set<String> getBlockedStartsWithFilters() {
+        return blockedStartsWithFilters;
+    }
+
+    public void setBlockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
+        this.blockedStartsWithFilters = blockedStartsWithFilters;
+    }
+}
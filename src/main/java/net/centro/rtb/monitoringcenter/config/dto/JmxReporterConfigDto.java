@@ -28,6 +28,7 @@ import java.util.Set;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class JmxReporterConfigDto {
     private Boolean enableReporter;
+    private JmxExportModeDto exportMode;
     private Set<String> startsWithFilters;
     private Set<String> blockedStartsWithFilters;
 
@@ -39,6 +40,14 @@ public class JmxReporterConfigDto {
         this.enableReporter = enableReporter;
     }
 
+    public JmxExportModeDto getExportMode() {
+        return exportMode;
+    }
+
+    public void setExportMode(JmxExportModeDto exportMode) {
+        this.exportMode = exportMode;
+    }
+
     public Set<String> getStartsWithFilters() {
         return startsWithFilters;
     }
@@ -27,6 +27,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 public class MetricCollectionConfigDto {
     private Boolean enableSystemMetrics;
     private Boolean enableTomcatMetrics;
+    private Boolean enableMonitoringCenterMetrics;
+    private Long networkInterfaceSamplingIntervalInSeconds;
+    private Long deadlockDetectionIntervalInSeconds;
 
     public Boolean getEnableSystemMetrics() {
         return enableSystemMetrics;
@@ -43,4 +46,28 @@ public class MetricCollectionConfigDto {
     public void setEnableTomcatMetrics(Boolean enableTomcatMetrics) {
         this.enableTomcatMetrics = enableTomcatMetrics;
     }
+
+    public Boolean getEnableMonitoringCenterMetrics() {
+        return enableMonitoringCenterMetrics;
+    }
+
+    public void setEnableMonitoringCenterMetrics(Boolean enableMonitoringCenterMetrics) {
+        this.enableMonitoringCenterMetrics = enableMonitoringCenterMetrics;
+    }
+
+    public Long getNetworkInterfaceSamplingIntervalInSeconds() {
+        return networkInterfaceSamplingIntervalInSeconds;
+    }
+
+    public void setNetworkInterfaceSamplingIntervalInSeconds(Long networkInterfaceSamplingIntervalInSeconds) {
+        this.networkInterfaceSamplingIntervalInSeconds = networkInterfaceSamplingIntervalInSeconds;
+    }
+
+    public Long getDeadlockDetectionIntervalInSeconds() {
+        return deadlockDetectionIntervalInSeconds;
+    }
+
+    public void setDeadlockDetectionIntervalInSeconds(Long deadlockDetectionIntervalInSeconds) {
+        this.deadlockDetectionIntervalInSeconds = deadlockDetectionIntervalInSeconds;
+    }
 }
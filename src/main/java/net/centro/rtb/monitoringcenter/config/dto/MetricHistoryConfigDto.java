@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.config.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Set;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MetricHistoryConfigDto {
+    private Boolean enableHistory;
+    private Long samplingIntervalInSeconds;
+    private Integer samplesPerMetric;
+    private Integer maxMetrics;
+    private Set<String> startsWithFilters;
+    private Set<String> blockedStartsWithFilters;
+    private String persistenceDirectory;
+    private Integer retentionInHours;
+
+    public Boolean getEnableHistory() {
+        return enableHistory;
+    }
+
+    public void setEnableHistory(Boolean enableHistory) {
+        this.enableHistory = enableHistory;
+    }
+
+    public Long getSamplingIntervalInSeconds() {
+        return samplingIntervalInSeconds;
+    }
+
+    public void setSamplingIntervalInSeconds(Long samplingIntervalInSeconds) {
+        this.samplingIntervalInSeconds = samplingIntervalInSeconds;
+    }
+
+    public Integer getSamplesPerMetric() {
+        return samplesPerMetric;
+    }
+
+    public void setSamplesPerMetric(Integer samplesPerMetric) {
+        this.samplesPerMetric = samplesPerMetric;
+    }
+
+    public Integer getMaxMetrics() {
+        return maxMetrics;
+    }
+
+    public void setMaxMetrics(Integer maxMetrics) {
+        this.maxMetrics = maxMetrics;
+    }
+
+    public Set<String> getStartsWithFilters() {
+        return startsWithFilters;
+    }
+
+    public void setStartsWithFilters(Set<String> startsWithFilters) {
+        this.startsWithFilters = startsWithFilters;
+    }
+
+    public Set<String> getBlockedStartsWithFilters() {
+        return blockedStartsWithFilters;
+    }
+
+    public void setBlockedStartsWithFilters(Set<String> blockedStartsWithFilters) {
+        this.blockedStartsWithFilters = blockedStartsWithFilters;
+    }
+
+    public String getPersistenceDirectory() {
+        return persistenceDirectory;
+    }
+
+    public void setPersistenceDirectory(String persistenceDirectory) {
+        this.persistenceDirectory = persistenceDirectory;
+    }
+
+    public Integer getRetentionInHours() {
+        return retentionInHours;
+    }
+
+    public void setRetentionInHours(Integer retentionInHours) {
+        this.retentionInHours = retentionInHours;
+    }
+}
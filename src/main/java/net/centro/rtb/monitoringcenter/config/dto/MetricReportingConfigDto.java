@@ -30,6 +30,18 @@ public class MetricReportingConfigDto {
     private GraphiteReporterConfigDto graphiteReporterConfig;
     @JsonProperty("jmx")
     private JmxReporterConfigDto jmxReporterConfig;
+    @JsonProperty("statsd")
+    private StatsdReporterConfigDto statsdReporterConfig;
+    @JsonProperty("influx")
+    private InfluxReporterConfigDto influxReporterConfig;
+    @JsonProperty("jsonLog")
+    private JsonLogReporterConfigDto jsonLogReporterConfig;
+    @JsonProperty("history")
+    private MetricHistoryConfigDto metricHistoryConfig;
+    private Long snapshotFreshnessWindowInMillis;
+    private Integer collectionParallelism;
+    private Integer parallelCollectionThreshold;
+    private Long reportingJitterBudgetInMillis;
 
     public GraphiteReporterConfigDto getGraphiteReporterConfig() {
         return graphiteReporterConfig;
@@ -46,4 +58,68 @@ public class MetricReportingConfigDto {
     public void setJmxReporterConfig(JmxReporterConfigDto jmxReporterConfig) {
         this.jmxReporterConfig = jmxReporterConfig;
     }
+
+    public StatsdReporterConfigDto getStatsdReporterConfig() {
+        return statsdReporterConfig;
+    }
+
+    public void setStatsdReporterConfig(StatsdReporterConfigDto statsdReporterConfig) {
+        this.statsdReporterConfig = statsdReporterConfig;
+    }
+
+    public InfluxReporterConfigDto getInfluxReporterConfig() {
+        return influxReporterConfig;
+    }
+
+    public void setInfluxReporterConfig(InfluxReporterConfigDto influxReporterConfig) {
+        this.influxReporterConfig = influxReporterConfig;
+    }
+
+    public JsonLogReporterConfigDto getJsonLogReporterConfig() {
+        return jsonLogReporterConfig;
+    }
+
+    public void setJsonLogReporterConfig(JsonLogReporterConfigDto jsonLogReporterConfig) {
+        this.jsonLogReporterConfig = jsonLogReporterConfig;
+    }
+
+    public MetricHistoryConfigDto getMetricHistoryConfig() {
+        return metricHistoryConfig;
+    }
+
+    public void setMetricHistoryConfig(MetricHistoryConfigDto metricHistoryConfig) {
+        this.metricHistoryConfig = metricHistoryConfig;
+    }
+
+    public Long getSnapshotFreshnessWindowInMillis() {
+        return snapshotFreshnessWindowInMillis;
+    }
+
+    public void setSnapshotFreshnessWindowInMillis(Long snapshotFreshnessWindowInMillis) {
+        this.snapshotFreshnessWindowInMillis = snapshotFreshnessWindowInMillis;
+    }
+
+    public Integer getCollectionParallelism() {
+        return collectionParallelism;
+    }
+
+    public void setCollectionParallelism(Integer collectionParallelism) {
+        this.collectionParallelism = collectionParallelism;
+    }
+
+    public Integer getParallelCollectionThreshold() {
+        return parallelCollectionThreshold;
+    }
+
+    public void setParallelCollectionThreshold(Integer parallelCollectionThreshold) {
+        this.parallelCollectionThreshold = parallelCollectionThreshold;
+    }
+
+    public Long getReportingJitterBudgetInMillis() {
+        return reportingJitterBudgetInMillis;
+    }
+
+    public void setReportingJitterBudgetInMillis(Long reportingJitterBudgetInMillis) {
+        this.reportingJitterBudgetInMillis = reportingJitterBudgetInMillis;
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+
+/**
+ * A metric set, whose metrics may change after it has been registered. Since the MetricRegistry flattens a metric set
+ * upon registration, the metrics added or removed later are announced to the listeners of this set, which are
+ * expected to (un)register them. The names passed to the listeners are relative to this set.
+ */
+public interface DynamicMetricSet extends MetricSet {
+    /**
+     * A listener for the metrics added to or removed from a dynamic metric set.
+     */
+    interface Listener {
+        /**
+         * Called when a metric is added to the metric set.
+         *
+         * @param name the name of the metric, relative to the metric set.
+         * @param metric the metric.
+         */
+        void onMetricAdded(String name, Metric metric);
+
+        /**
+         * Called when a metric is removed from the metric set.
+         *
+         * @param name the name of the metric, relative to the metric set.
+         */
+        void onMetricRemoved(String name);
+    }
+
+    /**
+     * Adds a listener, which will be notified of the metrics added or removed from now on.
+     *
+     * @param listener a listener.
+     */
+    void addListener(Listener listener);
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener a listener.
+     */
+    void removeListener(Listener listener);
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * This class indexes the names of the metrics in a registry, so that the names matching a "starts with" filter (see
+ * {@link net.centro.rtb.monitoringcenter.util.CompiledMetricFilter}) can be narrowed down without iterating over the
+ * whole registry. The names are kept sorted, for filters with a literal prefix, and are inverted by their segments
+ * (the parts separated by {@link MetricNamingUtil#SEPARATOR}), for filters starting with a wildcard. The index is
+ * maintained by a registry listener.
+ *
+ * <p>
+ *     The index yields candidates rather than matches; the candidates must still be matched against the filter. This
+ *     class is thread-safe. The names are kept in concurrent sorted sets, so that queries neither copy the candidates
+ *     nor block the registration of metrics.
+ * </p>
+ */
+public class MetricNameIndex {
+    private static final SortedSet<String> NO_NAMES = Collections.unmodifiableSortedSet(new ConcurrentSkipListSet<String>());
+
+    /**
+     * A sorted set of names along with its size, as the size of a concurrent sorted set is computed by iterating over
+     * it.
+     */
+    private static class IndexedNames {
+        private final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private boolean add(String name) {
+            if (!names.add(name)) {
+                return false;
+            }
+            size.incrementAndGet();
+            return true;
+        }
+
+        private boolean remove(String name) {
+            if (!names.remove(name)) {
+                return false;
+            }
+            size.decrementAndGet();
+            return true;
+        }
+    }
+
+    private final MetricRegistry metricRegistry;
+    private final MetricRegistryListener listener;
+
+    private final IndexedNames names;
+    private final ConcurrentMap<String, IndexedNames> namesBySegments;
+
+    /**
+     * Constructs an index and attaches it to a given registry. The metrics already in the registry are indexed.
+     *
+     * @param metricRegistry the registry to index.
+     */
+    public MetricNameIndex(MetricRegistry metricRegistry) {
+        Preconditions.checkNotNull(metricRegistry);
+
+        this.metricRegistry = metricRegistry;
+        this.names = new IndexedNames();
+        this.namesBySegments = new ConcurrentHashMap<>();
+        this.listener = new IndexingListener();
+
+        metricRegistry.addListener(listener);
+    }
+
+    /**
+     * Retrieves the names, which may match a given "starts with" filter. If the literal prefix of the filter (the part
+     * before the first wildcard) spans a whole segment, the names starting with that prefix are returned. Otherwise,
+     * if the filter contains a whole segment--that is, a segment without wildcards followed by a separator--the names
+     * containing the least common of such segments are returned. Only filters with neither require all names.
+     *
+     * @param startsWithFilter a "starts with" filter; a blank filter selects all names.
+     * @return an unmodifiable, weakly consistent view of the sorted candidate names, which reflects the metrics
+     * registered or removed meanwhile.
+     */
+    public SortedSet<String> getCandidateNames(String startsWithFilter) {
+        String filter = StringUtils.trimToEmpty(startsWithFilter);
+        int wildcardIndex = filter.indexOf('*');
+        String literalPrefix = wildcardIndex == -1 ? filter : filter.substring(0, wildcardIndex);
+
+        if (literalPrefix.indexOf(MetricNamingUtil.SEPARATOR) == -1) {
+            // The trailing segment is not whole, as a trailing wildcard is implied
+            String[] segments = StringUtils.splitPreserveAllTokens(filter, MetricNamingUtil.SEPARATOR);
+            IndexedNames leastCommonSegmentNames = null;
+            for (int i = 0; i < segments.length - 1; i++) {
+                if (segments[i].isEmpty() || segments[i].indexOf('*') != -1) {
+                    continue;
+                }
+
+                IndexedNames segmentNames = namesBySegments.get(segments[i]);
+                if (segmentNames == null) {
+                    return NO_NAMES;
+                }
+                if (leastCommonSegmentNames == null || segmentNames.size.get() < leastCommonSegmentNames.size.get()) {
+                    leastCommonSegmentNames = segmentNames;
+                }
+            }
+
+            if (leastCommonSegmentNames != null) {
+                return Collections.unmodifiableSortedSet(leastCommonSegmentNames.names);
+            }
+        }
+
+        if (literalPrefix.isEmpty()) {
+            return Collections.unmodifiableSortedSet(names.names);
+        }
+        // Every name starting with the prefix sorts before the prefix followed by the greatest character
+        return Collections.unmodifiableSortedSet(names.names.subSet(literalPrefix, literalPrefix + Character.MAX_VALUE));
+    }
+
+    public int size() {
+        return names.size.get();
+    }
+
+    /**
+     * Detaches this index from the registry.
+     */
+    public void close() {
+        metricRegistry.removeListener(listener);
+    }
+
+    private void onMetricAdded(final String name) {
+        if (!names.add(name)) {
+            return;
+        }
+
+        // The sets of a segment are updated atomically with their mapping, so that no name is added to a removed set
+        for (String segment : StringUtils.split(name, MetricNamingUtil.SEPARATOR)) {
+            namesBySegments.compute(segment, new BiFunction<String, IndexedNames, IndexedNames>() {
+                @Override
+                public IndexedNames apply(String segment, IndexedNames segmentNames) {
+                    if (segmentNames == null) {
+                        segmentNames = new IndexedNames();
+                    }
+                    segmentNames.add(name);
+                    return segmentNames;
+                }
+            });
+        }
+    }
+
+    private void onMetricRemoved(final String name) {
+        if (!names.remove(name)) {
+            return;
+        }
+
+        for (String segment : StringUtils.split(name, MetricNamingUtil.SEPARATOR)) {
+            namesBySegments.computeIfPresent(segment, new BiFunction<String, IndexedNames, IndexedNames>() {
+                @Override
+                public IndexedNames apply(String segment, IndexedNames segmentNames) {
+                    segmentNames.remove(name);
+                    return segmentNames.size.get() > 0 ? segmentNames : null;
+                }
+            });
+        }
+    }
+
+    private class IndexingListener implements MetricRegistryListener {
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            onMetricRemoved(name);
+        }
+    }
+}
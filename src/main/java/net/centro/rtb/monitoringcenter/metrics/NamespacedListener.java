@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Metric;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+
+/**
+ * A listener, which prepends a namespace to the names of the metrics and forwards them to another listener. It allows
+ * a dynamic metric set to pass the listeners of its own on to the dynamic metric sets nested in it. Two instances are
+ * equal if they have the same namespace and delegate; thus, a listener can be removed by means of a new instance.
+ */
+public class NamespacedListener implements DynamicMetricSet.Listener {
+    private final String namespace;
+    private final DynamicMetricSet.Listener delegate;
+
+    public NamespacedListener(String namespace, DynamicMetricSet.Listener delegate) {
+        Preconditions.checkNotNull(namespace);
+        Preconditions.checkNotNull(delegate);
+
+        this.namespace = namespace;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onMetricAdded(String name, Metric metric) {
+        delegate.onMetricAdded(MetricNamingUtil.join(namespace, name), metric);
+    }
+
+    @Override
+    public void onMetricRemoved(String name) {
+        delegate.onMetricRemoved(MetricNamingUtil.join(namespace, name));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NamespacedListener that = (NamespacedListener) o;
+
+        if (!namespace.equals(that.namespace)) return false;
+        return delegate.equals(that.delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = namespace.hashCode();
+        result = 31 * result + delegate.hashCode();
+        return result;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tracks the number of metrics per top-level namespace of a registry (e.g., "system", "tomcat", or the
+ * namespaces of the metric collectors), and exposes each number as a gauge named
+ * <tt>&lt;namespace&gt;.&lt;topLevelNamespace&gt;.size</tt> in the same registry. The gauge for a top-level namespace is
+ * registered once the first metric in that namespace is seen. The numbers are maintained by a registry listener, so
+ * evaluating the gauges does not iterate over the registry.
+ */
+public class RegistrySizeTracker {
+    private static final String SIZE_POSTFIX = "size";
+
+    private final MetricRegistry metricRegistry;
+    private final String namespace;
+    private final MetricRegistryListener listener;
+
+    private final ConcurrentMap<String, AtomicInteger> sizesByNamespaces;
+    private final Set<String> namespacesWithGauges;
+
+    /**
+     * Constructs a tracker and attaches it to a given registry. The metrics already in the registry are counted.
+     *
+     * @param metricRegistry the registry to track.
+     * @param namespace the namespace to register the size gauges under.
+     */
+    public RegistrySizeTracker(MetricRegistry metricRegistry, String namespace) {
+        Preconditions.checkNotNull(metricRegistry);
+        Preconditions.checkNotNull(namespace);
+
+        this.metricRegistry = metricRegistry;
+        this.namespace = namespace;
+        this.sizesByNamespaces = new ConcurrentHashMap<>();
+        this.namespacesWithGauges = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.listener = new SizeTrackingListener();
+
+        metricRegistry.addListener(listener);
+    }
+
+    /**
+     * Retrieves the number of metrics in a given top-level namespace.
+     *
+     * @param topLevelNamespace a top-level namespace.
+     * @return the number of metrics in the namespace.
+     */
+    public int getSize(String topLevelNamespace) {
+        AtomicInteger size = sizesByNamespaces.get(topLevelNamespace);
+        return size != null ? size.get() : 0;
+    }
+
+    /**
+     * Detaches this tracker from the registry. The size gauges are not removed.
+     */
+    public void close() {
+        metricRegistry.removeListener(listener);
+    }
+
+    private void onMetricAdded(String name) {
+        final String topLevelNamespace = getTopLevelNamespace(name);
+
+        AtomicInteger size = sizesByNamespaces.get(topLevelNamespace);
+        if (size == null) {
+            AtomicInteger newSize = new AtomicInteger();
+            size = sizesByNamespaces.putIfAbsent(topLevelNamespace, newSize);
+            if (size == null) {
+                size = newSize;
+            }
+        }
+        size.incrementAndGet();
+
+        // The gauge is registered after the metric is counted, as its own registration re-enters this listener
+        if (namespacesWithGauges.add(topLevelNamespace)) {
+            final AtomicInteger namespaceSize = size;
+            try {
+                metricRegistry.register(getGaugeName(topLevelNamespace), new Gauge<Integer>() {
+                    @Override
+                    public Integer getValue() {
+                        return namespaceSize.get();
+                    }
+                });
+            } catch (IllegalArgumentException ignore) {
+                // Registered concurrently
+            }
+        }
+    }
+
+    private void onMetricRemoved(String name) {
+        String topLevelNamespace = getTopLevelNamespace(name);
+
+        AtomicInteger size = sizesByNamespaces.get(topLevelNamespace);
+        if (size != null) {
+            size.decrementAndGet();
+        }
+
+        // The gauge itself has been removed (e.g., along with all metrics); it is registered anew on the next addition
+        String topLevelNamespaceOfGauge = getTopLevelNamespaceOfGauge(name);
+        if (topLevelNamespaceOfGauge != null) {
+            namespacesWithGauges.remove(topLevelNamespaceOfGauge);
+        }
+    }
+
+    private String getGaugeName(String topLevelNamespace) {
+        return MetricNamingUtil.join(namespace, topLevelNamespace, SIZE_POSTFIX);
+    }
+
+    private String getTopLevelNamespaceOfGauge(String name) {
+        String gaugePrefix = namespace + MetricNamingUtil.SEPARATOR;
+        String gaugePostfix = MetricNamingUtil.SEPARATOR + SIZE_POSTFIX;
+        if (name.startsWith(gaugePrefix) && name.endsWith(gaugePostfix) && name.length() > gaugePrefix.length() + gaugePostfix.length()) {
+            String topLevelNamespace = name.substring(gaugePrefix.length(), name.length() - gaugePostfix.length());
+            if (topLevelNamespace.indexOf(MetricNamingUtil.SEPARATOR) == -1) {
+                return topLevelNamespace;
+            }
+        }
+        return null;
+    }
+
+    private static String getTopLevelNamespace(String name) {
+        int separatorIndex = name.indexOf(MetricNamingUtil.SEPARATOR);
+        return separatorIndex == -1 ? name : name.substring(0, separatorIndex);
+    }
+
+    private class SizeTrackingListener implements MetricRegistryListener {
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            onMetricAdded(name);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            onMetricRemoved(name);
+        }
+    }
+}
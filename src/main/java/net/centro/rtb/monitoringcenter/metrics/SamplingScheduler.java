@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs periodic sampling tasks (e.g., reading <tt>/proc/stat</tt> or polling JMX beans) of several sources
+ * on a single daemon thread. The ticks of every source are aligned to multiples of its interval since the creation of
+ * this scheduler; thus, sources with commensurate intervals (e.g., 1, 5, and 10 seconds) fall due together and are
+ * sampled within one wakeup. Sources falling due within a few milliseconds of each other are coalesced as well. If a
+ * wakeup runs late, the ticks that have passed in the meantime are skipped rather than queued.
+ *
+ * <p>
+ *     The duration of the samples of every source is recorded by the <tt>sources.&lt;name&gt;.sampleTimer</tt>, and
+ *     the number of wakeups by the <tt>wakeupCounter</tt>. Since sources come and go, the timers are announced to the
+ *     listeners of this {@link DynamicMetricSet}.
+ * </p>
+ *
+ * <p>
+ *     Both {@link Registration#cancel()} and {@link #shutdown()} wait for a sample in progress to complete; once they
+ *     return, the affected tasks are not running and will not run again. This class is thread-safe.
+ * </p>
+ */
+public class SamplingScheduler implements DynamicMetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(SamplingScheduler.class);
+
+    private static final String SOURCES_NAMESPACE = "sources";
+    private static final long COALESCING_WINDOW_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SHUTDOWN_TIMEOUT_IN_MILLIS = 5000;
+
+    /**
+     * A handle to a source scheduled for sampling.
+     */
+    public final class Registration {
+        private final String name;
+        private final long intervalInNanos;
+        private final Runnable task;
+        private final Timer sampleTimer;
+
+        // Guarded by the lock of the scheduler
+        private long nextSampleTimeInNanos;
+        private boolean running;
+        private boolean cancelled;
+
+        private Registration(String name, long intervalInNanos, Runnable task) {
+            this.name = name;
+            this.intervalInNanos = intervalInNanos;
+            this.task = task;
+            this.sampleTimer = new Timer();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Stops sampling this source. If the source is being sampled by another thread, this method waits for the
+         * sample to complete. Calling this method more than once has no effect.
+         */
+        public void cancel() {
+            SamplingScheduler.this.cancel(this);
+        }
+    }
+
+    private final Object lock;
+    private final long epochInNanos;
+    private final List<Registration> registrations;
+    private final Thread thread;
+    private boolean shutdown;
+
+    private final Counter wakeupCounter;
+    private final Map<String, Metric> metricsByNames;
+    private final List<Listener> listeners;
+
+    /**
+     * Constructs a scheduler and starts its thread.
+     *
+     * @param name the name of the scheduler thread.
+     */
+    public SamplingScheduler(String name) {
+        Preconditions.checkNotNull(name);
+
+        this.lock = new Object();
+        this.epochInNanos = System.nanoTime();
+        this.registrations = new ArrayList<>();
+
+        this.wakeupCounter = new Counter();
+        this.metricsByNames = new ConcurrentHashMap<>();
+        this.metricsByNames.put("wakeupCounter", wakeupCounter);
+        this.listeners = new CopyOnWriteArrayList<>();
+
+        this.thread = new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build().newThread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        });
+        this.thread.start();
+    }
+
+    /**
+     * Schedules a source for sampling. The first sample is taken at the first aligned tick after now.
+     *
+     * @param name the name of the source, which is used for naming its metrics; e.g., "os.cpu".
+     * @param interval the interval between two samples.
+     * @param timeUnit the unit for <tt>interval</tt>.
+     * @param task the task taking a sample.
+     * @return a handle for cancelling the sampling.
+     * @throws IllegalArgumentException if a source with the same name is already scheduled.
+     * @throws IllegalStateException if this scheduler has been shut down.
+     */
+    public Registration schedule(String name, long interval, TimeUnit timeUnit, Runnable task) {
+        Preconditions.checkNotNull(name);
+        Preconditions.checkNotNull(timeUnit);
+        Preconditions.checkNotNull(task);
+        Preconditions.checkArgument(interval > 0, "interval must be positive");
+
+        Registration registration = new Registration(name, timeUnit.toNanos(interval), task);
+        synchronized (lock) {
+            Preconditions.checkState(!shutdown, "The sampling scheduler has been shut down");
+            for (Registration existingRegistration : registrations) {
+                Preconditions.checkArgument(!existingRegistration.name.equals(name), "A source named %s is already scheduled", name);
+            }
+
+            registration.nextSampleTimeInNanos = computeNextSampleTime(registration.intervalInNanos, System.nanoTime());
+            registrations.add(registration);
+            lock.notifyAll();
+        }
+
+        String metricName = getSampleTimerName(name);
+        metricsByNames.put(metricName, registration.sampleTimer);
+        for (Listener listener : listeners) {
+            listener.onMetricAdded(metricName, registration.sampleTimer);
+        }
+
+        return registration;
+    }
+
+    /**
+     * Stops the scheduler thread and waits for a sample in progress to complete. The registered sources are not
+     * notified. Calling this method more than once has no effect.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            lock.notifyAll();
+        }
+
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_IN_MILLIS);
+            if (thread.isAlive()) {
+                logger.warn("Sampling scheduler did not stop within {} ms", SHUTDOWN_TIMEOUT_IN_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Computes the first tick of a source strictly after the given time.
+     */
+    long computeNextSampleTime(long intervalInNanos, long timeInNanos) {
+        long ticks = (timeInNanos - epochInNanos) / intervalInNanos;
+        return epochInNanos + (ticks + 1) * intervalInNanos;
+    }
+
+    private void cancel(Registration registration) {
+        synchronized (lock) {
+            if (registration.cancelled) {
+                return;
+            }
+            registration.cancelled = true;
+            registrations.remove(registration);
+
+            // A source may cancel itself, or another source, from the scheduler thread
+            while (registration.running && Thread.currentThread() != thread) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        String metricName = getSampleTimerName(registration.name);
+        if (metricsByNames.remove(metricName, registration.sampleTimer)) {
+            for (Listener listener : listeners) {
+                listener.onMetricRemoved(metricName);
+            }
+        }
+    }
+
+    private void runLoop() {
+        List<Registration> dueRegistrations = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                while (dueRegistrations.isEmpty()) {
+                    if (shutdown) {
+                        return;
+                    }
+
+                    long now = System.nanoTime();
+                    Long earliestSampleTimeInNanos = null;
+                    for (Registration registration : registrations) {
+                        if (registration.nextSampleTimeInNanos - now <= COALESCING_WINDOW_IN_NANOS) {
+                            dueRegistrations.add(registration);
+
+                            // Ticks, which have passed in the meantime, are skipped
+                            long sampleTimeInNanos = registration.nextSampleTimeInNanos - now > 0 ? registration.nextSampleTimeInNanos : now;
+                            registration.nextSampleTimeInNanos = computeNextSampleTime(registration.intervalInNanos, sampleTimeInNanos);
+                        } else if (earliestSampleTimeInNanos == null || registration.nextSampleTimeInNanos - earliestSampleTimeInNanos < 0) {
+                            earliestSampleTimeInNanos = registration.nextSampleTimeInNanos;
+                        }
+                    }
+
+                    if (dueRegistrations.isEmpty()) {
+                        try {
+                            if (earliestSampleTimeInNanos == null) {
+                                lock.wait();
+                            } else {
+                                TimeUnit.NANOSECONDS.timedWait(lock, earliestSampleTimeInNanos - now);
+                            }
+                        } catch (InterruptedException e) {
+                            logger.debug("Sampling scheduler was interrupted");
+                            return;
+                        }
+                    }
+                }
+            }
+
+            wakeupCounter.inc();
+            for (Registration registration : dueRegistrations) {
+                sample(registration);
+            }
+            dueRegistrations.clear();
+        }
+    }
+
+    private void sample(Registration registration) {
+        synchronized (lock) {
+            if (shutdown || registration.cancelled) {
+                return;
+            }
+            registration.running = true;
+        }
+
+        Timer.Context sampleTimerContext = registration.sampleTimer.time();
+        try {
+            registration.task.run();
+        } catch (RuntimeException e) {
+            logger.debug("Exception thrown while sampling {}", registration.name, e);
+        } finally {
+            sampleTimerContext.stop();
+
+            synchronized (lock) {
+                registration.running = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static String getSampleTimerName(String name) {
+        return MetricNamingUtil.join(SOURCES_NAMESPACE, name, "sampleTimer");
+    }
+}
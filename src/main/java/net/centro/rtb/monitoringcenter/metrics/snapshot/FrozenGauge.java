@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Gauge;
+
+/**
+ * A gauge, which holds the value of another gauge at the time of freezing. If the original gauge threw an exception
+ * upon evaluation, the same exception is rethrown by {@link #getValue()}, so that reporters treat the frozen gauge
+ * the same way they would treat the original one.
+ */
+public class FrozenGauge implements Gauge<Object> {
+    private final Object value;
+    private final RuntimeException exception;
+
+    private FrozenGauge(Object value, RuntimeException exception) {
+        this.value = value;
+        this.exception = exception;
+    }
+
+    /**
+     * Evaluates a gauge and freezes its value.
+     *
+     * @param gauge a gauge to freeze.
+     * @return a frozen gauge.
+     */
+    public static FrozenGauge of(Gauge<?> gauge) {
+        try {
+            return new FrozenGauge(gauge.getValue(), null);
+        } catch (RuntimeException e) {
+            return new FrozenGauge(null, e);
+        }
+    }
+
+    @Override
+    public Object getValue() {
+        if (exception != null) {
+            throw exception;
+        }
+        return value;
+    }
+}
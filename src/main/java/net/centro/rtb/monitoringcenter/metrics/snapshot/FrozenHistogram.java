@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A read-only histogram, which holds the count and the statistics of another histogram at the time of freezing.
+ */
+public class FrozenHistogram extends Histogram {
+    private final long count;
+    private final FrozenSnapshot snapshot;
+
+    public FrozenHistogram(long count, FrozenSnapshot snapshot) {
+        super(NoOpReservoir.INSTANCE);
+        this.count = count;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Freezes a given histogram.
+     *
+     * @param histogram a histogram to freeze.
+     * @return a frozen histogram.
+     */
+    public static FrozenHistogram of(Histogram histogram) {
+        if (histogram instanceof FrozenHistogram) {
+            return (FrozenHistogram) histogram;
+        }
+        return new FrozenHistogram(histogram.getCount(), FrozenSnapshot.of(histogram.getSnapshot()));
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void update(int value) {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen histogram");
+    }
+
+    @Override
+    public void update(long value) {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen histogram");
+    }
+}
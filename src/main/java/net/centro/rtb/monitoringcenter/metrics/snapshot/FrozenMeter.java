@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Meter;
+
+/**
+ * A read-only meter, which holds the count and the rates of another meter at the time of freezing.
+ */
+public class FrozenMeter extends Meter {
+    private final long count;
+    private final double meanRate;
+    private final double oneMinuteRate;
+    private final double fiveMinuteRate;
+    private final double fifteenMinuteRate;
+
+    public FrozenMeter(long count, double meanRate, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate) {
+        this.count = count;
+        this.meanRate = meanRate;
+        this.oneMinuteRate = oneMinuteRate;
+        this.fiveMinuteRate = fiveMinuteRate;
+        this.fifteenMinuteRate = fifteenMinuteRate;
+    }
+
+    /**
+     * Freezes a given meter.
+     *
+     * @param meter a meter to freeze.
+     * @return a frozen meter.
+     */
+    public static FrozenMeter of(Meter meter) {
+        if (meter instanceof FrozenMeter) {
+            return (FrozenMeter) meter;
+        }
+        return new FrozenMeter(meter.getCount(), meter.getMeanRate(), meter.getOneMinuteRate(),
+                meter.getFiveMinuteRate(), meter.getFifteenMinuteRate());
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public double getMeanRate() {
+        return meanRate;
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return oneMinuteRate;
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return fiveMinuteRate;
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return fifteenMinuteRate;
+    }
+
+    @Override
+    public void mark() {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen meter");
+    }
+
+    @Override
+    public void mark(long n) {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen meter");
+    }
+}
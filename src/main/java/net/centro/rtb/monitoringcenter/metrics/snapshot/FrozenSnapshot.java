@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable snapshot, which holds the statistics of a reservoir as primitive values. Unlike the snapshots created
+ * by reservoirs, it does not retain the sampled values; thus, {@link #getValues()} returns an empty array. Quantiles
+ * other than the ones exposed by reporters (median, 75th, 95th, 98th, 99th, and 99.9th percentiles) are linearly
+ * interpolated between the retained ones.
+ */
+public class FrozenSnapshot extends Snapshot {
+    private static final long[] NO_VALUES = new long[0];
+    private static final double[] QUANTILES = {0.0, 0.5, 0.75, 0.95, 0.98, 0.99, 0.999, 1.0};
+
+    private final int size;
+    private final long min;
+    private final long max;
+    private final double mean;
+    private final double stdDev;
+    private final double[] quantileValues;
+
+    private FrozenSnapshot(Snapshot snapshot) {
+        this.size = snapshot.size();
+        this.min = snapshot.getMin();
+        this.max = snapshot.getMax();
+        this.mean = snapshot.getMean();
+        this.stdDev = snapshot.getStdDev();
+
+        this.quantileValues = new double[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            if (QUANTILES[i] == 0.0) {
+                quantileValues[i] = min;
+            } else if (QUANTILES[i] == 1.0) {
+                quantileValues[i] = max;
+            } else {
+                quantileValues[i] = snapshot.getValue(QUANTILES[i]);
+            }
+        }
+    }
+
+    /**
+     * Freezes the statistics of a given snapshot.
+     *
+     * @param snapshot a snapshot to freeze.
+     * @return a frozen snapshot.
+     */
+    public static FrozenSnapshot of(Snapshot snapshot) {
+        if (snapshot instanceof FrozenSnapshot) {
+            return (FrozenSnapshot) snapshot;
+        }
+        return new FrozenSnapshot(snapshot);
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+
+        if (size == 0) {
+            return 0.0;
+        }
+
+        for (int i = 1; i < QUANTILES.length; i++) {
+            if (quantile <= QUANTILES[i]) {
+                if (quantile == QUANTILES[i]) {
+                    return quantileValues[i];
+                }
+                double fraction = (quantile - QUANTILES[i - 1]) / (QUANTILES[i] - QUANTILES[i - 1]);
+                return quantileValues[i - 1] + fraction * (quantileValues[i] - quantileValues[i - 1]);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long[] getValues() {
+        return NO_VALUES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public long getMin() {
+        return min;
+    }
+
+    @Override
+    public double getStdDev() {
+        return stdDev;
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < QUANTILES.length; i++) {
+                out.printf("%s %f%n", QUANTILES[i], quantileValues[i]);
+            }
+        }
+    }
+}
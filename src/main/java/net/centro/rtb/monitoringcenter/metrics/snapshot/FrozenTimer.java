@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-only timer, which holds the count, the rates, and the duration statistics of another timer at the time of
+ * freezing.
+ */
+public class FrozenTimer extends Timer {
+    private final long count;
+    private final double meanRate;
+    private final double oneMinuteRate;
+    private final double fiveMinuteRate;
+    private final double fifteenMinuteRate;
+    private final FrozenSnapshot snapshot;
+
+    public FrozenTimer(long count, double meanRate, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate,
+                       FrozenSnapshot snapshot) {
+        super(NoOpReservoir.INSTANCE);
+        this.count = count;
+        this.meanRate = meanRate;
+        this.oneMinuteRate = oneMinuteRate;
+        this.fiveMinuteRate = fiveMinuteRate;
+        this.fifteenMinuteRate = fifteenMinuteRate;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Freezes a given timer.
+     *
+     * @param timer a timer to freeze.
+     * @return a frozen timer.
+     */
+    public static FrozenTimer of(Timer timer) {
+        if (timer instanceof FrozenTimer) {
+            return (FrozenTimer) timer;
+        }
+        return new FrozenTimer(timer.getCount(), timer.getMeanRate(), timer.getOneMinuteRate(),
+                timer.getFiveMinuteRate(), timer.getFifteenMinuteRate(), FrozenSnapshot.of(timer.getSnapshot()));
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public double getMeanRate() {
+        return meanRate;
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return oneMinuteRate;
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return fiveMinuteRate;
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return fifteenMinuteRate;
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen timer");
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen timer");
+    }
+
+    @Override
+    public Context time() {
+        throw new UnsupportedOperationException("Operation is not allowed for a frozen timer");
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+/**
+ * A stateless reservoir for the frozen histograms and timers, which never receive updates.
+ */
+class NoOpReservoir implements Reservoir {
+    static final NoOpReservoir INSTANCE = new NoOpReservoir();
+
+    private static final Snapshot EMPTY_SNAPSHOT = new UniformSnapshot(new long[0]);
+
+    private NoOpReservoir() {
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public void update(long value) {
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return EMPTY_SNAPSHOT;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.ThreadAllocationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class partitions the metrics of a registry into chunks, and processes the chunks in a bounded fork-join pool.
+ * It is used to freeze large registries (i.e., evaluate gauges and compute reservoir snapshots) and to filter metrics
+ * by names without occupying a single thread for seconds. Registries smaller than the sequential threshold are always
+ * processed on the calling thread, as are all registries if the parallelism is 1.
+ *
+ * <p>
+ *     The results are identical to the ones of the sequential processing. The memory allocated by the workers is
+ *     attributed to the calling thread (see {@link ThreadAllocationUtil#addDelegatedAllocatedBytes(long)}), so that
+ *     per-report allocation figures do not depend on the parallelism. This class is thread-safe.
+ * </p>
+ */
+public class ParallelMetricCollector {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelMetricCollector.class);
+
+    private static final int MIN_CHUNK_SIZE = 256;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final int parallelism;
+    private final int sequentialThreshold;
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * Constructs a parallel collector.
+     *
+     * @param parallelism the maximum number of threads to process chunks with; 1 disables the parallel processing.
+     * @param sequentialThreshold the number of metrics, below which a registry is processed sequentially.
+     * @throws IllegalArgumentException if <tt>parallelism</tt> is not positive or <tt>sequentialThreshold</tt> is
+     * negative.
+     */
+    public ParallelMetricCollector(int parallelism, int sequentialThreshold) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        Preconditions.checkArgument(sequentialThreshold >= 0, "sequentialThreshold cannot be negative");
+
+        this.parallelism = parallelism;
+        this.sequentialThreshold = sequentialThreshold;
+
+        if (parallelism > 1) {
+            final String poolName = "ParallelMetricCollector-" + POOL_COUNTER.getAndIncrement();
+            this.forkJoinPool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(poolName + "-" + thread.getPoolIndex());
+                    return thread;
+                }
+            }, null, false);
+        } else {
+            this.forkJoinPool = null;
+        }
+    }
+
+    /**
+     * Creates a collector, which processes all registries on the calling thread.
+     *
+     * @return a sequential collector.
+     */
+    public static ParallelMetricCollector sequential() {
+        return new ParallelMetricCollector(1, 0);
+    }
+
+    /**
+     * Freezes all metrics in a given registry. The result is equivalent to {@link RegistrySnapshot#collect(MetricRegistry)}.
+     *
+     * @param metricRegistry a registry to take a snapshot of.
+     * @return a snapshot of the registry.
+     */
+    public RegistrySnapshot collect(MetricRegistry metricRegistry) {
+        Preconditions.checkNotNull(metricRegistry);
+
+        long collectionTimeInMillis = System.currentTimeMillis();
+
+        Map.Entry<String, ? extends Metric>[] entries = toEntryArray(metricRegistry.getMetrics());
+        final String[] names = new String[entries.length];
+        final Metric[] metricArray = new Metric[entries.length];
+        toArrays(entries, names, metricArray);
+
+        final Metric[] frozenMetrics = new Metric[metricArray.length];
+        final AtomicLong gaugeEvaluationTimeInNanos = new AtomicLong();
+        process(metricArray.length, new ChunkProcessor() {
+            @Override
+            public void process(int from, int to) {
+                long chunkGaugeEvaluationTimeInNanos = 0;
+                for (int i = from; i < to; i++) {
+                    if (metricArray[i] instanceof Gauge) {
+                        long startTimeInNanos = System.nanoTime();
+                        frozenMetrics[i] = RegistrySnapshot.freeze(metricArray[i]);
+                        chunkGaugeEvaluationTimeInNanos += System.nanoTime() - startTimeInNanos;
+                    } else {
+                        frozenMetrics[i] = RegistrySnapshot.freeze(metricArray[i]);
+                    }
+                }
+                gaugeEvaluationTimeInNanos.addAndGet(chunkGaugeEvaluationTimeInNanos);
+            }
+        });
+
+        return RegistrySnapshot.assemble(collectionTimeInMillis, gaugeEvaluationTimeInNanos.get(), names, frozenMetrics);
+    }
+
+    /**
+     * Selects the metrics matching a given filter.
+     *
+     * @param metrics the metrics to filter.
+     * @param filter a filter to apply.
+     * @param <T> the type of the metrics.
+     * @return the matching metrics, sorted by names.
+     */
+    public <T extends Metric> SortedMap<String, T> filter(Map<String, T> metrics, final MetricFilter filter) {
+        Preconditions.checkNotNull(metrics);
+        Preconditions.checkNotNull(filter);
+
+        Map.Entry<String, ? extends Metric>[] entries = toEntryArray(metrics);
+        final String[] names = new String[entries.length];
+        final Metric[] metricArray = new Metric[entries.length];
+        toArrays(entries, names, metricArray);
+
+        final boolean[] matches = new boolean[metricArray.length];
+        process(metricArray.length, new ChunkProcessor() {
+            @Override
+            public void process(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    matches[i] = filter.matches(names[i], metricArray[i]);
+                }
+            }
+        });
+
+        SortedMap<String, T> filteredMetrics = new TreeMap<>();
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) {
+                @SuppressWarnings("unchecked")
+                T metric = (T) metricArray[i];
+                filteredMetrics.put(names[i], metric);
+            }
+        }
+        return filteredMetrics;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getSequentialThreshold() {
+        return sequentialThreshold;
+    }
+
+    /**
+     * Shuts down the fork-join pool. Chunks that are being processed are allowed to complete; afterwards, all
+     * registries are processed sequentially.
+     */
+    public void shutdown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    private void process(int size, final ChunkProcessor chunkProcessor) {
+        if (forkJoinPool == null || size < sequentialThreshold || size <= MIN_CHUNK_SIZE) {
+            chunkProcessor.process(0, size);
+            return;
+        }
+
+        final AtomicLong workerAllocatedBytes = new AtomicLong();
+        ChunkProcessor measuringChunkProcessor = chunkProcessor;
+        if (ThreadAllocationUtil.isSupported()) {
+            measuringChunkProcessor = new ChunkProcessor() {
+                @Override
+                public void process(int from, int to) {
+                    long allocatedBytesBefore = ThreadAllocationUtil.getAllocatedBytes();
+                    try {
+                        chunkProcessor.process(from, to);
+                    } finally {
+                        workerAllocatedBytes.addAndGet(ThreadAllocationUtil.getAllocatedBytes() - allocatedBytesBefore);
+                    }
+                }
+            };
+        }
+
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + parallelism * CHUNKS_PER_THREAD - 1) / (parallelism * CHUNKS_PER_THREAD));
+        try {
+            forkJoinPool.invoke(new ChunkTask(measuringChunkProcessor, 0, size, chunkSize));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Fork-join pool has been shut down; processing {} metrics sequentially", size);
+            chunkProcessor.process(0, size);
+        } finally {
+            ThreadAllocationUtil.addDelegatedAllocatedBytes(workerAllocatedBytes.get());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, ? extends Metric>[] toEntryArray(Map<String, ? extends Metric> metrics) {
+        // Copying via toArray() is safe for concurrently modified maps
+        return metrics.entrySet().toArray(new Map.Entry[0]);
+    }
+
+    private static void toArrays(Map.Entry<String, ? extends Metric>[] entries, String[] names, Metric[] metricArray) {
+        for (int i = 0; i < entries.length; i++) {
+            names[i] = entries[i].getKey();
+            metricArray[i] = entries[i].getValue();
+        }
+    }
+
+    private interface ChunkProcessor {
+        void process(int from, int to);
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private final ChunkProcessor chunkProcessor;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        private ChunkTask(ChunkProcessor chunkProcessor, int from, int to, int chunkSize) {
+            this.chunkProcessor = chunkProcessor;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                chunkProcessor.process(from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(chunkProcessor, from, middle, chunkSize), new ChunkTask(chunkProcessor, middle, to, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, point-in-time view of all metrics in a {@link MetricRegistry}. Every metric is frozen upon collection:
+ * gauges are evaluated exactly once, while the snapshots of histograms and timers are computed exactly once and
+ * reduced to primitive statistics. Thus, any number of reporters can consume the same registry snapshot without
+ * re-evaluating gauges or re-sorting reservoirs.
+ */
+public class RegistrySnapshot {
+    private static final RegistrySnapshot EMPTY = new RegistrySnapshot(0, 0,
+            new TreeMap<String, Gauge>(), new TreeMap<String, Counter>(), new TreeMap<String, Histogram>(),
+            new TreeMap<String, Meter>(), new TreeMap<String, Timer>());
+
+    private final long collectionTimeInMillis;
+    private final long gaugeEvaluationTimeInNanos;
+
+    private final SortedMap<String, Gauge> gauges;
+    private final SortedMap<String, Counter> counters;
+    private final SortedMap<String, Histogram> histograms;
+    private final SortedMap<String, Meter> meters;
+    private final SortedMap<String, Timer> timers;
+
+    RegistrySnapshot(long collectionTimeInMillis, long gaugeEvaluationTimeInNanos, SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+                     SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        this.collectionTimeInMillis = collectionTimeInMillis;
+        this.gaugeEvaluationTimeInNanos = gaugeEvaluationTimeInNanos;
+        this.gauges = Collections.unmodifiableSortedMap(gauges);
+        this.counters = Collections.unmodifiableSortedMap(counters);
+        this.histograms = Collections.unmodifiableSortedMap(histograms);
+        this.meters = Collections.unmodifiableSortedMap(meters);
+        this.timers = Collections.unmodifiableSortedMap(timers);
+    }
+
+    /**
+     * Freezes all metrics in a given registry.
+     *
+     * @param metricRegistry a registry to take a snapshot of.
+     * @return a snapshot of the registry.
+     */
+    public static RegistrySnapshot collect(MetricRegistry metricRegistry) {
+        return ParallelMetricCollector.sequential().collect(metricRegistry);
+    }
+
+    /**
+     * Freezes a single metric.
+     *
+     * @param metric a metric to freeze.
+     * @return a frozen copy of the metric; <tt>null</tt> if the metric type is not supported.
+     */
+    static Metric freeze(Metric metric) {
+        if (metric instanceof Gauge) {
+            return FrozenGauge.of((Gauge<?>) metric);
+        } else if (metric instanceof Counter) {
+            return new FrozenCounter(((Counter) metric).getCount());
+        } else if (metric instanceof Histogram) {
+            return FrozenHistogram.of((Histogram) metric);
+        } else if (metric instanceof Meter) {
+            return FrozenMeter.of((Meter) metric);
+        } else if (metric instanceof Timer) {
+            return FrozenTimer.of((Timer) metric);
+        }
+        return null;
+    }
+
+    /**
+     * Assembles a registry snapshot out of frozen metrics.
+     *
+     * @param collectionTimeInMillis the time, at which the collection started.
+     * @param gaugeEvaluationTimeInNanos the total time spent evaluating gauges, summed over all threads.
+     * @param names the metric names.
+     * @param frozenMetrics the frozen metrics, aligned with <tt>names</tt>; <tt>null</tt> elements are skipped.
+     * @return a registry snapshot.
+     */
+    static RegistrySnapshot assemble(long collectionTimeInMillis, long gaugeEvaluationTimeInNanos, String[] names, Metric[] frozenMetrics) {
+        SortedMap<String, Gauge> gauges = new TreeMap<>();
+        SortedMap<String, Counter> counters = new TreeMap<>();
+        SortedMap<String, Histogram> histograms = new TreeMap<>();
+        SortedMap<String, Meter> meters = new TreeMap<>();
+        SortedMap<String, Timer> timers = new TreeMap<>();
+
+        for (int i = 0; i < names.length; i++) {
+            Metric metric = frozenMetrics[i];
+            if (metric instanceof Gauge) {
+                gauges.put(names[i], (Gauge) metric);
+            } else if (metric instanceof Counter) {
+                counters.put(names[i], (Counter) metric);
+            } else if (metric instanceof Histogram) {
+                histograms.put(names[i], (Histogram) metric);
+            } else if (metric instanceof Meter) {
+                meters.put(names[i], (Meter) metric);
+            } else if (metric instanceof Timer) {
+                timers.put(names[i], (Timer) metric);
+            }
+        }
+
+        return new RegistrySnapshot(collectionTimeInMillis, gaugeEvaluationTimeInNanos, gauges, counters, histograms, meters, timers);
+    }
+
+    /**
+     * Retrieves an empty registry snapshot.
+     *
+     * @return an empty registry snapshot.
+     */
+    public static RegistrySnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Retrieves the time, at which the collection of this snapshot started.
+     *
+     * @return the collection time in milliseconds since the epoch; 0 for the empty snapshot.
+     */
+    public long getCollectionTimeInMillis() {
+        return collectionTimeInMillis;
+    }
+
+    /**
+     * Retrieves the total time spent evaluating the gauges of this snapshot. If the gauges were evaluated in parallel,
+     * this is the sum over all threads, so it may exceed the wall-clock duration of the collection.
+     *
+     * @return the gauge evaluation time in nanoseconds; 0 for the empty snapshot.
+     */
+    public long getGaugeEvaluationTimeInNanos() {
+        return gaugeEvaluationTimeInNanos;
+    }
+
+    public SortedMap<String, Gauge> getGauges() {
+        return gauges;
+    }
+
+    public SortedMap<String, Counter> getCounters() {
+        return counters;
+    }
+
+    public SortedMap<String, Histogram> getHistograms() {
+        return histograms;
+    }
+
+    public SortedMap<String, Meter> getMeters() {
+        return meters;
+    }
+
+    public SortedMap<String, Timer> getTimers() {
+        return timers;
+    }
+
+    public SortedMap<String, Gauge> getGauges(MetricFilter filter) {
+        return filter(gauges, filter);
+    }
+
+    public SortedMap<String, Counter> getCounters(MetricFilter filter) {
+        return filter(counters, filter);
+    }
+
+    public SortedMap<String, Histogram> getHistograms(MetricFilter filter) {
+        return filter(histograms, filter);
+    }
+
+    public SortedMap<String, Meter> getMeters(MetricFilter filter) {
+        return filter(meters, filter);
+    }
+
+    public SortedMap<String, Timer> getTimers(MetricFilter filter) {
+        return filter(timers, filter);
+    }
+
+    /**
+     * Retrieves all frozen metrics in this snapshot, sorted by names.
+     *
+     * @return all metrics in this snapshot.
+     */
+    public SortedMap<String, Metric> getMetrics() {
+        SortedMap<String, Metric> metrics = new TreeMap<>();
+        metrics.putAll(gauges);
+        metrics.putAll(counters);
+        metrics.putAll(histograms);
+        metrics.putAll(meters);
+        metrics.putAll(timers);
+        return Collections.unmodifiableSortedMap(metrics);
+    }
+
+    /**
+     * Retrieves the total number of metrics in this snapshot.
+     *
+     * @return the number of metrics.
+     */
+    public int size() {
+        return gauges.size() + counters.size() + histograms.size() + meters.size() + timers.size();
+    }
+
+    private static <T extends Metric> SortedMap<String, T> filter(SortedMap<String, T> metrics, MetricFilter filter) {
+        if (filter == null || filter == MetricFilter.ALL) {
+            return metrics;
+        }
+
+        SortedMap<String, T> filteredMetrics = new TreeMap<>();
+        for (Map.Entry<String, T> entry : metrics.entrySet()) {
+            if (filter.matches(entry.getKey(), entry.getValue())) {
+                filteredMetrics.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return Collections.unmodifiableSortedMap(filteredMetrics);
+    }
+}
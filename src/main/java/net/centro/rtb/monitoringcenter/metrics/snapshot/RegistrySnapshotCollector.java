@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class takes registry snapshots on demand, and caches them for a configurable freshness window. All reporters
+ * requesting a snapshot within the freshness window will receive the same instance. Concurrent requests for a new
+ * snapshot are coalesced: only one thread performs the collection, while the rest wait for its result.
+ *
+ * <p>
+ *     Registering or removing a metric does not invalidate the cached snapshot; like the metric values, the set of
+ *     metrics seen by reporters may be up to one freshness window old. Thus, registries with metrics coming and going
+ *     all the time are still collected at most once per freshness window. Use {@link #invalidate()} to force a new
+ *     collection.
+ * </p>
+ *
+ * <p>
+ *     This class exposes a timer for the collections, and a timer for the total time spent evaluating gauges per
+ *     collection. It is thread-safe.
+ * </p>
+ */
+public class RegistrySnapshotCollector implements MetricSet {
+    private final MetricRegistry metricRegistry;
+    private final Callable<RegistrySnapshot> collection;
+
+    private volatile long freshnessWindowInMillis;
+    private volatile ParallelMetricCollector parallelMetricCollector;
+
+    private volatile RegistrySnapshot latestSnapshot;
+    private volatile long generation;
+    private volatile long latestSnapshotCompletionTimeInMillis;
+    private final AtomicReference<FutureTask<RegistrySnapshot>> inFlightCollection;
+
+    private final Timer collectionTimer;
+    private final Timer gaugeEvaluationTimer;
+    private final Map<String, Metric> metricsByNames;
+
+    public RegistrySnapshotCollector(MetricRegistry metricRegistry, long freshnessWindowInMillis) {
+        this(metricRegistry, freshnessWindowInMillis, ParallelMetricCollector.sequential());
+    }
+
+    public RegistrySnapshotCollector(MetricRegistry metricRegistry, long freshnessWindowInMillis, ParallelMetricCollector parallelMetricCollector) {
+        Preconditions.checkNotNull(metricRegistry);
+        Preconditions.checkArgument(freshnessWindowInMillis >= 0, "freshnessWindowInMillis cannot be negative");
+        Preconditions.checkNotNull(parallelMetricCollector);
+
+        this.metricRegistry = metricRegistry;
+        this.freshnessWindowInMillis = freshnessWindowInMillis;
+        this.parallelMetricCollector = parallelMetricCollector;
+        this.inFlightCollection = new AtomicReference<>();
+
+        this.collectionTimer = new Timer();
+        this.gaugeEvaluationTimer = new Timer();
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("collectionTimer", collectionTimer);
+        metricsByNames.put("gaugeEvaluationTimer", gaugeEvaluationTimer);
+        this.metricsByNames = metricsByNames;
+        this.collection = new Callable<RegistrySnapshot>() {
+            @Override
+            public RegistrySnapshot call() throws Exception {
+                long collectionGeneration = generation;
+                Timer.Context collectionTimerContext = collectionTimer.time();
+                RegistrySnapshot snapshot = parallelMetricCollector.collect(RegistrySnapshotCollector.this.metricRegistry);
+                collectionTimerContext.stop();
+                gaugeEvaluationTimer.update(snapshot.getGaugeEvaluationTimeInNanos(), TimeUnit.NANOSECONDS);
+                synchronized (RegistrySnapshotCollector.this) {
+                    // An invalidation during the collection invalidates the result for caching purposes
+                    if (collectionGeneration == generation) {
+                        latestSnapshotCompletionTimeInMillis = System.currentTimeMillis();
+                        latestSnapshot = snapshot;
+                    }
+                }
+                return snapshot;
+            }
+        };
+    }
+
+    /**
+     * Retrieves a registry snapshot, which is not older than the freshness window. If the cached snapshot is stale, a
+     * new one is collected; if another thread is already collecting a snapshot, the current thread waits for it.
+     *
+     * @return a fresh registry snapshot.
+     */
+    public RegistrySnapshot getSnapshot() {
+        while (true) {
+            RegistrySnapshot snapshot = latestSnapshot;
+            if (snapshot != null && System.currentTimeMillis() - latestSnapshotCompletionTimeInMillis <= freshnessWindowInMillis) {
+                return snapshot;
+            }
+
+            FutureTask<RegistrySnapshot> collectionTask = inFlightCollection.get();
+            if (collectionTask == null) {
+                FutureTask<RegistrySnapshot> newCollectionTask = new FutureTask<>(collection);
+                if (!inFlightCollection.compareAndSet(null, newCollectionTask)) {
+                    continue;
+                }
+
+                try {
+                    newCollectionTask.run();
+                } finally {
+                    inFlightCollection.compareAndSet(newCollectionTask, null);
+                }
+                collectionTask = newCollectionTask;
+            }
+
+            try {
+                return collectionTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return parallelMetricCollector.collect(metricRegistry);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the most recent registry snapshot, regardless of its age, without triggering a collection.
+     *
+     * @return the most recent snapshot or <tt>null</tt> if no snapshot has been collected yet.
+     */
+    public RegistrySnapshot getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    /**
+     * Retrieves the cached registry snapshot if it is still within the freshness window, without triggering a
+     * collection.
+     *
+     * @return a fresh registry snapshot or <tt>null</tt> if there is none.
+     */
+    public RegistrySnapshot getCachedSnapshot() {
+        RegistrySnapshot snapshot = latestSnapshot;
+        if (snapshot != null && System.currentTimeMillis() - latestSnapshotCompletionTimeInMillis <= freshnessWindowInMillis) {
+            return snapshot;
+        }
+        return null;
+    }
+
+    public long getFreshnessWindowInMillis() {
+        return freshnessWindowInMillis;
+    }
+
+    public void setFreshnessWindowInMillis(long freshnessWindowInMillis) {
+        Preconditions.checkArgument(freshnessWindowInMillis >= 0, "freshnessWindowInMillis cannot be negative");
+        this.freshnessWindowInMillis = freshnessWindowInMillis;
+    }
+
+    public ParallelMetricCollector getParallelMetricCollector() {
+        return parallelMetricCollector;
+    }
+
+    /**
+     * Replaces the collector used to freeze the registry. The replaced collector is not shut down by this method.
+     *
+     * @param parallelMetricCollector a collector to freeze the registry with.
+     */
+    public void setParallelMetricCollector(ParallelMetricCollector parallelMetricCollector) {
+        Preconditions.checkNotNull(parallelMetricCollector);
+        this.parallelMetricCollector = parallelMetricCollector;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Discards the cached snapshot, forcing the next request to collect a new one.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        latestSnapshot = null;
+    }
+
+    /**
+     * Releases the cached snapshot.
+     */
+    public void close() {
+        latestSnapshot = null;
+    }
+}
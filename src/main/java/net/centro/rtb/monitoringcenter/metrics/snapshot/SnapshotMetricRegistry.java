@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.metrics.forwarding.ForwardingReadOnlyCounter;
+import net.centro.rtb.monitoringcenter.metrics.forwarding.ForwardingReadOnlyHistogram;
+import net.centro.rtb.monitoringcenter.metrics.forwarding.ForwardingReadOnlyMeter;
+import net.centro.rtb.monitoringcenter.metrics.forwarding.ForwardingReadOnlyTimer;
+import net.centro.rtb.monitoringcenter.metrics.forwarding.MetricProvider;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A read-only view of a {@link MetricRegistry}, which serves metric values from registry snapshots. This class allows
+ * Dropwizard's reporters to share a single {@link RegistrySnapshot} per reporting cycle.
+ *
+ * <ul>
+ *     <li>Scheduled reporters (e.g., GraphiteReporter or Slf4jReporter) call the filtered getters, such as
+ *     {@link #getTimers(MetricFilter)}; these return the frozen metrics of a single snapshot.</li>
+ *     <li>Listener-based reporters (e.g., JmxReporter) are notified about read-only metrics, which mirror the metrics
+ *     of the source registry. These read their values from the cached snapshot, as long as it is within the freshness
+ *     window; they never trigger a collection. Metrics read without a fresh snapshot, or not yet present in it, are
+ *     read live.</li>
+ * </ul>
+ *
+ * <p>
+ *     Metrics cannot be registered or removed via this class; use the source registry instead.
+ * </p>
+ */
+public class SnapshotMetricRegistry extends MetricRegistry {
+    private final MetricRegistry sourceMetricRegistry;
+    private final RegistrySnapshotCollector registrySnapshotCollector;
+    private final MetricRegistryListener mirroringListener;
+
+    public SnapshotMetricRegistry(MetricRegistry sourceMetricRegistry, RegistrySnapshotCollector registrySnapshotCollector) {
+        Preconditions.checkNotNull(sourceMetricRegistry);
+        Preconditions.checkNotNull(registrySnapshotCollector);
+
+        this.sourceMetricRegistry = sourceMetricRegistry;
+        this.registrySnapshotCollector = registrySnapshotCollector;
+        this.mirroringListener = new MirroringListener();
+        sourceMetricRegistry.addListener(mirroringListener);
+    }
+
+    /**
+     * Retrieves a registry snapshot, which is not older than the freshness window of the underlying collector.
+     *
+     * @return a registry snapshot.
+     */
+    public RegistrySnapshot getSnapshot() {
+        return registrySnapshotCollector.getSnapshot();
+    }
+
+    /**
+     * Retrieves the cached registry snapshot if it is still within the freshness window, without triggering a
+     * collection.
+     *
+     * @return a fresh registry snapshot or <tt>null</tt> if there is none.
+     */
+    public RegistrySnapshot getCachedSnapshot() {
+        return registrySnapshotCollector.getCachedSnapshot();
+    }
+
+    @Override
+    public SortedSet<String> getNames() {
+        return new TreeSet<>(getSnapshot().getMetrics().keySet());
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return getSnapshot().getMetrics();
+    }
+
+    @Override
+    public SortedMap<String, Gauge> getGauges(MetricFilter filter) {
+        return getSnapshot().getGauges(filter);
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters(MetricFilter filter) {
+        return getSnapshot().getCounters(filter);
+    }
+
+    @Override
+    public SortedMap<String, Histogram> getHistograms(MetricFilter filter) {
+        return getSnapshot().getHistograms(filter);
+    }
+
+    @Override
+    public SortedMap<String, Meter> getMeters(MetricFilter filter) {
+        return getSnapshot().getMeters(filter);
+    }
+
+    @Override
+    public SortedMap<String, Timer> getTimers(MetricFilter filter) {
+        return getSnapshot().getTimers(filter);
+    }
+
+    @Override
+    public <T extends Metric> T register(String name, T metric) throws IllegalArgumentException {
+        throw new UnsupportedOperationException("Operation is not allowed for a snapshot metric registry");
+    }
+
+    @Override
+    public void registerAll(MetricSet metrics) throws IllegalArgumentException {
+        throw new UnsupportedOperationException("Operation is not allowed for a snapshot metric registry");
+    }
+
+    @Override
+    public boolean remove(String name) {
+        throw new UnsupportedOperationException("Operation is not allowed for a snapshot metric registry");
+    }
+
+    @Override
+    public void removeMatching(MetricFilter filter) {
+        throw new UnsupportedOperationException("Operation is not allowed for a snapshot metric registry");
+    }
+
+    /**
+     * Detaches this registry from the source registry.
+     */
+    public void close() {
+        sourceMetricRegistry.removeListener(mirroringListener);
+    }
+
+    private void mirror(String name, Metric metric) {
+        try {
+            super.register(name, metric);
+        } catch (IllegalArgumentException e) {
+            // Already mirrored
+        }
+    }
+
+    private void unmirror(String name) {
+        super.remove(name);
+    }
+
+    private class MirroringListener implements MetricRegistryListener {
+        @Override
+        public void onGaugeAdded(final String name, final Gauge<?> gauge) {
+            mirror(name, new Gauge<Object>() {
+                @Override
+                public Object getValue() {
+                    RegistrySnapshot snapshot = registrySnapshotCollector.getCachedSnapshot();
+                    Gauge frozenGauge = snapshot != null ? snapshot.getGauges().get(name) : null;
+                    return frozenGauge != null ? frozenGauge.getValue() : gauge.getValue();
+                }
+            });
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            unmirror(name);
+        }
+
+        @Override
+        public void onCounterAdded(final String name, final Counter counter) {
+            mirror(name, new ForwardingReadOnlyCounter(new MetricProvider<Counter>() {
+                @Override
+                public Counter get() {
+                    RegistrySnapshot snapshot = registrySnapshotCollector.getCachedSnapshot();
+                    Counter frozenCounter = snapshot != null ? snapshot.getCounters().get(name) : null;
+                    return frozenCounter != null ? frozenCounter : counter;
+                }
+            }));
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            unmirror(name);
+        }
+
+        @Override
+        public void onHistogramAdded(final String name, final Histogram histogram) {
+            mirror(name, new ForwardingReadOnlyHistogram(new MetricProvider<Histogram>() {
+                @Override
+                public Histogram get() {
+                    RegistrySnapshot snapshot = registrySnapshotCollector.getCachedSnapshot();
+                    Histogram frozenHistogram = snapshot != null ? snapshot.getHistograms().get(name) : null;
+                    return frozenHistogram != null ? frozenHistogram : histogram;
+                }
+            }));
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            unmirror(name);
+        }
+
+        @Override
+        public void onMeterAdded(final String name, final Meter meter) {
+            mirror(name, new ForwardingReadOnlyMeter(new MetricProvider<Meter>() {
+                @Override
+                public Meter get() {
+                    RegistrySnapshot snapshot = registrySnapshotCollector.getCachedSnapshot();
+                    Meter frozenMeter = snapshot != null ? snapshot.getMeters().get(name) : null;
+                    return frozenMeter != null ? frozenMeter : meter;
+                }
+            }));
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            unmirror(name);
+        }
+
+        @Override
+        public void onTimerAdded(final String name, final Timer timer) {
+            mirror(name, new ForwardingReadOnlyTimer(new MetricProvider<Timer>() {
+                @Override
+                public Timer get() {
+                    RegistrySnapshot snapshot = registrySnapshotCollector.getCachedSnapshot();
+                    Timer frozenTimer = snapshot != null ? snapshot.getTimers().get(name) : null;
+                    return frozenTimer != null ? frozenTimer : timer;
+                }
+            }));
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            unmirror(name);
+        }
+    }
+}
@@ -22,9 +22,11 @@
 package net.centro.rtb.monitoringcenter.metrics.system;
 
 import com.codahale.metrics.Metric;
-import com.codahale.metrics.MetricSet;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import net.centro.rtb.monitoringcenter.metrics.DynamicMetricSet;
+import net.centro.rtb.monitoringcenter.metrics.NamespacedListener;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
 import net.centro.rtb.monitoringcenter.metrics.system.jvm.JvmMetricSet;
 import net.centro.rtb.monitoringcenter.metrics.system.jvm.JvmStatus;
 import net.centro.rtb.monitoringcenter.metrics.system.os.OperatingSystemMetricSet;
@@ -38,7 +40,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE,
         isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE,
         creatorVisibility = JsonAutoDetect.Visibility.NONE)
-public class SystemMetricSet implements MetricSet, SystemStatus {
+public class SystemMetricSet implements DynamicMetricSet, SystemStatus {
+    private static final String OPERATING_SYSTEM_NAMESPACE = "os";
+    private static final String JVM_NAMESPACE = "jvm";
+
     private OperatingSystemMetricSet operatingSystemMetricSet;
     private JvmMetricSet jvmMetricSet;
 
@@ -46,14 +51,36 @@ public class SystemMetricSet implements MetricSet, SystemStatus {
 
     private AtomicBoolean shutdown;
 
+    /**
+     * Constructs the system metric set, whose operating system and JVM metric sets sample on scheduler threads of their
+     * own. These threads are only stopped by {@link #shutdown()}, which must therefore be called once this metric set
+     * is no longer used.
+     */
     public SystemMetricSet() {
+        this(new OperatingSystemMetricSet(), new JvmMetricSet());
+    }
+
+    /**
+     * Constructs the system metric set.
+     *
+     * @param samplingScheduler the scheduler to sample the operating system and JVM sources on.
+     * @param networkInterfaceSamplingIntervalInSeconds the interval between two samples of the network interface
+     *                                                  counters.
+     * @param deadlockDetectionIntervalInSeconds the interval between two runs of the thread deadlock detection.
+     */
+    public SystemMetricSet(SamplingScheduler samplingScheduler, long networkInterfaceSamplingIntervalInSeconds, long deadlockDetectionIntervalInSeconds) {
+        this(new OperatingSystemMetricSet(samplingScheduler, networkInterfaceSamplingIntervalInSeconds),
+                new JvmMetricSet(samplingScheduler, deadlockDetectionIntervalInSeconds));
+    }
+
+    private SystemMetricSet(OperatingSystemMetricSet operatingSystemMetricSet, JvmMetricSet jvmMetricSet) {
         Map<String, Metric> metricsByNames = new HashMap<>();
 
-        this.operatingSystemMetricSet = new OperatingSystemMetricSet();
-        metricsByNames.put("os", operatingSystemMetricSet);
+        this.operatingSystemMetricSet = operatingSystemMetricSet;
+        metricsByNames.put(OPERATING_SYSTEM_NAMESPACE, operatingSystemMetricSet);
 
-        this.jvmMetricSet = new JvmMetricSet();
-        metricsByNames.put("jvm", jvmMetricSet);
+        this.jvmMetricSet = jvmMetricSet;
+        metricsByNames.put(JVM_NAMESPACE, jvmMetricSet);
 
         this.metricsByNames = metricsByNames;
 
@@ -65,6 +92,18 @@ public class SystemMetricSet implements MetricSet, SystemStatus {
         return Collections.unmodifiableMap(metricsByNames);
     }
 
+    @Override
+    public void addListener(Listener listener) {
+        operatingSystemMetricSet.addListener(new NamespacedListener(OPERATING_SYSTEM_NAMESPACE, listener));
+        jvmMetricSet.addListener(new NamespacedListener(JVM_NAMESPACE, listener));
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        operatingSystemMetricSet.removeListener(new NamespacedListener(OPERATING_SYSTEM_NAMESPACE, listener));
+        jvmMetricSet.removeListener(new NamespacedListener(JVM_NAMESPACE, listener));
+    }
+
     @JsonProperty
     @Override
     public OperatingSystemStatus getOperatingSystemStatus() {
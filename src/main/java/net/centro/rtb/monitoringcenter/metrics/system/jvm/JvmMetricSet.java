@@ -23,10 +23,12 @@ package net.centro.rtb.monitoringcenter.metrics.system.jvm;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
-import com.codahale.metrics.MetricSet;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import net.centro.rtb.monitoringcenter.metrics.DynamicMetricSet;
+import net.centro.rtb.monitoringcenter.metrics.NamespacedListener;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
@@ -39,7 +41,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE,
         isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE,
         creatorVisibility = JsonAutoDetect.Visibility.NONE)
-public class JvmMetricSet implements MetricSet, JvmStatus {
+public class JvmMetricSet implements DynamicMetricSet, JvmStatus {
+    private static final String THREADS_NAMESPACE = "threads";
+    private static final long DEFAULT_DEADLOCK_DETECTION_INTERVAL_IN_SECONDS = 60;
+
     private RuntimeMXBean runtimeMXBean;
 
     private BufferPoolMetricSet bufferPoolMetricSet;
@@ -52,9 +57,34 @@ public class JvmMetricSet implements MetricSet, JvmStatus {
 
     private Map<String, Metric> metricsByNames;
 
+    private SamplingScheduler samplingScheduler;
+    private boolean ownsSamplingScheduler;
+
     private AtomicBoolean shutdown;
 
+    /**
+     * Constructs the JVM metric set, which runs the thread pool discovery and the deadlock detection on a daemon
+     * scheduler thread of its own. That thread is only stopped by {@link #shutdown()}, which must therefore be called
+     * once this metric set is no longer used.
+     */
     public JvmMetricSet() {
+        this(new SamplingScheduler("JvmMetricSet"), DEFAULT_DEADLOCK_DETECTION_INTERVAL_IN_SECONDS, true);
+    }
+
+    /**
+     * Constructs the JVM metric set.
+     *
+     * @param samplingScheduler the scheduler to run the thread pool discovery and the deadlock detection on.
+     * @param deadlockDetectionIntervalInSeconds the interval between two runs of the thread deadlock detection.
+     */
+    public JvmMetricSet(SamplingScheduler samplingScheduler, long deadlockDetectionIntervalInSeconds) {
+        this(samplingScheduler, deadlockDetectionIntervalInSeconds, false);
+    }
+
+    private JvmMetricSet(SamplingScheduler samplingScheduler, long deadlockDetectionIntervalInSeconds, boolean ownsSamplingScheduler) {
+        this.samplingScheduler = samplingScheduler;
+        this.ownsSamplingScheduler = ownsSamplingScheduler;
+
         this.runtimeMXBean = ManagementFactory.getRuntimeMXBean();
 
         Map<String, Metric> metricsByNames = new HashMap<>();
@@ -65,8 +95,8 @@ public class JvmMetricSet implements MetricSet, JvmStatus {
         this.classLoadingMetricSet = new ClassLoadingMetricSet();
         metricsByNames.put("classes", classLoadingMetricSet);
 
-        this.threadMetricSet = new ThreadMetricSet();
-        metricsByNames.put("threads", threadMetricSet);
+        this.threadMetricSet = new ThreadMetricSet(samplingScheduler, deadlockDetectionIntervalInSeconds);
+        metricsByNames.put(THREADS_NAMESPACE, threadMetricSet);
 
         this.memoryMetricSet = new JvmMemoryMetricSet();
         metricsByNames.put("memory", memoryMetricSet);
@@ -92,6 +122,16 @@ public class JvmMetricSet implements MetricSet, JvmStatus {
         return Collections.unmodifiableMap(metricsByNames);
     }
 
+    @Override
+    public void addListener(Listener listener) {
+        threadMetricSet.addListener(new NamespacedListener(THREADS_NAMESPACE, listener));
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        threadMetricSet.removeListener(new NamespacedListener(THREADS_NAMESPACE, listener));
+    }
+
     @JsonProperty
     @Override
     public List<BufferPoolStatus> getBufferPoolStatuses() {
@@ -146,6 +186,12 @@ public class JvmMetricSet implements MetricSet, JvmStatus {
         return threadMetricSet.getThreadsGaugesByThreadStates();
     }
 
+    @JsonProperty
+    @Override
+    public Map<String, Gauge<Integer>> getThreadsGaugesByPoolNames() {
+        return threadMetricSet.getThreadsGaugesByPoolNames();
+    }
+
     @JsonProperty
     @Override
     public MemoryUsageStatus getTotalMemoryUsageStatus() {
@@ -200,11 +246,20 @@ public class JvmMetricSet implements MetricSet, JvmStatus {
         return uptimeInMillisGauge;
     }
 
+    /**
+     * Shuts this metric set down, stopping the scheduler it has been constructed with, unless that scheduler was
+     * given by the caller.
+     */
     public void shutdown() {
         if (shutdown.getAndSet(true)) {
             return;
         }
 
         gcMetricSet.shutdown();
+        threadMetricSet.shutdown();
+
+        if (ownsSamplingScheduler) {
+            samplingScheduler.shutdown();
+        }
     }
 }
@@ -28,6 +28,7 @@ import java.lang.management.ClassLoadingMXBean;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.lang.management.ThreadMXBean;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -86,7 +87,8 @@ public interface JvmStatus {
     Gauge<Integer> getDaemonThreadsGauge();
 
     /**
-     * Retrieves the number of threads that are currently deadlocked.
+     * Retrieves the number of threads that were deadlocked as of the last run of the deadlock detection, which runs
+     * in the background at a configurable interval.
      *
      * @see ThreadMXBean#findDeadlockedThreads()
      * @return a gauge holding the number of threads that are currently deadlocked.
@@ -100,6 +102,17 @@ public interface JvmStatus {
      */
     Map<Thread.State, Gauge<Integer>> getThreadsGaugesByThreadStates();
 
+    /**
+     * Retrieves current thread counts by thread pools. The pool of a thread is derived from its name by stripping the
+     * trailing sequence number; thus, "pool-1-thread-1" and "pool-1-thread-2" belong to the same pool.
+     *
+     * @return a map of gauges holding current thread counts by thread pool names; empty by default, for implementations
+     * predating this method.
+     */
+    default Map<String, Gauge<Integer>> getThreadsGaugesByPoolNames() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Retrieves a list of buffer pool statuses. An empty list is returned if no buffer pool data is available.
      *
@@ -23,36 +23,82 @@ package net.centro.rtb.monitoringcenter.metrics.system.jvm;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
-import com.codahale.metrics.MetricSet;
 import com.codahale.metrics.jvm.ThreadDeadlockDetector;
 import com.google.common.base.CaseFormat;
+import net.centro.rtb.monitoringcenter.metrics.DynamicMetricSet;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * This metric set exposes the thread counts of the JVM. The counts by thread states and by thread pools are computed
+ * from a shared snapshot of all threads, which is taken at most once per second; thus, reading all of these gauges
+ * within a report walks the threads only once. The thread pools are derived from the thread names by stripping the
+ * trailing sequence numbers (e.g., "pool-3-thread-7" belongs to "pool-3-thread"), and their gauges are added and
+ * removed as the pools come and go. The deadlock detection runs in the background at a configurable interval.
+ */
+class ThreadMetricSet implements DynamicMetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadMetricSet.class);
 
-class ThreadMetricSet implements MetricSet {
     private final static int STACK_TRACE_DEPTH = 0;
+    private static final long THREAD_SNAPSHOT_FRESHNESS_WINDOW_IN_MILLIS = 1000;
+    private static final long POOL_DISCOVERY_INTERVAL_IN_SECONDS = 10;
+    private static final int MAX_POOLS = 200;
+    private static final String POOLS_NAMESPACE = "pools";
+    private static final Pattern THREAD_SEQUENCE_NUMBER_PATTERN = Pattern.compile("[\\s\\-_#.:\\d]+$");
+    private static final String UNNAMED_POOL_NAME = "unnamed";
+
+    private static class ThreadSnapshot {
+        private final long timeInMillis;
+        private final int[] threadCountsByThreadStates;
+        private final Map<String, Integer> threadCountsByPoolNames;
+
+        private ThreadSnapshot(long timeInMillis, int[] threadCountsByThreadStates, Map<String, Integer> threadCountsByPoolNames) {
+            this.timeInMillis = timeInMillis;
+            this.threadCountsByThreadStates = threadCountsByThreadStates;
+            this.threadCountsByPoolNames = threadCountsByPoolNames;
+        }
+    }
 
     private ThreadMXBean threadMXBean;
     private ThreadDeadlockDetector deadlockDetector;
 
+    private volatile ThreadSnapshot threadSnapshot;
+    private volatile int deadlockedThreadCount;
+    private SamplingScheduler.Registration deadlockDetectionRegistration;
+    private SamplingScheduler.Registration poolDiscoveryRegistration;
+
     private Gauge<Integer> currentThreadsGauge;
     private Gauge<Integer> peakThreadsGauge;
     private Gauge<Integer> daemonThreadsGauge;
     private Gauge<Integer> deadlockedThreadsGauge;
     private Map<Thread.State, Gauge<Integer>> threadsGaugesByThreadStates;
+    private Map<String, Gauge<Integer>> threadsGaugesByPoolNames;
 
     private Map<String, Metric> metricsByNames;
+    private List<Listener> listeners;
 
-    ThreadMetricSet() {
+    ThreadMetricSet(SamplingScheduler samplingScheduler, long deadlockDetectionIntervalInSeconds) {
         this.threadMXBean = ManagementFactory.getThreadMXBean();
         this.deadlockDetector = new ThreadDeadlockDetector();
 
-        Map<String, Metric> metricsByNames = new HashMap<>();
+        Map<String, Metric> metricsByNames = new ConcurrentHashMap<>();
 
         this.currentThreadsGauge = new Gauge<Integer>() {
             @Override
@@ -73,7 +119,7 @@ class ThreadMetricSet implements MetricSet {
         this.daemonThreadsGauge = new Gauge<Integer>() {
             @Override
             public Integer getValue() {
-                return threadMXBean.getPeakThreadCount();
+                return threadMXBean.getDaemonThreadCount();
             }
         };
         metricsByNames.put("daemons", daemonThreadsGauge);
@@ -81,7 +127,7 @@ class ThreadMetricSet implements MetricSet {
         this.deadlockedThreadsGauge = new Gauge<Integer>() {
             @Override
             public Integer getValue() {
-                return deadlockDetector.getDeadlockedThreads().size();
+                return deadlockedThreadCount;
             }
         };
         metricsByNames.put("deadlocked", deadlockedThreadsGauge);
@@ -93,15 +139,32 @@ class ThreadMetricSet implements MetricSet {
             Gauge<Integer> threadsGauge = new Gauge<Integer>() {
                 @Override
                 public Integer getValue() {
-                    return getThreadCount(state);
+                    return getThreadSnapshot().threadCountsByThreadStates[state.ordinal()];
                 }
             };
             threadsGaugesByThreadStates.put(state, threadsGauge);
             metricsByNames.put(metricName, threadsGauge);
         }
         this.threadsGaugesByThreadStates = threadsGaugesByThreadStates;
+        this.threadsGaugesByPoolNames = new ConcurrentSkipListMap<>();
 
         this.metricsByNames = metricsByNames;
+        this.listeners = new CopyOnWriteArrayList<>();
+
+        updatePools();
+
+        this.deadlockDetectionRegistration = samplingScheduler.schedule("jvm.deadlocks", deadlockDetectionIntervalInSeconds, TimeUnit.SECONDS, new Runnable() {
+            @Override
+            public void run() {
+                deadlockedThreadCount = deadlockDetector.getDeadlockedThreads().size();
+            }
+        });
+        this.poolDiscoveryRegistration = samplingScheduler.schedule("jvm.threadPools", POOL_DISCOVERY_INTERVAL_IN_SECONDS, TimeUnit.SECONDS, new Runnable() {
+            @Override
+            public void run() {
+                updatePools();
+            }
+        });
     }
 
     @Override
@@ -109,6 +172,16 @@ class ThreadMetricSet implements MetricSet {
         return Collections.unmodifiableMap(metricsByNames);
     }
 
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
     Gauge<Integer> getDeadlockedThreadsGauge() {
         return deadlockedThreadsGauge;
     }
@@ -129,14 +202,104 @@ class ThreadMetricSet implements MetricSet {
         return Collections.unmodifiableMap(threadsGaugesByThreadStates);
     }
 
-    private int getThreadCount(Thread.State state) {
-        final ThreadInfo[] allThreads = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), STACK_TRACE_DEPTH);
-        int count = 0;
-        for (ThreadInfo info : allThreads) {
-            if (info != null && info.getThreadState() == state) {
-                count++;
+    Map<String, Gauge<Integer>> getThreadsGaugesByPoolNames() {
+        return Collections.unmodifiableMap(threadsGaugesByPoolNames);
+    }
+
+    void shutdown() {
+        deadlockDetectionRegistration.cancel();
+        poolDiscoveryRegistration.cancel();
+    }
+
+    /**
+     * Derives the name of the pool of a thread by stripping the trailing sequence number from the thread name.
+     *
+     * @param threadName the name of a thread.
+     * @return the name of the pool, sanitized for use in a metric name.
+     */
+    static String getPoolName(String threadName) {
+        String poolName = MetricNamingUtil.sanitize(THREAD_SEQUENCE_NUMBER_PATTERN.matcher(StringUtils.defaultString(threadName)).replaceFirst(""));
+        return StringUtils.isBlank(poolName) ? UNNAMED_POOL_NAME : poolName;
+    }
+
+    /**
+     * Retrieves the shared thread snapshot, taking a new one if the current one is older than the freshness window.
+     */
+    private ThreadSnapshot getThreadSnapshot() {
+        return getThreadSnapshot(THREAD_SNAPSHOT_FRESHNESS_WINDOW_IN_MILLIS);
+    }
+
+    private synchronized ThreadSnapshot getThreadSnapshot(long freshnessWindowInMillis) {
+        ThreadSnapshot threadSnapshot = this.threadSnapshot;
+        long now = System.currentTimeMillis();
+        if (threadSnapshot != null && now - threadSnapshot.timeInMillis <= freshnessWindowInMillis) {
+            return threadSnapshot;
+        }
+
+        int[] threadCountsByThreadStates = new int[Thread.State.values().length];
+        Map<String, Integer> threadCountsByPoolNames = new HashMap<>();
+        for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), STACK_TRACE_DEPTH)) {
+            if (threadInfo == null) {   // The thread has terminated in the meantime
+                continue;
+            }
+
+            threadCountsByThreadStates[threadInfo.getThreadState().ordinal()]++;
+
+            String poolName = getPoolName(threadInfo.getThreadName());
+            Integer threadCount = threadCountsByPoolNames.get(poolName);
+            threadCountsByPoolNames.put(poolName, threadCount == null ? 1 : threadCount + 1);
+        }
+
+        threadSnapshot = new ThreadSnapshot(now, threadCountsByThreadStates, threadCountsByPoolNames);
+        this.threadSnapshot = threadSnapshot;
+        return threadSnapshot;
+    }
+
+    /**
+     * Adds the gauges for the thread pools, which appeared since the last run, and removes the gauges for the ones,
+     * which disappeared. A recent snapshot (e.g., one taken for a report) is reused. The listeners are notified
+     * outside of the snapshot lock, so that gauge reads never call into the registry.
+     */
+    private void updatePools() {
+        Map<String, Integer> threadCountsByPoolNames = getThreadSnapshot(TimeUnit.SECONDS.toMillis(POOL_DISCOVERY_INTERVAL_IN_SECONDS)).threadCountsByPoolNames;
+
+        for (final String poolName : threadCountsByPoolNames.keySet()) {
+            if (threadsGaugesByPoolNames.containsKey(poolName)) {
+                continue;
+            }
+            if (threadsGaugesByPoolNames.size() >= MAX_POOLS) {
+                logger.debug("Not tracking thread pool {}, as {} thread pools are tracked already", poolName, MAX_POOLS);
+                continue;
+            }
+
+            Gauge<Integer> threadsGauge = new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    Integer threadCount = getThreadSnapshot().threadCountsByPoolNames.get(poolName);
+                    return threadCount != null ? threadCount : 0;
+                }
+            };
+            threadsGaugesByPoolNames.put(poolName, threadsGauge);
+
+            String metricName = MetricNamingUtil.join(POOLS_NAMESPACE, poolName, "count");
+            metricsByNames.put(metricName, threadsGauge);
+            for (Listener listener : listeners) {
+                listener.onMetricAdded(metricName, threadsGauge);
+            }
+        }
+
+        for (String poolName : new ArrayList<>(threadsGaugesByPoolNames.keySet())) {
+            if (threadCountsByPoolNames.containsKey(poolName)) {
+                continue;
+            }
+
+            threadsGaugesByPoolNames.remove(poolName);
+
+            String metricName = MetricNamingUtil.join(POOLS_NAMESPACE, poolName, "count");
+            metricsByNames.remove(metricName);
+            for (Listener listener : listeners) {
+                listener.onMetricRemoved(metricName);
             }
         }
-        return count;
     }
 }
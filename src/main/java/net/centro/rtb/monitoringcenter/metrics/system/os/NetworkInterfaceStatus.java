@@ -24,8 +24,9 @@ package net.centro.rtb.monitoringcenter.metrics.system.os;
 import com.codahale.metrics.Gauge;
 
 /**
- * This interface holds the current readings for network interface usage. All metrics exposed by this class are
- * immutable by the client.
+ * This interface holds the current readings for network interface usage. The readings are per-second rates computed
+ * from the deltas of the interface counters in <tt>/proc/net/dev</tt> between two successive samples. All metrics
+ * exposed by this class are immutable by the client.
  */
 public interface NetworkInterfaceStatus {
     /**
@@ -48,4 +49,64 @@ public interface NetworkInterfaceStatus {
      * @return a gauge holding the current number of transmitted bytes per second; <tt>null</tt> if not available.
      */
     Gauge<Long> getTransmittedBytesPerSecondGauge();
+
+    /**
+     * Retrieves the current number of received packets per second.
+     *
+     * @return a gauge holding the current number of received packets per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getReceivedPacketsPerSecondGauge() {
+        return null;
+    }
+
+    /**
+     * Retrieves the current number of transmitted packets per second.
+     *
+     * @return a gauge holding the current number of transmitted packets per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getTransmittedPacketsPerSecondGauge() {
+        return null;
+    }
+
+    /**
+     * Retrieves the current number of receive errors per second.
+     *
+     * @return a gauge holding the current number of receive errors per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getReceiveErrorsPerSecondGauge() {
+        return null;
+    }
+
+    /**
+     * Retrieves the current number of transmit errors per second.
+     *
+     * @return a gauge holding the current number of transmit errors per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getTransmitErrorsPerSecondGauge() {
+        return null;
+    }
+
+    /**
+     * Retrieves the current number of dropped received packets per second.
+     *
+     * @return a gauge holding the current number of dropped received packets per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getReceiveDropsPerSecondGauge() {
+        return null;
+    }
+
+    /**
+     * Retrieves the current number of dropped transmitted packets per second.
+     *
+     * @return a gauge holding the current number of dropped transmitted packets per second; <tt>null</tt> if not
+     * available, which is the default for implementations predating this method.
+     */
+    default Gauge<Long> getTransmitDropsPerSecondGauge() {
+        return null;
+    }
 }
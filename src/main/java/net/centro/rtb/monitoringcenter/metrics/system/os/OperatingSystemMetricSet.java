@@ -23,21 +23,17 @@ package net.centro.rtb.monitoringcenter.metrics.system.os;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
-import com.codahale.metrics.MetricSet;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.management.UnixOperatingSystemMXBean;
+import net.centro.rtb.monitoringcenter.metrics.DynamicMetricSet;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
 import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.util.ArrayList;
@@ -45,25 +41,20 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE,
         isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE,
         creatorVisibility = JsonAutoDetect.Visibility.NONE)
-public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatus {
-    private static class NetworkInterfaceUsage {
-        private final long receivedBytesPerSecond;
-        private final long transmittedBytesPerSecond;
-
-        public NetworkInterfaceUsage(long receivedBytesPerSecond, long transmittedBytesPerSecond) {
-            this.receivedBytesPerSecond = receivedBytesPerSecond;
-            this.transmittedBytesPerSecond = transmittedBytesPerSecond;
-        }
-    }
+public class OperatingSystemMetricSet implements DynamicMetricSet, OperatingSystemStatus {
+    private static final String NETWORK_INTERFACES_NAMESPACE = "networkInterfaces";
+    private static final long DEFAULT_NETWORK_INTERFACE_SAMPLING_INTERVAL_IN_SECONDS = 10;
+    private static final long CPU_SAMPLING_INTERVAL_IN_SECONDS = 5;
 
     private static final Logger logger = LoggerFactory.getLogger(OperatingSystemMetricSet.class);
 
@@ -71,10 +62,11 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
 
     private File rootFilePath;
 
-    private ScheduledExecutorService ioWaitUpdaterExecutorService;
-    private ScheduledExecutorService networkInterfaceUsageUpdaterExecutorService;
-    private AtomicReference<Double> ioWaitPercentageHolder;
-    private AtomicReference<Map<String, NetworkInterfaceUsage>> networkInterfaceUsageByNetworkInterfaceNameHolder;
+    private ProcStatCpuSampler procStatCpuSampler;
+    private SamplingScheduler.Registration cpuSamplingRegistration;
+    private ProcNetDevSampler procNetDevSampler;
+    private SamplingScheduler.Registration networkInterfaceSamplingRegistration;
+    private SamplingScheduler ownedSamplingScheduler;
 
     private Gauge<Integer> availableLogicalProcessorsGauge;
     private Gauge<Double> systemLoadAverageGauge;
@@ -100,52 +92,53 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
 
     private Gauge<Double> ioWaitPercentageGauge;
 
-    private List<NetworkInterfaceStatus> networkInterfaceStatuses;
+    private Map<String, NetworkInterfaceStatus> networkInterfaceStatusesByNames;
 
     private Map<String, Metric> metricsByNames;
+    private List<Listener> listeners;
 
     private AtomicBoolean shutdown;
 
+    /**
+     * Constructs the operating system metric set, which samples its sources on a scheduler of its own.
+     */
     public OperatingSystemMetricSet() {
+        this(new SamplingScheduler("OperatingSystemMetricSet"), DEFAULT_NETWORK_INTERFACE_SAMPLING_INTERVAL_IN_SECONDS, true);
+    }
+
+    /**
+     * Constructs the operating system metric set. The CPU time counters and the network interface counters are sampled
+     * on the given scheduler, as the "os.cpu" and "os.networkInterfaces" sources.
+     *
+     * @param samplingScheduler the scheduler to sample the sources on.
+     * @param networkInterfaceSamplingIntervalInSeconds the interval between two samples of the network interface
+     *                                                  counters.
+     */
+    public OperatingSystemMetricSet(SamplingScheduler samplingScheduler, long networkInterfaceSamplingIntervalInSeconds) {
+        this(samplingScheduler, networkInterfaceSamplingIntervalInSeconds, false);
+    }
+
+    private OperatingSystemMetricSet(SamplingScheduler samplingScheduler, long networkInterfaceSamplingIntervalInSeconds, boolean ownsSamplingScheduler) {
+        this.ownedSamplingScheduler = ownsSamplingScheduler ? samplingScheduler : null;
         this.operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
         this.rootFilePath = new File("/");
 
-        // Set up iowait retrieval job if needed
-        Double ioWaitPercentage = fetchIoWaitPercentage();
-        if (ioWaitPercentage != null) {
-            this.ioWaitPercentageHolder = new AtomicReference<>(ioWaitPercentage);
-
-            this.ioWaitUpdaterExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("OperatingSystemMetricSet-IOWaitUpdater-%d").build());
-            this.ioWaitUpdaterExecutorService.scheduleWithFixedDelay(new Runnable() {
-                @Override
-                public void run() {
-                    Double ioWaitPercentage = fetchIoWaitPercentage();
-                    if (ioWaitPercentage != null) {
-                        ioWaitPercentageHolder.set(ioWaitPercentage);
-                    }
-                }
-            }, 5, 5, TimeUnit.SECONDS);
+        // Set up CPU usage sampling if needed (Linux only)
+        if (SystemUtils.IS_OS_LINUX) {
+            this.procStatCpuSampler = ProcStatCpuSampler.create();
         }
-
-        // Set up network interface usage retrieval job if needed
-        Map<String, NetworkInterfaceUsage> networkInterfaceUsageByNetworkInterfaceName = fetchNetworkInterfaceUsage();
-        if (networkInterfaceUsageByNetworkInterfaceName != null) {
-            this.networkInterfaceUsageByNetworkInterfaceNameHolder = new AtomicReference<>(networkInterfaceUsageByNetworkInterfaceName);
-
-            this.networkInterfaceUsageUpdaterExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("OperatingSystemMetricSet-NICUsageUpdater-%d").build());
-            this.networkInterfaceUsageUpdaterExecutorService.scheduleWithFixedDelay(new Runnable() {
+        if (procStatCpuSampler != null) {
+            this.cpuSamplingRegistration = samplingScheduler.schedule("os.cpu", CPU_SAMPLING_INTERVAL_IN_SECONDS, TimeUnit.SECONDS, new Runnable() {
                 @Override
                 public void run() {
-                    Map<String, NetworkInterfaceUsage> networkInterfaceUsageByNetworkInterfaceName = fetchNetworkInterfaceUsage();
-                    if (networkInterfaceUsageByNetworkInterfaceName != null) {
-                        networkInterfaceUsageByNetworkInterfaceNameHolder.set(networkInterfaceUsageByNetworkInterfaceName);
-                    }
+                    procStatCpuSampler.sample();
                 }
-            }, 10, 10, TimeUnit.SECONDS);
+            });
         }
 
         // ----- Init and assign metrics -----
-        this.metricsByNames = new HashMap<>();
+        this.metricsByNames = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
 
         // Available everywhere
         this.availableLogicalProcessorsGauge = new Gauge<Integer>() {
@@ -345,72 +338,40 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
             metricsByNames.put(MetricNamingUtil.join(diskSpaceNamespace, "usedPercentage"), usedDiskSpacePercentageGauge);
         }
 
-        // CPU IO Wait
-        if (ioWaitPercentageHolder != null) {
-            this.ioWaitPercentageGauge = new Gauge<Double>() {
-                @Override
-                public Double getValue() {
-                    return ioWaitPercentageHolder.get();
-                }
-            };
-            metricsByNames.put("ioWaitPercentage", ioWaitPercentageGauge);
-        }
-
-        // Network interfaces
-        List<NetworkInterfaceStatus> networkInterfaceStatuses = new ArrayList<>();
-        if (networkInterfaceUsageByNetworkInterfaceName != null) {
-            for (final String name : networkInterfaceUsageByNetworkInterfaceName.keySet()) {
-                final String networkInterfaceNamespace = MetricNamingUtil.join("networkInterfaces", MetricNamingUtil.sanitize(name));
-
-                final Gauge<Long> receivedBytesPerSecondGauge = new Gauge<Long>() {
-                    @Override
-                    public Long getValue() {
-                        Map<String, NetworkInterfaceUsage> networkInterfaceUsageByNetworkInterfaceName = networkInterfaceUsageByNetworkInterfaceNameHolder.get();
-                        if (networkInterfaceUsageByNetworkInterfaceName != null) {
-                            NetworkInterfaceUsage networkInterfaceUsage = networkInterfaceUsageByNetworkInterfaceName.get(name);
-                            if (networkInterfaceUsage != null) {
-                                return networkInterfaceUsage.receivedBytesPerSecond;
-                            }
-                        }
-                        return 0L;
-                    }
-                };
-                metricsByNames.put(MetricNamingUtil.join(networkInterfaceNamespace, "receivedBytesPerSecond"), receivedBytesPerSecondGauge);
+        // CPU time breakdown
+        if (procStatCpuSampler != null) {
+            String cpuNamespace = "cpu";
 
-                final Gauge<Long> transmittedBytesPerSecondGauge = new Gauge<Long>() {
-                    @Override
-                    public Long getValue() {
-                        Map<String, NetworkInterfaceUsage> networkInterfaceUsageByNetworkInterfaceName = networkInterfaceUsageByNetworkInterfaceNameHolder.get();
-                        if (networkInterfaceUsageByNetworkInterfaceName != null) {
-                            NetworkInterfaceUsage networkInterfaceUsage = networkInterfaceUsageByNetworkInterfaceName.get(name);
-                            if (networkInterfaceUsage != null) {
-                                return networkInterfaceUsage.transmittedBytesPerSecond;
-                            }
-                        }
-                        return 0L;
-                    }
-                };
-                metricsByNames.put(MetricNamingUtil.join(networkInterfaceNamespace, "transmittedBytesPerSecond"), transmittedBytesPerSecondGauge);
+            this.ioWaitPercentageGauge = createCpuStatePercentageGauge(ProcStatCpuSampler.IO_WAIT);
+            metricsByNames.put("ioWaitPercentage", ioWaitPercentageGauge);
 
-                networkInterfaceStatuses.add(new NetworkInterfaceStatus() {
-                    @Override
-                    public String getName() {
-                        return name;
-                    }
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "userPercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.USER));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "nicePercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.NICE));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "systemPercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.SYSTEM));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "idlePercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.IDLE));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "ioWaitPercentage"), ioWaitPercentageGauge);
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "irqPercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.IRQ));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "softIrqPercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.SOFT_IRQ));
+            metricsByNames.put(MetricNamingUtil.join(cpuNamespace, "stealPercentage"), createCpuStatePercentageGauge(ProcStatCpuSampler.STEAL));
+        }
 
-                    @Override
-                    public Gauge<Long> getReceivedBytesPerSecondGauge() {
-                        return receivedBytesPerSecondGauge;
-                    }
+        // Network interfaces (Linux only); the interfaces are rediscovered on every sample
+        this.networkInterfaceStatusesByNames = new ConcurrentSkipListMap<>();
+        if (SystemUtils.IS_OS_LINUX) {
+            this.procNetDevSampler = ProcNetDevSampler.create();
+        }
+        if (procNetDevSampler != null) {
+            updateNetworkInterfaces();
 
-                    @Override
-                    public Gauge<Long> getTransmittedBytesPerSecondGauge() {
-                        return transmittedBytesPerSecondGauge;
+            this.networkInterfaceSamplingRegistration = samplingScheduler.schedule("os.networkInterfaces", networkInterfaceSamplingIntervalInSeconds, TimeUnit.SECONDS, new Runnable() {
+                @Override
+                public void run() {
+                    if (procNetDevSampler.sample()) {
+                        updateNetworkInterfaces();
                     }
-                });
-            }
+                }
+            });
         }
-        this.networkInterfaceStatuses = networkInterfaceStatuses;
 
         this.shutdown = new AtomicBoolean(false);
     }
@@ -420,6 +381,16 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
         return Collections.unmodifiableMap(metricsByNames);
     }
 
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
     @JsonProperty
     @Override
     public Gauge<Integer> getAvailableLogicalProcessorsGauge() {
@@ -537,7 +508,7 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
     @JsonProperty
     @Override
     public List<NetworkInterfaceStatus> getNetworkInterfaceStatuses() {
-        return Collections.unmodifiableList(networkInterfaceStatuses);
+        return Collections.unmodifiableList(new ArrayList<>(networkInterfaceStatusesByNames.values()));
     }
 
     public void shutdown() {
@@ -545,150 +516,156 @@ public class OperatingSystemMetricSet implements MetricSet, OperatingSystemStatu
             return;
         }
 
-        if (ioWaitUpdaterExecutorService != null) {
-            MoreExecutors.shutdownAndAwaitTermination(ioWaitUpdaterExecutorService, 1, TimeUnit.SECONDS);
+        // Cancelling waits for a sample in progress, so the samplers can be closed safely
+        if (cpuSamplingRegistration != null) {
+            cpuSamplingRegistration.cancel();
+            procStatCpuSampler.close();
         }
 
-        if (networkInterfaceUsageUpdaterExecutorService != null) {
-            MoreExecutors.shutdownAndAwaitTermination(networkInterfaceUsageUpdaterExecutorService, 1, TimeUnit.SECONDS);
+        if (networkInterfaceSamplingRegistration != null) {
+            networkInterfaceSamplingRegistration.cancel();
+            procNetDevSampler.close();
         }
-    }
 
-    private static Double fetchIoWaitPercentage() {
-        // Only Linux is supported
-        if (!SystemUtils.IS_OS_LINUX) {
-            return null;
+        if (ownedSamplingScheduler != null) {
+            ownedSamplingScheduler.shutdown();
         }
+    }
 
-        try {
-            // Take the second sample from iostat, as the first one is a static value acquired at the machine start-up
-            Process process = Runtime.getRuntime().exec(new String[] {"bash", "-c", "iostat -c 1 2 | awk '/^ /{print $4}'"});
-
-            BufferedReader errorStream = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            BufferedReader resultStream = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-            List<String> outputLines = new ArrayList<>();
-            String line = null;
-            while ((line = resultStream.readLine()) != null) {
-                outputLines.add(line);
+    private Gauge<Double> createCpuStatePercentageGauge(final int state) {
+        return new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return procStatCpuSampler.getPercentage(state);
             }
+        };
+    }
 
-            boolean error = false;
-            while (errorStream.readLine() != null) {
-                error = true;
-            }
+    /**
+     * Adds the metrics for the network interfaces, which appeared in the latest sample, and removes the metrics for
+     * the ones, which disappeared. The listeners are notified of both.
+     */
+    private synchronized void updateNetworkInterfaces() {
+        Set<String> names = procNetDevSampler.getNetworkInterfaceNames();
 
-            errorStream.close();
-            resultStream.close();
+        for (String name : names) {
+            if (!networkInterfaceStatusesByNames.containsKey(name)) {
+                addNetworkInterface(name);
+            }
+        }
 
-            try {
-                int result = process.waitFor();
-                if (result != 0) {
-                    logger.debug("iostat failed with return code {}", result);
-                }
-            } catch (InterruptedException e) {
-                logger.debug("iostat was interrupted");
+        for (String name : networkInterfaceStatusesByNames.keySet()) {
+            if (!names.contains(name)) {
+                removeNetworkInterface(name);
             }
+        }
+    }
 
-            if (!error && outputLines.size() == 2) {
-                String iowaitPercentStr = outputLines.get(outputLines.size() - 1);
+    private void addNetworkInterface(final String name) {
+        final Gauge<Long> receivedBytesPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.RECEIVED_BYTES);
+        final Gauge<Long> receivedPacketsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.RECEIVED_PACKETS);
+        final Gauge<Long> receiveErrorsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.RECEIVE_ERRORS);
+        final Gauge<Long> receiveDropsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.RECEIVE_DROPS);
+        final Gauge<Long> transmittedBytesPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.TRANSMITTED_BYTES);
+        final Gauge<Long> transmittedPacketsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.TRANSMITTED_PACKETS);
+        final Gauge<Long> transmitErrorsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.TRANSMIT_ERRORS);
+        final Gauge<Long> transmitDropsPerSecondGauge = createNetworkInterfaceRateGauge(name, ProcNetDevSampler.TRANSMIT_DROPS);
+
+        Map<String, Metric> networkInterfaceMetricsByNames = new HashMap<>();
+        networkInterfaceMetricsByNames.put("receivedBytesPerSecond", receivedBytesPerSecondGauge);
+        networkInterfaceMetricsByNames.put("receivedPacketsPerSecond", receivedPacketsPerSecondGauge);
+        networkInterfaceMetricsByNames.put("receiveErrorsPerSecond", receiveErrorsPerSecondGauge);
+        networkInterfaceMetricsByNames.put("receiveDropsPerSecond", receiveDropsPerSecondGauge);
+        networkInterfaceMetricsByNames.put("transmittedBytesPerSecond", transmittedBytesPerSecondGauge);
+        networkInterfaceMetricsByNames.put("transmittedPacketsPerSecond", transmittedPacketsPerSecondGauge);
+        networkInterfaceMetricsByNames.put("transmitErrorsPerSecond", transmitErrorsPerSecondGauge);
+        networkInterfaceMetricsByNames.put("transmitDropsPerSecond", transmitDropsPerSecondGauge);
+
+        String networkInterfaceNamespace = MetricNamingUtil.join(NETWORK_INTERFACES_NAMESPACE, MetricNamingUtil.sanitize(name));
+        for (Map.Entry<String, Metric> entry : networkInterfaceMetricsByNames.entrySet()) {
+            String metricName = MetricNamingUtil.join(networkInterfaceNamespace, entry.getKey());
+            metricsByNames.put(metricName, entry.getValue());
+            for (Listener listener : listeners) {
                 try {
-                    return Double.parseDouble(iowaitPercentStr);
-                } catch (NumberFormatException e) {
-                    logger.debug("Error parsing iowait value from {}", iowaitPercentStr);
+                    listener.onMetricAdded(metricName, entry.getValue());
+                } catch (RuntimeException e) {
+                    logger.debug("Error notifying listener of the addition of {}", metricName, e);
                 }
             }
-        } catch (Exception e) {
-            logger.debug("Exception occurred while executing iostat command", e);
+        }
 
-            if (InterruptedException.class.isInstance(e)) {
-                Thread.currentThread().interrupt();
+        networkInterfaceStatusesByNames.put(name, new NetworkInterfaceStatus() {
+            @Override
+            public String getName() {
+                return name;
             }
-        }
 
-        return null;
-    }
+            @Override
+            public Gauge<Long> getReceivedBytesPerSecondGauge() {
+                return receivedBytesPerSecondGauge;
+            }
 
-    private Map<String, NetworkInterfaceUsage> fetchNetworkInterfaceUsage() {
-        // Only Linux is supported
-        if (!SystemUtils.IS_OS_LINUX) {
-            return null;
-        }
+            @Override
+            public Gauge<Long> getTransmittedBytesPerSecondGauge() {
+                return transmittedBytesPerSecondGauge;
+            }
 
-        try {
-            // Take the average of two readings from SAR
-            Process process = Runtime.getRuntime().exec(new String[] {"bash", "-c", "sar -n DEV 1 2 | awk 'BEGIN{OFS=\",\"}/^Average/ && $2 !~ /^IFACE/{print $2,$5,$6}'"});
+            @Override
+            public Gauge<Long> getReceivedPacketsPerSecondGauge() {
+                return receivedPacketsPerSecondGauge;
+            }
 
-            BufferedReader errorStream = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            BufferedReader resultStream = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            @Override
+            public Gauge<Long> getTransmittedPacketsPerSecondGauge() {
+                return transmittedPacketsPerSecondGauge;
+            }
 
-            List<String> outputLines = new ArrayList<>();
-            String line = null;
-            while ((line = resultStream.readLine()) != null) {
-                outputLines.add(line);
+            @Override
+            public Gauge<Long> getReceiveErrorsPerSecondGauge() {
+                return receiveErrorsPerSecondGauge;
             }
 
-            boolean error = false;
-            while (errorStream.readLine() != null) {
-                error = true;
+            @Override
+            public Gauge<Long> getTransmitErrorsPerSecondGauge() {
+                return transmitErrorsPerSecondGauge;
             }
 
-            errorStream.close();
-            resultStream.close();
+            @Override
+            public Gauge<Long> getReceiveDropsPerSecondGauge() {
+                return receiveDropsPerSecondGauge;
+            }
 
-            try {
-                int result = process.waitFor();
-                if (result != 0) {
-                    logger.debug("sar failed with return code {}", result);
-                }
-            } catch (InterruptedException e) {
-                logger.debug("sar was interrupted");
+            @Override
+            public Gauge<Long> getTransmitDropsPerSecondGauge() {
+                return transmitDropsPerSecondGauge;
             }
+        });
+    }
 
-            if (!error && outputLines.size() > 0) {
-                Map<String, NetworkInterfaceUsage> networkInterfaceUsageByNetworkInterfaceName = new HashMap<>();
-                for (String outputLine : outputLines) {
-                    String[] outputLineSplit = outputLine.split(",");
-                    if (outputLineSplit.length != 3) {
-                        logger.debug("Unexpected output line for network interface usage: {}", outputLine);
-                        continue;
-                    }
-                    String name = StringUtils.trimToNull(outputLineSplit[0]);
-                    if (name != null) {
-                        String receivedKilobytesPerSecondStr = outputLineSplit[1];
-                        double receivedKilobytesPerSecond = 0;
-                        try {
-                            receivedKilobytesPerSecond = Double.parseDouble(receivedKilobytesPerSecondStr.trim());
-                        } catch (NumberFormatException e) {
-                            logger.debug("Error parsing receivedKilobytesPerSecond from {}", receivedKilobytesPerSecondStr);
-                            continue;
-                        }
-
-                        String transmittedKilobytesPerSecondStr = outputLineSplit[2];
-                        double transmittedKilobytesPerSecond = 0;
-                        try {
-                            transmittedKilobytesPerSecond = Double.parseDouble(transmittedKilobytesPerSecondStr.trim());
-                        } catch (NumberFormatException e) {
-                            logger.debug("Error parsing transmittedKilobytesPerSecond from {}", transmittedKilobytesPerSecondStr);
-                            continue;
-                        }
-
-                        long receivedBytesPerSecond = (long) (receivedKilobytesPerSecond * 1024);
-                        long transmittedBytesPerSecond = (long) (transmittedKilobytesPerSecond * 1024);
-
-                        networkInterfaceUsageByNetworkInterfaceName.put(name, new NetworkInterfaceUsage(receivedBytesPerSecond, transmittedBytesPerSecond));
+    private void removeNetworkInterface(String name) {
+        networkInterfaceStatusesByNames.remove(name);
+
+        String networkInterfaceNamespacePrefix = MetricNamingUtil.join(NETWORK_INTERFACES_NAMESPACE, MetricNamingUtil.sanitize(name)) + MetricNamingUtil.SEPARATOR;
+        for (String metricName : new ArrayList<>(metricsByNames.keySet())) {
+            if (metricName.startsWith(networkInterfaceNamespacePrefix)) {
+                metricsByNames.remove(metricName);
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onMetricRemoved(metricName);
+                    } catch (RuntimeException e) {
+                        logger.debug("Error notifying listener of the removal of {}", metricName, e);
                     }
                 }
-                return networkInterfaceUsageByNetworkInterfaceName.isEmpty() ? null : networkInterfaceUsageByNetworkInterfaceName;
-            }
-        } catch (Exception e) {
-            logger.debug("Exception occurred while executing sar command", e);
-
-            if (InterruptedException.class.isInstance(e)) {
-                Thread.currentThread().interrupt();
             }
         }
+    }
 
-        return null;
+    private Gauge<Long> createNetworkInterfaceRateGauge(final String name, final int counter) {
+        return new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return procNetDevSampler.getRatePerSecond(name, counter);
+            }
+        };
     }
 }
@@ -183,16 +183,17 @@ public interface OperatingSystemStatus {
     Gauge<Double> getUsedDiskSpacePercentageGauge();
 
     /**
-     * Retrieves a recent UNIX iowait (percentage of CPU blocked for IO) value as reported in the output for the iostat
-     * command. The returned value is in the range from 0 to 100.
+     * Retrieves a recent UNIX iowait (percentage of CPU blocked for IO) value, computed from the deltas of the CPU time
+     * counters in <tt>/proc/stat</tt> between two successive samples. The returned value is in the range from 0 to 100.
      *
      * @return a gauge holding a recent UNIX iowait value; <tt>null</tt> if not available.
      */
     Gauge<Double> getIoWaitPercentageGauge();
 
     /**
-     * Retrieves a list of network interface statuses. An empty list is returned if no network interface data is
-     * available.
+     * Retrieves a list of network interface statuses, ordered by the interface names. The list reflects the interfaces
+     * present in the latest sample of <tt>/proc/net/dev</tt>. An empty list is returned if no network interface data
+     * is available.
      *
      * @return a list of network interface statuses.
      */
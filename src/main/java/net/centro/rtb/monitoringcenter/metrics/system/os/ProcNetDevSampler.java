@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.system.os;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class samples the per-interface counters of <tt>/proc/net/dev</tt> and computes the received and transmitted
+ * bytes, packets, errors, and drops per second from the deltas between two successive samples. The file is kept open
+ * and re-read from the start into a reused buffer; the interfaces are rediscovered on every sample, so that
+ * interfaces added later (e.g., by containers or bonding) are picked up.
+ *
+ * <p>
+ *     An interface yields rates of 0 until it has been seen in two samples. Counters, which went backwards (e.g., after
+ *     an interface was recreated), yield 0 for that sample. This class is thread-safe.
+ * </p>
+ */
+class ProcNetDevSampler {
+    private static final Logger logger = LoggerFactory.getLogger(ProcNetDevSampler.class);
+
+    private static final File PROC_NET_DEV_FILE = new File("/proc/net/dev");
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    // Indexes of the parsed counters within a line; the receive counters come first, followed by the transmit counters
+    static final int RECEIVED_BYTES = 0;
+    static final int RECEIVED_PACKETS = 1;
+    static final int RECEIVE_ERRORS = 2;
+    static final int RECEIVE_DROPS = 3;
+    static final int TRANSMITTED_BYTES = 8;
+    static final int TRANSMITTED_PACKETS = 9;
+    static final int TRANSMIT_ERRORS = 10;
+    static final int TRANSMIT_DROPS = 11;
+    private static final int COUNTER_COUNT = 12;
+
+    private final RandomAccessFile procNetDevFile;
+    private byte[] buffer;
+
+    private Map<String, long[]> previousCountersByNames;
+    private long previousSampleTimeInNanos;
+
+    private volatile Map<String, long[]> ratesPerSecondByNames;
+
+    ProcNetDevSampler(File procNetDevFile) throws IOException {
+        this.procNetDevFile = new RandomAccessFile(procNetDevFile, "r");
+        this.buffer = new byte[INITIAL_BUFFER_SIZE];
+        this.previousCountersByNames = Collections.emptyMap();
+        this.ratesPerSecondByNames = Collections.emptyMap();
+    }
+
+    /**
+     * Creates a sampler for <tt>/proc/net/dev</tt> and takes the first sample.
+     *
+     * @return a sampler or <tt>null</tt> if <tt>/proc/net/dev</tt> is not available or cannot be parsed.
+     */
+    static ProcNetDevSampler create() {
+        if (!PROC_NET_DEV_FILE.canRead()) {
+            return null;
+        }
+
+        ProcNetDevSampler procNetDevSampler = null;
+        try {
+            procNetDevSampler = new ProcNetDevSampler(PROC_NET_DEV_FILE);
+            if (procNetDevSampler.sample()) {
+                return procNetDevSampler;
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to open {}", PROC_NET_DEV_FILE, e);
+        }
+
+        if (procNetDevSampler != null) {
+            procNetDevSampler.close();
+        }
+        return null;
+    }
+
+    boolean sample() {
+        return sample(System.nanoTime());
+    }
+
+    /**
+     * Reads the interface counters and updates the rates with the deltas since the previous sample.
+     *
+     * @param sampleTimeInNanos the time of this sample, as returned by {@link System#nanoTime()}.
+     * @return whether the counters could be read or not.
+     */
+    synchronized boolean sample(long sampleTimeInNanos) {
+        int length;
+        try {
+            length = readFully();
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", PROC_NET_DEV_FILE, e);
+            return false;
+        }
+
+        Map<String, long[]> countersByNames = parse(buffer, length);
+        if (countersByNames == null) {
+            logger.debug("Unexpected format of {}", PROC_NET_DEV_FILE);
+            return false;
+        }
+
+        long elapsedTimeInNanos = sampleTimeInNanos - previousSampleTimeInNanos;
+        Map<String, long[]> ratesPerSecondByNames = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : countersByNames.entrySet()) {
+            long[] currentCounters = entry.getValue();
+            long[] previousCounters = previousCountersByNames.get(entry.getKey());
+
+            long[] ratesPerSecond = new long[COUNTER_COUNT];
+            if (previousCounters != null && elapsedTimeInNanos > 0) {
+                for (int i = 0; i < COUNTER_COUNT; i++) {
+                    long delta = currentCounters[i] - previousCounters[i];
+                    if (delta > 0) {
+                        ratesPerSecond[i] = (long) (delta * (double) TimeUnit.SECONDS.toNanos(1) / elapsedTimeInNanos);
+                    }
+                }
+            }
+            ratesPerSecondByNames.put(entry.getKey(), ratesPerSecond);
+        }
+
+        this.previousCountersByNames = countersByNames;
+        this.previousSampleTimeInNanos = sampleTimeInNanos;
+        this.ratesPerSecondByNames = Collections.unmodifiableMap(ratesPerSecondByNames);
+        return true;
+    }
+
+    /**
+     * Retrieves the names of the interfaces present in the latest sample.
+     *
+     * @return the names of the interfaces.
+     */
+    Set<String> getNetworkInterfaceNames() {
+        return ratesPerSecondByNames.keySet();
+    }
+
+    /**
+     * Retrieves the per-second rate of a counter of an interface between the two latest samples.
+     *
+     * @param name the name of an interface.
+     * @param counter the counter, such as {@link #RECEIVED_BYTES}.
+     * @return the per-second rate; 0 if the interface has not been seen in the two latest samples.
+     */
+    long getRatePerSecond(String name, int counter) {
+        long[] ratesPerSecond = ratesPerSecondByNames.get(name);
+        return ratesPerSecond != null ? ratesPerSecond[counter] : 0;
+    }
+
+    void close() {
+        try {
+            procNetDevFile.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close {}", PROC_NET_DEV_FILE, e);
+        }
+    }
+
+    private int readFully() throws IOException {
+        procNetDevFile.seek(0);
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int bytesRead = procNetDevFile.read(buffer, length, buffer.length - length);
+            if (bytesRead == -1) {
+                return length;
+            }
+            length += bytesRead;
+        }
+    }
+
+    /**
+     * Parses the interface lines, which follow the two header lines. Each line holds the interface name followed by a
+     * colon, eight receive counters, and eight transmit counters; the last four transmit counters are not retained.
+     */
+    static Map<String, long[]> parse(byte[] buffer, int length) {
+        Map<String, long[]> countersByNames = new HashMap<>();
+
+        int position = 0;
+        int lineIndex = 0;
+        while (position < length) {
+            int lineEnd = position;
+            while (lineEnd < length && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            if (lineIndex >= 2 && lineEnd > position) {
+                int colonIndex = position;
+                while (colonIndex < lineEnd && buffer[colonIndex] != ':') {
+                    colonIndex++;
+                }
+                if (colonIndex == lineEnd) {
+                    return null;
+                }
+
+                int nameStart = position;
+                while (nameStart < colonIndex && buffer[nameStart] == ' ') {
+                    nameStart++;
+                }
+                String name = new String(buffer, nameStart, colonIndex - nameStart, StandardCharsets.US_ASCII).trim();
+
+                long[] counters = new long[COUNTER_COUNT];
+                int fieldIndex = 0;
+                int fieldPosition = colonIndex + 1;
+                while (fieldIndex < COUNTER_COUNT) {
+                    while (fieldPosition < lineEnd && buffer[fieldPosition] == ' ') {
+                        fieldPosition++;
+                    }
+                    if (fieldPosition == lineEnd || buffer[fieldPosition] < '0' || buffer[fieldPosition] > '9') {
+                        break;
+                    }
+
+                    long value = 0;
+                    while (fieldPosition < lineEnd && buffer[fieldPosition] >= '0' && buffer[fieldPosition] <= '9') {
+                        value = value * 10 + (buffer[fieldPosition] - '0');
+                        fieldPosition++;
+                    }
+                    counters[fieldIndex++] = value;
+                }
+                if (fieldIndex < COUNTER_COUNT || name.isEmpty()) {
+                    return null;
+                }
+                countersByNames.put(name, counters);
+            }
+
+            position = lineEnd + 1;
+            lineIndex++;
+        }
+
+        return lineIndex >= 2 ? countersByNames : null;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.metrics.system.os;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This class samples the aggregate CPU time counters of <tt>/proc/stat</tt> (the first "cpu" line) and computes the
+ * share of each CPU state between two successive samples. The file is kept open and re-read from the start into a
+ * reused buffer, so that sampling does not allocate or fork processes.
+ *
+ * <p>
+ *     The first sample yields the shares since the system start-up. Kernels, which do not report some of the states
+ *     (e.g., steal before 2.6.11), yield 0 for these states. This class is thread-safe.
+ * </p>
+ */
+class ProcStatCpuSampler {
+    static final int USER = 0;
+    static final int NICE = 1;
+    static final int SYSTEM = 2;
+    static final int IDLE = 3;
+    static final int IO_WAIT = 4;
+    static final int IRQ = 5;
+    static final int SOFT_IRQ = 6;
+    static final int STEAL = 7;
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcStatCpuSampler.class);
+
+    private static final File PROC_STAT_FILE = new File("/proc/stat");
+    private static final int STATE_COUNT = 8;
+    // The aggregate line comes first and is far shorter than this
+    private static final int BUFFER_SIZE = 4096;
+
+    private final RandomAccessFile procStatFile;
+    private final byte[] buffer;
+    private final long[] previousTicks;
+    private final long[] currentTicks;
+
+    private volatile double[] percentages;
+
+    ProcStatCpuSampler(File procStatFile) throws IOException {
+        this.procStatFile = new RandomAccessFile(procStatFile, "r");
+        this.buffer = new byte[BUFFER_SIZE];
+        this.previousTicks = new long[STATE_COUNT];
+        this.currentTicks = new long[STATE_COUNT];
+        this.percentages = new double[STATE_COUNT];
+    }
+
+    /**
+     * Creates a sampler for <tt>/proc/stat</tt> and takes the first sample.
+     *
+     * @return a sampler or <tt>null</tt> if <tt>/proc/stat</tt> is not available or cannot be parsed.
+     */
+    static ProcStatCpuSampler create() {
+        if (!PROC_STAT_FILE.canRead()) {
+            return null;
+        }
+
+        ProcStatCpuSampler procStatCpuSampler = null;
+        try {
+            procStatCpuSampler = new ProcStatCpuSampler(PROC_STAT_FILE);
+            if (procStatCpuSampler.sample()) {
+                return procStatCpuSampler;
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to open {}", PROC_STAT_FILE, e);
+        }
+
+        if (procStatCpuSampler != null) {
+            procStatCpuSampler.close();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the CPU time counters and updates the percentages with the deltas since the previous sample. If the
+     * counters did not advance, the previous percentages are retained.
+     *
+     * @return whether the counters could be read or not.
+     */
+    synchronized boolean sample() {
+        int length;
+        try {
+            procStatFile.seek(0);
+            length = procStatFile.read(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", PROC_STAT_FILE, e);
+            return false;
+        }
+
+        if (!parseAggregateLine(buffer, length, currentTicks)) {
+            logger.debug("Unexpected format of {}", PROC_STAT_FILE);
+            return false;
+        }
+
+        long totalDelta = 0;
+        for (int i = 0; i < STATE_COUNT; i++) {
+            totalDelta += Math.max(0, currentTicks[i] - previousTicks[i]);
+        }
+
+        if (totalDelta > 0) {
+            double[] percentages = new double[STATE_COUNT];
+            for (int i = 0; i < STATE_COUNT; i++) {
+                percentages[i] = Math.max(0, currentTicks[i] - previousTicks[i]) * 100.0 / totalDelta;
+            }
+            this.percentages = percentages;
+        }
+
+        System.arraycopy(currentTicks, 0, previousTicks, 0, STATE_COUNT);
+        return true;
+    }
+
+    /**
+     * Retrieves the share of a CPU state between the two latest samples.
+     *
+     * @param state a CPU state, such as {@link #IO_WAIT}.
+     * @return the percentage of CPU time spent in the given state, in the range from 0 to 100.
+     */
+    double getPercentage(int state) {
+        return percentages[state];
+    }
+
+    void close() {
+        try {
+            procStatFile.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close {}", PROC_STAT_FILE, e);
+        }
+    }
+
+    /**
+     * Parses the counters of the aggregate "cpu" line: user, nice, system, idle, iowait, irq, softirq, and steal. The
+     * guest counters are not parsed, as the guest time is already included in the user and nice counters.
+     */
+    static boolean parseAggregateLine(byte[] buffer, int length, long[] ticks) {
+        if (length < 4 || buffer[0] != 'c' || buffer[1] != 'p' || buffer[2] != 'u' || buffer[3] != ' ') {
+            return false;
+        }
+
+        int position = 4;
+        int stateIndex = 0;
+        while (stateIndex < ticks.length) {
+            while (position < length && buffer[position] == ' ') {
+                position++;
+            }
+            if (position == length || buffer[position] < '0' || buffer[position] > '9') {
+                break;
+            }
+
+            long value = 0;
+            while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+                value = value * 10 + (buffer[position] - '0');
+                position++;
+            }
+            ticks[stateIndex++] = value;
+        }
+
+        // user, nice, system, and idle are reported by all kernels
+        if (stateIndex < 4) {
+            return false;
+        }
+        for (int i = stateIndex; i < ticks.length; i++) {
+            ticks[i] = 0;
+        }
+        return true;
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE,
@@ -54,6 +55,7 @@ class TomcatConnectorMetricSet implements MetricSet, TomcatConnectorStatus {
     private boolean isAjp;
 
     private int previousRequestCount;
+    private long previousRequestCountTimeInNanos;
     private AtomicInteger qpsHolder;
 
     private Gauge<Integer> currentPoolSizeGauge;
@@ -136,6 +138,7 @@ class TomcatConnectorMetricSet implements MetricSet, TomcatConnectorStatus {
 
                 this.qpsHolder = new AtomicInteger();
                 this.previousRequestCount = totalRequestsGauge.getValue();
+                this.previousRequestCountTimeInNanos = System.nanoTime();
 
                 this.qpsGauge = new Gauge<Integer>() {
                     @Override
@@ -165,15 +168,20 @@ class TomcatConnectorMetricSet implements MetricSet, TomcatConnectorStatus {
         this.metricsByNames = metricsByNames;
     }
 
-    // Not thread-safe
+    // Not thread-safe. The rate is computed over the actual elapsed time, as a shared sampling thread may run late.
     void updateQps() {
         if (totalRequestsGauge == null) {
             return;
         }
 
         int currentRequestCount = totalRequestsGauge.getValue();
-        qpsHolder.set(currentRequestCount - previousRequestCount);
+        long currentTimeInNanos = System.nanoTime();
+        long elapsedTimeInNanos = currentTimeInNanos - previousRequestCountTimeInNanos;
+        if (elapsedTimeInNanos > 0) {
+            qpsHolder.set((int) Math.round((currentRequestCount - previousRequestCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedTimeInNanos));
+        }
         previousRequestCount = currentRequestCount;
+        previousRequestCountTimeInNanos = currentTimeInNanos;
     }
 
     @Override
@@ -25,8 +25,7 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricSet;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
 import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +40,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -56,14 +53,33 @@ public class TomcatMetricSet implements MetricSet, TomcatStatus {
     private Map<String, Metric> metricsByNames;
 
     // For QPS calc
-    private ScheduledExecutorService executorService;
+    private SamplingScheduler.Registration samplingRegistration;
+    private SamplingScheduler ownedSamplingScheduler;
 
     private List<TomcatExecutorStatus> executorStatuses;
     private List<TomcatConnectorStatus> connectorStatuses;
 
     private AtomicBoolean shutdown;
 
+    /**
+     * Constructs the Tomcat metric set, which samples the connectors on a scheduler of its own.
+     */
     public TomcatMetricSet() {
+        this(new SamplingScheduler("TomcatMetricSet"), true);
+    }
+
+    /**
+     * Constructs the Tomcat metric set. The request counts of the connectors are sampled every second on the given
+     * scheduler, as the "tomcat.connectors" source.
+     *
+     * @param samplingScheduler the scheduler to sample the connectors on.
+     */
+    public TomcatMetricSet(SamplingScheduler samplingScheduler) {
+        this(samplingScheduler, false);
+    }
+
+    private TomcatMetricSet(SamplingScheduler samplingScheduler, boolean ownsSamplingScheduler) {
+        this.ownedSamplingScheduler = ownsSamplingScheduler ? samplingScheduler : null;
         this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
 
         Map<String, Metric> metricsByNames = new HashMap<>();
@@ -115,8 +131,7 @@ public class TomcatMetricSet implements MetricSet, TomcatStatus {
         this.connectorStatuses = connectorStatuses;
 
         if (!connectorMetricSets.isEmpty()) {
-            this.executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("TomcatMetricSet-%d").build());
-            this.executorService.scheduleAtFixedRate(new Runnable() {
+            this.samplingRegistration = samplingScheduler.schedule("tomcat.connectors", 1, TimeUnit.SECONDS, new Runnable() {
                 @Override
                 public void run() {
                     for (TomcatConnectorMetricSet connectorMetricSet : connectorMetricSets) {
@@ -131,7 +146,7 @@ public class TomcatMetricSet implements MetricSet, TomcatStatus {
                         }
                     }
                 }
-            }, 1, 1, TimeUnit.SECONDS);
+            });
         }
 
         this.metricsByNames = metricsByNames;
@@ -161,8 +176,12 @@ public class TomcatMetricSet implements MetricSet, TomcatStatus {
             return;
         }
 
-        if (executorService != null) {
-            MoreExecutors.shutdownAndAwaitTermination(executorService, 1, TimeUnit.SECONDS);
+        if (samplingRegistration != null) {
+            samplingRegistration.cancel();
+        }
+
+        if (ownedSamplingScheduler != null) {
+            ownedSamplingScheduler.shutdown();
         }
     }
 }
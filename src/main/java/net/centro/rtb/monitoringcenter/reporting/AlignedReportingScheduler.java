@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.centro.rtb.monitoringcenter.util.ThreadAllocationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class drives a {@link ScheduledReporter} on wall-clock-aligned boundaries--that is, at the instants that are
+ * multiples of the reporting interval since the epoch (e.g., at :00, :10, :20 for a 10 second interval), delayed by a
+ * per-node offset. The offset is derived from a node key (e.g., the node-specific prefix) and lies within the jitter
+ * budget; thus, every node reports at the same offset within each interval, while the fleet does not hit the backend at
+ * the same instant. The reporter itself is expected to stamp its data with the actual collection time.
+ *
+ * <p>
+ *     The next tick is computed from the wall clock after every report. If a report takes longer than the interval, the
+ *     ticks that have passed in the meantime are skipped rather than queued, and counted by the <tt>skippedTicks</tt>
+ *     counter.
+ * </p>
+ *
+ * <p>
+ *     The duration of every report is recorded by the <tt>reportTimer</tt>. Where the JVM supports measuring the memory
+ *     allocated by a thread, the bytes allocated by every report are recorded by the
+ *     <tt>allocatedBytesPerReportHistogram</tt>; these include the bytes allocated by the workers of a parallel
+ *     collection, which the report waits for.
+ * </p>
+ */
+public class AlignedReportingScheduler implements MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(AlignedReportingScheduler.class);
+
+    private final ScheduledReporter reporter;
+    private final long periodInMillis;
+    private final long nodeHash;
+    private final Clock clock;
+    private final ScheduledExecutorService executorService;
+
+    private final Counter skippedTicksCounter;
+    private final Timer reportTimer;
+    private final Histogram allocatedBytesPerReportHistogram;
+    private final Map<String, Metric> metricsByNames;
+
+    private volatile long jitterBudgetInMillis;
+    private volatile long lastTickLagInMillis;
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a scheduler.
+     *
+     * @param reporter the reporter to drive.
+     * @param name the name of the scheduler thread.
+     * @param period the reporting interval.
+     * @param timeUnit the unit for <tt>period</tt>.
+     * @param jitterBudgetInMillis the maximum per-node delay past a boundary.
+     * @param nodeKey a string identifying this node, from which the per-node offset is derived.
+     */
+    public AlignedReportingScheduler(ScheduledReporter reporter, String name, long period, TimeUnit timeUnit, long jitterBudgetInMillis, String nodeKey) {
+        this(reporter, name, period, timeUnit, jitterBudgetInMillis, nodeKey, Clock.defaultClock());
+    }
+
+    AlignedReportingScheduler(ScheduledReporter reporter, String name, long period, TimeUnit timeUnit, long jitterBudgetInMillis, String nodeKey, Clock clock) {
+        Preconditions.checkNotNull(reporter);
+        Preconditions.checkArgument(period > 0, "period must be positive");
+        Preconditions.checkArgument(jitterBudgetInMillis >= 0, "jitterBudgetInMillis cannot be negative");
+
+        this.reporter = reporter;
+        this.periodInMillis = timeUnit.toMillis(period);
+        this.nodeHash = Hashing.murmur3_128().hashString(String.valueOf(nodeKey), StandardCharsets.UTF_8).asLong() & Long.MAX_VALUE;
+        this.jitterBudgetInMillis = jitterBudgetInMillis;
+        this.clock = clock;
+        this.executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+
+        this.skippedTicksCounter = new Counter();
+        this.reportTimer = new Timer();
+        this.allocatedBytesPerReportHistogram = ThreadAllocationUtil.isSupported() ? new Histogram(new ExponentiallyDecayingReservoir()) : null;
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("skippedTicksCounter", skippedTicksCounter);
+        metricsByNames.put("reportTimer", reportTimer);
+        if (allocatedBytesPerReportHistogram != null) {
+            metricsByNames.put("allocatedBytesPerReportHistogram", allocatedBytesPerReportHistogram);
+        }
+        metricsByNames.put("lastTickLagInMillis", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return lastTickLagInMillis;
+            }
+        });
+        this.metricsByNames = metricsByNames;
+    }
+
+    /**
+     * Schedules the first report at the next aligned boundary.
+     */
+    public void start() {
+        schedule(computeNextTickTime(clock.getTime()));
+    }
+
+    /**
+     * Stops scheduling reports and waits briefly for a running report to complete. The reporter is not stopped.
+     */
+    public void stop() {
+        stopped = true;
+        MoreExecutors.shutdownAndAwaitTermination(executorService, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Updates the jitter budget. The new budget applies from the next tick on.
+     *
+     * @param jitterBudgetInMillis the maximum per-node delay past a boundary.
+     */
+    public void setJitterBudgetInMillis(long jitterBudgetInMillis) {
+        Preconditions.checkArgument(jitterBudgetInMillis >= 0, "jitterBudgetInMillis cannot be negative");
+        this.jitterBudgetInMillis = jitterBudgetInMillis;
+    }
+
+    public long getJitterBudgetInMillis() {
+        return jitterBudgetInMillis;
+    }
+
+    /**
+     * Retrieves the number of ticks that have been skipped, because the previous report had not completed in time.
+     *
+     * @return the number of skipped ticks.
+     */
+    public long getSkippedTicks() {
+        return skippedTicksCounter.getCount();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Computes the first tick strictly after the given time.
+     *
+     * @param timeInMillis the current wall-clock time.
+     * @return the time of the next tick.
+     */
+    long computeNextTickTime(long timeInMillis) {
+        long offsetInMillis = computeOffsetInMillis();
+        long boundary = Math.floorDiv(timeInMillis - offsetInMillis, periodInMillis) * periodInMillis;
+        return boundary + periodInMillis + offsetInMillis;
+    }
+
+    long computeOffsetInMillis() {
+        long maxOffsetInMillis = Math.min(jitterBudgetInMillis, periodInMillis - 1);
+        if (maxOffsetInMillis <= 0) {
+            return 0;
+        }
+        return nodeHash % (maxOffsetInMillis + 1);
+    }
+
+    private void schedule(final long tickTime) {
+        if (stopped) {
+            return;
+        }
+
+        long delayInMillis = Math.max(0, tickTime - clock.getTime());
+        try {
+            executorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    tick(tickTime);
+                }
+            }, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            if (!stopped) {
+                logger.error("Unable to schedule the next report", e);
+            }
+        }
+    }
+
+    private void tick(long tickTime) {
+        lastTickLagInMillis = Math.max(0, clock.getTime() - tickTime);
+
+        long allocatedBytesBefore = ThreadAllocationUtil.getAllocatedBytes();
+        Timer.Context reportTimerContext = reportTimer.time();
+        try {
+            reporter.report();
+        } catch (RuntimeException e) {
+            logger.error("Exception thrown from {}#report. Exception was suppressed.", reporter.getClass().getSimpleName(), e);
+        } finally {
+            reportTimerContext.stop();
+            if (allocatedBytesPerReportHistogram != null) {
+                allocatedBytesPerReportHistogram.update(ThreadAllocationUtil.getAllocatedBytes() - allocatedBytesBefore);
+            }
+        }
+
+        // The executor may wake up slightly early relative to the wall clock; the same tick must not fire twice
+        long nextTickTime = computeNextTickTime(Math.max(clock.getTime(), tickTime));
+        long skippedTicks = (nextTickTime - tickTime) / periodInMillis - 1;
+        if (skippedTicks > 0) {
+            skippedTicksCounter.inc(skippedTicks);
+            logger.debug("Skipped {} reporting ticks, as the report took too long", skippedTicks);
+        }
+        schedule(nextTickTime);
+    }
+}
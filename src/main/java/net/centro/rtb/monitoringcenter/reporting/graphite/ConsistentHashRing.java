@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import net.centro.rtb.monitoringcenter.config.HostAndPort;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring, which mirrors the <tt>carbon_ch</tt> hashing of Carbon relays. Each node is placed on the
+ * ring 100 times, at positions derived from the first two bytes of the MD5 digest of the node's replica keys. Nodes
+ * are identified by their host and instance, exactly as Carbon does it, so that a metric is routed to the same
+ * Carbon daemon regardless of whether it passes through a relay or not.
+ */
+class ConsistentHashRing {
+    private static final int REPLICA_COUNT = 100;
+
+    private final int[] positions;
+    private final int[] nodeIndices;
+    private final int nodeCount;
+
+    ConsistentHashRing(List<HostAndPort> nodes) {
+        Preconditions.checkArgument(nodes != null && !nodes.isEmpty(), "nodes cannot be empty");
+
+        TreeMap<Integer, Integer> nodeIndicesByPositions = new TreeMap<>();
+        for (int nodeIndex = 0; nodeIndex < nodes.size(); nodeIndex++) {
+            String nodeKey = toNodeKey(nodes.get(nodeIndex));
+            for (int i = 0; i < REPLICA_COUNT; i++) {
+                int position = computeRingPosition(nodeKey + ":" + i);
+                while (nodeIndicesByPositions.containsKey(position)) {
+                    position++;
+                }
+                nodeIndicesByPositions.put(position, nodeIndex);
+            }
+        }
+
+        this.positions = new int[nodeIndicesByPositions.size()];
+        this.nodeIndices = new int[nodeIndicesByPositions.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : nodeIndicesByPositions.entrySet()) {
+            positions[i] = entry.getKey();
+            nodeIndices[i] = entry.getValue();
+            i++;
+        }
+        this.nodeCount = nodes.size();
+    }
+
+    /**
+     * Retrieves the index of the node responsible for the given key.
+     *
+     * @param key a metric name.
+     * @return the index of the node, as passed into the constructor.
+     */
+    int getNode(String key) {
+        return nodeIndices[findRingIndex(key)];
+    }
+
+    /**
+     * Retrieves the index of the first available node responsible for the given key, walking the ring clockwise from
+     * the key's position.
+     *
+     * @param key a metric name.
+     * @param unavailableNodes flags for the nodes, which should be skipped, indexed by node index.
+     * @return the index of the node, as passed into the constructor; -1 if all nodes are unavailable.
+     */
+    int getNode(String key, boolean[] unavailableNodes) {
+        int ringIndex = findRingIndex(key);
+        for (int i = 0; i < nodeIndices.length; i++) {
+            int nodeIndex = nodeIndices[(ringIndex + i) % nodeIndices.length];
+            if (!unavailableNodes[nodeIndex]) {
+                return nodeIndex;
+            }
+        }
+        return -1;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    static String toNodeKey(HostAndPort hostAndPort) {
+        // Same as the string representation of Carbon's (server, instance) tuple
+        String instance = hostAndPort.getInstance() == null ? "None" : "'" + hostAndPort.getInstance() + "'";
+        return "('" + hostAndPort.getHost() + "', " + instance + ")";
+    }
+
+    private int findRingIndex(String key) {
+        int position = computeRingPosition(key);
+
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == positions.length ? 0 : low;
+    }
+
+    private static int computeRingPosition(String key) {
+        byte[] digest = Hashing.md5().hashString(key, Charsets.UTF_8).asBytes();
+        return ((digest[0] & 0xFF) << 8) | (digest[1] & 0xFF);
+    }
+}
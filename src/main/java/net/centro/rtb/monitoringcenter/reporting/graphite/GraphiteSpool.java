@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.MappedBufferUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A persistent FIFO queue of Graphite data points, backed by a sequence of fixed-size, memory-mapped segment files.
+ * Data points are appended to the newest segment; they are read from the oldest one. Reading is a two-step process:
+ * {@link #peek(int)} returns the oldest data points without removing them, while {@link #commitPeeked()} removes them
+ * once they have been delivered. Fully consumed segments are unmapped and deleted. When the spool reaches its maximum
+ * size, the oldest segment is discarded to make room for new data.
+ *
+ * <p>
+ *     Each segment starts with an 8-byte header holding the committed read offset, followed by records of the form
+ *     <tt>[int payloadLength][long timestamp][payload]</tt>, where the payload is the UTF-8 encoded
+ *     <tt>"name value"</tt> string. The length is written last, so that a record torn by a crash is ignored upon
+ *     recovery.
+ * </p>
+ *
+ * <p>
+ *     This class is thread-safe.
+ * </p>
+ */
+class GraphiteSpool {
+    private static final Logger logger = LoggerFactory.getLogger(GraphiteSpool.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "graphite-spool-";
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 12;
+
+    private static final long MIN_SEGMENT_SIZE_IN_BYTES = 256 * 1024;
+    private static final long MAX_SEGMENT_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
+    static class DataPoint {
+        final String name;
+        final String value;
+        final long timestamp;
+
+        DataPoint(String name, String value, long timestamp) {
+            this.name = name;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class Segment {
+        private final long sequenceNumber;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int readOffset;
+        private int writeOffset;
+
+        private Segment(long sequenceNumber, File file, MappedByteBuffer buffer) {
+            this.sequenceNumber = sequenceNumber;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private int getPendingBytes() {
+            return writeOffset - readOffset;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSizeInBytes;
+    private final int maxSegmentCount;
+
+    private final Deque<Segment> segments;
+
+    private Segment peekedSegment;
+    private int peekedOffset;
+
+    private long pendingBytes;
+    private long droppedDataPoints;
+
+    GraphiteSpool(File directory, long maxSizeInBytes) throws IOException {
+        Preconditions.checkNotNull(directory);
+        Preconditions.checkArgument(maxSizeInBytes >= MIN_SEGMENT_SIZE_IN_BYTES, "maxSizeInBytes is too small");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.segmentSizeInBytes = (int) Math.max(MIN_SEGMENT_SIZE_IN_BYTES, Math.min(MAX_SEGMENT_SIZE_IN_BYTES, maxSizeInBytes / 8));
+        this.maxSegmentCount = (int) Math.max(1, maxSizeInBytes / segmentSizeInBytes);
+        this.segments = new ArrayDeque<>();
+
+        recover();
+    }
+
+    /**
+     * Appends data points to the tail of the spool, discarding the oldest segment if the spool is full. Data points,
+     * which do not fit into a segment, are dropped.
+     *
+     * @param dataPoints data points to append.
+     * @throws IOException if a new segment could not be created.
+     */
+    synchronized void append(List<DataPoint> dataPoints) throws IOException {
+        for (DataPoint dataPoint : dataPoints) {
+            byte[] payload = (dataPoint.name + ' ' + dataPoint.value).getBytes(Charsets.UTF_8);
+            int recordSize = RECORD_OVERHEAD + payload.length;
+            if (HEADER_SIZE + recordSize > segmentSizeInBytes) {
+                droppedDataPoints++;
+                continue;
+            }
+
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.writeOffset + recordSize > tail.buffer.capacity()) {
+                tail = addSegment();
+            }
+
+            MappedByteBuffer buffer = tail.buffer;
+            int offset = tail.writeOffset;
+            buffer.putLong(offset + 4, dataPoint.timestamp);
+            for (int i = 0; i < payload.length; i++) {
+                buffer.put(offset + RECORD_OVERHEAD + i, payload[i]);
+            }
+            buffer.putInt(offset, payload.length);
+
+            tail.writeOffset += recordSize;
+            pendingBytes += recordSize;
+        }
+    }
+
+    /**
+     * Reads up to <tt>maxCount</tt> of the oldest data points without removing them from the spool. A subsequent call
+     * to {@link #commitPeeked()} removes them. Calling this method again without committing returns the same data
+     * points.
+     *
+     * @param maxCount maximum number of data points to read.
+     * @return the oldest data points in the spool.
+     */
+    synchronized List<DataPoint> peek(int maxCount) {
+        List<DataPoint> dataPoints = new ArrayList<>();
+        peekedSegment = null;
+
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext() && dataPoints.size() < maxCount) {
+            Segment segment = iterator.next();
+            int offset = segment.readOffset;
+            while (offset < segment.writeOffset && dataPoints.size() < maxCount) {
+                int payloadLength = segment.buffer.getInt(offset);
+                long timestamp = segment.buffer.getLong(offset + 4);
+                byte[] payload = new byte[payloadLength];
+                for (int i = 0; i < payloadLength; i++) {
+                    payload[i] = segment.buffer.get(offset + RECORD_OVERHEAD + i);
+                }
+
+                String record = new String(payload, Charsets.UTF_8);
+                int separatorIndex = record.indexOf(' ');
+                dataPoints.add(new DataPoint(record.substring(0, separatorIndex), record.substring(separatorIndex + 1), timestamp));
+
+                offset += RECORD_OVERHEAD + payloadLength;
+            }
+            peekedSegment = segment;
+            peekedOffset = offset;
+        }
+
+        return dataPoints;
+    }
+
+    /**
+     * Removes the data points returned by the last call to {@link #peek(int)} from the spool.
+     */
+    synchronized void commitPeeked() {
+        if (peekedSegment == null) {
+            return;
+        }
+
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            if (head == peekedSegment) {
+                pendingBytes -= peekedOffset - head.readOffset;
+                head.readOffset = peekedOffset;
+                head.buffer.putLong(0, head.readOffset);
+                if (head.readOffset == head.writeOffset && segments.size() > 1) {
+                    removeHeadSegment();
+                }
+                break;
+            }
+            pendingBytes -= head.getPendingBytes();
+            removeHeadSegment();
+        }
+        peekedSegment = null;
+    }
+
+    /**
+     * Retrieves the timestamp of the oldest data point in the spool.
+     *
+     * @return the timestamp of the oldest data point or -1 if the spool is empty.
+     */
+    synchronized long getOldestTimestamp() {
+        for (Segment segment : segments) {
+            if (segment.readOffset < segment.writeOffset) {
+                return segment.buffer.getLong(segment.readOffset + 4);
+            }
+        }
+        return -1;
+    }
+
+    synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    synchronized long getDroppedDataPoints() {
+        return droppedDataPoints;
+    }
+
+    synchronized boolean isEmpty() {
+        return pendingBytes == 0;
+    }
+
+    /**
+     * Forces the spooled data to the disk and releases the memory mappings. The spool cannot be used after this
+     * method is called.
+     */
+    synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            MappedBufferUtil.unmap(segment.buffer);
+        }
+        segments.clear();
+        peekedSegment = null;
+    }
+
+    private Segment addSegment() throws IOException {
+        if (segments.size() >= maxSegmentCount) {
+            Segment head = segments.peekFirst();
+            droppedDataPoints += countRecords(head);
+            pendingBytes -= head.getPendingBytes();
+            removeHeadSegment();
+            logger.warn("Graphite spool is full; discarded the oldest segment {}", head.file.getName());
+        }
+
+        Segment tail = segments.peekLast();
+        long sequenceNumber = tail == null ? 0 : tail.sequenceNumber + 1;
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_FILE_PREFIX, sequenceNumber, SEGMENT_FILE_SUFFIX));
+
+        Segment segment = new Segment(sequenceNumber, file, map(file));
+        segment.readOffset = HEADER_SIZE;
+        segment.writeOffset = HEADER_SIZE;
+        segment.buffer.putLong(0, HEADER_SIZE);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void removeHeadSegment() {
+        Segment head = segments.pollFirst();
+        if (peekedSegment == head) {
+            peekedSegment = null;
+        }
+        MappedBufferUtil.unmap(head.buffer);
+        if (!head.file.delete()) {
+            logger.warn("Unable to delete Graphite spool segment {}", head.file.getAbsolutePath());
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+                logger.warn("Ignoring corrupted Graphite spool segment {}", file.getName());
+                continue;
+            }
+
+            long sequenceNumber;
+            try {
+                String sequence = file.getName().substring(SEGMENT_FILE_PREFIX.length(), file.getName().length() - SEGMENT_FILE_SUFFIX.length());
+                sequenceNumber = Long.parseLong(sequence);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unrecognized Graphite spool file {}", file.getName());
+                continue;
+            }
+
+            MappedByteBuffer buffer = map(file, (int) file.length());
+            Segment segment = new Segment(sequenceNumber, file, buffer);
+
+            int readOffset = (int) buffer.getLong(0);
+            int writeOffset = HEADER_SIZE;
+            while (writeOffset + RECORD_OVERHEAD <= buffer.capacity()) {
+                int payloadLength = buffer.getInt(writeOffset);
+                if (payloadLength <= 0 || writeOffset + RECORD_OVERHEAD + payloadLength > buffer.capacity()) {
+                    break;
+                }
+                writeOffset += RECORD_OVERHEAD + payloadLength;
+            }
+
+            segment.writeOffset = writeOffset;
+            segment.readOffset = readOffset < HEADER_SIZE || readOffset > writeOffset ? HEADER_SIZE : readOffset;
+
+            if (segment.getPendingBytes() == 0) {
+                MappedBufferUtil.unmap(buffer);
+                if (!file.delete()) {
+                    logger.warn("Unable to delete Graphite spool segment {}", file.getAbsolutePath());
+                }
+                continue;
+            }
+
+            segments.addLast(segment);
+            pendingBytes += segment.getPendingBytes();
+        }
+
+        logger.info("Recovered {} bytes of spooled Graphite data points from {}", pendingBytes, directory.getAbsolutePath());
+    }
+
+    private int countRecords(Segment segment) {
+        int count = 0;
+        int offset = segment.readOffset;
+        while (offset < segment.writeOffset) {
+            offset += RECORD_OVERHEAD + segment.buffer.getInt(offset);
+            count++;
+        }
+        return count;
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        return map(file, segmentSizeInBytes);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.graphite.Graphite;
+import com.codahale.metrics.graphite.GraphiteSender;
+import com.codahale.metrics.graphite.PickledGraphite;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.centro.rtb.monitoringcenter.config.HostAndPort;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A GraphiteSender, which splits the reported data points across multiple Graphite (Carbon) instances. Each data point
+ * is routed to a shard by means of consistent hashing of its name, compatible with the <tt>consistent-hashing</tt>
+ * relay method of Carbon relays. Data points are buffered per shard until {@link #flush()} is called, at which point
+ * all shards are written to in parallel.
+ *
+ * <p>
+ *     If a shard cannot be written to, its data points fail over to the next available shard on the hash ring. The
+ *     {@link #flush()} method only fails if there are no shards left to fail over to; the data points, which were not
+ *     delivered to any shard, are then carried by an {@link UndeliveredDataPointsException}. A send that times out is
+ *     left running, and its shard is treated as unavailable until the send completes, so that the sender of a shard
+ *     is never used by two threads at once.
+ * </p>
+ *
+ * <p>
+ *     This class exposes a send timer and a failure counter for each shard, as well as a counter for the data points
+ *     that had to fail over. It is not thread-safe; it is meant to be driven by a single reporter thread.
+ * </p>
+ */
+public class ShardedGraphiteSender implements GraphiteSender, MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedGraphiteSender.class);
+
+    private static class Shard {
+        private final HostAndPort address;
+        private final GraphiteSender sender;
+        private final Timer sendTimer;
+        private final Counter failuresCounter;
+        private List<GraphiteSpool.DataPoint> batch;
+        private Future<Boolean> pendingSend;
+
+        private Shard(HostAndPort address, GraphiteSender sender) {
+            this.address = address;
+            this.sender = sender;
+            this.sendTimer = new Timer();
+            this.failuresCounter = new Counter();
+            this.batch = new ArrayList<>();
+        }
+    }
+
+    private final List<Shard> shards;
+    private final ConsistentHashRing hashRing;
+    private final long sendTimeoutInMillis;
+    private final ExecutorService executorService;
+
+    private final Counter failedOverDataPointsCounter;
+    private final Map<String, Metric> metricsByNames;
+
+    private boolean connected;
+    private int failures;
+
+    /**
+     * Constructs a sharded sender for the given Graphite instances.
+     *
+     * @param addresses addresses of the Graphite instances; the order has no impact on the sharding.
+     * @param enableBatching whether to use the pickle protocol for the shards or not.
+     * @param sendTimeoutInMillis maximum time to wait for all shards to be written to on a single flush.
+     */
+    public ShardedGraphiteSender(List<HostAndPort> addresses, boolean enableBatching, long sendTimeoutInMillis) {
+        this(addresses, createSenders(addresses, enableBatching), sendTimeoutInMillis);
+    }
+
+    ShardedGraphiteSender(List<HostAndPort> addresses, List<GraphiteSender> senders, long sendTimeoutInMillis) {
+        Preconditions.checkArgument(addresses != null && !addresses.isEmpty(), "addresses cannot be empty");
+        Preconditions.checkArgument(senders != null && senders.size() == addresses.size(), "senders must match addresses");
+        Preconditions.checkArgument(sendTimeoutInMillis > 0, "sendTimeoutInMillis must be positive");
+
+        this.hashRing = new ConsistentHashRing(addresses);
+        this.sendTimeoutInMillis = sendTimeoutInMillis;
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            HostAndPort address = addresses.get(i);
+            Shard shard = new Shard(address, senders.get(i));
+            shards.add(shard);
+
+            String shardNamespace = MetricNamingUtil.join("shards", toShardName(address));
+            metricsByNames.put(MetricNamingUtil.join(shardNamespace, "sendTimer"), shard.sendTimer);
+            metricsByNames.put(MetricNamingUtil.join(shardNamespace, "failuresCounter"), shard.failuresCounter);
+        }
+        this.shards = shards;
+
+        this.failedOverDataPointsCounter = new Counter();
+        metricsByNames.put("failedOverDataPointsCounter", failedOverDataPointsCounter);
+        this.metricsByNames = metricsByNames;
+
+        this.executorService = Executors.newFixedThreadPool(shards.size(),
+                new ThreadFactoryBuilder().setNameFormat("ShardedGraphiteSender-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void connect() throws IllegalStateException, IOException {
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        // Connections to the shards are established on flush
+        connected = true;
+    }
+
+    @Override
+    public void send(String name, String value, long timestamp) throws IOException {
+        shards.get(hashRing.getNode(name)).batch.add(new GraphiteSpool.DataPoint(name, value, timestamp));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        boolean[] unavailableShards = new boolean[shards.size()];
+
+        while (true) {
+            List<Shard> failedShards = sendBatches();
+            if (failedShards.isEmpty()) {
+                return;
+            }
+
+            List<GraphiteSpool.DataPoint> dataPointsToFailOver = new ArrayList<>();
+            for (Shard failedShard : failedShards) {
+                unavailableShards[shards.indexOf(failedShard)] = true;
+                dataPointsToFailOver.addAll(failedShard.batch);
+            }
+            clearBatches();
+
+            for (GraphiteSpool.DataPoint dataPoint : dataPointsToFailOver) {
+                int shardIndex = hashRing.getNode(dataPoint.name, unavailableShards);
+                if (shardIndex == -1) {
+                    clearBatches();
+                    throw new UndeliveredDataPointsException("All Graphite shards are unavailable; dropped " + dataPointsToFailOver.size() + " data points",
+                            dataPointsToFailOver);
+                }
+                shards.get(shardIndex).batch.add(dataPoint);
+            }
+            failedOverDataPointsCounter.inc(dataPointsToFailOver.size());
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public int getFailures() {
+        return failures;
+    }
+
+    @Override
+    public void close() throws IOException {
+        clearBatches();
+        connected = false;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Stops the threads used for writing to the shards. This sender cannot be used after this method is called.
+     */
+    public void shutdown() {
+        MoreExecutors.shutdownAndAwaitTermination(executorService, 1, TimeUnit.SECONDS);
+    }
+
+    private List<Shard> sendBatches() {
+        List<Shard> failedShards = new ArrayList<>();
+
+        List<Shard> sendingShards = new ArrayList<>();
+        for (final Shard shard : shards) {
+            if (shard.batch.isEmpty()) {
+                continue;
+            }
+
+            // A timed out send may still be writing to the sender of the shard, which is not thread-safe
+            if (shard.pendingSend != null && !shard.pendingSend.isDone()) {
+                logger.warn("Graphite shard {} is still busy with a timed out send; skipping it", shard.address);
+                markFailed(shard, failedShards);
+                continue;
+            }
+
+            final List<GraphiteSpool.DataPoint> batch = shard.batch;
+            shard.pendingSend = executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return sendBatch(shard, batch);
+                }
+            });
+            sendingShards.add(shard);
+        }
+
+        long deadlineInNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutInMillis);
+        for (Shard shard : sendingShards) {
+            boolean sent = false;
+            try {
+                sent = shard.pendingSend.get(Math.max(0, deadlineInNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // The send is not cancelled, as interrupting it would not stop a blocked socket write anyway
+                logger.warn("Timed out while sending data points to Graphite shard {}", shard.address);
+            } catch (ExecutionException e) {
+                logger.warn("Error while sending data points to Graphite shard {}", shard.address, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!sent) {
+                markFailed(shard, failedShards);
+            }
+        }
+        return failedShards;
+    }
+
+    private void markFailed(Shard shard, List<Shard> failedShards) {
+        shard.failuresCounter.inc();
+        failedShards.add(shard);
+        failures++;
+    }
+
+    private static boolean sendBatch(Shard shard, List<GraphiteSpool.DataPoint> batch) {
+        final Timer.Context timerContext = shard.sendTimer.time();
+        try {
+            if (!shard.sender.isConnected()) {
+                shard.sender.connect();
+            }
+            for (GraphiteSpool.DataPoint dataPoint : batch) {
+                shard.sender.send(dataPoint.name, dataPoint.value, dataPoint.timestamp);
+            }
+            shard.sender.flush();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to report to Graphite shard {}", shard.address, e);
+            return false;
+        } finally {
+            timerContext.stop();
+            try {
+                shard.sender.close();
+            } catch (IOException e) {
+                logger.debug("Error closing connection to Graphite shard {}", shard.address, e);
+            }
+        }
+    }
+
+    private void clearBatches() {
+        for (Shard shard : shards) {
+            if (!shard.batch.isEmpty()) {
+                shard.batch = new ArrayList<>();
+            }
+        }
+    }
+
+    private static String toShardName(HostAndPort address) {
+        StringBuilder shardNameBuilder = new StringBuilder()
+                .append(address.getHost())
+                .append('_')
+                .append(address.getPort());
+        if (address.getInstance() != null) {
+            shardNameBuilder.append('_').append(address.getInstance());
+        }
+        return MetricNamingUtil.sanitize(shardNameBuilder.toString());
+    }
+
+    private static List<GraphiteSender> createSenders(List<HostAndPort> addresses, boolean enableBatching) {
+        Preconditions.checkArgument(addresses != null && !addresses.isEmpty(), "addresses cannot be empty");
+
+        List<GraphiteSender> senders = new ArrayList<>();
+        for (HostAndPort address : addresses) {
+            InetSocketAddress inetSocketAddress = new InetSocketAddress(address.getHost(), address.getPort());
+            senders.add(enableBatching ? new PickledGraphite(inetSocketAddress) : new Graphite(inetSocketAddress));
+        }
+        return senders;
+    }
+}
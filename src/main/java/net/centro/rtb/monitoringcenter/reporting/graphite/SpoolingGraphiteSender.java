@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.graphite.GraphiteSender;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GraphiteSender decorator, which spools data points that could not be delivered to Graphite to disk, and replays
+ * them once Graphite is reachable again. The data points of a reporting cycle are buffered in memory until
+ * {@link #flush()} is called. At that point, the spooled data points are sent ahead of the live ones, at a rate not
+ * exceeding the configured replay rate. If the delegate sender fails, the live data points are appended to the spool,
+ * while the replayed ones stay in the spool. If the delegate reports a partial failure by means of an
+ * {@link UndeliveredDataPointsException}, only the data points it did not deliver are spooled.
+ *
+ * <p>
+ *     This class exposes gauges for the spool size and the replay lag (the age of the oldest spooled data point), as
+ *     well as counters for the spooled, replayed, and dropped data points. It is not thread-safe; it is meant to be
+ *     driven by a single reporter thread.
+ * </p>
+ */
+public class SpoolingGraphiteSender implements GraphiteSender, MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(SpoolingGraphiteSender.class);
+
+    private final GraphiteSender delegate;
+    private final GraphiteSpool spool;
+    private final int replayRatePerSecond;
+
+    private final Counter spooledDataPointsCounter;
+    private final Counter replayedDataPointsCounter;
+    private final Map<String, Metric> metricsByNames;
+
+    private List<GraphiteSpool.DataPoint> batch;
+    private long lastReplayTimeInMillis;
+    private boolean connected;
+    private int failures;
+
+    /**
+     * Constructs a spooling sender.
+     *
+     * @param delegate the sender to deliver data points with.
+     * @param spoolDirectory the directory to store the spool segments in; previously spooled data will be recovered.
+     * @param maxSpoolSizeInBytes the maximum size of the spool; the oldest data is discarded beyond this size.
+     * @param replayRatePerSecond the maximum number of spooled data points to replay per second.
+     * @throws IOException if the spool directory could not be created or read.
+     */
+    public SpoolingGraphiteSender(GraphiteSender delegate, File spoolDirectory, long maxSpoolSizeInBytes, int replayRatePerSecond) throws IOException {
+        Preconditions.checkNotNull(delegate);
+        Preconditions.checkArgument(replayRatePerSecond > 0, "replayRatePerSecond must be positive");
+
+        this.delegate = delegate;
+        this.spool = new GraphiteSpool(spoolDirectory, maxSpoolSizeInBytes);
+        this.replayRatePerSecond = replayRatePerSecond;
+        this.batch = new ArrayList<>();
+
+        this.spooledDataPointsCounter = new Counter();
+        this.replayedDataPointsCounter = new Counter();
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("sizeInBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return spool.getPendingBytes();
+            }
+        });
+        metricsByNames.put("replayLagInSeconds", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                long oldestTimestamp = spool.getOldestTimestamp();
+                if (oldestTimestamp == -1) {
+                    return 0L;
+                }
+                return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - oldestTimestamp);
+            }
+        });
+        metricsByNames.put("droppedDataPoints", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return spool.getDroppedDataPoints();
+            }
+        });
+        metricsByNames.put("spooledDataPointsCounter", spooledDataPointsCounter);
+        metricsByNames.put("replayedDataPointsCounter", replayedDataPointsCounter);
+        this.metricsByNames = metricsByNames;
+    }
+
+    @Override
+    public void connect() throws IllegalStateException, IOException {
+        if (connected) {
+            throw new IllegalStateException("Already connected");
+        }
+        // The delegate is connected on flush, so that the data points can be spooled if it is unreachable
+        connected = true;
+    }
+
+    @Override
+    public void send(String name, String value, long timestamp) throws IOException {
+        batch.add(new GraphiteSpool.DataPoint(name, value, timestamp));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        List<GraphiteSpool.DataPoint> liveDataPoints = batch;
+        batch = new ArrayList<>();
+
+        List<GraphiteSpool.DataPoint> replayedDataPoints = Collections.emptyList();
+        try {
+            if (!delegate.isConnected()) {
+                delegate.connect();
+            }
+
+            if (!spool.isEmpty()) {
+                replayedDataPoints = spool.peek(computeReplayBudget());
+                for (GraphiteSpool.DataPoint dataPoint : replayedDataPoints) {
+                    delegate.send(dataPoint.name, dataPoint.value, dataPoint.timestamp);
+                }
+            }
+            lastReplayTimeInMillis = System.currentTimeMillis();
+
+            for (GraphiteSpool.DataPoint dataPoint : liveDataPoints) {
+                delegate.send(dataPoint.name, dataPoint.value, dataPoint.timestamp);
+            }
+            delegate.flush();
+
+            if (!replayedDataPoints.isEmpty()) {
+                spool.commitPeeked();
+                replayedDataPointsCounter.inc(replayedDataPoints.size());
+            }
+        } catch (UndeliveredDataPointsException e) {
+            // The delegate delivered some of the data points (e.g., to the healthy shards), so only the rest is spooled
+            failures++;
+            if (!replayedDataPoints.isEmpty()) {
+                spool.commitPeeked();
+            }
+            List<GraphiteSpool.DataPoint> undeliveredDataPoints = e.getUndeliveredDataPoints();
+            spool.append(undeliveredDataPoints);
+            spooledDataPointsCounter.inc(undeliveredDataPoints.size());
+            throw new IOException("Unable to deliver some data points to Graphite; spooled " + undeliveredDataPoints.size() + " data points", e);
+        } catch (IOException | RuntimeException e) {
+            failures++;
+            spool.append(liveDataPoints);
+            spooledDataPointsCounter.inc(liveDataPoints.size());
+            throw new IOException("Unable to deliver data points to Graphite; spooled " + liveDataPoints.size() + " data points", e);
+        } finally {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                logger.debug("Error closing Graphite sender", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public int getFailures() {
+        return failures;
+    }
+
+    @Override
+    public void close() throws IOException {
+        batch = new ArrayList<>();
+        connected = false;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Retrieves the sender this sender delegates to.
+     *
+     * @return the delegate sender.
+     */
+    public GraphiteSender getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Forces the spool to the disk. This sender cannot be used after this method is called.
+     */
+    public void shutdown() {
+        spool.close();
+    }
+
+    private int computeReplayBudget() {
+        if (lastReplayTimeInMillis == 0) {
+            return replayRatePerSecond;
+        }
+        long elapsedTimeInMillis = Math.max(1000, System.currentTimeMillis() - lastReplayTimeInMillis);
+        return (int) Math.min(Integer.MAX_VALUE, replayRatePerSecond * elapsedTimeInMillis / 1000);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signals that a flush delivered only some of the data points. The data points, which were not delivered, are carried
+ * by this exception, so that only they are spooled for a later replay.
+ */
+class UndeliveredDataPointsException extends IOException {
+    private final List<GraphiteSpool.DataPoint> undeliveredDataPoints;
+
+    UndeliveredDataPointsException(String message, List<GraphiteSpool.DataPoint> undeliveredDataPoints) {
+        super(message);
+        this.undeliveredDataPoints = Collections.unmodifiableList(undeliveredDataPoints);
+    }
+
+    List<GraphiteSpool.DataPoint> getUndeliveredDataPoints() {
+        return undeliveredDataPoints;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the samples compressed by {@link GorillaEncoder}. The bits are read in place by absolute gets, so that a
+ * stream stored in a memory-mapped segment is decoded without copying it to the heap first. The decoder does not know
+ * where the stream ends; the caller reads as many samples as were encoded.
+ *
+ * <p>
+ *     This class is not thread-safe.
+ * </p>
+ */
+class GorillaDecoder {
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    private final long[] valueBits;
+    private final int[] leadingZeros;
+    private final int[] trailingZeros;
+
+    private long bitPosition;
+    private boolean started;
+    private long timestamp;
+    private long delta;
+
+    GorillaDecoder(ByteBuffer buffer, int offset, int fieldCount) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.valueBits = new long[fieldCount];
+        this.leadingZeros = new int[fieldCount];
+        this.trailingZeros = new int[fieldCount];
+    }
+
+    /**
+     * Decodes the next sample, whose timestamp and values are then available via {@link #getTimestamp()} and
+     * {@link #getValue(int)}.
+     */
+    void next() {
+        if (!started) {
+            started = true;
+            timestamp = readBits(64);
+            for (int i = 0; i < valueBits.length; i++) {
+                valueBits[i] = readBits(64);
+            }
+            return;
+        }
+
+        delta += readDeltaOfDelta();
+        timestamp += delta;
+        for (int i = 0; i < valueBits.length; i++) {
+            readValue(i);
+        }
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    double getValue(int fieldIndex) {
+        return Double.longBitsToDouble(valueBits[fieldIndex]);
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return readSignedBits(7);
+        }
+        if (readBits(1) == 0) {
+            return readSignedBits(9);
+        }
+        if (readBits(1) == 0) {
+            return readSignedBits(12);
+        }
+        return readBits(64);
+    }
+
+    private void readValue(int fieldIndex) {
+        if (readBits(1) == 0) {
+            return;
+        }
+
+        if (readBits(1) == 1) {
+            leadingZeros[fieldIndex] = (int) readBits(5);
+            int meaningfulBits = (int) readBits(6) + 1;
+            trailingZeros[fieldIndex] = 64 - leadingZeros[fieldIndex] - meaningfulBits;
+        }
+
+        int meaningfulBits = 64 - leadingZeros[fieldIndex] - trailingZeros[fieldIndex];
+        valueBits[fieldIndex] ^= readBits(meaningfulBits) << trailingZeros[fieldIndex];
+    }
+
+    private long readSignedBits(int bitCount) {
+        return (readBits(bitCount) << (64 - bitCount)) >> (64 - bitCount);
+    }
+
+    private long readBits(int bitCount) {
+        long value = 0;
+        for (int i = 0; i < bitCount; i++) {
+            int currentByte = buffer.get(offset + (int) (bitPosition >>> 3));
+            value = (value << 1) | ((currentByte >>> (7 - (bitPosition & 7))) & 1);
+            bitPosition++;
+        }
+        return value;
+    }
+}
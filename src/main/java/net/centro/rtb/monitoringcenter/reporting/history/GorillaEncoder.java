@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import java.util.Arrays;
+
+/**
+ * Compresses the samples of a metric into a bit stream, as described in the Gorilla paper (Pelkonen et al., "Gorilla: A
+ * Fast, Scalable, In-Memory Time Series Database", VLDB 2015). The timestamps are encoded as deltas of deltas and the
+ * values of every field are XORed with the previous value of the same field, so that regularly sampled, slowly
+ * changing metrics take about a bit per timestamp and a few bits per value. The fields of a sample follow its
+ * timestamp in the stream. The stream is decoded by {@link GorillaDecoder}.
+ *
+ * <p>
+ *     This class is not thread-safe.
+ * </p>
+ */
+class GorillaEncoder {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long[] previousValueBits;
+    private final int[] previousLeadingZeros;
+    private final int[] previousTrailingZeros;
+
+    private byte[] bytes;
+    private long bitPosition;
+
+    private int sampleCount;
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private long previousDelta;
+
+    GorillaEncoder(int fieldCount) {
+        this.previousValueBits = new long[fieldCount];
+        this.previousLeadingZeros = new int[fieldCount];
+        this.previousTrailingZeros = new int[fieldCount];
+        this.bytes = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a sample. The timestamps must not decrease.
+     *
+     * @param timestamp the time of the sample in milliseconds.
+     * @param values the values of the fields; only the first values are read, so that a scratch array can be reused.
+     */
+    void add(long timestamp, double[] values) {
+        if (sampleCount == 0) {
+            firstTimestamp = timestamp;
+            writeBits(timestamp, 64);
+            for (int i = 0; i < previousValueBits.length; i++) {
+                previousValueBits[i] = Double.doubleToRawLongBits(values[i]);
+                previousLeadingZeros[i] = -1;
+                writeBits(previousValueBits[i], 64);
+            }
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            previousDelta = delta;
+            for (int i = 0; i < previousValueBits.length; i++) {
+                writeValue(i, Double.doubleToRawLongBits(values[i]));
+            }
+        }
+
+        previousTimestamp = timestamp;
+        sampleCount++;
+    }
+
+    int getSampleCount() {
+        return sampleCount;
+    }
+
+    long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return previousTimestamp;
+    }
+
+    int getSizeInBytes() {
+        return (int) ((bitPosition + 7) >>> 3);
+    }
+
+    /**
+     * Retrieves the encoded bytes without copying them.
+     *
+     * @return the backing array of the stream; only the first {@link #getSizeInBytes()} bytes are meaningful.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(int fieldIndex, long valueBits) {
+        long xor = valueBits ^ previousValueBits[fieldIndex];
+        previousValueBits[fieldIndex] = valueBits;
+
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        writeBits(1, 1);
+
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+        int previousLeading = previousLeadingZeros[fieldIndex];
+        int previousTrailing = previousTrailingZeros[fieldIndex];
+
+        if (previousLeading != -1 && leadingZeros >= previousLeading && trailingZeros >= previousTrailing) {
+            // The meaningful bits fit into the window of the previous value
+            writeBits(0, 1);
+            writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int meaningfulBits = 64 - leadingZeros - trailingZeros;
+            writeBits(1, 1);
+            writeBits(leadingZeros, 5);
+            writeBits(meaningfulBits - 1, 6);
+            writeBits(xor >>> trailingZeros, meaningfulBits);
+            previousLeadingZeros[fieldIndex] = leadingZeros;
+            previousTrailingZeros[fieldIndex] = trailingZeros;
+        }
+    }
+
+    private void writeBits(long value, int bitCount) {
+        for (int i = bitCount - 1; i >= 0; i--) {
+            int byteIndex = (int) (bitPosition >>> 3);
+            if (byteIndex == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            if (((value >>> i) & 1) != 0) {
+                bytes[byteIndex] |= (byte) (0x80 >>> (bitPosition & 7));
+            }
+            bitPosition++;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import com.google.common.base.Charsets;
+import net.centro.rtb.monitoringcenter.util.MappedBufferUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fixed-size, memory-mapped segment file of compressed metric history blocks. Each block holds the samples of a
+ * single metric over a period of time, encoded by {@link GorillaEncoder}.
+ *
+ * <p>
+ *     The segment starts with an 8-byte header: a magic number and the format version. It is followed by blocks of
+ *     the form <tt>[int length][short nameLength][name][byte type][int sampleCount][long firstTimestamp]
+ *     [long lastTimestamp][data]</tt>, where the length covers everything after itself and the name is UTF-8 encoded.
+ *     The length is written last, so that a block torn by a crash is ignored upon recovery.
+ * </p>
+ *
+ * <p>
+ *     The mapping is released on {@link #close()}, or, if blocks are still being decoded, once the last reader calls
+ *     {@link #release()}. Apart from this reference counting, this class is not thread-safe.
+ * </p>
+ */
+class HistorySegment {
+    private static final int MAGIC = 0x4D434853;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_OVERHEAD = 4 + 2 + 1 + 4 + 8 + 8;
+
+    /**
+     * A reference to a block in a segment, holding the block header, so that the segment is only touched when the
+     * data is decoded.
+     */
+    static class Block {
+        final HistorySegment segment;
+        final int dataOffset;
+        final MetricHistorySeries.Type type;
+        final int sampleCount;
+        final long firstTimestamp;
+        final long lastTimestamp;
+
+        private Block(HistorySegment segment, int dataOffset, MetricHistorySeries.Type type, int sampleCount, long firstTimestamp, long lastTimestamp) {
+            this.segment = segment;
+            this.dataOffset = dataOffset;
+            this.type = type;
+            this.sampleCount = sampleCount;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        GorillaDecoder decode() {
+            return new GorillaDecoder(segment.buffer, dataOffset, type.getFieldNames().size());
+        }
+    }
+
+    private final File file;
+    private final long startTimeInMillis;
+    private final MappedByteBuffer buffer;
+    private int writeOffset;
+    private long lastTimestamp;
+
+    private int readers;
+    private boolean closed;
+
+    private HistorySegment(File file, long startTimeInMillis, MappedByteBuffer buffer) {
+        this.file = file;
+        this.startTimeInMillis = startTimeInMillis;
+        this.buffer = buffer;
+        this.writeOffset = HEADER_SIZE;
+        this.lastTimestamp = -1;
+    }
+
+    /**
+     * Creates a new, empty segment.
+     *
+     * @param file the segment file.
+     * @param startTimeInMillis the time the segment has been started at.
+     * @param sizeInBytes the size of the segment file.
+     * @return the segment.
+     * @throws IOException if the segment file could not be created.
+     */
+    static HistorySegment create(File file, long startTimeInMillis, int sizeInBytes) throws IOException {
+        HistorySegment segment = new HistorySegment(file, startTimeInMillis, map(file, sizeInBytes));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment, collecting the references to its blocks.
+     *
+     * @param file the segment file.
+     * @param startTimeInMillis the time the segment has been started at.
+     * @param blocksByNames the map to add the block references to, by metric names.
+     * @return the segment or <tt>null</tt> if the file is not a valid segment.
+     * @throws IOException if the segment file could not be read.
+     */
+    static HistorySegment open(File file, long startTimeInMillis, Map<String, List<Block>> blocksByNames) throws IOException {
+        if (file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        HistorySegment segment = new HistorySegment(file, startTimeInMillis, map(file, (int) file.length()));
+        if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+            segment.close();
+            return null;
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = HEADER_SIZE;
+        while (offset + BLOCK_OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > buffer.capacity()) {
+                break;
+            }
+
+            int nameLength = buffer.getShort(offset + 4);
+            if (nameLength < 0 || BLOCK_OVERHEAD + nameLength > 4 + length) {
+                break;
+            }
+            int typeOffset = offset + 6 + nameLength;
+            int typeOrdinal = buffer.get(typeOffset);
+            if (typeOrdinal < 0 || typeOrdinal >= MetricHistorySeries.Type.values().length) {
+                break;
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                nameBytes[i] = buffer.get(offset + 6 + i);
+            }
+            String name = new String(nameBytes, Charsets.UTF_8);
+
+            Block block = new Block(segment, typeOffset + 21, MetricHistorySeries.Type.values()[typeOrdinal],
+                    buffer.getInt(typeOffset + 1), buffer.getLong(typeOffset + 5), buffer.getLong(typeOffset + 13));
+            addBlock(blocksByNames, name, block);
+            segment.lastTimestamp = Math.max(segment.lastTimestamp, block.lastTimestamp);
+
+            offset += 4 + length;
+        }
+        segment.writeOffset = offset;
+        return segment;
+    }
+
+    /**
+     * Appends the samples of a metric as a new block.
+     *
+     * @param name the name of the metric.
+     * @param type the type of the metric.
+     * @param encoder the encoded samples.
+     * @return the reference to the new block or <tt>null</tt> if the block does not fit into this segment.
+     */
+    Block append(String name, MetricHistorySeries.Type type, GorillaEncoder encoder) {
+        byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+        int dataSize = encoder.getSizeInBytes();
+        int blockSize = BLOCK_OVERHEAD + nameBytes.length + dataSize;
+        if (writeOffset + blockSize > buffer.capacity() || nameBytes.length > Short.MAX_VALUE) {
+            return null;
+        }
+
+        int offset = writeOffset;
+        buffer.putShort(offset + 4, (short) nameBytes.length);
+        for (int i = 0; i < nameBytes.length; i++) {
+            buffer.put(offset + 6 + i, nameBytes[i]);
+        }
+        int typeOffset = offset + 6 + nameBytes.length;
+        buffer.put(typeOffset, (byte) type.ordinal());
+        buffer.putInt(typeOffset + 1, encoder.getSampleCount());
+        buffer.putLong(typeOffset + 5, encoder.getFirstTimestamp());
+        buffer.putLong(typeOffset + 13, encoder.getLastTimestamp());
+
+        byte[] data = encoder.getBytes();
+        int dataOffset = typeOffset + 21;
+        for (int i = 0; i < dataSize; i++) {
+            buffer.put(dataOffset + i, data[i]);
+        }
+        buffer.putInt(offset, blockSize - 4);
+
+        writeOffset += blockSize;
+        lastTimestamp = Math.max(lastTimestamp, encoder.getLastTimestamp());
+        return new Block(this, dataOffset, type, encoder.getSampleCount(), encoder.getFirstTimestamp(), encoder.getLastTimestamp());
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getStartTimeInMillis() {
+        return startTimeInMillis;
+    }
+
+    /**
+     * Retrieves the timestamp of the newest sample in this segment.
+     *
+     * @return the timestamp of the newest sample or -1 if the segment is empty.
+     */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int getSizeInBytes() {
+        return writeOffset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Registers a reader, which keeps the mapping alive until it calls {@link #release()}.
+     *
+     * @return <tt>true</tt> if the reader has been registered; <tt>false</tt> if this segment is already closed.
+     */
+    synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        readers++;
+        return true;
+    }
+
+    /**
+     * Unregisters a reader, releasing the mapping if this segment has been closed meanwhile.
+     */
+    synchronized void release() {
+        readers--;
+        if (closed && readers == 0) {
+            MappedBufferUtil.unmap(buffer);
+        }
+    }
+
+    /**
+     * Closes this segment, releasing the mapping as soon as there are no readers. The blocks of this segment must not
+     * be decoded afterwards, unless the segment has been retained before.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (readers == 0) {
+            MappedBufferUtil.unmap(buffer);
+        }
+    }
+
+    static void addBlock(Map<String, List<Block>> blocksByNames, String name, Block block) {
+        List<Block> blocks = blocksByNames.get(name);
+        if (blocks == null) {
+            blocks = new ArrayList<>();
+            blocksByNames.put(name, blocks);
+        }
+        blocks.add(block);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(size);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
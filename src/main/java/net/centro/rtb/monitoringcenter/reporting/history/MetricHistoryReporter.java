@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reporter, which records the values of metrics into an in-process history rather than pushing them to a backend.
+ * Every metric gets a fixed-size ring buffer of primitive columns (see {@link MetricRingBuffer}), allocated on the
+ * first report the metric appears in; the fields recorded depend on the metric type (see
+ * {@link MetricHistorySeries.Type}). The number of metrics in the history is capped, so that the memory held by the
+ * history is bounded; metrics beyond the cap are not recorded until the history of other metrics expires--that is,
+ * until a metric has been absent for the whole span of its ring buffer.
+ *
+ * <p>
+ *     Optionally, the samples are also added to a {@link MetricHistoryStore}, which persists them beyond the span of
+ *     the ring buffers and across restarts. Ranges exceeding the span of the ring buffers, and metrics without a ring
+ *     buffer (e.g., right after a restart), are then served from the store.
+ * </p>
+ *
+ * <p>
+ *     This reporter exposes gauges for the number of metrics in the history, the memory held by their ring buffers,
+ *     and the number of metrics not recorded due to the cap.
+ * </p>
+ */
+public class MetricHistoryReporter extends ScheduledReporter implements MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(MetricHistoryReporter.class);
+
+    private final Clock clock;
+    private final long samplingIntervalInMillis;
+    private final int samplesPerMetric;
+    private final int maxMetrics;
+    private final MetricHistoryStore store;
+
+    private final ConcurrentMap<String, MetricRingBuffer> ringBuffersByNames;
+    private final double[] values;
+    private volatile int untrackedMetrics;
+
+    private final Map<String, Metric> metricsByNames;
+
+    private MetricHistoryReporter(Builder builder) {
+        super(builder.registry, "history-reporter", builder.filter, builder.rateUnit, builder.durationUnit);
+
+        this.clock = builder.clock;
+        this.samplingIntervalInMillis = builder.samplingIntervalInMillis;
+        this.samplesPerMetric = builder.samplesPerMetric;
+        this.maxMetrics = builder.maxMetrics;
+        this.store = builder.store;
+
+        this.ringBuffersByNames = new ConcurrentHashMap<>();
+        this.values = new double[MetricHistorySeries.Type.TIMER.getFieldNames().size()];
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("metrics", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return ringBuffersByNames.size();
+            }
+        });
+        metricsByNames.put("sizeInBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                long sizeInBytes = 0;
+                for (MetricRingBuffer ringBuffer : ringBuffersByNames.values()) {
+                    sizeInBytes += ringBuffer.getSizeInBytes();
+                }
+                return sizeInBytes;
+            }
+        });
+        metricsByNames.put("untrackedMetrics", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return untrackedMetrics;
+            }
+        });
+        this.metricsByNames = Collections.unmodifiableMap(metricsByNames);
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+                                    SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        long timestamp = clock.getTime();
+
+        // Expired histories make room for new metrics
+        long expirationTimeInMillis = timestamp - samplesPerMetric * samplingIntervalInMillis;
+        for (Iterator<MetricRingBuffer> iterator = ringBuffersByNames.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getLastTimestamp() < expirationTimeInMillis) {
+                iterator.remove();
+            }
+        }
+
+        int untrackedMetrics = 0;
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Object value;
+            try {
+                value = entry.getValue().getValue();
+            } catch (RuntimeException e) {
+                logger.debug("Unable to read gauge {}", entry.getKey(), e);
+                value = Double.NaN;
+            }
+
+            if (value instanceof Number) {
+                values[0] = ((Number) value).doubleValue();
+            } else if (value instanceof Boolean) {
+                values[0] = ((Boolean) value) ? 1 : 0;
+            } else {
+                continue;
+            }
+            untrackedMetrics += record(entry.getKey(), MetricHistorySeries.Type.GAUGE, timestamp);
+        }
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values[0] = entry.getValue().getCount();
+            untrackedMetrics += record(entry.getKey(), MetricHistorySeries.Type.COUNTER, timestamp);
+        }
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            Snapshot snapshot = histogram.getSnapshot();
+            values[0] = histogram.getCount();
+            values[1] = snapshot.getMean();
+            values[2] = snapshot.getMedian();
+            values[3] = snapshot.get99thPercentile();
+            values[4] = snapshot.getMax();
+            untrackedMetrics += record(entry.getKey(), MetricHistorySeries.Type.HISTOGRAM, timestamp);
+        }
+
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            Meter meter = entry.getValue();
+            values[0] = meter.getCount();
+            values[1] = convertRate(meter.getOneMinuteRate());
+            untrackedMetrics += record(entry.getKey(), MetricHistorySeries.Type.METER, timestamp);
+        }
+
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            Snapshot snapshot = timer.getSnapshot();
+            values[0] = timer.getCount();
+            values[1] = convertDuration(snapshot.getMean());
+            values[2] = convertDuration(snapshot.getMedian());
+            values[3] = convertDuration(snapshot.get99thPercentile());
+            values[4] = convertDuration(snapshot.getMax());
+            values[5] = convertRate(timer.getOneMinuteRate());
+            untrackedMetrics += record(entry.getKey(), MetricHistorySeries.Type.TIMER, timestamp);
+        }
+
+        this.untrackedMetrics = untrackedMetrics;
+
+        if (store != null) {
+            store.flush(timestamp);
+        }
+    }
+
+    /**
+     * Retrieves the recorded samples of a metric, which are not older than a given range.
+     *
+     * @param name the name of the metric.
+     * @param rangeInMillis the maximum age of the samples to retrieve.
+     * @return the series of the samples; <tt>null</tt> if the metric has no history.
+     */
+    public MetricHistorySeries getSeries(String name, long rangeInMillis) {
+        Preconditions.checkArgument(rangeInMillis >= 0, "rangeInMillis cannot be negative");
+
+        long timeInMillis = clock.getTime();
+        MetricRingBuffer ringBuffer = ringBuffersByNames.get(name);
+        if (store != null && (ringBuffer == null || rangeInMillis > getSpanInMillis())) {
+            MetricHistorySeries series = store.getSeries(name, timeInMillis - rangeInMillis, timeInMillis);
+            if (series != null) {
+                return series;
+            }
+        }
+
+        if (ringBuffer == null) {
+            return null;
+        }
+        return ringBuffer.getSeries(name, timeInMillis - rangeInMillis);
+    }
+
+    /**
+     * Retrieves the names of the metrics in the history.
+     *
+     * @return the sorted names of the metrics in the history.
+     */
+    public SortedSet<String> getMetricNames() {
+        return new TreeSet<>(ringBuffersByNames.keySet());
+    }
+
+    /**
+     * Retrieves the span of the history--that is, the age of the oldest sample a ring buffer can hold.
+     *
+     * @return the span of the history in milliseconds.
+     */
+    public long getSpanInMillis() {
+        return samplesPerMetric * samplingIntervalInMillis;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return metricsByNames;
+    }
+
+    /**
+     * Appends the current contents of the scratch values to the ring buffer of a metric.
+     *
+     * @return 1 if the metric could not be recorded due to the cap; 0 otherwise.
+     */
+    private int record(String name, MetricHistorySeries.Type type, long timestamp) {
+        MetricRingBuffer ringBuffer = ringBuffersByNames.get(name);
+        if (ringBuffer == null || ringBuffer.getType() != type) {
+            if (ringBuffer == null && ringBuffersByNames.size() >= maxMetrics) {
+                return 1;
+            }
+
+            // A metric re-registered with another type starts a new history
+            ringBuffer = new MetricRingBuffer(type, samplesPerMetric);
+            ringBuffersByNames.put(name, ringBuffer);
+        }
+
+        ringBuffer.add(timestamp, values);
+        if (store != null) {
+            store.add(name, type, timestamp, values);
+        }
+        return 0;
+    }
+
+    public static class Builder {
+        private final MetricRegistry registry;
+        private TimeUnit rateUnit;
+        private TimeUnit durationUnit;
+        private MetricFilter filter;
+        private Clock clock;
+        private long samplingIntervalInMillis;
+        private int samplesPerMetric;
+        private int maxMetrics;
+        private MetricHistoryStore store;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+            this.rateUnit = TimeUnit.SECONDS;
+            this.durationUnit = TimeUnit.MICROSECONDS;
+            this.filter = MetricFilter.ALL;
+            this.clock = Clock.defaultClock();
+            this.samplingIntervalInMillis = TimeUnit.SECONDS.toMillis(10);
+            this.samplesPerMetric = 360;
+            this.maxMetrics = 1000;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Uses the given clock to timestamp the samples.
+         *
+         * @param clock a clock.
+         * @return this builder.
+         */
+        public Builder withClock(Clock clock) {
+            Preconditions.checkNotNull(clock);
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Sets the interval, at which this reporter is expected to be invoked. It determines the span of the history,
+         * after which the history of a metric that is no longer reported expires.
+         *
+         * @param period the sampling interval.
+         * @param timeUnit the unit for <tt>period</tt>.
+         * @return this builder.
+         */
+        public Builder samplingInterval(long period, TimeUnit timeUnit) {
+            Preconditions.checkArgument(period > 0, "period must be positive");
+            this.samplingIntervalInMillis = timeUnit.toMillis(period);
+            return this;
+        }
+
+        /**
+         * Sets the capacity of the ring buffer of every metric.
+         *
+         * @param samplesPerMetric the number of samples retained per metric.
+         * @return this builder.
+         */
+        public Builder samplesPerMetric(int samplesPerMetric) {
+            Preconditions.checkArgument(samplesPerMetric > 0, "samplesPerMetric must be positive");
+            this.samplesPerMetric = samplesPerMetric;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of metrics in the history.
+         *
+         * @param maxMetrics the maximum number of metrics in the history.
+         * @return this builder.
+         */
+        public Builder maxMetrics(int maxMetrics) {
+            Preconditions.checkArgument(maxMetrics > 0, "maxMetrics must be positive");
+            this.maxMetrics = maxMetrics;
+            return this;
+        }
+
+        /**
+         * Adds the recorded samples to a store, which persists them. The store is not closed by this reporter.
+         *
+         * @param store a metric history store.
+         * @return this builder.
+         */
+        public Builder persistTo(MetricHistoryStore store) {
+            Preconditions.checkNotNull(store);
+            this.store = store;
+            return this;
+        }
+
+        public MetricHistoryReporter build() {
+            return new MetricHistoryReporter(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The recorded samples of a single metric, in columns: the timestamps of the samples and, for every field of the
+ * metric type, the values of that field. The samples are ordered from the oldest to the newest. Timer durations are
+ * expressed in microseconds and rates in events per second, as in the other outputs of the MonitoringCenter.
+ */
+public class MetricHistorySeries {
+    public enum Type {
+        GAUGE("value"),
+        COUNTER("count"),
+        HISTOGRAM("count", "mean", "p50", "p99", "max"),
+        METER("count", "m1_rate"),
+        TIMER("count", "mean", "p50", "p99", "max", "m1_rate");
+
+        private final List<String> fieldNames;
+
+        Type(String... fieldNames) {
+            this.fieldNames = Collections.unmodifiableList(Arrays.asList(fieldNames));
+        }
+
+        /**
+         * Retrieves the names of the fields recorded for this metric type.
+         *
+         * @return the field names.
+         */
+        public List<String> getFieldNames() {
+            return fieldNames;
+        }
+    }
+
+    private final String name;
+    private final Type type;
+    private final long[] timestamps;
+    private final double[][] values;
+
+    MetricHistorySeries(String name, Type type, long[] timestamps, double[][] values) {
+        this.name = name;
+        this.type = type;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the number of samples in this series.
+     *
+     * @return the number of samples.
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Retrieves the timestamps of the samples in milliseconds.
+     *
+     * @return the timestamps of the samples.
+     */
+    public long[] getTimestamps() {
+        return timestamps.clone();
+    }
+
+    /**
+     * Retrieves the values of a field.
+     *
+     * @param fieldName a field name of the metric type.
+     * @return the values of the field, parallel to the timestamps.
+     * @throws IllegalArgumentException if the field is not recorded for the metric type.
+     */
+    public double[] getValues(String fieldName) {
+        int fieldIndex = type.getFieldNames().indexOf(fieldName);
+        if (fieldIndex == -1) {
+            throw new IllegalArgumentException(fieldName + " is not a field of " + type);
+        }
+        return values[fieldIndex].clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("MetricHistorySeries{");
+        sb.append("name='").append(name).append('\'');
+        sb.append(", type=").append(type);
+        sb.append(", size=").append(timestamps.length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
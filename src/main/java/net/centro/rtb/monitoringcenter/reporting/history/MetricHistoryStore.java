@@ -0,0 +1,576 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent store of the metric history, which lets the history outlive the process. The samples recorded by
+ * {@link MetricHistoryReporter} are kept in three resolutions: raw, rolled up to 1 minute, and rolled up to 10
+ * minutes. A rolled up sample holds the last count, the maximum of the maxima, and the mean of the other fields over
+ * its interval. The samples of every metric are compressed in memory by {@link GorillaEncoder} and periodically
+ * written as blocks to memory-mapped segment files (see {@link HistorySegment}); raw blocks every 10 minutes, 1-minute
+ * blocks every hour, and 10-minute blocks every 6 hours. The pending samples are written on {@link #close()}, except
+ * for the partially aggregated rollups, and are lost if the process crashes.
+ *
+ * <p>
+ *     Raw samples are retained for up to 2 hours and 1-minute rollups for up to 12 hours, while 10-minute rollups are
+ *     retained for the whole retention period. A segment is deleted once its newest sample is older than the
+ *     retention of its resolution. Reads pick the finest resolution retained for the requested range, and decode the
+ *     blocks straight from the mapped segments. The blocks are decoded outside the lock of the store, so that a long
+ *     range query does not hold up the recording; a segment being read is only unmapped once the read is done.
+ * </p>
+ *
+ * <p>
+ *     This class exposes gauges for the size of the segments, their number, and the number of blocks that could not
+ *     be written. It is thread-safe.
+ * </p>
+ */
+public class MetricHistoryStore implements MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(MetricHistoryStore.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "history-";
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+    private static final int SEGMENT_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    enum Resolution {
+        RAW("raw", 0, TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(2)),
+        ONE_MINUTE("1m", TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(12)),
+        TEN_MINUTES("10m", TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(6), Long.MAX_VALUE);
+
+        private final String fileNameToken;
+        private final long intervalInMillis;
+        private final long flushIntervalInMillis;
+        private final long maxRetentionInMillis;
+
+        Resolution(String fileNameToken, long intervalInMillis, long flushIntervalInMillis, long maxRetentionInMillis) {
+            this.fileNameToken = fileNameToken;
+            this.intervalInMillis = intervalInMillis;
+            this.flushIntervalInMillis = flushIntervalInMillis;
+            this.maxRetentionInMillis = maxRetentionInMillis;
+        }
+    }
+
+    private enum Aggregation {
+        MEAN,
+        MAX,
+        LAST;
+
+        private static Aggregation forField(String fieldName) {
+            if ("count".equals(fieldName)) {
+                return LAST;
+            } else if ("max".equals(fieldName)) {
+                return MAX;
+            }
+            return MEAN;
+        }
+    }
+
+    /**
+     * The samples of a metric not yet written to a segment, and, for the rollups, the aggregate of the current
+     * interval.
+     */
+    private static class PendingSeries {
+        private final MetricHistorySeries.Type type;
+        private final Aggregation[] aggregations;
+        private final double[] aggregates;
+        private GorillaEncoder encoder;
+
+        private long intervalStartTime;
+        private int aggregatedSamples;
+
+        private PendingSeries(MetricHistorySeries.Type type) {
+            this.type = type;
+            this.aggregations = new Aggregation[type.getFieldNames().size()];
+            for (int i = 0; i < aggregations.length; i++) {
+                aggregations[i] = Aggregation.forField(type.getFieldNames().get(i));
+            }
+            this.aggregates = new double[aggregations.length];
+            this.encoder = new GorillaEncoder(aggregations.length);
+        }
+
+        private void aggregate(long intervalStartTime, double[] values) {
+            if (aggregatedSamples > 0 && intervalStartTime != this.intervalStartTime) {
+                closeInterval();
+            }
+            this.intervalStartTime = intervalStartTime;
+
+            for (int i = 0; i < aggregates.length; i++) {
+                if (aggregatedSamples == 0 || aggregations[i] == Aggregation.LAST) {
+                    aggregates[i] = values[i];
+                } else if (aggregations[i] == Aggregation.MAX) {
+                    aggregates[i] = Math.max(aggregates[i], values[i]);
+                } else {
+                    aggregates[i] += values[i];
+                }
+            }
+            aggregatedSamples++;
+        }
+
+        private void closeInterval() {
+            for (int i = 0; i < aggregates.length; i++) {
+                if (aggregations[i] == Aggregation.MEAN) {
+                    aggregates[i] /= aggregatedSamples;
+                }
+            }
+            encoder.add(intervalStartTime, aggregates);
+            aggregatedSamples = 0;
+        }
+    }
+
+    private static class Tier {
+        private final Resolution resolution;
+        private final long retentionInMillis;
+        private final long segmentSpanInMillis;
+
+        private final Deque<HistorySegment> segments;
+        private final Map<String, List<HistorySegment.Block>> blocksByNames;
+        private final Map<String, PendingSeries> pendingSeriesByNames;
+        private long lastFlushTimeInMillis;
+
+        private Tier(Resolution resolution, long retentionInMillis) {
+            this.resolution = resolution;
+            this.retentionInMillis = Math.min(resolution.maxRetentionInMillis, retentionInMillis);
+            this.segmentSpanInMillis = Math.max(resolution.flushIntervalInMillis, this.retentionInMillis / 4);
+
+            this.segments = new ArrayDeque<>();
+            this.blocksByNames = new HashMap<>();
+            this.pendingSeriesByNames = new HashMap<>();
+        }
+    }
+
+    private final File directory;
+    private final Tier[] tiers;
+
+    private long droppedBlocks;
+    private boolean closed;
+
+    private final Map<String, Metric> metricsByNames;
+
+    /**
+     * Constructs a store, recovering the segments found in the directory.
+     *
+     * @param directory the directory to store the segments in.
+     * @param retentionInMillis the time to retain the history for.
+     * @throws IOException if the directory could not be created or read.
+     */
+    public MetricHistoryStore(File directory, long retentionInMillis) throws IOException {
+        Preconditions.checkNotNull(directory);
+        Preconditions.checkArgument(retentionInMillis > 0, "retentionInMillis must be positive");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create history directory " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.tiers = new Tier[Resolution.values().length];
+        for (Resolution resolution : Resolution.values()) {
+            tiers[resolution.ordinal()] = new Tier(resolution, retentionInMillis);
+        }
+
+        recover();
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("sizeInBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getSizeInBytes();
+            }
+        });
+        metricsByNames.put("segments", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getSegmentCount();
+            }
+        });
+        metricsByNames.put("droppedBlocks", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getDroppedBlocks();
+            }
+        });
+        this.metricsByNames = Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Adds a sample of a metric to every resolution.
+     *
+     * @param name the name of the metric.
+     * @param type the type of the metric.
+     * @param timestamp the time of the sample in milliseconds.
+     * @param values the values of the fields; only the first values are read, so that a scratch array can be reused.
+     */
+    synchronized void add(String name, MetricHistorySeries.Type type, long timestamp, double[] values) {
+        if (closed) {
+            return;
+        }
+
+        for (Tier tier : tiers) {
+            PendingSeries pendingSeries = tier.pendingSeriesByNames.get(name);
+            if (pendingSeries == null || pendingSeries.type != type) {
+                pendingSeries = new PendingSeries(type);
+                tier.pendingSeriesByNames.put(name, pendingSeries);
+            }
+
+            if (tier.resolution == Resolution.RAW) {
+                pendingSeries.encoder.add(timestamp, values);
+            } else {
+                long intervalInMillis = tier.resolution.intervalInMillis;
+                pendingSeries.aggregate(timestamp - timestamp % intervalInMillis, values);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending samples of the resolutions, whose flush interval has elapsed, and deletes the expired
+     * segments. The flush intervals are aligned to the epoch.
+     *
+     * @param timeInMillis the current time.
+     */
+    synchronized void flush(long timeInMillis) {
+        if (closed) {
+            return;
+        }
+
+        for (Tier tier : tiers) {
+            long flushIntervalInMillis = tier.resolution.flushIntervalInMillis;
+            if (tier.lastFlushTimeInMillis == 0) {
+                tier.lastFlushTimeInMillis = timeInMillis;
+            } else if (timeInMillis / flushIntervalInMillis > tier.lastFlushTimeInMillis / flushIntervalInMillis) {
+                flush(tier, timeInMillis, false);
+                tier.lastFlushTimeInMillis = timeInMillis;
+            }
+            deleteExpiredSegments(tier, timeInMillis);
+        }
+    }
+
+    /**
+     * Retrieves the samples of a metric not older than a given time, from the finest resolution retained for that
+     * time. Samples of blocks recorded for another type of the metric are skipped.
+     *
+     * @param name the name of the metric.
+     * @param fromTimeInMillis the time of the oldest sample to retrieve.
+     * @param timeInMillis the current time.
+     * @return the series of the samples; <tt>null</tt> if there are no such samples.
+     */
+    MetricHistorySeries getSeries(String name, long fromTimeInMillis, long timeInMillis) {
+        MetricHistorySeries.Type type;
+        List<HistorySegment.Block> blocks = new ArrayList<>();
+        Set<HistorySegment> retainedSegments = new HashSet<>();
+        byte[] pendingBytes = null;
+        int pendingSampleCount = 0;
+        int capacity = 0;
+
+        // The block references and the pending samples are copied under the lock; the blocks are decoded outside it
+        synchronized (this) {
+            Tier tier = tiers[tiers.length - 1];
+            for (Tier candidate : tiers) {
+                if (timeInMillis - candidate.retentionInMillis <= fromTimeInMillis) {
+                    tier = candidate;
+                    break;
+                }
+            }
+
+            PendingSeries pendingSeries = tier.pendingSeriesByNames.get(name);
+            List<HistorySegment.Block> tierBlocks = tier.blocksByNames.get(name);
+            if (pendingSeries != null) {
+                type = pendingSeries.type;
+            } else if (tierBlocks != null) {
+                type = tierBlocks.get(tierBlocks.size() - 1).type;
+            } else {
+                return null;
+            }
+
+            if (tierBlocks != null) {
+                for (HistorySegment.Block block : tierBlocks) {
+                    if (block.type == type && block.lastTimestamp >= fromTimeInMillis && retain(block.segment, retainedSegments)) {
+                        blocks.add(block);
+                        capacity += block.sampleCount;
+                    }
+                }
+            }
+            if (pendingSeries != null && pendingSeries.encoder.getSampleCount() > 0) {
+                GorillaEncoder encoder = pendingSeries.encoder;
+                pendingBytes = Arrays.copyOf(encoder.getBytes(), encoder.getSizeInBytes());
+                pendingSampleCount = encoder.getSampleCount();
+                capacity += pendingSampleCount;
+            }
+        }
+
+        int fieldCount = type.getFieldNames().size();
+        long[] timestamps = new long[capacity];
+        double[][] values = new double[fieldCount][capacity];
+        int size = 0;
+
+        try {
+            for (HistorySegment.Block block : blocks) {
+                size = decode(block.decode(), block.sampleCount, fromTimeInMillis, timestamps, values, size);
+            }
+        } finally {
+            for (HistorySegment segment : retainedSegments) {
+                segment.release();
+            }
+        }
+        if (pendingBytes != null) {
+            GorillaDecoder decoder = new GorillaDecoder(ByteBuffer.wrap(pendingBytes), 0, fieldCount);
+            size = decode(decoder, pendingSampleCount, fromTimeInMillis, timestamps, values, size);
+        }
+
+        if (size == 0) {
+            return null;
+        }
+        if (size < capacity) {
+            timestamps = Arrays.copyOf(timestamps, size);
+            for (int i = 0; i < fieldCount; i++) {
+                values[i] = Arrays.copyOf(values[i], size);
+            }
+        }
+        return new MetricHistorySeries(name, type, timestamps, values);
+    }
+
+    synchronized long getSizeInBytes() {
+        long sizeInBytes = 0;
+        for (Tier tier : tiers) {
+            for (HistorySegment segment : tier.segments) {
+                sizeInBytes += segment.getSizeInBytes();
+            }
+        }
+        return sizeInBytes;
+    }
+
+    synchronized int getSegmentCount() {
+        int segmentCount = 0;
+        for (Tier tier : tiers) {
+            segmentCount += tier.segments.size();
+        }
+        return segmentCount;
+    }
+
+    synchronized long getDroppedBlocks() {
+        return droppedBlocks;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return metricsByNames;
+    }
+
+    /**
+     * Writes the pending samples and forces the segments to the disk. This store cannot be used after this method is
+     * called.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        for (Tier tier : tiers) {
+            flush(tier, 0, true);
+            for (HistorySegment segment : tier.segments) {
+                segment.force();
+                segment.close();
+            }
+            tier.segments.clear();
+            tier.blocksByNames.clear();
+        }
+        closed = true;
+    }
+
+    private void flush(Tier tier, long timeInMillis, boolean closing) {
+        for (Iterator<Map.Entry<String, PendingSeries>> iterator = tier.pendingSeriesByNames.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, PendingSeries> entry = iterator.next();
+            PendingSeries pendingSeries = entry.getValue();
+
+            // The interval of a metric, which is no longer reported, is closed once it has elapsed
+            if (!closing && pendingSeries.aggregatedSamples > 0
+                    && pendingSeries.intervalStartTime + tier.resolution.intervalInMillis <= timeInMillis) {
+                pendingSeries.closeInterval();
+            }
+
+            if (pendingSeries.encoder.getSampleCount() > 0) {
+                write(tier, entry.getKey(), pendingSeries, closing ? pendingSeries.encoder.getLastTimestamp() : timeInMillis);
+                pendingSeries.encoder = new GorillaEncoder(pendingSeries.aggregates.length);
+            } else if (pendingSeries.aggregatedSamples == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void write(Tier tier, String name, PendingSeries pendingSeries, long timeInMillis) {
+        try {
+            HistorySegment tail = tier.segments.peekLast();
+            if (tail == null || timeInMillis - tail.getStartTimeInMillis() >= tier.segmentSpanInMillis) {
+                tail = addSegment(tier, timeInMillis);
+            }
+
+            HistorySegment.Block block = tail.append(name, pendingSeries.type, pendingSeries.encoder);
+            if (block == null) {
+                block = addSegment(tier, timeInMillis).append(name, pendingSeries.type, pendingSeries.encoder);
+            }
+
+            if (block != null) {
+                HistorySegment.addBlock(tier.blocksByNames, name, block);
+                return;
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to create a history segment in {}", directory.getAbsolutePath(), e);
+        }
+        droppedBlocks++;
+    }
+
+    private HistorySegment addSegment(Tier tier, long timeInMillis) throws IOException {
+        HistorySegment tail = tier.segments.peekLast();
+        long startTimeInMillis = tail == null ? timeInMillis : Math.max(timeInMillis, tail.getStartTimeInMillis() + 1);
+        File file = new File(directory, String.format("%s%s-%020d%s", SEGMENT_FILE_PREFIX, tier.resolution.fileNameToken,
+                startTimeInMillis, SEGMENT_FILE_SUFFIX));
+
+        HistorySegment segment = HistorySegment.create(file, startTimeInMillis, SEGMENT_SIZE_IN_BYTES);
+        tier.segments.addLast(segment);
+        return segment;
+    }
+
+    private void deleteExpiredSegments(Tier tier, long timeInMillis) {
+        while (!tier.segments.isEmpty()) {
+            HistorySegment head = tier.segments.peekFirst();
+            if (head.getLastTimestamp() >= timeInMillis - tier.retentionInMillis) {
+                break;
+            }
+            tier.segments.pollFirst();
+
+            // The blocks of a segment precede the blocks of the newer segments
+            for (Iterator<List<HistorySegment.Block>> iterator = tier.blocksByNames.values().iterator(); iterator.hasNext(); ) {
+                List<HistorySegment.Block> blocks = iterator.next();
+                int expiredBlocks = 0;
+                while (expiredBlocks < blocks.size() && blocks.get(expiredBlocks).segment == head) {
+                    expiredBlocks++;
+                }
+                blocks.subList(0, expiredBlocks).clear();
+                if (blocks.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+
+            head.close();
+            if (!head.getFile().delete()) {
+                logger.warn("Unable to delete history segment {}", head.getFile().getAbsolutePath());
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+        // The start times are zero-padded, so that the segments of a resolution are sorted chronologically
+        Arrays.sort(files);
+
+        int recoveredSegments = 0;
+        for (File file : files) {
+            String fileName = file.getName();
+            String[] tokens = fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()).split("-");
+
+            Tier tier = null;
+            long startTimeInMillis = -1;
+            if (tokens.length == 2) {
+                for (Tier candidate : tiers) {
+                    if (candidate.resolution.fileNameToken.equals(tokens[0])) {
+                        tier = candidate;
+                    }
+                }
+                try {
+                    startTimeInMillis = Long.parseLong(tokens[1]);
+                } catch (NumberFormatException e) {
+                    tier = null;
+                }
+            }
+            if (tier == null) {
+                logger.warn("Ignoring unrecognized history file {}", fileName);
+                continue;
+            }
+
+            HistorySegment segment = HistorySegment.open(file, startTimeInMillis, tier.blocksByNames);
+            if (segment == null) {
+                logger.warn("Ignoring corrupted history segment {}", fileName);
+                continue;
+            }
+            tier.segments.addLast(segment);
+            recoveredSegments++;
+        }
+
+        logger.info("Recovered {} history segments from {}", recoveredSegments, directory.getAbsolutePath());
+    }
+
+    private static boolean retain(HistorySegment segment, Set<HistorySegment> retainedSegments) {
+        if (retainedSegments.contains(segment)) {
+            return true;
+        }
+        if (!segment.retain()) {
+            return false;
+        }
+        retainedSegments.add(segment);
+        return true;
+    }
+
+    private static int decode(GorillaDecoder decoder, int sampleCount, long fromTimeInMillis, long[] timestamps, double[][] values, int size) {
+        for (int i = 0; i < sampleCount; i++) {
+            decoder.next();
+            if (decoder.getTimestamp() < fromTimeInMillis) {
+                continue;
+            }
+
+            timestamps[size] = decoder.getTimestamp();
+            for (int j = 0; j < values.length; j++) {
+                values[j][size] = decoder.getValue(j);
+            }
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+/**
+ * A fixed-size ring buffer holding the samples of a single metric in primitive columns: one column of timestamps and
+ * one column of values per field. Once the buffer is full, the oldest sample is overwritten. The memory held by the
+ * buffer is allocated upfront and never changes. This class is thread-safe.
+ */
+class MetricRingBuffer {
+    private final MetricHistorySeries.Type type;
+    private final long[] timestamps;
+    private final double[][] columns;
+
+    private int nextIndex;
+    private int size;
+
+    MetricRingBuffer(MetricHistorySeries.Type type, int capacity) {
+        this.type = type;
+        this.timestamps = new long[capacity];
+        this.columns = new double[type.getFieldNames().size()][capacity];
+    }
+
+    MetricHistorySeries.Type getType() {
+        return type;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param timestamp the time of the sample in milliseconds.
+     * @param values the values of the fields, in the order of the field names of the type; only the first values are
+     *               read, so that a scratch array can be reused.
+     */
+    synchronized void add(long timestamp, double[] values) {
+        timestamps[nextIndex] = timestamp;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][nextIndex] = values[i];
+        }
+
+        nextIndex = (nextIndex + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    synchronized long getLastTimestamp() {
+        if (size == 0) {
+            return -1;
+        }
+        return timestamps[(nextIndex - 1 + timestamps.length) % timestamps.length];
+    }
+
+    /**
+     * Copies the samples not older than a given time, from the oldest to the newest.
+     *
+     * @param name the name of the metric.
+     * @param fromTimeInMillis the time of the oldest sample to copy.
+     * @return the samples as a series.
+     */
+    synchronized MetricHistorySeries getSeries(String name, long fromTimeInMillis) {
+        int startIndex = (nextIndex - size + timestamps.length) % timestamps.length;
+        int skipped = 0;
+        while (skipped < size && timestamps[(startIndex + skipped) % timestamps.length] < fromTimeInMillis) {
+            skipped++;
+        }
+        int count = size - skipped;
+        startIndex = (startIndex + skipped) % timestamps.length;
+
+        long[] seriesTimestamps = new long[count];
+        double[][] seriesValues = new double[columns.length][count];
+        for (int i = 0; i < count; i++) {
+            int index = (startIndex + i) % timestamps.length;
+            seriesTimestamps[i] = timestamps[index];
+            for (int j = 0; j < columns.length; j++) {
+                seriesValues[j][i] = columns[j][index];
+            }
+        }
+        return new MetricHistorySeries(name, type, seriesTimestamps, seriesValues);
+    }
+
+    long getSizeInBytes() {
+        return 8L * timestamps.length * (1 + columns.length);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("MetricRingBuffer{");
+        sb.append("type=").append(type);
+        sb.append(", capacity=").append(timestamps.length);
+        sb.append(", size=").append(size);
+        sb.append(", fieldNames=").append(type.getFieldNames());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.influx;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reporter, which pushes metrics to InfluxDB using the line protocol. Each metric is written as a single line, with
+ * the metric name as the measurement, the configured tags (typically, the node-specific information), and one field
+ * per metric attribute:
+ * <ul>
+ *     <li>Gauges have a single float field <tt>value</tt>; boolean gauges are written as 1 or 0.</li>
+ *     <li>Counters have a single integer field <tt>count</tt>.</li>
+ *     <li>Meters have the <tt>count</tt>, <tt>m1_rate</tt>, <tt>m5_rate</tt>, <tt>m15_rate</tt>, and
+ *     <tt>mean_rate</tt> fields.</li>
+ *     <li>Histograms have the <tt>count</tt>, <tt>max</tt>, <tt>mean</tt>, <tt>min</tt>, <tt>stddev</tt>,
+ *     <tt>p50</tt>, <tt>p75</tt>, <tt>p95</tt>, <tt>p98</tt>, <tt>p99</tt>, and <tt>p999</tt> fields.</li>
+ *     <li>Timers have the fields of both meters and histograms; durations are converted to the configured unit.</li>
+ * </ul>
+ *
+ * <p>
+ *     The lines of a reporting cycle are assembled in a reusable buffer and sent in batches of a configurable size.
+ * </p>
+ */
+public class InfluxReporter extends ScheduledReporter {
+    private static final Logger logger = LoggerFactory.getLogger(InfluxReporter.class);
+
+    private final InfluxSender influxSender;
+    private final Clock clock;
+    private final String tagSuffix;
+    private final int maxLinesPerRequest;
+
+    private final StringBuilder batchBuilder;
+    private int batchLineCount;
+    private long timestamp;
+
+    private boolean hasFields;
+
+    private InfluxReporter(Builder builder, InfluxSender influxSender) {
+        super(builder.registry, "influx-reporter", builder.filter, builder.rateUnit, builder.durationUnit);
+
+        this.influxSender = influxSender;
+        this.clock = builder.clock;
+        this.tagSuffix = buildTagSuffix(builder.tags);
+        this.maxLinesPerRequest = builder.maxLinesPerRequest;
+
+        this.batchBuilder = new StringBuilder(64 * 1024);
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+                       SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        timestamp = clock.getTime();
+        batchBuilder.setLength(0);
+        batchLineCount = 0;
+
+        if (!influxSender.retry()) {
+            logger.debug("InfluxDB at {} is unreachable; {} batches are awaiting a retry", influxSender, influxSender.getRetryQueueSize());
+        }
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            reportGauge(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            startLine(entry.getKey());
+            appendField("count", entry.getValue().getCount());
+            endLine();
+        }
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            startLine(entry.getKey());
+            appendField("count", entry.getValue().getCount());
+            appendSnapshotFields(entry.getValue().getSnapshot(), false);
+            endLine();
+        }
+
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            startLine(entry.getKey());
+            appendField("count", entry.getValue().getCount());
+            appendMeteredFields(entry.getValue());
+            endLine();
+        }
+
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            startLine(entry.getKey());
+            appendField("count", entry.getValue().getCount());
+            appendMeteredFields(entry.getValue());
+            appendSnapshotFields(entry.getValue().getSnapshot(), true);
+            endLine();
+        }
+
+        if (batchLineCount > 0) {
+            sendBatch();
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            influxSender.shutdown();
+        }
+    }
+
+    private void reportGauge(String name, Gauge<?> gauge) {
+        Object value;
+        try {
+            value = gauge.getValue();
+        } catch (RuntimeException e) {
+            logger.debug("Unable to read gauge {}", name, e);
+            return;
+        }
+
+        if (value instanceof Boolean) {
+            startLine(name);
+            appendField("value", ((Boolean) value) ? 1.0 : 0.0);
+            endLine();
+        } else if (value instanceof Number) {
+            startLine(name);
+            appendField("value", ((Number) value).doubleValue());
+            endLine();
+        }
+    }
+
+    private void appendMeteredFields(Metered metered) {
+        appendField("m1_rate", convertRate(metered.getOneMinuteRate()));
+        appendField("m5_rate", convertRate(metered.getFiveMinuteRate()));
+        appendField("m15_rate", convertRate(metered.getFifteenMinuteRate()));
+        appendField("mean_rate", convertRate(metered.getMeanRate()));
+    }
+
+    private void appendSnapshotFields(Snapshot snapshot, boolean convertValuesToDurations) {
+        appendField("max", convert(snapshot.getMax(), convertValuesToDurations));
+        appendField("mean", convert(snapshot.getMean(), convertValuesToDurations));
+        appendField("min", convert(snapshot.getMin(), convertValuesToDurations));
+        appendField("stddev", convert(snapshot.getStdDev(), convertValuesToDurations));
+        appendField("p50", convert(snapshot.getMedian(), convertValuesToDurations));
+        appendField("p75", convert(snapshot.get75thPercentile(), convertValuesToDurations));
+        appendField("p95", convert(snapshot.get95thPercentile(), convertValuesToDurations));
+        appendField("p98", convert(snapshot.get98thPercentile(), convertValuesToDurations));
+        appendField("p99", convert(snapshot.get99thPercentile(), convertValuesToDurations));
+        appendField("p999", convert(snapshot.get999thPercentile(), convertValuesToDurations));
+    }
+
+    private double convert(double value, boolean convertValuesToDurations) {
+        return convertValuesToDurations ? convertDuration(value) : value;
+    }
+
+    private void startLine(String name) {
+        if (batchLineCount > 0) {
+            batchBuilder.append('\n');
+        }
+        escape(name, false, batchBuilder);
+        if (tagSuffix != null) {
+            batchBuilder.append(tagSuffix);
+        }
+        batchBuilder.append(' ');
+        hasFields = false;
+    }
+
+    private void appendField(String key, long value) {
+        if (hasFields) {
+            batchBuilder.append(',');
+        }
+        batchBuilder.append(key).append('=').append(value).append('i');
+        hasFields = true;
+    }
+
+    private void appendField(String key, double value) {
+        // NaN and infinity are not supported by the line protocol
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (hasFields) {
+            batchBuilder.append(',');
+        }
+        batchBuilder.append(key).append('=').append(value);
+        hasFields = true;
+    }
+
+    private void endLine() {
+        if (!hasFields) {
+            // A line without fields is invalid; the whole line is discarded
+            int lineStart = batchBuilder.lastIndexOf("\n") + 1;
+            batchBuilder.setLength(batchLineCount > 0 ? lineStart - 1 : 0);
+            return;
+        }
+
+        batchBuilder.append(' ').append(timestamp);
+        batchLineCount++;
+        if (batchLineCount >= maxLinesPerRequest) {
+            sendBatch();
+        }
+    }
+
+    private void sendBatch() {
+        if (!influxSender.send(batchBuilder)) {
+            logger.debug("Unable to send {} lines to InfluxDB at {}; the batch has been queued for a retry", batchLineCount, influxSender);
+        }
+        batchBuilder.setLength(0);
+        batchLineCount = 0;
+    }
+
+    private static String buildTagSuffix(Map<String, String> tags) {
+        StringBuilder tagBuilder = new StringBuilder();
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            // Tags with empty values are not supported by the line protocol
+            if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            tagBuilder.append(',');
+            escape(entry.getKey(), true, tagBuilder);
+            tagBuilder.append('=');
+            escape(entry.getValue(), true, tagBuilder);
+        }
+        return tagBuilder.length() == 0 ? null : tagBuilder.toString();
+    }
+
+    /**
+     * Escapes a measurement name or a tag key or value: commas and spaces are escaped in all of them, equal signs in
+     * tag keys and values only. New lines cannot be escaped; thus, they are replaced with spaces.
+     */
+    private static void escape(String s, boolean escapeEqualSigns, StringBuilder out) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case ',':
+                case ' ':
+                    out.append('\\').append(c);
+                    break;
+                case '=':
+                    if (escapeEqualSigns) {
+                        out.append('\\');
+                    }
+                    out.append(c);
+                    break;
+                case '\n':
+                case '\r':
+                    out.append("\\ ");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    public static class Builder {
+        private final MetricRegistry registry;
+        private Map<String, String> tags;
+        private Clock clock;
+        private TimeUnit rateUnit;
+        private TimeUnit durationUnit;
+        private MetricFilter filter;
+        private int maxLinesPerRequest;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+            this.tags = Collections.emptyMap();
+            this.clock = Clock.defaultClock();
+            this.rateUnit = TimeUnit.SECONDS;
+            this.durationUnit = TimeUnit.MILLISECONDS;
+            this.filter = MetricFilter.ALL;
+            this.maxLinesPerRequest = 5000;
+        }
+
+        /**
+         * Adds the given tags to all lines.
+         *
+         * @param tags the tags to add; an empty map for no tags.
+         * @return this builder.
+         */
+        public Builder withTags(Map<String, String> tags) {
+            Preconditions.checkNotNull(tags);
+            this.tags = new LinkedHashMap<>(tags);
+            return this;
+        }
+
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of lines sent in a single request.
+         *
+         * @param maxLinesPerRequest the maximum number of lines per request.
+         * @return this builder.
+         */
+        public Builder maxLinesPerRequest(int maxLinesPerRequest) {
+            Preconditions.checkArgument(maxLinesPerRequest > 0, "maxLinesPerRequest must be positive");
+            this.maxLinesPerRequest = maxLinesPerRequest;
+            return this;
+        }
+
+        public InfluxReporter build(InfluxSender influxSender) {
+            Preconditions.checkNotNull(influxSender);
+            return new InfluxReporter(this, influxSender);
+        }
+    }
+}
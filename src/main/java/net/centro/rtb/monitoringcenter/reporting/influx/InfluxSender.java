@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.influx;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes batches of InfluxDB line-protocol lines to the <tt>/write</tt> endpoint of the InfluxDB HTTP API.
+ * Each batch is encoded, and optionally gzip-compressed, into buffers that are reused across batches; the encoder,
+ * the deflater, and the checksum are reused as well.
+ *
+ * <p>
+ *     A batch that could not be delivered due to a network error or a server-side error (5xx or 429) is kept in a
+ *     bounded retry queue, and is resent ahead of new batches during the subsequent reporting cycles. Once the queue is
+ *     full, the oldest batches are discarded. Batches rejected by InfluxDB as malformed (other 4xx responses) are
+ *     discarded right away, as resending them would not help.
+ * </p>
+ *
+ * <p>
+ *     This class exposes gauges for the retry queue size, as well as counters for the sent, failed, and dropped
+ *     batches. It is not thread-safe; it is meant to be driven by a single reporter thread.
+ * </p>
+ */
+public class InfluxSender implements MetricSet {
+    private static final Logger logger = LoggerFactory.getLogger(InfluxSender.class);
+
+    private static final int INITIAL_BUFFER_SIZE_IN_BYTES = 64 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_SIZE_IN_BYTES = 8;
+
+    private final URL writeUrl;
+    private final boolean enableCompression;
+    private final int maxRetryQueueSize;
+    private final int timeoutInMillis;
+
+    private final CharsetEncoder encoder;
+    private final Deflater deflater;
+    private final CRC32 crc32;
+    private ByteBuffer encodedBuffer;
+    private byte[] compressedBuffer;
+
+    private final Deque<byte[]> retryQueue;
+
+    private final Counter sentBatchesCounter;
+    private final Counter failedBatchesCounter;
+    private final Counter droppedBatchesCounter;
+    private final Map<String, Metric> metricsByNames;
+
+    /**
+     * Constructs a sender.
+     *
+     * @param url the base URL of the InfluxDB HTTP API.
+     * @param database the database to write to.
+     * @param retentionPolicy the retention policy to write with; <tt>null</tt> for the default retention policy.
+     * @param enableCompression whether the request bodies should be gzip-compressed.
+     * @param maxRetryQueueSize the maximum number of undelivered batches to retry.
+     * @param timeoutInMillis the connect and read timeout.
+     * @throws IllegalArgumentException if the URL is malformed.
+     */
+    public InfluxSender(String url, String database, String retentionPolicy, boolean enableCompression, int maxRetryQueueSize, int timeoutInMillis) {
+        Preconditions.checkNotNull(url);
+        Preconditions.checkNotNull(database);
+        Preconditions.checkArgument(maxRetryQueueSize >= 0, "maxRetryQueueSize cannot be negative");
+        Preconditions.checkArgument(timeoutInMillis > 0, "timeoutInMillis must be positive");
+
+        this.writeUrl = buildWriteUrl(url, database, retentionPolicy);
+        this.enableCompression = enableCompression;
+        this.maxRetryQueueSize = maxRetryQueueSize;
+        this.timeoutInMillis = timeoutInMillis;
+
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.deflater = enableCompression ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.crc32 = new CRC32();
+        this.encodedBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE_IN_BYTES);
+        this.compressedBuffer = enableCompression ? new byte[INITIAL_BUFFER_SIZE_IN_BYTES] : null;
+
+        this.retryQueue = new ArrayDeque<>();
+
+        this.sentBatchesCounter = new Counter();
+        this.failedBatchesCounter = new Counter();
+        this.droppedBatchesCounter = new Counter();
+
+        Map<String, Metric> metricsByNames = new HashMap<>();
+        metricsByNames.put("retryQueueSize", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return retryQueue.size();
+            }
+        });
+        metricsByNames.put("sentBatchesCounter", sentBatchesCounter);
+        metricsByNames.put("failedBatchesCounter", failedBatchesCounter);
+        metricsByNames.put("droppedBatchesCounter", droppedBatchesCounter);
+        this.metricsByNames = metricsByNames;
+    }
+
+    /**
+     * Resends the batches in the retry queue, oldest first, until the queue is empty or a batch fails.
+     *
+     * @return whether the retry queue is empty.
+     */
+    public boolean retry() {
+        while (!retryQueue.isEmpty()) {
+            byte[] payload = retryQueue.peekFirst();
+            try {
+                if (post(payload, payload.length)) {
+                    sentBatchesCounter.inc();
+                } else {
+                    droppedBatchesCounter.inc();
+                }
+                retryQueue.pollFirst();
+            } catch (IOException e) {
+                failedBatchesCounter.inc();
+                logger.debug("Unable to resend a batch to InfluxDB at {}", writeUrl, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends a batch of lines. If the retry queue is not empty, InfluxDB is presumed to be unreachable and the batch is
+     * queued without being sent.
+     *
+     * @param lines line-protocol lines delimited by new line characters.
+     * @return whether the batch has been delivered.
+     */
+    public boolean send(CharSequence lines) {
+        int length = encode(lines);
+        byte[] payload = encodedBuffer.array();
+        if (enableCompression) {
+            length = compress(payload, length);
+            payload = compressedBuffer;
+        }
+
+        if (retryQueue.isEmpty()) {
+            try {
+                if (post(payload, length)) {
+                    sentBatchesCounter.inc();
+                } else {
+                    droppedBatchesCounter.inc();
+                }
+                return true;
+            } catch (IOException e) {
+                failedBatchesCounter.inc();
+                logger.debug("Unable to send a batch to InfluxDB at {}", writeUrl, e);
+            }
+        }
+
+        enqueue(Arrays.copyOf(payload, length));
+        return false;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(metricsByNames);
+    }
+
+    /**
+     * Retrieves the number of batches awaiting a retry.
+     *
+     * @return the number of batches in the retry queue.
+     */
+    public int getRetryQueueSize() {
+        return retryQueue.size();
+    }
+
+    /**
+     * Releases the deflater. This sender cannot be used after this method is called.
+     */
+    public void shutdown() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        retryQueue.clear();
+    }
+
+    @Override
+    public String toString() {
+        return writeUrl.toString();
+    }
+
+    private void enqueue(byte[] payload) {
+        if (maxRetryQueueSize == 0) {
+            droppedBatchesCounter.inc();
+            return;
+        }
+
+        while (retryQueue.size() >= maxRetryQueueSize) {
+            retryQueue.pollFirst();
+            droppedBatchesCounter.inc();
+        }
+        retryQueue.addLast(payload);
+    }
+
+    private int encode(CharSequence lines) {
+        CharBuffer charBuffer = CharBuffer.wrap(lines);
+        encodedBuffer.clear();
+        encoder.reset();
+        while (true) {
+            CoderResult coderResult = charBuffer.hasRemaining() ? encoder.encode(charBuffer, encodedBuffer, true) : CoderResult.UNDERFLOW;
+            if (coderResult.isUnderflow()) {
+                coderResult = encoder.flush(encodedBuffer);
+            }
+            if (coderResult.isUnderflow()) {
+                break;
+            }
+            if (coderResult.isOverflow()) {
+                ByteBuffer largerBuffer = ByteBuffer.allocate(encodedBuffer.capacity() * 2);
+                encodedBuffer.flip();
+                largerBuffer.put(encodedBuffer);
+                encodedBuffer = largerBuffer;
+            } else {
+                // Unmappable characters cannot occur in UTF-8, but lone surrogates are malformed
+                charBuffer.position(charBuffer.position() + coderResult.length());
+                encodedBuffer.put((byte) '?');
+            }
+        }
+        return encodedBuffer.position();
+    }
+
+    private int compress(byte[] input, int inputLength) {
+        deflater.reset();
+        deflater.setInput(input, 0, inputLength);
+        deflater.finish();
+
+        crc32.reset();
+        crc32.update(input, 0, inputLength);
+
+        int length = GZIP_HEADER.length;
+        System.arraycopy(GZIP_HEADER, 0, compressedBuffer, 0, length);
+        while (!deflater.finished()) {
+            if (length == compressedBuffer.length) {
+                compressedBuffer = Arrays.copyOf(compressedBuffer, compressedBuffer.length * 2);
+            }
+            length += deflater.deflate(compressedBuffer, length, compressedBuffer.length - length);
+        }
+
+        if (length + GZIP_TRAILER_SIZE_IN_BYTES > compressedBuffer.length) {
+            compressedBuffer = Arrays.copyOf(compressedBuffer, length + GZIP_TRAILER_SIZE_IN_BYTES);
+        }
+        length = writeIntLittleEndian((int) crc32.getValue(), compressedBuffer, length);
+        length = writeIntLittleEndian(inputLength, compressedBuffer, length);
+        return length;
+    }
+
+    /**
+     * Posts a request body to InfluxDB.
+     *
+     * @return <tt>true</tt> if the body has been accepted; <tt>false</tt> if it has been rejected as malformed.
+     * @throws IOException if the body should be resent later.
+     */
+    private boolean post(byte[] payload, int length) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) writeUrl.openConnection();
+        boolean responseRead = false;
+        try {
+            connection.setConnectTimeout(timeoutInMillis);
+            connection.setReadTimeout(timeoutInMillis);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+            if (enableCompression) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(payload, 0, length);
+            }
+
+            int responseCode = connection.getResponseCode();
+            drain(responseCode < 400 ? connection.getInputStream() : connection.getErrorStream());
+            responseRead = true;
+
+            if (responseCode / 100 == 2) {
+                return true;
+            }
+            if (responseCode / 100 == 4 && responseCode != 429) {
+                logger.warn("InfluxDB at {} rejected a batch with HTTP status {}", writeUrl, responseCode);
+                return false;
+            }
+            throw new IOException("InfluxDB at " + writeUrl + " responded with HTTP status " + responseCode);
+        } finally {
+            // A fully read response leaves the connection to the keep-alive cache; otherwise, it cannot be reused
+            if (!responseRead) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        try (InputStream in = inputStream) {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // Consume the response, so that the connection can be reused
+            }
+        }
+    }
+
+    private static int writeIntLittleEndian(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+
+    private static URL buildWriteUrl(String url, String database, String retentionPolicy) {
+        try {
+            StringBuilder writeUrl = new StringBuilder(url)
+                    .append("/write?db=").append(URLEncoder.encode(database, "UTF-8"))
+                    .append("&precision=ms");
+            if (retentionPolicy != null) {
+                writeUrl.append("&rp=").append(URLEncoder.encode(retentionPolicy, "UTF-8"));
+            }
+            return new URL(writeUrl.toString());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed InfluxDB URL: " + url, e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.jmx;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.SnapshotMetricRegistry;
+import net.centro.rtb.monitoringcenter.util.MetricFieldProjection;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JMX reporter, which registers one {@link DynamicMBean} per top-level namespace (the part of a metric name before
+ * the first {@link MetricNamingUtil#SEPARATOR}), rather than one MBean per metric like Dropwizard's
+ * <tt>JmxReporter</tt>. The attributes of a namespace MBean are the fields of its metrics, named as the rest of the
+ * metric name followed by the field (e.g., the attribute "connectors.http.requestTimer.p99" of the "tomcat" MBean).
+ * The fields are the same as the ones of {@link MetricFieldProjection}; timer durations and rates are converted to the
+ * given units.
+ *
+ * <p>
+ *     Attributes are resolved lazily on read: a single attribute is read from the cached registry snapshot, if it is
+ *     still fresh, or else live, so that polling an attribute never triggers a collection of the whole registry. All
+ *     attributes requested via {@link DynamicMBean#getAttributes(String[])} are served from one snapshot. The
+ *     MBeanInfo of a namespace is built on demand and rebuilt only after metrics are added to or removed from the
+ *     namespace. This class is thread-safe.
+ * </p>
+ */
+public class NamespaceJmxReporter {
+    public static final String DEFAULT_DOMAIN = "metrics";
+
+    private static final Logger logger = LoggerFactory.getLogger(NamespaceJmxReporter.class);
+
+    private static final List<String> COUNTER_FIELDS = Collections.singletonList("count");
+    private static final List<String> GAUGE_FIELDS = Collections.singletonList("value");
+    private static final List<String> HISTOGRAM_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "count", "min", "max", "mean", "stddev", "p50", "p75", "p95", "p98", "p99", "p999"));
+    private static final List<String> METER_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "count", "m1_rate", "m5_rate", "m15_rate", "mean_rate"));
+    private static final List<String> TIMER_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "count", "min", "max", "mean", "stddev", "p50", "p75", "p95", "p98", "p99", "p999",
+            "m1_rate", "m5_rate", "m15_rate", "mean_rate"));
+
+    private final SnapshotMetricRegistry snapshotMetricRegistry;
+    private final MBeanServer mBeanServer;
+    private final String domain;
+    private final MetricFilter filter;
+    private final MetricFieldProjection metricFieldProjection;
+    private final MetricRegistryListener listener;
+
+    private final Map<String, NamespaceMBean> mBeansByNamespaces;
+    private boolean started;
+
+    /**
+     * Constructs a reporter.
+     *
+     * @param snapshotMetricRegistry the registry to export the metrics of.
+     * @param mBeanServer the MBeanServer to register the namespace MBeans with.
+     * @param domain the domain of the MBean names.
+     * @param filter the filter to apply to metrics.
+     * @param rateUnit the unit to convert rates to.
+     * @param durationUnit the unit to convert timer durations to.
+     */
+    public NamespaceJmxReporter(SnapshotMetricRegistry snapshotMetricRegistry, MBeanServer mBeanServer, String domain, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit) {
+        Preconditions.checkNotNull(snapshotMetricRegistry);
+        Preconditions.checkNotNull(mBeanServer);
+        Preconditions.checkNotNull(domain);
+        Preconditions.checkNotNull(filter);
+
+        this.snapshotMetricRegistry = snapshotMetricRegistry;
+        this.mBeanServer = mBeanServer;
+        this.domain = domain;
+        this.filter = filter;
+        this.metricFieldProjection = MetricFieldProjection.parse("value", rateUnit, durationUnit);
+        this.listener = new NamespaceListener();
+        this.mBeansByNamespaces = new HashMap<>();
+    }
+
+    /**
+     * Registers the namespace MBeans for the metrics in the registry and starts tracking the registry.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        snapshotMetricRegistry.addListener(listener);
+    }
+
+    /**
+     * Stops tracking the registry and unregisters all namespace MBeans.
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        snapshotMetricRegistry.removeListener(listener);
+
+        for (NamespaceMBean namespaceMBean : mBeansByNamespaces.values()) {
+            unregisterMBean(namespaceMBean.objectName);
+        }
+        mBeansByNamespaces.clear();
+    }
+
+    /**
+     * Retrieves the name of the MBean exporting a given top-level namespace.
+     *
+     * @param namespace a top-level namespace.
+     * @return the name of the namespace MBean.
+     * @throws IllegalArgumentException if the namespace cannot be a part of an ObjectName.
+     */
+    public ObjectName getObjectName(String namespace) {
+        try {
+            return new ObjectName(domain, "name", ObjectName.quote(namespace));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid namespace: " + namespace, e);
+        }
+    }
+
+    private synchronized void onMetricAdded(String name, Metric metric) {
+        if (!started || !filter.matches(name, metric)) {
+            return;
+        }
+
+        String namespace = getNamespace(name);
+        NamespaceMBean namespaceMBean = mBeansByNamespaces.get(namespace);
+        if (namespaceMBean == null) {
+            namespaceMBean = new NamespaceMBean(namespace, getObjectName(namespace));
+            try {
+                mBeanServer.registerMBean(namespaceMBean, namespaceMBean.objectName);
+            } catch (Exception e) {
+                logger.warn("Unable to register the MBean for the namespace {}", namespace, e);
+                return;
+            }
+            mBeansByNamespaces.put(namespace, namespaceMBean);
+        }
+        namespaceMBean.metricsByRelativeNames.put(getRelativeName(name), metric);
+        namespaceMBean.mBeanInfo = null;
+    }
+
+    private synchronized void onMetricRemoved(String name) {
+        String namespace = getNamespace(name);
+        NamespaceMBean namespaceMBean = mBeansByNamespaces.get(namespace);
+        if (namespaceMBean == null || namespaceMBean.metricsByRelativeNames.remove(getRelativeName(name)) == null) {
+            return;
+        }
+        namespaceMBean.mBeanInfo = null;
+
+        if (namespaceMBean.metricsByRelativeNames.isEmpty()) {
+            mBeansByNamespaces.remove(namespace);
+            unregisterMBean(namespaceMBean.objectName);
+        }
+    }
+
+    private void unregisterMBean(ObjectName objectName) {
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.debug("Unable to unregister the MBean {}", objectName, e);
+        }
+    }
+
+    private static String getNamespace(String name) {
+        int separatorIndex = name.indexOf(MetricNamingUtil.SEPARATOR);
+        return separatorIndex == -1 ? name : name.substring(0, separatorIndex);
+    }
+
+    private static String getRelativeName(String name) {
+        int separatorIndex = name.indexOf(MetricNamingUtil.SEPARATOR);
+        return separatorIndex == -1 ? "" : name.substring(separatorIndex + 1);
+    }
+
+    private static List<String> getFields(Metric metric) {
+        if (metric instanceof Gauge) {
+            return GAUGE_FIELDS;
+        } else if (metric instanceof Counter) {
+            return COUNTER_FIELDS;
+        } else if (metric instanceof Timer) {
+            return TIMER_FIELDS;
+        } else if (metric instanceof Meter) {
+            return METER_FIELDS;
+        } else if (metric instanceof Histogram) {
+            return HISTOGRAM_FIELDS;
+        }
+        return Collections.emptyList();
+    }
+
+    private static Metric getFrozenMetric(RegistrySnapshot registrySnapshot, String name, Metric metric) {
+        if (registrySnapshot == null) {
+            return metric;
+        }
+
+        Metric frozenMetric = null;
+        if (metric instanceof Gauge) {
+            frozenMetric = registrySnapshot.getGauges().get(name);
+        } else if (metric instanceof Counter) {
+            frozenMetric = registrySnapshot.getCounters().get(name);
+        } else if (metric instanceof Timer) {
+            frozenMetric = registrySnapshot.getTimers().get(name);
+        } else if (metric instanceof Meter) {
+            frozenMetric = registrySnapshot.getMeters().get(name);
+        } else if (metric instanceof Histogram) {
+            frozenMetric = registrySnapshot.getHistograms().get(name);
+        }
+        // Metrics not yet present in the snapshot are read live
+        return frozenMetric != null ? frozenMetric : metric;
+    }
+
+    private class NamespaceMBean implements DynamicMBean {
+        private final String namespace;
+        private final ObjectName objectName;
+        private final ConcurrentSkipListMap<String, Metric> metricsByRelativeNames;
+        private volatile MBeanInfo mBeanInfo;
+
+        private NamespaceMBean(String namespace, ObjectName objectName) {
+            this.namespace = namespace;
+            this.objectName = objectName;
+            this.metricsByRelativeNames = new ConcurrentSkipListMap<>();
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+            return resolveAttribute(snapshotMetricRegistry.getCachedSnapshot(), attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            RegistrySnapshot registrySnapshot = snapshotMetricRegistry.getSnapshot();
+
+            AttributeList attributeList = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    attributeList.add(new Attribute(attribute, resolveAttribute(registrySnapshot, attribute)));
+                } catch (AttributeNotFoundException | MBeanException e) {
+                    // Per the contract of getAttributes(), the attributes that cannot be read are omitted
+                    logger.debug("Unable to read the attribute {} of the namespace {}", attribute, namespace, e);
+                }
+            }
+            return attributeList;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metric attributes are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName), "Namespace MBeans have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanInfo mBeanInfo = this.mBeanInfo;
+            if (mBeanInfo == null) {
+                mBeanInfo = buildMBeanInfo();
+                this.mBeanInfo = mBeanInfo;
+            }
+            return mBeanInfo;
+        }
+
+        private Object resolveAttribute(RegistrySnapshot registrySnapshot, String attribute) throws AttributeNotFoundException, MBeanException {
+            if (attribute == null) {
+                throw new AttributeNotFoundException("Attribute name cannot be null");
+            }
+
+            int separatorIndex = attribute.lastIndexOf(MetricNamingUtil.SEPARATOR);
+            String relativeName = separatorIndex == -1 ? "" : attribute.substring(0, separatorIndex);
+            String field = attribute.substring(separatorIndex + 1);
+
+            Metric metric = metricsByRelativeNames.get(relativeName);
+            if (metric == null || !getFields(metric).contains(field)) {
+                throw new AttributeNotFoundException("No such attribute: " + attribute);
+            }
+
+            String name = relativeName.isEmpty() ? namespace : namespace + MetricNamingUtil.SEPARATOR + relativeName;
+            Metric frozenMetric = getFrozenMetric(registrySnapshot, name, metric);
+            if (frozenMetric instanceof Gauge) {
+                try {
+                    return ((Gauge<?>) frozenMetric).getValue();
+                } catch (RuntimeException e) {
+                    throw new MBeanException(e, "Unable to read the gauge " + name);
+                }
+            }
+            return metricFieldProjection.getValue(frozenMetric, field);
+        }
+
+        private MBeanInfo buildMBeanInfo() {
+            List<MBeanAttributeInfo> attributeInfos = new ArrayList<>();
+            for (Map.Entry<String, Metric> entry : metricsByRelativeNames.entrySet()) {
+                String prefix = entry.getKey().isEmpty() ? "" : entry.getKey() + MetricNamingUtil.SEPARATOR;
+                String type = entry.getValue() instanceof Gauge ? Object.class.getName() : Double.class.getName();
+                for (String field : getFields(entry.getValue())) {
+                    attributeInfos.add(new MBeanAttributeInfo(prefix + field, type, field + " of " + entry.getKey(), true, false, false));
+                }
+            }
+
+            return new MBeanInfo(NamespaceMBean.class.getName(), "Metrics of the namespace " + namespace,
+                    attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]), null, new MBeanOperationInfo[0], null);
+        }
+    }
+
+    private class NamespaceListener implements MetricRegistryListener {
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            onMetricAdded(name, gauge);
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            onMetricAdded(name, counter);
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            onMetricAdded(name, histogram);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            onMetricAdded(name, meter);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            onMetricRemoved(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            onMetricAdded(name, timer);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            onMetricRemoved(name);
+        }
+    }
+}
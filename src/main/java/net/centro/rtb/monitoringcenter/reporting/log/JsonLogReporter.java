@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.log;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.util.MetricFieldProjection;
+import net.centro.rtb.monitoringcenter.util.MetricNamingUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reporter, which writes metrics to an SLF4J logger as JSON lines. Rather than logging one event per metric, the
+ * metrics of a reporting cycle are grouped by their top-level namespace (the part of the name before the first
+ * {@link MetricNamingUtil#SEPARATOR}), and each namespace is logged as a single compact JSON document, split into
+ * chunks of a configurable number of metrics:
+ * <pre>
+ *     {"timestamp":1500000000000,"namespace":"tomcat","metrics":{"connectors.http.requestTimer":{"count":10,...},...}}
+ * </pre>
+ * The metrics are written with the fields of {@link MetricFieldProjection}; the fields, which do not apply to a metric
+ * type, are omitted. The documents are assembled by a single reusable JsonGenerator. Log rotation is left to the
+ * logging backend (e.g., a rolling file appender attached to the dedicated logger).
+ */
+public class JsonLogReporter extends ScheduledReporter {
+    private static final Logger logger = LoggerFactory.getLogger(JsonLogReporter.class);
+
+    private final Logger outputLogger;
+    private final Clock clock;
+    private final int maxMetricsPerLine;
+    private final MetricFieldProjection metricFieldProjection;
+
+    private final JsonFactory jsonFactory;
+    private final StringWriter lineWriter;
+    private JsonGenerator jsonGenerator;
+
+    private JsonLogReporter(Builder builder) throws IOException {
+        super(builder.registry, "json-log-reporter", builder.filter, builder.rateUnit, builder.durationUnit);
+
+        this.outputLogger = builder.outputLogger;
+        this.clock = builder.clock;
+        this.maxMetricsPerLine = builder.maxMetricsPerLine;
+        this.metricFieldProjection = MetricFieldProjection.parse(StringUtils.join(MetricFieldProjection.SUPPORTED_FIELDS, ','),
+                builder.rateUnit, builder.durationUnit);
+
+        this.jsonFactory = new JsonFactory(new ObjectMapper());
+        this.lineWriter = new StringWriter(64 * 1024);
+        this.jsonGenerator = createJsonGenerator();
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+                       SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        if (!outputLogger.isInfoEnabled()) {
+            return;
+        }
+
+        SortedMap<String, Metric> metricsByNames = new TreeMap<>();
+        metricsByNames.putAll(gauges);
+        metricsByNames.putAll(counters);
+        metricsByNames.putAll(histograms);
+        metricsByNames.putAll(meters);
+        metricsByNames.putAll(timers);
+
+        long timestamp = clock.getTime();
+        try {
+            String currentNamespace = null;
+            int lineMetricCount = 0;
+            for (Map.Entry<String, Metric> entry : metricsByNames.entrySet()) {
+                String name = entry.getKey();
+                int separatorIndex = name.indexOf(MetricNamingUtil.SEPARATOR);
+                String namespace = separatorIndex == -1 ? name : name.substring(0, separatorIndex);
+
+                if (lineMetricCount == maxMetricsPerLine || (currentNamespace != null && !currentNamespace.equals(namespace))) {
+                    endLine();
+                    lineMetricCount = 0;
+                }
+                if (lineMetricCount == 0) {
+                    startLine(timestamp, namespace);
+                    currentNamespace = namespace;
+                }
+
+                jsonGenerator.writeFieldName(separatorIndex == -1 ? "" : name.substring(separatorIndex + 1));
+                metricFieldProjection.write(jsonGenerator, entry.getValue());
+                lineMetricCount++;
+            }
+
+            if (lineMetricCount > 0) {
+                endLine();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to write metrics to the logger {}", outputLogger.getName(), e);
+
+            // The generator may be left in the middle of a document
+            lineWriter.getBuffer().setLength(0);
+            try {
+                jsonGenerator = createJsonGenerator();
+            } catch (IOException ioe) {
+                logger.error("Unable to recreate the JSON generator", ioe);
+            }
+        }
+    }
+
+    private JsonGenerator createJsonGenerator() throws IOException {
+        JsonGenerator jsonGenerator = jsonFactory.createGenerator(lineWriter);
+        // Each document is taken off the writer as a separate line
+        jsonGenerator.setRootValueSeparator(null);
+        return jsonGenerator;
+    }
+
+    private void startLine(long timestamp, String namespace) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeNumberField("timestamp", timestamp);
+        jsonGenerator.writeStringField("namespace", namespace);
+        jsonGenerator.writeObjectFieldStart("metrics");
+    }
+
+    private void endLine() throws IOException {
+        jsonGenerator.writeEndObject();
+        jsonGenerator.writeEndObject();
+        jsonGenerator.flush();
+
+        StringBuffer lineBuffer = lineWriter.getBuffer();
+        outputLogger.info(lineBuffer.toString());
+        lineBuffer.setLength(0);
+    }
+
+    public static class Builder {
+        private final MetricRegistry registry;
+        private Logger outputLogger;
+        private Clock clock;
+        private TimeUnit rateUnit;
+        private TimeUnit durationUnit;
+        private MetricFilter filter;
+        private int maxMetricsPerLine;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+            this.clock = Clock.defaultClock();
+            this.rateUnit = TimeUnit.SECONDS;
+            this.durationUnit = TimeUnit.MILLISECONDS;
+            this.filter = MetricFilter.ALL;
+            this.maxMetricsPerLine = 1000;
+        }
+
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of metrics written in a single line. The metrics of larger namespaces are split into
+         * several lines.
+         *
+         * @param maxMetricsPerLine the maximum number of metrics per line.
+         * @return this builder.
+         */
+        public Builder maxMetricsPerLine(int maxMetricsPerLine) {
+            Preconditions.checkArgument(maxMetricsPerLine > 0, "maxMetricsPerLine must be positive");
+            this.maxMetricsPerLine = maxMetricsPerLine;
+            return this;
+        }
+
+        /**
+         * Builds a reporter, which logs the lines at the INFO level.
+         *
+         * @param outputLogger the logger to write lines to.
+         * @return a reporter.
+         */
+        public JsonLogReporter build(Logger outputLogger) {
+            Preconditions.checkNotNull(outputLogger);
+            this.outputLogger = outputLogger;
+            try {
+                return new JsonLogReporter(this);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create a JSON generator", e);
+            }
+        }
+    }
+}
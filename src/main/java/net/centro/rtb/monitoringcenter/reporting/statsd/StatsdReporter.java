@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.statsd;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reporter, which pushes metrics to a StatsD (or DogStatsD) agent over UDP. Metric values are aggregated in-process
+ * by the metrics themselves, and sent once per reporting interval rather than once per event:
+ * <ul>
+ *     <li>Gauges and counters are sent as StatsD gauges.</li>
+ *     <li>The counts of meters, timers, and histograms are sent as StatsD counters, holding the number of events
+ *     since the previous report.</li>
+ *     <li>The snapshot statistics of timers and histograms (max, mean, min, stddev, p50, p75, p95, p98, p99, p999) are
+ *     sent as StatsD gauges; timer durations are converted to the configured duration unit.</li>
+ * </ul>
+ *
+ * <p>
+ *     The node-specific information can either be prepended to metric names or sent as DogStatsD tags.
+ * </p>
+ */
+public class StatsdReporter extends ScheduledReporter {
+    private static final Logger logger = LoggerFactory.getLogger(StatsdReporter.class);
+
+    private static final String TYPE_GAUGE = "g";
+    private static final String TYPE_COUNTER = "c";
+
+    private final StatsdSender statsdSender;
+    private final String prefix;
+    private final String tagSuffix;
+
+    private final StringBuilder lineBuilder;
+    private Map<String, Long> previousCountsByNames;
+
+    private StatsdReporter(Builder builder, StatsdSender statsdSender) {
+        super(builder.registry, "statsd-reporter", builder.filter, builder.rateUnit, builder.durationUnit);
+
+        this.statsdSender = statsdSender;
+        this.prefix = builder.prefix;
+        this.tagSuffix = buildTagSuffix(builder.tags);
+
+        this.lineBuilder = new StringBuilder(256);
+        this.previousCountsByNames = new HashMap<>();
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+                       SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        Map<String, Long> countsByNames = new HashMap<>(previousCountsByNames.size());
+        try {
+            statsdSender.connect();
+
+            for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+                reportGauge(entry.getKey(), entry.getValue());
+            }
+
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                sendGauge(entry.getKey(), null, entry.getValue().getCount());
+            }
+
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                reportCount(entry.getKey(), entry.getValue(), countsByNames);
+                reportSnapshot(entry.getKey(), entry.getValue().getSnapshot(), false);
+            }
+
+            for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+                reportCount(entry.getKey(), entry.getValue(), countsByNames);
+            }
+
+            for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+                reportCount(entry.getKey(), entry.getValue(), countsByNames);
+                reportSnapshot(entry.getKey(), entry.getValue().getSnapshot(), true);
+            }
+
+            statsdSender.flush();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to report to StatsD at {}", statsdSender, e);
+        } finally {
+            // Counts of metrics that were not reported are discarded, so are the counts of removed metrics
+            for (Map.Entry<String, Long> entry : previousCountsByNames.entrySet()) {
+                if (!countsByNames.containsKey(entry.getKey())) {
+                    countsByNames.put(entry.getKey(), entry.getValue());
+                }
+            }
+            countsByNames.keySet().retainAll(names(histograms, meters, timers));
+            previousCountsByNames = countsByNames;
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            try {
+                statsdSender.close();
+            } catch (IOException e) {
+                logger.debug("Error closing StatsD sender", e);
+            }
+        }
+    }
+
+    private void reportGauge(String name, Gauge<?> gauge) throws IOException {
+        Object value;
+        try {
+            value = gauge.getValue();
+        } catch (RuntimeException e) {
+            logger.debug("Unable to read gauge {}", name, e);
+            return;
+        }
+
+        if (value instanceof Boolean) {
+            sendGauge(name, null, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof Float || value instanceof Double) {
+            double doubleValue = ((Number) value).doubleValue();
+            if (!Double.isNaN(doubleValue) && !Double.isInfinite(doubleValue)) {
+                sendGauge(name, null, doubleValue);
+            }
+        } else if (value instanceof Number) {
+            sendGauge(name, null, ((Number) value).longValue());
+        }
+    }
+
+    private void reportCount(String name, Counting counting, Map<String, Long> countsByNames) throws IOException {
+        long count = counting.getCount();
+        Long previousCount = previousCountsByNames.get(name);
+        long delta = previousCount == null || previousCount > count ? count : count - previousCount;
+        countsByNames.put(name, count);
+
+        startLine(name, "count");
+        lineBuilder.append(':').append(delta);
+        endLine(TYPE_COUNTER);
+    }
+
+    private void reportSnapshot(String name, Snapshot snapshot, boolean convertValuesToDurations) throws IOException {
+        sendGauge(name, "max", convert(snapshot.getMax(), convertValuesToDurations));
+        sendGauge(name, "mean", convert(snapshot.getMean(), convertValuesToDurations));
+        sendGauge(name, "min", convert(snapshot.getMin(), convertValuesToDurations));
+        sendGauge(name, "stddev", convert(snapshot.getStdDev(), convertValuesToDurations));
+        sendGauge(name, "p50", convert(snapshot.getMedian(), convertValuesToDurations));
+        sendGauge(name, "p75", convert(snapshot.get75thPercentile(), convertValuesToDurations));
+        sendGauge(name, "p95", convert(snapshot.get95thPercentile(), convertValuesToDurations));
+        sendGauge(name, "p98", convert(snapshot.get98thPercentile(), convertValuesToDurations));
+        sendGauge(name, "p99", convert(snapshot.get99thPercentile(), convertValuesToDurations));
+        sendGauge(name, "p999", convert(snapshot.get999thPercentile(), convertValuesToDurations));
+    }
+
+    private double convert(double value, boolean convertValuesToDurations) {
+        return convertValuesToDurations ? convertDuration(value) : value;
+    }
+
+    private void sendGauge(String name, String postfix, long value) throws IOException {
+        // A signed value denotes a relative change of a StatsD gauge; thus, negative values are sent after a reset
+        if (value < 0) {
+            sendGauge(name, postfix, 0L);
+        }
+        startLine(name, postfix);
+        lineBuilder.append(':').append(value);
+        endLine(TYPE_GAUGE);
+    }
+
+    private void sendGauge(String name, String postfix, double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sendGauge(name, postfix, (long) value);
+            return;
+        }
+
+        if (value < 0) {
+            sendGauge(name, postfix, 0L);
+        }
+        startLine(name, postfix);
+        lineBuilder.append(':');
+        String formattedValue = Double.toString(value);
+        if (formattedValue.indexOf('E') != -1) {
+            formattedValue = BigDecimal.valueOf(value).toPlainString();
+        }
+        lineBuilder.append(formattedValue);
+        endLine(TYPE_GAUGE);
+    }
+
+    private void startLine(String name, String postfix) {
+        lineBuilder.setLength(0);
+        if (prefix != null) {
+            appendSanitized(prefix);
+            lineBuilder.append('.');
+        }
+        appendSanitized(name);
+        if (postfix != null) {
+            lineBuilder.append('.').append(postfix);
+        }
+    }
+
+    private void endLine(String type) throws IOException {
+        lineBuilder.append('|').append(type);
+        if (tagSuffix != null) {
+            lineBuilder.append(tagSuffix);
+        }
+        statsdSender.send(lineBuilder);
+    }
+
+    private void appendSanitized(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            lineBuilder.append(sanitize(name.charAt(i)));
+        }
+    }
+
+    private static char sanitize(char c) {
+        switch (c) {
+            case ':':
+            case '|':
+            case '@':
+            case '#':
+            case ',':
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+                return '_';
+            default:
+                return c;
+        }
+    }
+
+    private static String buildTagSuffix(Map<String, String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder tagBuilder = new StringBuilder("|#");
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            if (tagBuilder.length() > 2) {
+                tagBuilder.append(',');
+            }
+            for (char c : entry.getKey().toCharArray()) {
+                tagBuilder.append(sanitize(c));
+            }
+            tagBuilder.append(':');
+            for (char c : String.valueOf(entry.getValue()).toCharArray()) {
+                tagBuilder.append(c == ':' ? c : sanitize(c));
+            }
+        }
+        return tagBuilder.toString();
+    }
+
+    @SafeVarargs
+    private static Set<String> names(Map<String, ?>... maps) {
+        Set<String> names = new HashSet<>();
+        for (Map<String, ?> map : maps) {
+            names.addAll(map.keySet());
+        }
+        return names;
+    }
+
+    public static class Builder {
+        private final MetricRegistry registry;
+        private String prefix;
+        private Map<String, String> tags;
+        private TimeUnit rateUnit;
+        private TimeUnit durationUnit;
+        private MetricFilter filter;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+            this.tags = Collections.emptyMap();
+            this.rateUnit = TimeUnit.SECONDS;
+            this.durationUnit = TimeUnit.MILLISECONDS;
+            this.filter = MetricFilter.ALL;
+        }
+
+        /**
+         * Prefixes all metric names with the given string.
+         *
+         * @param prefix the prefix for all metric names; <tt>null</tt> for no prefix.
+         * @return this builder.
+         */
+        public Builder prefixedWith(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * Adds the given DogStatsD tags to all lines.
+         *
+         * @param tags the tags to add; an empty map for no tags.
+         * @return this builder.
+         */
+        public Builder withTags(Map<String, String> tags) {
+            Preconditions.checkNotNull(tags);
+            this.tags = new LinkedHashMap<>(tags);
+            return this;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public StatsdReporter build(StatsdSender statsdSender) {
+            Preconditions.checkNotNull(statsdSender);
+            return new StatsdReporter(this, statsdSender);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.reporting.statsd;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class packs StatsD lines into UDP datagrams. Lines are delimited by new line characters, and as many lines as
+ * possible are packed into each datagram without exceeding the maximum packet size. The datagram is assembled in a
+ * direct buffer, which is allocated once and reused for all datagrams. A line, which does not fit into an empty
+ * datagram, is dropped.
+ *
+ * <p>
+ *     The agent's hostname is resolved upon every {@link #connect()}, so that DNS changes are picked up. This class is
+ *     not thread-safe; it is meant to be driven by a single reporter thread.
+ * </p>
+ */
+public class StatsdSender implements Closeable {
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final String host;
+    private final int port;
+    private final int maxPacketSizeInBytes;
+
+    private final ByteBuffer packetBuffer;
+    private final ByteBuffer lineBuffer;
+    private final CharsetEncoder encoder;
+
+    private DatagramChannel datagramChannel;
+    private InetSocketAddress address;
+
+    private long sentPackets;
+    private long droppedLines;
+    private int failures;
+
+    /**
+     * Constructs a sender.
+     *
+     * @param host the hostname or IP address of the StatsD agent.
+     * @param port the port of the StatsD agent.
+     * @param maxPacketSizeInBytes the maximum size of a datagram.
+     */
+    public StatsdSender(String host, int port, int maxPacketSizeInBytes) {
+        Preconditions.checkNotNull(host);
+        Preconditions.checkArgument(maxPacketSizeInBytes > 0, "maxPacketSizeInBytes must be positive");
+
+        this.host = host;
+        this.port = port;
+        this.maxPacketSizeInBytes = maxPacketSizeInBytes;
+
+        this.packetBuffer = ByteBuffer.allocateDirect(maxPacketSizeInBytes);
+        this.lineBuffer = ByteBuffer.allocate(maxPacketSizeInBytes);
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+    }
+
+    /**
+     * Opens the datagram channel, if it is not open yet, and resolves the agent's address.
+     *
+     * @throws IOException if the channel could not be opened or the agent's hostname could not be resolved.
+     */
+    public void connect() throws IOException {
+        if (datagramChannel == null || !datagramChannel.isOpen()) {
+            datagramChannel = DatagramChannel.open();
+        }
+        packetBuffer.clear();
+
+        // An unresolved address would make DatagramChannel#send() throw an unchecked UnresolvedAddressException
+        address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            failures++;
+            throw new UnknownHostException("Unable to resolve StatsD host " + host);
+        }
+    }
+
+    /**
+     * Adds a line to the current datagram. If the line does not fit into the current datagram, the datagram is sent
+     * first.
+     *
+     * @param line a StatsD line without the trailing new line character.
+     * @throws IOException if a datagram could not be sent.
+     */
+    public void send(CharSequence line) throws IOException {
+        lineBuffer.clear();
+        encoder.reset();
+        CoderResult coderResult = encoder.encode(CharBuffer.wrap(line), lineBuffer, true);
+        if (coderResult.isOverflow()) {
+            droppedLines++;
+            return;
+        }
+        lineBuffer.flip();
+
+        int requiredSpace = lineBuffer.remaining() + (packetBuffer.position() > 0 ? 1 : 0);
+        if (requiredSpace > packetBuffer.remaining()) {
+            flush();
+        }
+
+        if (packetBuffer.position() > 0) {
+            packetBuffer.put(LINE_SEPARATOR);
+        }
+        packetBuffer.put(lineBuffer);
+    }
+
+    /**
+     * Sends the current datagram, if it is not empty.
+     *
+     * @throws IOException if the datagram could not be sent.
+     */
+    public void flush() throws IOException {
+        if (packetBuffer.position() == 0) {
+            return;
+        }
+
+        packetBuffer.flip();
+        try {
+            datagramChannel.send(packetBuffer, address);
+            sentPackets++;
+        } catch (IOException | RuntimeException e) {
+            failures++;
+            throw e;
+        } finally {
+            packetBuffer.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (datagramChannel != null) {
+            datagramChannel.close();
+            datagramChannel = null;
+        }
+    }
+
+    public int getMaxPacketSizeInBytes() {
+        return maxPacketSizeInBytes;
+    }
+
+    public long getSentPackets() {
+        return sentPackets;
+    }
+
+    public long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
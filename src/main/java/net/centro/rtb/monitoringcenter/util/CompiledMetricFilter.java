@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A metric filter, which is compiled once out of a whitelist and a blacklist of "starts with" filters. A metric passes
+ * this filter if its name matches at least one whitelisted filter (or the whitelist is empty), and does not match any
+ * blacklisted filter.
+ *
+ * <p>
+ *     A "starts with" filter without wildcards matches all names starting with it; such filters are stored in a prefix
+ *     trie, so that a name is matched against all of them in a single pass. A filter can also include multiple
+ *     wildcards, expressed as "*"; a trailing wildcard is always implied. Wildcard filters are precompiled into
+ *     sequences of literal segments, which are matched without regular expressions. All filters are trimmed; a blank
+ *     filter matches all names.
+ * </p>
+ *
+ * <p>
+ *     Optionally, the decisions can be cached per metric name. Since metric names are stable, the cache is not evicted;
+ *     once it reaches its maximum size, new decisions are no longer cached. This class is thread-safe.
+ * </p>
+ */
+public class CompiledMetricFilter implements MetricFilter {
+    private static final CompiledMetricFilter MATCH_ALL = new CompiledMetricFilter(null, null, 0);
+
+    private final NameMatcher whitelistMatcher;
+    private final NameMatcher blacklistMatcher;
+
+    private final int maxDecisionCacheSize;
+    private final Map<String, Boolean> decisionCache;
+
+    private CompiledMetricFilter(NameMatcher whitelistMatcher, NameMatcher blacklistMatcher, int maxDecisionCacheSize) {
+        this.whitelistMatcher = whitelistMatcher;
+        this.blacklistMatcher = blacklistMatcher;
+        this.maxDecisionCacheSize = maxDecisionCacheSize;
+        this.decisionCache = maxDecisionCacheSize > 0 ? new ConcurrentHashMap<String, Boolean>() : null;
+    }
+
+    /**
+     * Compiles a filter out of a whitelist of "starts with" filters. No decisions will be cached.
+     *
+     * @param startsWithFilters the whitelisted filters; <tt>null</tt> or empty to let all metrics pass.
+     * @return a compiled filter.
+     */
+    public static CompiledMetricFilter compile(String[] startsWithFilters) {
+        return compile(startsWithFilters != null ? Arrays.asList(startsWithFilters) : null, null, 0);
+    }
+
+    /**
+     * Compiles a filter out of a whitelist and a blacklist of "starts with" filters.
+     *
+     * @param startsWithFilters the whitelisted filters; <tt>null</tt> or empty to let all metrics pass.
+     * @param blockedStartsWithFilters the blacklisted filters; <tt>null</tt> or empty to block no metrics.
+     * @param maxDecisionCacheSize the maximum number of decisions to cache; 0 disables the cache.
+     * @return a compiled filter.
+     * @throws IllegalArgumentException if <tt>maxDecisionCacheSize</tt> is negative.
+     */
+    public static CompiledMetricFilter compile(Collection<String> startsWithFilters, Collection<String> blockedStartsWithFilters, int maxDecisionCacheSize) {
+        Preconditions.checkArgument(maxDecisionCacheSize >= 0, "maxDecisionCacheSize cannot be negative");
+
+        NameMatcher whitelistMatcher = startsWithFilters != null && !startsWithFilters.isEmpty() ? NameMatcher.compile(startsWithFilters) : null;
+        NameMatcher blacklistMatcher = blockedStartsWithFilters != null && !blockedStartsWithFilters.isEmpty() ? NameMatcher.compile(blockedStartsWithFilters) : null;
+
+        if ((whitelistMatcher == null || whitelistMatcher.matchesAll) && blacklistMatcher == null) {
+            return MATCH_ALL;
+        }
+        return new CompiledMetricFilter(whitelistMatcher, blacklistMatcher, maxDecisionCacheSize);
+    }
+
+    @Override
+    public boolean matches(String name, Metric metric) {
+        return matches(name);
+    }
+
+    /**
+     * Determines whether a given metric name passes this filter.
+     *
+     * @param name a metric name.
+     * @return <tt>true</tt> if the name passes this filter; <tt>false</tt> otherwise.
+     */
+    public boolean matches(String name) {
+        if (decisionCache == null) {
+            return decide(name);
+        }
+
+        Boolean decision = decisionCache.get(name);
+        if (decision == null) {
+            decision = decide(name);
+            if (decisionCache.size() < maxDecisionCacheSize) {
+                decisionCache.put(name, decision);
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Determines whether this filter lets all metrics pass.
+     *
+     * @return <tt>true</tt> if this filter lets all metrics pass; <tt>false</tt> otherwise.
+     */
+    public boolean isMatchAll() {
+        return this == MATCH_ALL;
+    }
+
+    private boolean decide(String name) {
+        if (whitelistMatcher != null && !whitelistMatcher.matches(name)) {
+            return false;
+        }
+        return blacklistMatcher == null || !blacklistMatcher.matches(name);
+    }
+
+    private static class NameMatcher {
+        private final boolean matchesAll;
+        private final TrieNode prefixTrie;
+        private final List<String[]> wildcardFilterSegments;
+
+        private NameMatcher(boolean matchesAll, TrieNode prefixTrie, List<String[]> wildcardFilterSegments) {
+            this.matchesAll = matchesAll;
+            this.prefixTrie = prefixTrie;
+            this.wildcardFilterSegments = wildcardFilterSegments;
+        }
+
+        private static NameMatcher compile(Collection<String> filters) {
+            TrieNode prefixTrie = null;
+            List<String[]> wildcardFilterSegments = new ArrayList<>();
+
+            for (String filter : filters) {
+                filter = StringUtils.trimToNull(filter);
+                if (filter == null) {
+                    return new NameMatcher(true, null, Collections.<String[]>emptyList());
+                }
+
+                if (filter.indexOf('*') == -1) {
+                    if (prefixTrie == null) {
+                        prefixTrie = new TrieNode();
+                    }
+                    prefixTrie.add(filter);
+                } else {
+                    wildcardFilterSegments.add(StringUtils.splitPreserveAllTokens(filter, '*'));
+                }
+            }
+
+            return new NameMatcher(false, prefixTrie, wildcardFilterSegments);
+        }
+
+        private boolean matches(String name) {
+            if (matchesAll) {
+                return true;
+            }
+
+            if (prefixTrie != null && prefixTrie.matchesPrefixOf(name)) {
+                return true;
+            }
+
+            for (String[] segments : wildcardFilterSegments) {
+                if (matchesSegments(name, segments)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Matches a name against the literal segments of a wildcard filter with an implied trailing wildcard. The first
+         * segment must be a prefix of the name, while each subsequent segment must occur after the previous one.
+         * Taking the leftmost occurrence of each segment is sufficient, as the trailing wildcard absorbs the rest.
+         */
+        private static boolean matchesSegments(String name, String[] segments) {
+            if (!name.startsWith(segments[0])) {
+                return false;
+            }
+
+            int position = segments[0].length();
+            for (int i = 1; i < segments.length; i++) {
+                if (segments[i].isEmpty()) {
+                    continue;
+                }
+
+                int index = name.indexOf(segments[i], position);
+                if (index == -1) {
+                    return false;
+                }
+                position = index + segments[i].length();
+            }
+            return true;
+        }
+    }
+
+    private static class TrieNode {
+        private Map<Character, TrieNode> children;
+        private boolean terminal;
+
+        private void add(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && !node.terminal; i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+
+                TrieNode child = node.children.get(prefix.charAt(i));
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(prefix.charAt(i), child);
+                }
+                node = child;
+            }
+
+            // Longer prefixes are subsumed by this one
+            node.terminal = true;
+            node.children = null;
+        }
+
+        private boolean matchesPrefixOf(String name) {
+            TrieNode node = this;
+            for (int i = 0; i < name.length(); i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (node.children == null) {
+                    return false;
+                }
+
+                node = node.children.get(name.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.terminal;
+        }
+    }
+}
@@ -27,22 +27,34 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import net.centro.rtb.monitoringcenter.config.GraphiteReporterConfig;
 import net.centro.rtb.monitoringcenter.config.HostAndPort;
+import net.centro.rtb.monitoringcenter.config.InfluxReporterConfig;
+import net.centro.rtb.monitoringcenter.config.JmxExportMode;
 import net.centro.rtb.monitoringcenter.config.JmxReporterConfig;
+import net.centro.rtb.monitoringcenter.config.JsonLogReporterConfig;
 import net.centro.rtb.monitoringcenter.config.MetricCollectionConfig;
+import net.centro.rtb.monitoringcenter.config.MetricHistoryConfig;
 import net.centro.rtb.monitoringcenter.config.MetricNamePostfixPolicy;
 import net.centro.rtb.monitoringcenter.config.MetricReportingConfig;
 import net.centro.rtb.monitoringcenter.config.MonitoringCenterConfig;
 import net.centro.rtb.monitoringcenter.config.NamingConfig;
+import net.centro.rtb.monitoringcenter.config.StatsdReporterConfig;
 import net.centro.rtb.monitoringcenter.config.dto.GraphiteReporterConfigDto;
+import net.centro.rtb.monitoringcenter.config.dto.InfluxReporterConfigDto;
+import net.centro.rtb.monitoringcenter.config.dto.JmxExportModeDto;
 import net.centro.rtb.monitoringcenter.config.dto.JmxReporterConfigDto;
+import net.centro.rtb.monitoringcenter.config.dto.JsonLogReporterConfigDto;
 import net.centro.rtb.monitoringcenter.config.dto.MetricCollectionConfigDto;
+import net.centro.rtb.monitoringcenter.config.dto.MetricHistoryConfigDto;
 import net.centro.rtb.monitoringcenter.config.dto.MetricNamePostfixPolicyDto;
 import net.centro.rtb.monitoringcenter.config.dto.MetricReportingConfigDto;
 import net.centro.rtb.monitoringcenter.config.dto.MonitoringCenterConfigDto;
 import net.centro.rtb.monitoringcenter.config.dto.NamingConfigDto;
+import net.centro.rtb.monitoringcenter.config.dto.StatsdReporterConfigDto;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class ConfigFileUtil {
@@ -84,6 +96,9 @@ public class ConfigFileUtil {
             MetricCollectionConfigDto metricCollectionConfigDto = new MetricCollectionConfigDto();
             metricCollectionConfigDto.setEnableSystemMetrics(metricCollectionConfig.isEnableSystemMetrics());
             metricCollectionConfigDto.setEnableTomcatMetrics(metricCollectionConfig.isEnableTomcatMetrics());
+            metricCollectionConfigDto.setEnableMonitoringCenterMetrics(metricCollectionConfig.isEnableMonitoringCenterMetrics());
+            metricCollectionConfigDto.setNetworkInterfaceSamplingIntervalInSeconds(metricCollectionConfig.getNetworkInterfaceSamplingIntervalInSeconds());
+            metricCollectionConfigDto.setDeadlockDetectionIntervalInSeconds(metricCollectionConfig.getDeadlockDetectionIntervalInSeconds());
             configDto.setMetricCollectionConfig(metricCollectionConfigDto);
         }
 
@@ -96,11 +111,19 @@ public class ConfigFileUtil {
                 GraphiteReporterConfigDto graphiteReporterConfigDto = new GraphiteReporterConfigDto();
                 graphiteReporterConfigDto.setEnableReporter(graphiteReporterConfig.isEnableReporter());
                 graphiteReporterConfigDto.setAddress(graphiteReporterConfig.getAddress());
+                if (graphiteReporterConfig.isSharded()) {
+                    graphiteReporterConfigDto.setAddresses(graphiteReporterConfig.getAddresses());
+                }
                 graphiteReporterConfigDto.setEnableBatching(graphiteReporterConfig.isEnableBatching());
                 graphiteReporterConfigDto.setReportOnShutdown(graphiteReporterConfig.isReportOnShutdown());
                 graphiteReporterConfigDto.setReportingIntervalInSeconds(graphiteReporterConfig.getReportingIntervalInSeconds());
                 graphiteReporterConfigDto.setStartsWithFilters(graphiteReporterConfig.getStartsWithFilters());
                 graphiteReporterConfigDto.setBlockedStartsWithFilters(graphiteReporterConfig.getBlockedStartsWithFilters());
+                if (graphiteReporterConfig.isEnableSpooling()) {
+                    graphiteReporterConfigDto.setSpoolDirectory(graphiteReporterConfig.getSpoolDirectory());
+                    graphiteReporterConfigDto.setMaxSpoolSizeInBytes(graphiteReporterConfig.getMaxSpoolSizeInBytes());
+                    graphiteReporterConfigDto.setSpoolReplayRatePerSecond(graphiteReporterConfig.getSpoolReplayRatePerSecond());
+                }
                 metricReportingConfigDto.setGraphiteReporterConfig(graphiteReporterConfigDto);
             }
 
@@ -108,11 +131,75 @@ public class ConfigFileUtil {
             if (jmxReporterConfig != null) {
                 JmxReporterConfigDto jmxReporterConfigDto = new JmxReporterConfigDto();
                 jmxReporterConfigDto.setEnableReporter(jmxReporterConfig.isEnableReporter());
+                jmxReporterConfigDto.setExportMode(convertJmxExportModeToDto(jmxReporterConfig.getExportMode()));
                 jmxReporterConfigDto.setStartsWithFilters(jmxReporterConfig.getStartsWithFilters());
                 jmxReporterConfigDto.setBlockedStartsWithFilters(jmxReporterConfig.getBlockedStartsWithFilters());
                 metricReportingConfigDto.setJmxReporterConfig(jmxReporterConfigDto);
             }
 
+            StatsdReporterConfig statsdReporterConfig = metricReportingConfig.getStatsdReporterConfig();
+            if (statsdReporterConfig != null) {
+                StatsdReporterConfigDto statsdReporterConfigDto = new StatsdReporterConfigDto();
+                statsdReporterConfigDto.setEnableReporter(statsdReporterConfig.isEnableReporter());
+                statsdReporterConfigDto.setAddress(statsdReporterConfig.getAddress());
+                statsdReporterConfigDto.setReportingIntervalInSeconds(statsdReporterConfig.getReportingIntervalInSeconds());
+                statsdReporterConfigDto.setMaxPacketSizeInBytes(statsdReporterConfig.getMaxPacketSizeInBytes());
+                statsdReporterConfigDto.setEnableTags(statsdReporterConfig.isEnableTags());
+                statsdReporterConfigDto.setStartsWithFilters(statsdReporterConfig.getStartsWithFilters());
+                statsdReporterConfigDto.setBlockedStartsWithFilters(statsdReporterConfig.getBlockedStartsWithFilters());
+                metricReportingConfigDto.setStatsdReporterConfig(statsdReporterConfigDto);
+            }
+
+            InfluxReporterConfig influxReporterConfig = metricReportingConfig.getInfluxReporterConfig();
+            if (influxReporterConfig != null) {
+                InfluxReporterConfigDto influxReporterConfigDto = new InfluxReporterConfigDto();
+                influxReporterConfigDto.setEnableReporter(influxReporterConfig.isEnableReporter());
+                influxReporterConfigDto.setUrl(influxReporterConfig.getUrl());
+                influxReporterConfigDto.setDatabase(influxReporterConfig.getDatabase());
+                influxReporterConfigDto.setRetentionPolicy(influxReporterConfig.getRetentionPolicy());
+                influxReporterConfigDto.setReportingIntervalInSeconds(influxReporterConfig.getReportingIntervalInSeconds());
+                influxReporterConfigDto.setMaxLinesPerRequest(influxReporterConfig.getMaxLinesPerRequest());
+                influxReporterConfigDto.setEnableCompression(influxReporterConfig.isEnableCompression());
+                influxReporterConfigDto.setMaxRetryQueueSize(influxReporterConfig.getMaxRetryQueueSize());
+                influxReporterConfigDto.setTimeoutInMillis(influxReporterConfig.getTimeoutInMillis());
+                influxReporterConfigDto.setStartsWithFilters(influxReporterConfig.getStartsWithFilters());
+                influxReporterConfigDto.setBlockedStartsWithFilters(influxReporterConfig.getBlockedStartsWithFilters());
+                metricReportingConfigDto.setInfluxReporterConfig(influxReporterConfigDto);
+            }
+
+            JsonLogReporterConfig jsonLogReporterConfig = metricReportingConfig.getJsonLogReporterConfig();
+            if (jsonLogReporterConfig != null) {
+                JsonLogReporterConfigDto jsonLogReporterConfigDto = new JsonLogReporterConfigDto();
+                jsonLogReporterConfigDto.setEnableReporter(jsonLogReporterConfig.isEnableReporter());
+                jsonLogReporterConfigDto.setLoggerName(jsonLogReporterConfig.getLoggerName());
+                jsonLogReporterConfigDto.setReportingIntervalInSeconds(jsonLogReporterConfig.getReportingIntervalInSeconds());
+                jsonLogReporterConfigDto.setMaxMetricsPerLine(jsonLogReporterConfig.getMaxMetricsPerLine());
+                jsonLogReporterConfigDto.setStartsWithFilters(jsonLogReporterConfig.getStartsWithFilters());
+                jsonLogReporterConfigDto.setBlockedStartsWithFilters(jsonLogReporterConfig.getBlockedStartsWithFilters());
+                metricReportingConfigDto.setJsonLogReporterConfig(jsonLogReporterConfigDto);
+            }
+
+            MetricHistoryConfig metricHistoryConfig = metricReportingConfig.getMetricHistoryConfig();
+            if (metricHistoryConfig != null) {
+                MetricHistoryConfigDto metricHistoryConfigDto = new MetricHistoryConfigDto();
+                metricHistoryConfigDto.setEnableHistory(metricHistoryConfig.isEnableHistory());
+                metricHistoryConfigDto.setSamplingIntervalInSeconds(metricHistoryConfig.getSamplingIntervalInSeconds());
+                metricHistoryConfigDto.setSamplesPerMetric(metricHistoryConfig.getSamplesPerMetric());
+                metricHistoryConfigDto.setMaxMetrics(metricHistoryConfig.getMaxMetrics());
+                metricHistoryConfigDto.setStartsWithFilters(metricHistoryConfig.getStartsWithFilters());
+                metricHistoryConfigDto.setBlockedStartsWithFilters(metricHistoryConfig.getBlockedStartsWithFilters());
+                if (metricHistoryConfig.isEnablePersistence()) {
+                    metricHistoryConfigDto.setPersistenceDirectory(metricHistoryConfig.getPersistenceDirectory());
+                    metricHistoryConfigDto.setRetentionInHours(metricHistoryConfig.getRetentionInHours());
+                }
+                metricReportingConfigDto.setMetricHistoryConfig(metricHistoryConfigDto);
+            }
+
+            metricReportingConfigDto.setSnapshotFreshnessWindowInMillis(metricReportingConfig.getSnapshotFreshnessWindowInMillis());
+            metricReportingConfigDto.setCollectionParallelism(metricReportingConfig.getCollectionParallelism());
+            metricReportingConfigDto.setParallelCollectionThreshold(metricReportingConfig.getParallelCollectionThreshold());
+            metricReportingConfigDto.setReportingJitterBudgetInMillis(metricReportingConfig.getReportingJitterBudgetInMillis());
+
             configDto.setMetricReportingConfig(metricReportingConfigDto);
         }
 
@@ -170,10 +257,32 @@ public class ConfigFileUtil {
                 if (collectionConfigFromFile.getEnableTomcatMetrics() != null) {
                     configBuilder.enableTomcatMetrics(collectionConfigFromFile.getEnableTomcatMetrics());
                 }
+                if (collectionConfigFromFile.getEnableMonitoringCenterMetrics() != null) {
+                    configBuilder.enableMonitoringCenterMetrics(collectionConfigFromFile.getEnableMonitoringCenterMetrics());
+                }
+                if (collectionConfigFromFile.getNetworkInterfaceSamplingIntervalInSeconds() != null) {
+                    configBuilder.networkInterfaceSamplingInterval(collectionConfigFromFile.getNetworkInterfaceSamplingIntervalInSeconds(), TimeUnit.SECONDS);
+                }
+                if (collectionConfigFromFile.getDeadlockDetectionIntervalInSeconds() != null) {
+                    configBuilder.deadlockDetectionInterval(collectionConfigFromFile.getDeadlockDetectionIntervalInSeconds(), TimeUnit.SECONDS);
+                }
             }
 
             MetricReportingConfigDto reportingConfigFromFile = configFromFile.getMetricReportingConfig();
             if (reportingConfigFromFile != null) {
+                if (reportingConfigFromFile.getSnapshotFreshnessWindowInMillis() != null) {
+                    configBuilder.snapshotFreshnessWindow(reportingConfigFromFile.getSnapshotFreshnessWindowInMillis(), TimeUnit.MILLISECONDS);
+                }
+                if (reportingConfigFromFile.getCollectionParallelism() != null) {
+                    configBuilder.collectionParallelism(reportingConfigFromFile.getCollectionParallelism());
+                }
+                if (reportingConfigFromFile.getParallelCollectionThreshold() != null) {
+                    configBuilder.parallelCollectionThreshold(reportingConfigFromFile.getParallelCollectionThreshold());
+                }
+                if (reportingConfigFromFile.getReportingJitterBudgetInMillis() != null) {
+                    configBuilder.reportingJitterBudget(reportingConfigFromFile.getReportingJitterBudgetInMillis(), TimeUnit.MILLISECONDS);
+                }
+
                 GraphiteReporterConfigDto graphiteReporterConfigFromFile = reportingConfigFromFile.getGraphiteReporterConfig();
                 if (graphiteReporterConfigFromFile != null) {
                     GraphiteReporterConfig.Builder graphiteReporterConfigBuilder = GraphiteReporterConfig.builder();
@@ -190,8 +299,11 @@ public class ConfigFileUtil {
                         graphiteReporterConfigBuilder.reportingInterval(graphiteReporterConfigFromFile.getReportingIntervalInSeconds(), TimeUnit.SECONDS);
                     }
                     HostAndPort address = graphiteReporterConfigFromFile.getAddress();
-                    if (address != null) {
-                        graphiteReporterConfigBuilder.address(address.getHost(), address.getPort());
+                    List<HostAndPort> addresses = graphiteReporterConfigFromFile.getAddresses();
+                    if (addresses != null && !addresses.isEmpty()) {
+                        graphiteReporterConfigBuilder.addresses(addresses);
+                    } else if (address != null) {
+                        graphiteReporterConfigBuilder.addresses(Collections.singletonList(address));
                     }
                     if (graphiteReporterConfigFromFile.getStartsWithFilters() != null) {
                         graphiteReporterConfigBuilder.startsWithFilters(graphiteReporterConfigFromFile.getStartsWithFilters());
@@ -199,6 +311,15 @@ public class ConfigFileUtil {
                     if (graphiteReporterConfigFromFile.getBlockedStartsWithFilters() != null) {
                         graphiteReporterConfigBuilder.blockedStartsWithFilters(graphiteReporterConfigFromFile.getBlockedStartsWithFilters());
                     }
+                    if (graphiteReporterConfigFromFile.getSpoolDirectory() != null) {
+                        graphiteReporterConfigBuilder.spoolDirectory(graphiteReporterConfigFromFile.getSpoolDirectory());
+                    }
+                    if (graphiteReporterConfigFromFile.getMaxSpoolSizeInBytes() != null) {
+                        graphiteReporterConfigBuilder.maxSpoolSizeInBytes(graphiteReporterConfigFromFile.getMaxSpoolSizeInBytes());
+                    }
+                    if (graphiteReporterConfigFromFile.getSpoolReplayRatePerSecond() != null) {
+                        graphiteReporterConfigBuilder.spoolReplayRatePerSecond(graphiteReporterConfigFromFile.getSpoolReplayRatePerSecond());
+                    }
                     configBuilder.graphiteReporterConfig(graphiteReporterConfigBuilder.build());
                 }
 
@@ -208,6 +329,9 @@ public class ConfigFileUtil {
                     if (jmxReporterConfigFromFile.getEnableReporter() != null) {
                         jmxReporterConfigBuilder.enableReporter(jmxReporterConfigFromFile.getEnableReporter());
                     }
+                    if (jmxReporterConfigFromFile.getExportMode() != null && jmxReporterConfigFromFile.getExportMode() != JmxExportModeDto.UNKNOWN) {
+                        jmxReporterConfigBuilder.exportMode(convertJmxExportModeToEntity(jmxReporterConfigFromFile.getExportMode()));
+                    }
                     if (jmxReporterConfigFromFile.getStartsWithFilters() != null) {
                         jmxReporterConfigBuilder.startsWithFilters(jmxReporterConfigFromFile.getStartsWithFilters());
                     }
@@ -216,6 +340,127 @@ public class ConfigFileUtil {
                     }
                     configBuilder.jmxReporterConfig(jmxReporterConfigBuilder.build());
                 }
+
+                StatsdReporterConfigDto statsdReporterConfigFromFile = reportingConfigFromFile.getStatsdReporterConfig();
+                if (statsdReporterConfigFromFile != null) {
+                    StatsdReporterConfig.Builder statsdReporterConfigBuilder = StatsdReporterConfig.builder();
+                    if (statsdReporterConfigFromFile.getEnableReporter() != null) {
+                        statsdReporterConfigBuilder.enableReporter(statsdReporterConfigFromFile.getEnableReporter());
+                    }
+                    if (statsdReporterConfigFromFile.getAddress() != null) {
+                        HostAndPort address = statsdReporterConfigFromFile.getAddress();
+                        statsdReporterConfigBuilder.address(address.getHost(), address.getPort());
+                    }
+                    if (statsdReporterConfigFromFile.getReportingIntervalInSeconds() != null) {
+                        statsdReporterConfigBuilder.reportingInterval(statsdReporterConfigFromFile.getReportingIntervalInSeconds(), TimeUnit.SECONDS);
+                    }
+                    if (statsdReporterConfigFromFile.getMaxPacketSizeInBytes() != null) {
+                        statsdReporterConfigBuilder.maxPacketSizeInBytes(statsdReporterConfigFromFile.getMaxPacketSizeInBytes());
+                    }
+                    if (statsdReporterConfigFromFile.getEnableTags() != null) {
+                        statsdReporterConfigBuilder.enableTags(statsdReporterConfigFromFile.getEnableTags());
+                    }
+                    if (statsdReporterConfigFromFile.getStartsWithFilters() != null) {
+                        statsdReporterConfigBuilder.startsWithFilters(statsdReporterConfigFromFile.getStartsWithFilters());
+                    }
+                    if (statsdReporterConfigFromFile.getBlockedStartsWithFilters() != null) {
+                        statsdReporterConfigBuilder.blockedStartsWithFilters(statsdReporterConfigFromFile.getBlockedStartsWithFilters());
+                    }
+                    configBuilder.statsdReporterConfig(statsdReporterConfigBuilder.build());
+                }
+
+                InfluxReporterConfigDto influxReporterConfigFromFile = reportingConfigFromFile.getInfluxReporterConfig();
+                if (influxReporterConfigFromFile != null) {
+                    InfluxReporterConfig.Builder influxReporterConfigBuilder = InfluxReporterConfig.builder();
+                    if (influxReporterConfigFromFile.getEnableReporter() != null) {
+                        influxReporterConfigBuilder.enableReporter(influxReporterConfigFromFile.getEnableReporter());
+                    }
+                    if (influxReporterConfigFromFile.getUrl() != null) {
+                        influxReporterConfigBuilder.url(influxReporterConfigFromFile.getUrl());
+                    }
+                    if (influxReporterConfigFromFile.getDatabase() != null) {
+                        influxReporterConfigBuilder.database(influxReporterConfigFromFile.getDatabase());
+                    }
+                    if (influxReporterConfigFromFile.getRetentionPolicy() != null) {
+                        influxReporterConfigBuilder.retentionPolicy(influxReporterConfigFromFile.getRetentionPolicy());
+                    }
+                    if (influxReporterConfigFromFile.getReportingIntervalInSeconds() != null) {
+                        influxReporterConfigBuilder.reportingInterval(influxReporterConfigFromFile.getReportingIntervalInSeconds(), TimeUnit.SECONDS);
+                    }
+                    if (influxReporterConfigFromFile.getMaxLinesPerRequest() != null) {
+                        influxReporterConfigBuilder.maxLinesPerRequest(influxReporterConfigFromFile.getMaxLinesPerRequest());
+                    }
+                    if (influxReporterConfigFromFile.getEnableCompression() != null) {
+                        influxReporterConfigBuilder.enableCompression(influxReporterConfigFromFile.getEnableCompression());
+                    }
+                    if (influxReporterConfigFromFile.getMaxRetryQueueSize() != null) {
+                        influxReporterConfigBuilder.maxRetryQueueSize(influxReporterConfigFromFile.getMaxRetryQueueSize());
+                    }
+                    if (influxReporterConfigFromFile.getTimeoutInMillis() != null) {
+                        influxReporterConfigBuilder.timeout(influxReporterConfigFromFile.getTimeoutInMillis(), TimeUnit.MILLISECONDS);
+                    }
+                    if (influxReporterConfigFromFile.getStartsWithFilters() != null) {
+                        influxReporterConfigBuilder.startsWithFilters(influxReporterConfigFromFile.getStartsWithFilters());
+                    }
+                    if (influxReporterConfigFromFile.getBlockedStartsWithFilters() != null) {
+                        influxReporterConfigBuilder.blockedStartsWithFilters(influxReporterConfigFromFile.getBlockedStartsWithFilters());
+                    }
+                    configBuilder.influxReporterConfig(influxReporterConfigBuilder.build());
+                }
+
+                JsonLogReporterConfigDto jsonLogReporterConfigFromFile = reportingConfigFromFile.getJsonLogReporterConfig();
+                if (jsonLogReporterConfigFromFile != null) {
+                    JsonLogReporterConfig.Builder jsonLogReporterConfigBuilder = JsonLogReporterConfig.builder();
+                    if (jsonLogReporterConfigFromFile.getEnableReporter() != null) {
+                        jsonLogReporterConfigBuilder.enableReporter(jsonLogReporterConfigFromFile.getEnableReporter());
+                    }
+                    if (jsonLogReporterConfigFromFile.getLoggerName() != null) {
+                        jsonLogReporterConfigBuilder.loggerName(jsonLogReporterConfigFromFile.getLoggerName());
+                    }
+                    if (jsonLogReporterConfigFromFile.getReportingIntervalInSeconds() != null) {
+                        jsonLogReporterConfigBuilder.reportingInterval(jsonLogReporterConfigFromFile.getReportingIntervalInSeconds(), TimeUnit.SECONDS);
+                    }
+                    if (jsonLogReporterConfigFromFile.getMaxMetricsPerLine() != null) {
+                        jsonLogReporterConfigBuilder.maxMetricsPerLine(jsonLogReporterConfigFromFile.getMaxMetricsPerLine());
+                    }
+                    if (jsonLogReporterConfigFromFile.getStartsWithFilters() != null) {
+                        jsonLogReporterConfigBuilder.startsWithFilters(jsonLogReporterConfigFromFile.getStartsWithFilters());
+                    }
+                    if (jsonLogReporterConfigFromFile.getBlockedStartsWithFilters() != null) {
+                        jsonLogReporterConfigBuilder.blockedStartsWithFilters(jsonLogReporterConfigFromFile.getBlockedStartsWithFilters());
+                    }
+                    configBuilder.jsonLogReporterConfig(jsonLogReporterConfigBuilder.build());
+                }
+
+                MetricHistoryConfigDto metricHistoryConfigFromFile = reportingConfigFromFile.getMetricHistoryConfig();
+                if (metricHistoryConfigFromFile != null) {
+                    MetricHistoryConfig.Builder metricHistoryConfigBuilder = MetricHistoryConfig.builder();
+                    if (metricHistoryConfigFromFile.getEnableHistory() != null) {
+                        metricHistoryConfigBuilder.enableHistory(metricHistoryConfigFromFile.getEnableHistory());
+                    }
+                    if (metricHistoryConfigFromFile.getSamplingIntervalInSeconds() != null) {
+                        metricHistoryConfigBuilder.samplingInterval(metricHistoryConfigFromFile.getSamplingIntervalInSeconds(), TimeUnit.SECONDS);
+                    }
+                    if (metricHistoryConfigFromFile.getSamplesPerMetric() != null) {
+                        metricHistoryConfigBuilder.samplesPerMetric(metricHistoryConfigFromFile.getSamplesPerMetric());
+                    }
+                    if (metricHistoryConfigFromFile.getMaxMetrics() != null) {
+                        metricHistoryConfigBuilder.maxMetrics(metricHistoryConfigFromFile.getMaxMetrics());
+                    }
+                    if (metricHistoryConfigFromFile.getStartsWithFilters() != null) {
+                        metricHistoryConfigBuilder.startsWithFilters(metricHistoryConfigFromFile.getStartsWithFilters());
+                    }
+                    if (metricHistoryConfigFromFile.getBlockedStartsWithFilters() != null) {
+                        metricHistoryConfigBuilder.blockedStartsWithFilters(metricHistoryConfigFromFile.getBlockedStartsWithFilters());
+                    }
+                    if (metricHistoryConfigFromFile.getPersistenceDirectory() != null) {
+                        metricHistoryConfigBuilder.persistenceDirectory(metricHistoryConfigFromFile.getPersistenceDirectory());
+                    }
+                    if (metricHistoryConfigFromFile.getRetentionInHours() != null) {
+                        metricHistoryConfigBuilder.retentionInHours(metricHistoryConfigFromFile.getRetentionInHours());
+                    }
+                    configBuilder.metricHistoryConfig(metricHistoryConfigBuilder.build());
+                }
             }
         }
     }
@@ -243,4 +488,24 @@ public class ConfigFileUtil {
             return null;
         }
     }
+
+    private static JmxExportModeDto convertJmxExportModeToDto(JmxExportMode entity) {
+        if (entity == JmxExportMode.PER_METRIC) {
+            return JmxExportModeDto.PER_METRIC;
+        } else if (entity == JmxExportMode.PER_NAMESPACE) {
+            return JmxExportModeDto.PER_NAMESPACE;
+        } else {
+            return JmxExportModeDto.UNKNOWN;
+        }
+    }
+
+    private static JmxExportMode convertJmxExportModeToEntity(JmxExportModeDto dto) {
+        if (dto == JmxExportModeDto.PER_METRIC) {
+            return JmxExportMode.PER_METRIC;
+        } else if (dto == JmxExportModeDto.PER_NAMESPACE) {
+            return JmxExportMode.PER_NAMESPACE;
+        } else {
+            return null;
+        }
+    }
 }
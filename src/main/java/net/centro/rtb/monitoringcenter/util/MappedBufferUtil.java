@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * This class releases the memory mapping of a MappedByteBuffer eagerly, rather than waiting for the buffer to be
+ * garbage collected. Until then, the mapping keeps occupying the address space, and the disk space of a deleted file
+ * is not reclaimed. On Java 9+, <tt>sun.misc.Unsafe#invokeCleaner</tt> is used; on Java 8, the cleaner of the buffer
+ * is invoked directly. If neither is available, the mapping is left to the garbage collector.
+ *
+ * <p>
+ *     The buffer must not be accessed after it has been unmapped, as doing so crashes the JVM.
+ * </p>
+ */
+public class MappedBufferUtil {
+    private static final Logger logger = LoggerFactory.getLogger(MappedBufferUtil.class);
+
+    private static final Object unsafe;
+    private static final Method invokeCleanerMethod;
+
+    static {
+        Object theUnsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafeField.setAccessible(true);
+            theUnsafe = theUnsafeField.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8; the cleaner of the buffer is used instead
+            invokeCleaner = null;
+        }
+        unsafe = theUnsafe;
+        invokeCleanerMethod = invokeCleaner;
+    }
+
+    private MappedBufferUtil() {
+    }
+
+    /**
+     * Releases the memory mapping of a buffer.
+     *
+     * @param buffer the buffer to unmap; <tt>null</tt> is ignored.
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            if (invokeCleanerMethod != null) {
+                invokeCleanerMethod.invoke(unsafe, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Unable to unmap buffer; leaving it to the garbage collector", e);
+        }
+    }
+}
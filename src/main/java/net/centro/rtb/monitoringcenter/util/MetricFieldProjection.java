@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class writes a projection of a metric--that is, a JSON object holding only the requested fields. The field names
+ * and values are the same as the ones written by the Jackson <tt>MetricsModule</tt>: timer statistics are converted to
+ * the duration unit, and the rates of meters and timers to the rate unit. The fields, which do not apply to a metric
+ * type (e.g., "p99" for a counter), are omitted, so a metric may be written as an empty object.
+ *
+ * <p>
+ *     The supported fields are: value, count, min, max, mean, stddev, p50, p75, p95, p98, p99, p999, m1_rate, m5_rate,
+ *     m15_rate, and mean_rate. This class is immutable and thread-safe.
+ * </p>
+ */
+public class MetricFieldProjection {
+    public static final Set<String> SUPPORTED_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "value", "count", "min", "max", "mean", "stddev", "p50", "p75", "p95", "p98", "p99", "p999",
+            "m1_rate", "m5_rate", "m15_rate", "mean_rate")));
+
+    private static final Set<String> SAMPLING_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "min", "max", "mean", "stddev", "p50", "p75", "p95", "p98", "p99", "p999")));
+    private static final Set<String> METERED_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "m1_rate", "m5_rate", "m15_rate", "mean_rate")));
+
+    private final List<String> fields;
+    private final double rateFactor;
+    private final double durationFactor;
+
+    private MetricFieldProjection(List<String> fields, TimeUnit rateUnit, TimeUnit durationUnit) {
+        this.fields = fields;
+        this.rateFactor = rateUnit.toSeconds(1);
+        this.durationFactor = 1.0 / durationUnit.toNanos(1);
+    }
+
+    /**
+     * Parses a comma-separated list of fields (e.g., "count,p99,m1_rate"). The fields are written in the order of the
+     * list; duplicates are ignored.
+     *
+     * @param fieldList a comma-separated list of fields.
+     * @param rateUnit the unit to convert rates to.
+     * @param durationUnit the unit to convert timer durations to.
+     * @return a projection of the given fields.
+     * @throws IllegalArgumentException if the list is blank or contains an unsupported field.
+     */
+    public static MetricFieldProjection parse(String fieldList, TimeUnit rateUnit, TimeUnit durationUnit) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(fieldList), "fieldList cannot be blank");
+        Preconditions.checkNotNull(rateUnit);
+        Preconditions.checkNotNull(durationUnit);
+
+        Set<String> fields = new LinkedHashSet<>();
+        for (String field : StringUtils.split(fieldList, ',')) {
+            String trimmedField = field.trim();
+            if (trimmedField.isEmpty()) {
+                continue;
+            }
+            Preconditions.checkArgument(SUPPORTED_FIELDS.contains(trimmedField), "Unsupported field: %s; supported fields are %s", trimmedField, SUPPORTED_FIELDS);
+            fields.add(trimmedField);
+        }
+        Preconditions.checkArgument(!fields.isEmpty(), "fieldList must contain at least one field");
+
+        return new MetricFieldProjection(Collections.unmodifiableList(new ArrayList<>(fields)), rateUnit, durationUnit);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Writes the projection of a metric as a JSON object.
+     *
+     * @param generator the generator to write to.
+     * @param metric the metric to project.
+     * @throws IOException if the metric could not be written.
+     */
+    public void write(JsonGenerator generator, Metric metric) throws IOException {
+        generator.writeStartObject();
+
+        Snapshot snapshot = null;
+        for (String field : fields) {
+            if (metric instanceof Gauge) {
+                if ("value".equals(field)) {
+                    writeGaugeValue(generator, (Gauge<?>) metric);
+                }
+            } else if ("count".equals(field)) {
+                if (metric instanceof Counting) {
+                    generator.writeNumberField(field, ((Counting) metric).getCount());
+                }
+            } else if (SAMPLING_FIELDS.contains(field)) {
+                if (metric instanceof Sampling) {
+                    if (snapshot == null) {
+                        snapshot = ((Sampling) metric).getSnapshot();
+                    }
+                    writeSnapshotField(generator, field, snapshot, metric instanceof Timer);
+                }
+            } else if (METERED_FIELDS.contains(field)) {
+                if (metric instanceof Metered) {
+                    writeRateField(generator, field, (Metered) metric);
+                }
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads a field of a metric as a number, converted like in {@link #write(JsonGenerator, Metric)}. The field does
+     * not have to be a part of this projection.
+     *
+     * @param metric the metric to read.
+     * @param field a supported field.
+     * @return the value of the field or NaN if the field does not apply to the metric type, or if the value of a gauge
+     * is not numeric.
+     * @throws IllegalArgumentException if the field is not supported.
+     */
+    public double getValue(Metric metric, String field) {
+        Preconditions.checkArgument(SUPPORTED_FIELDS.contains(field), "Unsupported field: %s; supported fields are %s", field, SUPPORTED_FIELDS);
+
+        if (metric instanceof Gauge) {
+            if ("value".equals(field)) {
+                Object value;
+                try {
+                    value = ((Gauge<?>) metric).getValue();
+                } catch (RuntimeException e) {
+                    return Double.NaN;
+                }
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                }
+            }
+        } else if ("count".equals(field)) {
+            if (metric instanceof Counting) {
+                return ((Counting) metric).getCount();
+            }
+        } else if (SAMPLING_FIELDS.contains(field)) {
+            if (metric instanceof Sampling) {
+                double value = getSnapshotValue(field, ((Sampling) metric).getSnapshot());
+                return metric instanceof Timer ? value * durationFactor : value;
+            }
+        } else if (METERED_FIELDS.contains(field)) {
+            if (metric instanceof Metered) {
+                return getRate(field, (Metered) metric) * rateFactor;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static void writeGaugeValue(JsonGenerator generator, Gauge<?> gauge) throws IOException {
+        Object value;
+        try {
+            value = gauge.getValue();
+        } catch (RuntimeException e) {
+            generator.writeObjectField("error", e.toString());
+            return;
+        }
+        generator.writeObjectField("value", value);
+    }
+
+    private void writeSnapshotField(JsonGenerator generator, String field, Snapshot snapshot, boolean convertDurations) throws IOException {
+        // Histograms are written as they are; like the MetricsModule, min and max stay integral
+        if (!convertDurations && ("min".equals(field) || "max".equals(field))) {
+            generator.writeNumberField(field, "min".equals(field) ? snapshot.getMin() : snapshot.getMax());
+            return;
+        }
+
+        double value = getSnapshotValue(field, snapshot);
+        generator.writeNumberField(field, convertDurations ? value * durationFactor : value);
+    }
+
+    private void writeRateField(JsonGenerator generator, String field, Metered metered) throws IOException {
+        generator.writeNumberField(field, getRate(field, metered) * rateFactor);
+    }
+
+    private static double getSnapshotValue(String field, Snapshot snapshot) {
+        switch (field) {
+            case "min":
+                return snapshot.getMin();
+            case "max":
+                return snapshot.getMax();
+            case "mean":
+                return snapshot.getMean();
+            case "stddev":
+                return snapshot.getStdDev();
+            case "p50":
+                return snapshot.getMedian();
+            case "p75":
+                return snapshot.get75thPercentile();
+            case "p95":
+                return snapshot.get95thPercentile();
+            case "p98":
+                return snapshot.get98thPercentile();
+            case "p99":
+                return snapshot.get99thPercentile();
+            default:
+                return snapshot.get999thPercentile();
+        }
+    }
+
+    private static double getRate(String field, Metered metered) {
+        switch (field) {
+            case "m1_rate":
+                return metered.getOneMinuteRate();
+            case "m5_rate":
+                return metered.getFiveMinuteRate();
+            case "m15_rate":
+                return metered.getFifteenMinuteRate();
+            default:
+                return metered.getMeanRate();
+        }
+    }
+}
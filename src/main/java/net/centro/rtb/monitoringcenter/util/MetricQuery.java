@@ -0,0 +1,352 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import net.centro.rtb.monitoringcenter.metrics.MetricNameIndex;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ad-hoc query over the metrics of a registry snapshot, evaluated on the server. A query selects metrics by a
+ * "starts with" filter (with the same wildcard semantics as the <tt>startsWithFilter</tt> of the metrics endpoint),
+ * reads a field of every selected metric, and optionally aggregates the values. The grammar is:
+ *
+ * <pre>
+ *     query       := selection | aggregation "(" selection ")" | "topk(" k "," selection ")"
+ *     aggregation := "sum" | "avg" | "max" | "min"
+ *     selection   := filter [":" field]
+ * </pre>
+ *
+ * For instance, <tt>sum(*.bids.wonCounter:count)</tt> or <tt>topk(5, dbs.*:p99)</tt>. The fields are the ones of
+ * {@link MetricFieldProjection}; by default, the value of gauges and the count of the other metrics is read. Metrics,
+ * for which the field does not apply or is not numeric, are skipped.
+ *
+ * <p>
+ *     The selection is narrowed down by a {@link MetricNameIndex}, if one is provided, rather than by iterating over
+ *     the whole snapshot. A query can also be evaluated against the live metrics of a registry, in which case only the
+ *     selected metrics are read, rather than the whole registry being frozen first. This class is immutable and
+ *     thread-safe.
+ * </p>
+ */
+public class MetricQuery {
+    public enum Aggregation {
+        SUM,
+        AVG,
+        MAX,
+        MIN,
+        TOPK
+    }
+
+    private static final Pattern SELECTION_PATTERN = Pattern.compile("([^\\s():,]+)(?:\\s*:\\s*(\\w+))?");
+    private static final Pattern AGGREGATION_PATTERN = Pattern.compile("(sum|avg|max|min)\\s*\\(\\s*(.+?)\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TOPK_PATTERN = Pattern.compile("topk\\s*\\(\\s*(\\d+)\\s*,\\s*(.+?)\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private static final int MAX_K = 1000;
+
+    // Orders entries by descending values, then by names
+    private static final Comparator<Map.Entry<String, Double>> ENTRY_COMPARATOR = new Comparator<Map.Entry<String, Double>>() {
+        @Override
+        public int compare(Map.Entry<String, Double> entry1, Map.Entry<String, Double> entry2) {
+            int result = Double.compare(entry2.getValue(), entry1.getValue());
+            return result != 0 ? result : entry1.getKey().compareTo(entry2.getKey());
+        }
+    };
+
+    private final String expression;
+    private final Aggregation aggregation;
+    private final int k;
+    private final String startsWithFilter;
+    private final String field;
+    private final CompiledMetricFilter nameFilter;
+    private final MetricFieldProjection fieldReader;
+
+    private MetricQuery(String expression, Aggregation aggregation, int k, String startsWithFilter, String field, TimeUnit rateUnit, TimeUnit durationUnit) {
+        this.expression = expression;
+        this.aggregation = aggregation;
+        this.k = k;
+        this.startsWithFilter = startsWithFilter;
+        this.field = field;
+        this.nameFilter = CompiledMetricFilter.compile(new String[] {startsWithFilter});
+        this.fieldReader = MetricFieldProjection.parse(field != null ? field : "value,count", rateUnit, durationUnit);
+    }
+
+    /**
+     * Parses a query expression.
+     *
+     * @param expression a query expression (e.g., "max(dbs.*:p99)").
+     * @param rateUnit the unit to convert rates to.
+     * @param durationUnit the unit to convert timer durations to.
+     * @return the parsed query.
+     * @throws IllegalArgumentException if the expression is blank or malformed, or refers to an unsupported field.
+     */
+    public static MetricQuery parse(String expression, TimeUnit rateUnit, TimeUnit durationUnit) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(expression), "expression cannot be blank");
+        Preconditions.checkNotNull(rateUnit);
+        Preconditions.checkNotNull(durationUnit);
+
+        String trimmedExpression = expression.trim();
+        Aggregation aggregation = null;
+        int k = 0;
+        String selection = trimmedExpression;
+
+        Matcher matcher = TOPK_PATTERN.matcher(trimmedExpression);
+        if (matcher.matches()) {
+            aggregation = Aggregation.TOPK;
+            try {
+                k = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                k = -1;
+            }
+            Preconditions.checkArgument(k > 0 && k <= MAX_K, "k of topk must be within [1, %s]", MAX_K);
+            selection = matcher.group(2);
+        } else {
+            matcher = AGGREGATION_PATTERN.matcher(trimmedExpression);
+            if (matcher.matches()) {
+                aggregation = Aggregation.valueOf(matcher.group(1).toUpperCase());
+                selection = matcher.group(2);
+            }
+        }
+
+        matcher = SELECTION_PATTERN.matcher(selection);
+        Preconditions.checkArgument(matcher.matches(), "Malformed query: %s; expected a filter with an optional field (e.g., \"dbs.*:p99\"), " +
+                "optionally aggregated by sum, avg, max, min, or topk (e.g., \"max(dbs.*:p99)\" or \"topk(5, dbs.*:p99)\")", trimmedExpression);
+
+        return new MetricQuery(trimmedExpression, aggregation, k, matcher.group(1), matcher.group(2), rateUnit, durationUnit);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Retrieves the aggregation of this query.
+     *
+     * @return the aggregation or <tt>null</tt> if the selected values are returned as they are.
+     */
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * Evaluates this query.
+     *
+     * @param registrySnapshot the snapshot to evaluate this query against.
+     * @param nameIndex the index to narrow down the selection with; <tt>null</tt> to iterate over the snapshot.
+     * @return the result of this query.
+     */
+    public Result evaluate(final RegistrySnapshot registrySnapshot, MetricNameIndex nameIndex) {
+        Preconditions.checkNotNull(registrySnapshot);
+
+        Iterable<String> candidateNames;
+        if (nameIndex != null) {
+            candidateNames = nameIndex.getCandidateNames(startsWithFilter);
+        } else {
+            candidateNames = registrySnapshot.getMetrics().keySet();
+        }
+
+        return evaluate(candidateNames, new Function<String, Metric>() {
+            @Override
+            public Metric apply(String name) {
+                return getMetric(registrySnapshot, name);
+            }
+        });
+    }
+
+    /**
+     * Evaluates this query against the live metrics of a registry. Only the selected metrics are read; in particular,
+     * the snapshots of timers and histograms are only computed for them.
+     *
+     * @param metricRegistry the registry to evaluate this query against.
+     * @param nameIndex the index of the registry to narrow down the selection with; <tt>null</tt> to iterate over the
+     *                  names of the registry.
+     * @return the result of this query.
+     */
+    public Result evaluate(MetricRegistry metricRegistry, MetricNameIndex nameIndex) {
+        Preconditions.checkNotNull(metricRegistry);
+
+        Iterable<String> candidateNames;
+        if (nameIndex != null) {
+            candidateNames = nameIndex.getCandidateNames(startsWithFilter);
+        } else {
+            candidateNames = metricRegistry.getNames();
+        }
+
+        // The map of the registry is a view, rather than a copy
+        final Map<String, Metric> metricsByNames = metricRegistry.getMetrics();
+        return evaluate(candidateNames, new Function<String, Metric>() {
+            @Override
+            public Metric apply(String name) {
+                return metricsByNames.get(name);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private Result evaluate(Iterable<String> candidateNames, Function<String, Metric> metricLookup) {
+        Map<String, Double> valuesByNames = new LinkedHashMap<>();
+        PriorityQueue<Map.Entry<String, Double>> topEntries = aggregation == Aggregation.TOPK
+                ? new PriorityQueue<>(k + 1, Collections.reverseOrder(ENTRY_COMPARATOR)) : null;
+        int matchedMetrics = 0;
+        double aggregate = 0;
+        String aggregateMetricName = null;
+
+        for (String name : candidateNames) {
+            if (!nameFilter.matches(name)) {
+                continue;
+            }
+            Metric metric = metricLookup.apply(name);
+            if (metric == null) {
+                continue;
+            }
+
+            double value = fieldReader.getValue(metric, field != null ? field : (metric instanceof Gauge ? "value" : "count"));
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            matchedMetrics++;
+
+            if (aggregation == null) {
+                valuesByNames.put(name, value);
+            } else if (aggregation == Aggregation.TOPK) {
+                topEntries.add(new AbstractMap.SimpleImmutableEntry<>(name, value));
+                if (topEntries.size() > k) {
+                    topEntries.poll();
+                }
+            } else if (aggregation == Aggregation.SUM || aggregation == Aggregation.AVG) {
+                aggregate += value;
+            } else if (aggregateMetricName == null || (aggregation == Aggregation.MAX ? value > aggregate : value < aggregate)) {
+                aggregate = value;
+                aggregateMetricName = name;
+            }
+        }
+
+        if (aggregation == null) {
+            return new Result(matchedMetrics, null, null, valuesByNames);
+        } else if (aggregation == Aggregation.TOPK) {
+            List<Map.Entry<String, Double>> sortedEntries = new ArrayList<>(topEntries);
+            Collections.sort(sortedEntries, ENTRY_COMPARATOR);
+            for (Map.Entry<String, Double> entry : sortedEntries) {
+                valuesByNames.put(entry.getKey(), entry.getValue());
+            }
+            return new Result(matchedMetrics, null, null, valuesByNames);
+        } else if (matchedMetrics == 0) {
+            return new Result(0, null, null, null);
+        } else if (aggregation == Aggregation.AVG) {
+            return new Result(matchedMetrics, aggregate / matchedMetrics, null, null);
+        }
+        return new Result(matchedMetrics, aggregate, aggregateMetricName, null);
+    }
+
+    private static Metric getMetric(RegistrySnapshot registrySnapshot, String name) {
+        Metric metric = registrySnapshot.getGauges().get(name);
+        if (metric == null) {
+            metric = registrySnapshot.getCounters().get(name);
+        }
+        if (metric == null) {
+            metric = registrySnapshot.getHistograms().get(name);
+        }
+        if (metric == null) {
+            metric = registrySnapshot.getMeters().get(name);
+        }
+        if (metric == null) {
+            metric = registrySnapshot.getTimers().get(name);
+        }
+        return metric;
+    }
+
+    /**
+     * The result of a query. Depending on the aggregation, either a single value or a map of values by metric names is
+     * set.
+     */
+    public static class Result {
+        private final int matchedMetrics;
+        private final Double value;
+        private final String metricName;
+        private final Map<String, Double> valuesByNames;
+
+        private Result(int matchedMetrics, Double value, String metricName, Map<String, Double> valuesByNames) {
+            this.matchedMetrics = matchedMetrics;
+            this.value = value;
+            this.metricName = metricName;
+            this.valuesByNames = valuesByNames != null ? Collections.unmodifiableMap(valuesByNames) : null;
+        }
+
+        /**
+         * Retrieves the number of metrics, whose values were selected or aggregated.
+         *
+         * @return the number of matched metrics.
+         */
+        public int getMatchedMetrics() {
+            return matchedMetrics;
+        }
+
+        /**
+         * Retrieves the aggregated value of sum, avg, max, and min queries.
+         *
+         * @return the aggregated value or <tt>null</tt> if no metric matched, or if the query is not aggregated to a
+         * single value.
+         */
+        public Double getValue() {
+            return value;
+        }
+
+        /**
+         * Retrieves the name of the metric holding the value of max and min queries.
+         *
+         * @return the name of the metric or <tt>null</tt> for the other queries.
+         */
+        public String getMetricName() {
+            return metricName;
+        }
+
+        /**
+         * Retrieves the selected values by metric names: sorted by names for non-aggregated queries, and by descending
+         * values for topk queries.
+         *
+         * @return the values by metric names or <tt>null</tt> for the queries aggregated to a single value.
+         */
+        public Map<String, Double> getValuesByNames() {
+            return valuesByNames;
+        }
+    }
+}
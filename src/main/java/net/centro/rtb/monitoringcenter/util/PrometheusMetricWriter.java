@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * This class writes metrics in the Prometheus text exposition format (version 0.0.4) or in the OpenMetrics text format
+ * (version 1.0.0). The output is streamed to a writer metric by metric, with no intermediate representation of the
+ * whole response.
+ *
+ * <p>
+ *     Dotted metric names are converted to Prometheus metric names by replacing all characters other than letters,
+ *     digits, underscores, and colons with underscores. The node-specific prefix is not part of the names; instead, it
+ *     is expressed via constant labels, which are added to every sample. Metrics are mapped as follows:
+ *     <ul>
+ *         <li>Gauges with numeric or boolean values are rendered as gauges; other gauges are skipped.</li>
+ *         <li>Counters are rendered as gauges, since Dropwizard counters can be decremented.</li>
+ *         <li>Meters are rendered as counters of marked events.</li>
+ *         <li>Histograms and timers are rendered as summaries with the 50th, 75th, 95th, 98th, 99th, and 99.9th
+ *         percentiles, as well as the count. Timer durations are expressed in seconds. No sum is rendered, as
+ *         Dropwizard reservoirs do not track it.</li>
+ *     </ul>
+ *     If two metric names map to the same Prometheus name, only the first one (in the iteration order) is written. The
+ *     sample names derived from a name (the "_total" sample of a meter and the "_count" sample of a summary) are taken
+ *     into account as well; e.g., a gauge named "foo_count" is skipped after a timer named "foo", and vice versa.
+ * </p>
+ *
+ * <p>
+ *     An instance of this class is immutable and thread-safe.
+ * </p>
+ */
+public class PrometheusMetricWriter {
+    public static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String CONTENT_TYPE_OPENMETRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    // The suffixes of the sample names written for every type of metric; an empty suffix stands for the name itself
+    private static final String[] GAUGE_NAME_SUFFIXES = {""};
+    private static final String[] METER_NAME_SUFFIXES = {"", "_total"};
+    private static final String[] SUMMARY_NAME_SUFFIXES = {"", "_count"};
+
+    private final boolean openMetrics;
+    private final String constantLabels;
+    private final String[] quantileLabels;
+    private final String plainLabels;
+
+    /**
+     * Constructs a writer.
+     *
+     * @param constantLabels labels to add to every sample (e.g., the components of the node-specific prefix); label
+     *                       names are sanitized, label values are escaped.
+     * @param openMetrics whether to write the OpenMetrics format instead of the Prometheus text format.
+     */
+    public PrometheusMetricWriter(Map<String, String> constantLabels, boolean openMetrics) {
+        Preconditions.checkNotNull(constantLabels);
+
+        this.openMetrics = openMetrics;
+
+        StringBuilder labelBuilder = new StringBuilder();
+        for (Map.Entry<String, String> entry : constantLabels.entrySet()) {
+            if (labelBuilder.length() > 0) {
+                labelBuilder.append(',');
+            }
+            labelBuilder.append(sanitizeLabelName(entry.getKey())).append("=\"").append(escapeLabelValue(entry.getValue())).append('"');
+        }
+        this.constantLabels = labelBuilder.toString();
+        this.plainLabels = this.constantLabels.isEmpty() ? "" : "{" + this.constantLabels + "}";
+
+        this.quantileLabels = new String[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantileLabels[i] = "{" + (this.constantLabels.isEmpty() ? "" : this.constantLabels + ",") + "quantile=\"" + QUANTILES[i] + "\"}";
+        }
+    }
+
+    /**
+     * Writes metrics to a given writer. The writer is neither flushed nor closed by this method.
+     *
+     * @param metricsByNames metrics to write, keyed by dotted names without the node-specific prefix.
+     * @param writer a writer to write to; it is advisable to use a buffered writer.
+     * @throws IOException if the writer fails.
+     */
+    public void write(Map<String, ? extends Metric> metricsByNames, Writer writer) throws IOException {
+        Preconditions.checkNotNull(metricsByNames);
+        Preconditions.checkNotNull(writer);
+
+        NameSet writtenNames = new NameSet();
+        NameBuffer nameBuffer = new NameBuffer();
+
+        for (Map.Entry<String, ? extends Metric> entry : metricsByNames.entrySet()) {
+            Metric metric = entry.getValue();
+            nameBuffer.set(entry.getKey());
+
+            if (metric instanceof Gauge) {
+                Object value;
+                try {
+                    value = ((Gauge<?>) metric).getValue();
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                if (!(value instanceof Number || value instanceof Boolean) || !reserveNames(writtenNames, entry.getKey(), nameBuffer, GAUGE_NAME_SUFFIXES)) {
+                    continue;
+                }
+                writeType(writer, nameBuffer, null, "gauge");
+                writeSample(writer, nameBuffer, null, plainLabels, toDouble(value));
+            } else if (metric instanceof Counter) {
+                if (!reserveNames(writtenNames, entry.getKey(), nameBuffer, GAUGE_NAME_SUFFIXES)) {
+                    continue;
+                }
+                writeType(writer, nameBuffer, null, "gauge");
+                writeSample(writer, nameBuffer, null, plainLabels, ((Counter) metric).getCount());
+            } else if (metric instanceof Timer) {
+                if (!reserveNames(writtenNames, entry.getKey(), nameBuffer, SUMMARY_NAME_SUFFIXES)) {
+                    continue;
+                }
+                Timer timer = (Timer) metric;
+                writeSummary(writer, nameBuffer, timer.getSnapshot(), timer.getCount(), 1.0 / NANOS_PER_SECOND);
+            } else if (metric instanceof Histogram) {
+                if (!reserveNames(writtenNames, entry.getKey(), nameBuffer, SUMMARY_NAME_SUFFIXES)) {
+                    continue;
+                }
+                Histogram histogram = (Histogram) metric;
+                writeSummary(writer, nameBuffer, histogram.getSnapshot(), histogram.getCount(), 1.0);
+            } else if (metric instanceof Meter) {
+                if (!reserveNames(writtenNames, entry.getKey(), nameBuffer, METER_NAME_SUFFIXES)) {
+                    continue;
+                }
+                // In the Prometheus text format, the type line refers to the full sample name
+                writeType(writer, nameBuffer, openMetrics ? null : "_total", "counter");
+                writeSample(writer, nameBuffer, "_total", plainLabels, ((Meter) metric).getCount());
+            }
+        }
+
+        if (openMetrics) {
+            writer.write("# EOF\n");
+        }
+    }
+
+    /**
+     * Reserves the sample names derived from a metric name, unless any of them has already been taken.
+     */
+    private static boolean reserveNames(NameSet writtenNames, String originalName, NameBuffer nameBuffer, String[] suffixes) {
+        for (String suffix : suffixes) {
+            if (writtenNames.contains(nameBuffer, suffix)) {
+                return false;
+            }
+        }
+        for (String suffix : suffixes) {
+            writtenNames.add(originalName, suffix, nameBuffer);
+        }
+        return true;
+    }
+
+    private void writeSummary(Writer writer, NameBuffer nameBuffer, Snapshot snapshot, long count, double factor) throws IOException {
+        writeType(writer, nameBuffer, null, "summary");
+        for (int i = 0; i < QUANTILES.length; i++) {
+            writeSample(writer, nameBuffer, null, quantileLabels[i], snapshot.getValue(QUANTILES[i]) * factor);
+        }
+        writeSample(writer, nameBuffer, "_count", plainLabels, count);
+    }
+
+    private void writeType(Writer writer, NameBuffer nameBuffer, String suffix, String type) throws IOException {
+        writer.write("# TYPE ");
+        nameBuffer.writeTo(writer);
+        if (suffix != null) {
+            writer.write(suffix);
+        }
+        writer.write(' ');
+        writer.write(type);
+        writer.write('\n');
+    }
+
+    private void writeSample(Writer writer, NameBuffer nameBuffer, String suffix, String labels, long value) throws IOException {
+        nameBuffer.writeTo(writer);
+        if (suffix != null) {
+            writer.write(suffix);
+        }
+        writer.write(labels);
+        writer.write(' ');
+        writer.write(Long.toString(value));
+        writer.write('\n');
+    }
+
+    private void writeSample(Writer writer, NameBuffer nameBuffer, String suffix, String labels, double value) throws IOException {
+        nameBuffer.writeTo(writer);
+        if (suffix != null) {
+            writer.write(suffix);
+        }
+        writer.write(labels);
+        writer.write(' ');
+        writer.write(formatDouble(value));
+        writer.write('\n');
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            return "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String sanitizeLabelName(String labelName) {
+        NameBuffer nameBuffer = new NameBuffer();
+        nameBuffer.set(labelName);
+        return nameBuffer.toString().replace(':', '_');
+    }
+
+    private static String escapeLabelValue(String labelValue) {
+        if (labelValue == null) {
+            return "";
+        }
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * A reusable buffer holding a sanitized metric name, which is written to the output without creating a string.
+     */
+    private static class NameBuffer {
+        private char[] chars = new char[128];
+        private int length;
+
+        private void set(String name) {
+            int requiredLength = name.length() + 1;
+            if (chars.length < requiredLength) {
+                chars = new char[Math.max(requiredLength, chars.length * 2)];
+            }
+
+            length = 0;
+            if (needsPrefix(name)) {
+                chars[length++] = '_';
+            }
+
+            for (int i = 0; i < name.length(); i++) {
+                chars[length++] = sanitize(name.charAt(i));
+            }
+        }
+
+        /**
+         * Determines whether a given name followed by a suffix sanitizes to the current content of this buffer followed
+         * by another suffix, without building a string.
+         */
+        private boolean isSanitizedFrom(String name, String nameSuffix, String bufferSuffix) {
+            int offset = needsPrefix(name) ? 1 : 0;
+            int totalLength = offset + name.length() + nameSuffix.length();
+            if (totalLength != length + bufferSuffix.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < totalLength; i++) {
+                char c;
+                if (i < offset) {
+                    c = '_';
+                } else if (i < offset + name.length()) {
+                    c = sanitize(name.charAt(i - offset));
+                } else {
+                    c = nameSuffix.charAt(i - offset - name.length());
+                }
+                if (c != (i < length ? chars[i] : bufferSuffix.charAt(i - length))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int computeHash(String suffix) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            for (int i = 0; i < suffix.length(); i++) {
+                hash = 31 * hash + suffix.charAt(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private void writeTo(Writer writer) throws IOException {
+            writer.write(chars, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+
+        private static boolean needsPrefix(String name) {
+            return name.isEmpty() || (name.charAt(0) >= '0' && name.charAt(0) <= '9');
+        }
+
+        private static char sanitize(char c) {
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == ':';
+            return valid ? c : '_';
+        }
+    }
+
+    /**
+     * An open-addressing set of sanitized sample names. It holds references to the original names and the suffixes,
+     * rather than sanitized copies, and compares them against a {@link NameBuffer} by sanitizing them on the fly; thus,
+     * adding a name does not allocate anything, except for an occasional resize of the table.
+     */
+    private static class NameSet {
+        private String[] originalNames = new String[1024];
+        private String[] suffixes = new String[1024];
+        private int[] hashes = new int[1024];
+        private int size;
+
+        private boolean contains(NameBuffer nameBuffer, String suffix) {
+            int hash = nameBuffer.computeHash(suffix);
+            int mask = originalNames.length - 1;
+            for (int i = hash & mask; originalNames[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && nameBuffer.isSanitizedFrom(originalNames[i], suffixes[i], suffix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds a name, which must not be contained in this set yet.
+         */
+        private void add(String originalName, String suffix, NameBuffer nameBuffer) {
+            int hash = nameBuffer.computeHash(suffix);
+            int mask = originalNames.length - 1;
+            int i = hash & mask;
+            while (originalNames[i] != null) {
+                i = (i + 1) & mask;
+            }
+            originalNames[i] = originalName;
+            suffixes[i] = suffix;
+            hashes[i] = hash;
+            if (++size * 2 > originalNames.length) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            String[] oldOriginalNames = originalNames;
+            String[] oldSuffixes = suffixes;
+            int[] oldHashes = hashes;
+            originalNames = new String[oldOriginalNames.length * 2];
+            suffixes = new String[oldSuffixes.length * 2];
+            hashes = new int[oldHashes.length * 2];
+
+            int mask = originalNames.length - 1;
+            for (int i = 0; i < oldOriginalNames.length; i++) {
+                if (oldOriginalNames[i] == null) {
+                    continue;
+                }
+                int j = oldHashes[i] & mask;
+                while (originalNames[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                originalNames[j] = oldOriginalNames[i];
+                suffixes[j] = oldSuffixes[i];
+                hashes[j] = oldHashes[i];
+            }
+        }
+    }
+}
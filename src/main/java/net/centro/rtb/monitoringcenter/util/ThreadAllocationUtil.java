@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Centro, Inc.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package net.centro.rtb.monitoringcenter.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class measures the heap memory allocated by the current thread, using the HotSpot-specific
+ * <tt>com.sun.management.ThreadMXBean</tt>. On JVMs lacking that interface, or with the thread allocated memory
+ * measurement disabled, the measurement is not supported and -1 is returned.
+ *
+ * <p>
+ *     Memory allocated by other threads on behalf of the current one (e.g., by the workers of a fork-join pool, which
+ *     the current thread waits for) is invisible to the ThreadMXBean; such memory can be attributed to the current
+ *     thread via {@link #addDelegatedAllocatedBytes(long)}, and is then included in {@link #getAllocatedBytes()}.
+ * </p>
+ */
+public class ThreadAllocationUtil {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadAllocationUtil.class);
+
+    private static final com.sun.management.ThreadMXBean threadMXBean = lookUpThreadMXBean();
+
+    private static final ThreadLocal<long[]> delegatedAllocatedBytes = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private ThreadAllocationUtil() {
+    }
+
+    /**
+     * Determines whether the allocated memory of threads can be measured on this JVM.
+     *
+     * @return <tt>true</tt> if the measurement is supported, <tt>false</tt> otherwise.
+     */
+    public static boolean isSupported() {
+        return threadMXBean != null;
+    }
+
+    /**
+     * Retrieves the total number of bytes allocated by the current thread since its start, including the bytes
+     * attributed to it via {@link #addDelegatedAllocatedBytes(long)}. Only the difference between two readings is
+     * meaningful.
+     *
+     * @return the number of allocated bytes or -1 if the measurement is not supported.
+     */
+    public static long getAllocatedBytes() {
+        if (threadMXBean == null) {
+            return -1;
+        }
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) + delegatedAllocatedBytes.get()[0];
+    }
+
+    /**
+     * Attributes bytes allocated by other threads on behalf of the current thread to the current thread.
+     *
+     * @param allocatedBytes the number of bytes allocated on behalf of the current thread.
+     */
+    public static void addDelegatedAllocatedBytes(long allocatedBytes) {
+        if (threadMXBean != null) {
+            delegatedAllocatedBytes.get()[0] += allocatedBytes;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean lookUpThreadMXBean() {
+        try {
+            java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotSpotThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (hotSpotThreadMXBean.isThreadAllocatedMemorySupported() && hotSpotThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                    return hotSpotThreadMXBean;
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            logger.debug("Thread allocated memory measurement is not available", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+package net.centro.rtb.monitoringcenter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Supplier;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+public class MetricStreamBroadcasterTest {
+    private static final ObjectMapper OBJECT_MAPPER = MonitoringCenterServlet.createObjectMapper(new JsonFactory());
+
+    @Test
+    public void streamDeltas() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        Counter requestCounter = metricRegistry.counter("requests");
+        Counter errorCounter = metricRegistry.counter("errors");
+        metricRegistry.counter("other");
+
+        final AtomicInteger sampleCount = new AtomicInteger();
+        MetricStreamBroadcaster broadcaster = new MetricStreamBroadcaster(OBJECT_MAPPER, new Supplier<RegistrySnapshot>() {
+            @Override
+            public RegistrySnapshot get() {
+                sampleCount.incrementAndGet();
+                return RegistrySnapshot.collect(metricRegistry);
+            }
+        }, new Counter());
+
+        EventOutputStream fastStream = new EventOutputStream();
+        EventOutputStream slowStream = new EventOutputStream();
+        AsyncContext fastContext = mockAsyncContext(fastStream);
+        broadcaster.subscribe(fastContext, CompiledMetricFilter.compile(new String[] {"requests", "errors"}), 1);
+        broadcaster.subscribe(mockAsyncContext(slowStream), CompiledMetricFilter.compile(new String[] {"requests"}), 2);
+        Assert.assertEquals(2, broadcaster.getSubscriberCount());
+
+        // The first event carries all selected metrics
+        broadcaster.tick();
+        List<JsonNode> fastEvents = fastStream.getEvents();
+        Assert.assertEquals(1, fastEvents.size());
+        Assert.assertEquals(2, fastEvents.get(0).get("metrics").size());
+        Assert.assertEquals(0, fastEvents.get(0).get("metrics").get("requests").get("count").asInt());
+        Assert.assertEquals(1, slowStream.getEvents().size());
+        Assert.assertEquals(1, slowStream.getEvents().get(0).get("metrics").size());
+
+        // Then, only the changes
+        requestCounter.inc(5);
+        broadcaster.tick();
+        fastEvents = fastStream.getEvents();
+        Assert.assertEquals(2, fastEvents.size());
+        Assert.assertEquals(1, fastEvents.get(1).get("metrics").size());
+        Assert.assertEquals(5, fastEvents.get(1).get("metrics").get("requests").get("count").asInt());
+        Assert.assertEquals(1, slowStream.getEvents().size());
+
+        // Nothing changed: a heartbeat keeps the connection alive
+        broadcaster.tick();
+        Assert.assertEquals(2, fastStream.getEvents().size());
+        Assert.assertTrue(fastStream.toString().endsWith(":\n\n"));
+        List<JsonNode> slowEvents = slowStream.getEvents();
+        Assert.assertEquals(2, slowEvents.size());
+        Assert.assertEquals(5, slowEvents.get(1).get("metrics").get("requests").get("count").asInt());
+
+        // Removed metrics are sent as null
+        metricRegistry.remove("errors");
+        broadcaster.tick();
+        fastEvents = fastStream.getEvents();
+        Assert.assertEquals(3, fastEvents.size());
+        Assert.assertTrue(fastEvents.get(2).get("metrics").get("errors").isNull());
+
+        // Subscribers share a single sample per tick
+        Assert.assertEquals(4, sampleCount.get());
+
+        broadcaster.shutdown();
+        verify(fastContext).complete();
+        Assert.assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    public void dropFailingSubscriber() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("requests");
+
+        final MetricStreamBroadcaster broadcaster = new MetricStreamBroadcaster(OBJECT_MAPPER, new Supplier<RegistrySnapshot>() {
+            @Override
+            public RegistrySnapshot get() {
+                return RegistrySnapshot.collect(metricRegistry);
+            }
+        }, new Counter());
+
+        // The write listener is set before the subscriber is published to the sampling loop
+        final AtomicInteger subscriberCountOnSetWriteListener = new AtomicInteger(-1);
+        EventOutputStream failingStream = new EventOutputStream() {
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                subscriberCountOnSetWriteListener.set(broadcaster.getSubscriberCount());
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                throw new IllegalStateException("Response already committed");
+            }
+        };
+        EventOutputStream healthyStream = new EventOutputStream();
+        AsyncContext failingContext = mockAsyncContext(failingStream);
+        broadcaster.subscribe(failingContext, CompiledMetricFilter.compile(null), 1);
+        broadcaster.subscribe(mockAsyncContext(healthyStream), CompiledMetricFilter.compile(null), 1);
+        Assert.assertEquals(0, subscriberCountOnSetWriteListener.get());
+
+        broadcaster.tick();
+
+        verify(failingContext).complete();
+        Assert.assertEquals(1, broadcaster.getSubscriberCount());
+        Assert.assertEquals(1, healthyStream.getEvents().size());
+
+        broadcaster.shutdown();
+    }
+
+    private static AsyncContext mockAsyncContext(EventOutputStream outputStream) throws IOException {
+        ServletResponse response = mock(ServletResponse.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(asyncContext.getResponse()).thenReturn(response);
+        return asyncContext;
+    }
+
+    private static class EventOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            byteArrayOutputStream.write(b);
+        }
+
+        private List<JsonNode> getEvents() throws IOException {
+            List<JsonNode> events = new ArrayList<>();
+            for (String line : toString().split("\n")) {
+                if (line.startsWith("data: ")) {
+                    events.add(OBJECT_MAPPER.readTree(line.substring("data: ".length())));
+                }
+            }
+            return events;
+        }
+
+        @Override
+        public String toString() {
+            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.centro.rtb.monitoringcenter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import net.centro.rtb.monitoringcenter.config.Configurator;
+import net.centro.rtb.monitoringcenter.config.MonitoringCenterConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+@RunWith(SeparateClassloaderTestRunner.class)
+public class MonitoringCenterMetricsTest {
+    @After
+    public void tearDown() {
+        MonitoringCenter.shutdown();
+    }
+
+    @Test
+    public void selfInstrumentation() throws Exception {
+        final Counter componentCounter = new Counter();
+        MonitoringCenter.registerInternalMetricSet("component", new MetricSet() {
+            @Override
+            public Map<String, Metric> getMetrics() {
+                return Collections.<String, Metric>singletonMap("testCounter", componentCounter);
+            }
+        });
+
+        MonitoringCenterConfig monitoringCenterConfig = Configurator.noConfigFile()
+                .applicationName("applicationName")
+                .enableSystemMetrics(true)
+                .enableMonitoringCenterMetrics(true)
+                .build();
+        MonitoringCenter.configure(monitoringCenterConfig);
+
+        MonitoringCenter.getRegistrySnapshot();
+
+        SortedMap<String, Metric> metricsByNames = MonitoringCenter.getMetricsByNames(false, new String[] {"monitoringCenter.*"});
+        Assert.assertSame(componentCounter, metricsByNames.get("monitoringCenter.component.testCounter"));
+        Assert.assertEquals(1, ((Timer) metricsByNames.get("monitoringCenter.snapshots.collectionTimer")).getCount());
+        Assert.assertTrue(metricsByNames.containsKey("monitoringCenter.snapshots.gaugeEvaluationTimer"));
+
+        Gauge systemSizeGauge = (Gauge) metricsByNames.get("monitoringCenter.registry.system.size");
+        Assert.assertEquals(MonitoringCenter.getMetricsByNames(false, new String[] {"system.*"}).size(), systemSizeGauge.getValue());
+    }
+}
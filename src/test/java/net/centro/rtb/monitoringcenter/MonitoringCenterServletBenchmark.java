@@ -0,0 +1,190 @@
+package net.centro.rtb.monitoringcenter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.Lists;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encoding and decoding costs of the JSON, Smile, and CBOR formats of the metrics endpoint on a registry of
+ * 100k metrics, and the latency of streaming a registry snapshot versus scanning the live registry once per metric type
+ * at 100k and 500k metrics. This
+ * benchmark only runs if the "benchmarks" Maven profile is active (mvn test -Pbenchmarks).
+ */
+public class MonitoringCenterServletBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(MonitoringCenterServletBenchmark.class);
+
+    private static final int METRIC_COUNT = 100000;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void encode100kMetrics() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("monitoringCenter.benchmarks"));
+
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(createRegistry(METRIC_COUNT));
+
+        Result jsonResult = measure("JSON", new JsonFactory(), registrySnapshot);
+        Result smileResult = measure("Smile", new SmileFactory(), registrySnapshot);
+        Result cborResult = measure("CBOR", new CBORFactory(), registrySnapshot);
+
+        Assert.assertTrue(smileResult.sizeInBytes < jsonResult.sizeInBytes);
+        Assert.assertTrue(cborResult.sizeInBytes < jsonResult.sizeInBytes);
+    }
+
+    @Test
+    public void scrapeLatency() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("monitoringCenter.benchmarks"));
+
+        ObjectMapper objectMapper = MonitoringCenterServlet.createObjectMapper(new JsonFactory());
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(new String[] {"bidder.*"});
+        for (int metricCount : new int[] {100000, 500000}) {
+            MetricRegistry metricRegistry = createRegistry(metricCount);
+
+            // A single buffer is reused, so that it only grows during the warm-up
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            long scanTimeInNanos = 0;
+            long collectionTimeInNanos = 0;
+            long streamingTimeInNanos = 0;
+            for (int i = 0; i < ITERATIONS * 2; i++) {
+                // Before: a scan of the live registry per metric type, each into a sorted map, then the map is serialized
+                outputStream.reset();
+                long startTime = System.nanoTime();
+                Map<String, Object> responseMap = new LinkedHashMap<>();
+                responseMap.put("gauges", MonitoringCenter.filterMetricsByNames(metricRegistry.getMetrics(), false, nameFilter, Gauge.class));
+                responseMap.put("counters", MonitoringCenter.filterMetricsByNames(metricRegistry.getMetrics(), false, nameFilter, Counter.class));
+                responseMap.put("histograms", MonitoringCenter.filterMetricsByNames(metricRegistry.getMetrics(), false, nameFilter, Histogram.class));
+                responseMap.put("meters", MonitoringCenter.filterMetricsByNames(metricRegistry.getMetrics(), false, nameFilter, Meter.class));
+                responseMap.put("timers", MonitoringCenter.filterMetricsByNames(metricRegistry.getMetrics(), false, nameFilter, Timer.class));
+                objectMapper.writeValue(outputStream, responseMap);
+                long iterationScanTimeInNanos = System.nanoTime() - startTime;
+                JsonNode scanResponse = i == 0 ? objectMapper.readTree(outputStream.toByteArray()) : null;
+
+                // After: the registry is frozen once, then the snapshot is streamed
+                outputStream.reset();
+                startTime = System.nanoTime();
+                RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+                long iterationCollectionTimeInNanos = System.nanoTime() - startTime;
+                try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                    MonitoringCenterServlet.writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, null);
+                }
+                long iterationStreamingTimeInNanos = System.nanoTime() - startTime - iterationCollectionTimeInNanos;
+
+                // The rates of the live metrics keep changing, so only the selected metrics are compared
+                if (scanResponse != null) {
+                    JsonNode streamingResponse = objectMapper.readTree(outputStream.toByteArray());
+                    for (String sectionName : new String[] {"gauges", "counters", "histograms", "meters", "timers"}) {
+                        Assert.assertEquals(Lists.newArrayList(scanResponse.get(sectionName).fieldNames()),
+                                Lists.newArrayList(streamingResponse.get(sectionName).fieldNames()));
+                    }
+                }
+
+                // The first half of the iterations is the warm-up
+                if (i >= ITERATIONS) {
+                    scanTimeInNanos += iterationScanTimeInNanos;
+                    collectionTimeInNanos += iterationCollectionTimeInNanos;
+                    streamingTimeInNanos += iterationStreamingTimeInNanos;
+                }
+            }
+
+            logger.info("{} metrics: scanned and serialized in {} ms, collected in {} ms and streamed in {} ms", metricCount,
+                    TimeUnit.NANOSECONDS.toMillis(scanTimeInNanos / ITERATIONS), TimeUnit.NANOSECONDS.toMillis(collectionTimeInNanos / ITERATIONS),
+                    TimeUnit.NANOSECONDS.toMillis(streamingTimeInNanos / ITERATIONS));
+        }
+    }
+
+    private static MetricRegistry createRegistry(int metricCount) {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 0; i < metricCount; i++) {
+            String namespace = "bidder.endpoint" + (i % 100) + ".metric" + i;
+            switch (i % 4) {
+                case 0:
+                    Timer timer = metricRegistry.timer(namespace + "Timer");
+                    for (int j = 0; j < 100; j++) {
+                        timer.update(j, TimeUnit.MILLISECONDS);
+                    }
+                    break;
+                case 1:
+                    Histogram histogram = metricRegistry.histogram(namespace + "Histogram");
+                    for (int j = 0; j < 100; j++) {
+                        histogram.update(j);
+                    }
+                    break;
+                case 2:
+                    Counter counter = metricRegistry.counter(namespace + "Counter");
+                    counter.inc(i);
+                    break;
+                default:
+                    final double value = i;
+                    metricRegistry.register(namespace + "Gauge", new Gauge<Double>() {
+                        @Override
+                        public Double getValue() {
+                            return value;
+                        }
+                    });
+            }
+        }
+        return metricRegistry;
+    }
+
+    private static Result measure(String formatName, JsonFactory jsonFactory, RegistrySnapshot registrySnapshot) throws Exception {
+        ObjectMapper objectMapper = MonitoringCenterServlet.createObjectMapper(jsonFactory);
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(null);
+
+        // The metrics are encoded the way the endpoint streams them, into a single buffer, which only grows during the warm-up
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Result result = new Result();
+        for (int i = 0; i < ITERATIONS * 2; i++) {
+            outputStream.reset();
+
+            long startTime = System.nanoTime();
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                MonitoringCenterServlet.writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, null);
+            }
+            long encodingTimeInNanos = System.nanoTime() - startTime;
+
+            byte[] payload = outputStream.toByteArray();
+            startTime = System.nanoTime();
+            objectMapper.readTree(payload);
+            long decodingTimeInNanos = System.nanoTime() - startTime;
+
+            // The first half of the iterations is the warm-up
+            if (i >= ITERATIONS) {
+                result.encodingTimeInNanos += encodingTimeInNanos;
+                result.decodingTimeInNanos += decodingTimeInNanos;
+            }
+            result.sizeInBytes = payload.length;
+        }
+
+        logger.info("{}: {} bytes, encoded in {} ms, decoded in {} ms", formatName, result.sizeInBytes,
+                TimeUnit.NANOSECONDS.toMillis(result.encodingTimeInNanos / ITERATIONS),
+                TimeUnit.NANOSECONDS.toMillis(result.decodingTimeInNanos / ITERATIONS));
+        return result;
+    }
+
+    private static class Result {
+        private long sizeInBytes;
+        private long encodingTimeInNanos;
+        private long decodingTimeInNanos;
+    }
+}
@@ -1,7 +1,24 @@
 package net.centro.rtb.monitoringcenter;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.io.ByteStreams;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
+import net.centro.rtb.monitoringcenter.util.MetricFieldProjection;
 import org.junit.*;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 
 import javax.servlet.*;
@@ -9,7 +26,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.*;
-
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(SeparateClassloaderTestRunner.class)
@@ -189,4 +214,368 @@ public class MonitoringCenterServletTest {
 
         Assert.assertEquals("null", outputStream.getBuffer().toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void gzip() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        ServletContext servletContext = mock(ServletContext.class);
+
+        when(servletConfig.getServletContext()).thenReturn(servletContext);
+        when(servletConfig.getServletContext().getMajorVersion()).thenReturn(1);
+        when(servletConfig.getServletContext().getMinorVersion()).thenReturn(2);
+        when(servletConfig.getServletContext().getServerInfo()).thenReturn("Mock");
+
+        monitoringCenterServlet.init(servletConfig);
+
+        CacheOutputStream outputStream = new CacheOutputStream();
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        when(request.getPathInfo()).thenReturn("/metrics");
+        when(request.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+        when(request.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=0.8");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.getBuffer().toByteArray()))) {
+            Assert.assertEquals("{\"gauges\":{},\"counters\":{},\"histograms\":{},\"meters\":{},\"timers\":{}}",
+                    new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        }
+
+        // gzip is not used if the client refuses it
+        outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals("{\"gauges\":{},\"counters\":{},\"histograms\":{},\"meters\":{},\"timers\":{}}", outputStream.getBuffer().toString());
+    }
+
+    @Test
+    public void conditionalGet() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        ServletContext servletContext = mock(ServletContext.class);
+
+        when(servletConfig.getServletContext()).thenReturn(servletContext);
+        when(servletConfig.getServletContext().getMajorVersion()).thenReturn(1);
+        when(servletConfig.getServletContext().getMinorVersion()).thenReturn(2);
+        when(servletConfig.getServletContext().getServerInfo()).thenReturn("Mock");
+
+        monitoringCenterServlet.init(servletConfig);
+
+        CacheOutputStream outputStream = new CacheOutputStream();
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        when(request.getPathInfo()).thenReturn("/serverInfo");
+        when(request.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        ArgumentCaptor<String> etagCaptor = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq("ETag"), etagCaptor.capture());
+        String etag = etagCaptor.getValue();
+        Assert.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        Assert.assertEquals("{\"nameAndVersion\":\"Mock\",\"servletSpecVersion\":\"1.2\"}", outputStream.getBuffer().toString());
+
+        // A matching ETag results in 304 with no body
+        outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(request.getHeader("If-None-Match")).thenReturn("\"other\", W/" + etag);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Assert.assertEquals(0, outputStream.getBuffer().size());
+
+        // The gzipped representation has its own ETag
+        outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response).setHeader("Content-Encoding", "gzip");
+        Assert.assertTrue(outputStream.getBuffer().size() > 0);
+    }
+
+    @Test
+    public void binaryFormats() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        ServletContext servletContext = mock(ServletContext.class);
+
+        when(servletConfig.getServletContext()).thenReturn(servletContext);
+        when(servletConfig.getServletContext().getMajorVersion()).thenReturn(1);
+        when(servletConfig.getServletContext().getMinorVersion()).thenReturn(2);
+        when(servletConfig.getServletContext().getServerInfo()).thenReturn("Mock");
+
+        monitoringCenterServlet.init(servletConfig);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getPathInfo()).thenReturn("/metrics");
+        when(request.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+
+        JsonNode expectedTree = new ObjectMapper().readTree("{\"gauges\":{},\"counters\":{},\"histograms\":{},\"meters\":{},\"timers\":{}}");
+
+        CacheOutputStream outputStream = new CacheOutputStream();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("format")).thenReturn("smile");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response).setContentType("application/x-jackson-smile");
+        Assert.assertEquals(expectedTree, new ObjectMapper(new SmileFactory()).readTree(outputStream.getBuffer().toByteArray()));
+
+        outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(request.getParameter("format")).thenReturn("cbor");
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response).setContentType("application/cbor");
+        Assert.assertEquals(expectedTree, new ObjectMapper(new CBORFactory()).readTree(outputStream.getBuffer().toByteArray()));
+    }
+
+    @Test
+    public void streamMetrics() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("app.counter").inc(3);
+        metricRegistry.counter("other.counter").inc();
+        metricRegistry.histogram("app.histogram").update(42);
+        metricRegistry.meter("app.meter").mark();
+        metricRegistry.timer("app.timer").update(5, TimeUnit.MILLISECONDS);
+        metricRegistry.register("app.gauge", new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return "value";
+            }
+        });
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+
+        ObjectMapper objectMapper = MonitoringCenterServlet.createObjectMapper(new JsonFactory());
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(new String[] {"app."});
+
+        Map<String, Object> expectedResponseMap = new LinkedHashMap<>();
+        expectedResponseMap.put("gauges", prefixNames(registrySnapshot.getGauges()));
+        expectedResponseMap.put("counters", prefixNames(registrySnapshot.getCounters(nameFilter)));
+        expectedResponseMap.put("histograms", prefixNames(registrySnapshot.getHistograms()));
+        expectedResponseMap.put("meters", prefixNames(registrySnapshot.getMeters()));
+        expectedResponseMap.put("timers", prefixNames(registrySnapshot.getTimers()));
+
+        // The streamed output is identical to the serialized map, pretty printed or not
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            MonitoringCenterServlet.writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, "prefix.");
+        }
+        Assert.assertEquals(objectMapper.writeValueAsString(expectedResponseMap), writer.toString());
+
+        writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.useDefaultPrettyPrinter();
+            MonitoringCenterServlet.writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, "prefix.");
+        }
+        Assert.assertEquals(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(expectedResponseMap), writer.toString());
+    }
+
+    @Test
+    public void paginateMetrics() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("a1").inc();
+        metricRegistry.timer("a2").update(1, TimeUnit.MILLISECONDS);
+        metricRegistry.counter("a3").inc(3);
+        metricRegistry.counter("b1").inc();
+        metricRegistry.histogram("a4").update(4);
+        metricRegistry.meter("a5").mark();
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+
+        ObjectMapper objectMapper = MonitoringCenterServlet.createObjectMapper(new JsonFactory());
+        CompiledMetricFilter nameFilter = CompiledMetricFilter.compile(new String[] {"a"});
+        MetricFieldProjection fieldProjection = MetricFieldProjection.parse("count", TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+
+        Assert.assertEquals("{\"gauges\":{},\"counters\":{\"a1\":{\"count\":1}},\"histograms\":{},\"meters\":{},\"timers\":{\"a2\":{\"count\":1}},\"nextCursor\":\"a2\"}",
+                writeMetricPage(objectMapper, registrySnapshot, nameFilter, fieldProjection, null, 2));
+        Assert.assertEquals("{\"gauges\":{},\"counters\":{\"a3\":{\"count\":3}},\"histograms\":{\"a4\":{\"count\":1}},\"meters\":{},\"timers\":{},\"nextCursor\":\"a4\"}",
+                writeMetricPage(objectMapper, registrySnapshot, nameFilter, fieldProjection, "a2", 2));
+        Assert.assertEquals("{\"gauges\":{},\"counters\":{},\"histograms\":{},\"meters\":{\"a5\":{\"count\":1}},\"timers\":{}}",
+                writeMetricPage(objectMapper, registrySnapshot, nameFilter, fieldProjection, "a4", 2));
+
+        // An exactly full last page has no next cursor
+        Assert.assertFalse(writeMetricPage(objectMapper, registrySnapshot, nameFilter, fieldProjection, "a3", 2).contains("nextCursor"));
+    }
+
+    @Test
+    public void scrapeStormProtection() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        ServletContext servletContext = mock(ServletContext.class);
+
+        when(servletConfig.getServletContext()).thenReturn(servletContext);
+        when(servletConfig.getServletContext().getServerInfo()).thenReturn("Mock");
+        when(servletConfig.getInitParameter("maxConcurrentRequests")).thenReturn("1");
+        when(servletConfig.getInitParameter("responseCacheMaxAgeInMillis")).thenReturn("60000");
+
+        monitoringCenterServlet.init(servletConfig);
+
+        // The first request holds the only permit until its response is written out
+        final CountDownLatch writeLatch = new CountDownLatch(1);
+        final CacheOutputStream blockedOutputStream = new CacheOutputStream();
+        final HttpServletRequest blockedRequest = mock(HttpServletRequest.class);
+        final HttpServletResponse blockedResponse = mock(HttpServletResponse.class);
+        when(blockedRequest.getPathInfo()).thenReturn("/threadDump");
+        when(blockedRequest.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+        final CountDownLatch renderedLatch = new CountDownLatch(1);
+        when(blockedResponse.getOutputStream()).thenAnswer(new Answer<ServletOutputStream>() {
+            @Override
+            public ServletOutputStream answer(InvocationOnMock invocation) throws Throwable {
+                renderedLatch.countDown();
+                writeLatch.await(5, TimeUnit.SECONDS);
+                return blockedOutputStream;
+            }
+        });
+
+        Thread blockedThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    monitoringCenterServlet.doGet(blockedRequest, blockedResponse);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        blockedThread.start();
+        Assert.assertTrue(renderedLatch.await(5, TimeUnit.SECONDS));
+
+        // With nothing cached for it, a concurrent request is rejected
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/metrics");
+        when(request.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+
+        monitoringCenterServlet.doGet(request, response);
+
+        verify(response).sendError(429);
+        verify(response).setHeader("Retry-After", "1");
+        Assert.assertEquals(1, getCount(monitoringCenterServlet, "rejectedRequestsCounter"));
+
+        // Health checks are never limited
+        CacheOutputStream healthChecksOutputStream = new CacheOutputStream();
+        HttpServletRequest healthChecksRequest = mock(HttpServletRequest.class);
+        HttpServletResponse healthChecksResponse = mock(HttpServletResponse.class);
+        when(healthChecksRequest.getPathInfo()).thenReturn("/healthChecks");
+        when(healthChecksRequest.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+        when(healthChecksResponse.getOutputStream()).thenReturn(healthChecksOutputStream);
+
+        monitoringCenterServlet.doGet(healthChecksRequest, healthChecksResponse);
+
+        Assert.assertEquals("{}", healthChecksOutputStream.getBuffer().toString());
+        Assert.assertEquals(1, getCount(monitoringCenterServlet, "rejectedRequestsCounter"));
+
+        writeLatch.countDown();
+        blockedThread.join(5000);
+        String threadDump = blockedOutputStream.getBuffer().toString();
+        Assert.assertFalse(threadDump.isEmpty());
+
+        // The thread dump is now served from the cache
+        CacheOutputStream outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+
+        monitoringCenterServlet.doGet(blockedRequest, response);
+
+        Assert.assertEquals(threadDump, outputStream.getBuffer().toString());
+        Assert.assertEquals(1, getCount(monitoringCenterServlet, "servedFromCacheCounter"));
+
+        // Distinct query params are cached separately
+        outputStream = new CacheOutputStream();
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+        when(request.getParameter("prettyPrint")).thenReturn("true");
+        when(request.getParameterValues("prettyPrint")).thenReturn(new String[] {"true"});
+
+        monitoringCenterServlet.doGet(request, response);
+
+        Assert.assertTrue(outputStream.getBuffer().toString().contains("\n"));
+        Assert.assertEquals(1, getCount(monitoringCenterServlet, "servedFromCacheCounter"));
+    }
+
+    @Test
+    public void responseCacheMaxBodySize() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        ServletContext servletContext = mock(ServletContext.class);
+
+        when(servletConfig.getServletContext()).thenReturn(servletContext);
+        when(servletConfig.getServletContext().getServerInfo()).thenReturn("Mock");
+        when(servletConfig.getInitParameter("responseCacheMaxAgeInMillis")).thenReturn("60000");
+        when(servletConfig.getInitParameter("responseCacheMaxBodySizeInBytes")).thenReturn("16");
+
+        monitoringCenterServlet.init(servletConfig);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getPathInfo()).thenReturn("/threadDump");
+        when(request.getHeader("Authorization")).thenReturn("BASIC bW9uaXRvcmluZ0NlbnRlcjpkM2ZhVWx0flA0U3N3MHJE");
+
+        // Bodies over the max size are streamed through in full, and are not cached
+        for (int i = 0; i < 2; i++) {
+            CacheOutputStream outputStream = new CacheOutputStream();
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            when(response.getOutputStream()).thenReturn(outputStream);
+
+            monitoringCenterServlet.doGet(request, response);
+
+            Assert.assertTrue(outputStream.getBuffer().size() > 16);
+        }
+        Assert.assertEquals(0, getCount(monitoringCenterServlet, "servedFromCacheCounter"));
+    }
+
+    @Test
+    public void parseRange() throws Exception {
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), MonitoringCenterServlet.parseRangeInMillis("30"));
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(30), MonitoringCenterServlet.parseRangeInMillis("30s"));
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(10), MonitoringCenterServlet.parseRangeInMillis("10m"));
+        Assert.assertEquals(TimeUnit.HOURS.toMillis(1), MonitoringCenterServlet.parseRangeInMillis("1H"));
+        Assert.assertEquals(TimeUnit.DAYS.toMillis(2), MonitoringCenterServlet.parseRangeInMillis("2d"));
+
+        for (String invalidRange : new String[] {"10x", "m", "-5m", "ten"}) {
+            try {
+                MonitoringCenterServlet.parseRangeInMillis(invalidRange);
+                Assert.fail(invalidRange + " must be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static long getCount(MonitoringCenterServlet monitoringCenterServlet, String counterName) {
+        return ((Counter) monitoringCenterServlet.getServletMetrics().get(counterName)).getCount();
+    }
+
+    private static String writeMetricPage(ObjectMapper objectMapper, RegistrySnapshot registrySnapshot, CompiledMetricFilter nameFilter,
+                                          MetricFieldProjection fieldProjection, String cursor, int limit) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            MonitoringCenterServlet.writeMetrics(objectMapper, generator, registrySnapshot, nameFilter, null, fieldProjection, cursor, limit);
+        }
+        return writer.toString();
+    }
+
+    private static <T extends Metric> Map<String, T> prefixNames(Map<String, T> metricsByNames) {
+        Map<String, T> prefixedMetricsByNames = new TreeMap<>();
+        for (Map.Entry<String, T> entry : metricsByNames.entrySet()) {
+            prefixedMetricsByNames.put("prefix." + entry.getKey(), entry.getValue());
+        }
+        return prefixedMetricsByNames;
+    }
+}
@@ -0,0 +1,47 @@
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegistrySizeTrackerTest {
+    @Test
+    public void trackSizesByNamespaces() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("system.existingCounter");
+
+        RegistrySizeTracker registrySizeTracker = new RegistrySizeTracker(metricRegistry, "monitoringCenter.registry");
+        metricRegistry.counter("system.counter");
+        metricRegistry.timer("app.timer");
+        metricRegistry.histogram("app.sub.histogram");
+
+        Assert.assertEquals(2, registrySizeTracker.getSize("system"));
+        Assert.assertEquals(2, registrySizeTracker.getSize("app"));
+        Assert.assertEquals(2, getGaugeValue(metricRegistry, "monitoringCenter.registry.system.size"));
+        Assert.assertEquals(2, getGaugeValue(metricRegistry, "monitoringCenter.registry.app.size"));
+
+        // The size gauges are counted as well
+        Assert.assertEquals(3, getGaugeValue(metricRegistry, "monitoringCenter.registry.monitoringCenter.size"));
+
+        metricRegistry.remove("app.timer");
+        Assert.assertEquals(1, getGaugeValue(metricRegistry, "monitoringCenter.registry.app.size"));
+
+        // The gauges are registered anew once removed
+        metricRegistry.removeMatching(MetricFilter.ALL);
+        Assert.assertEquals(0, registrySizeTracker.getSize("app"));
+        metricRegistry.meter("app.meter");
+        Assert.assertEquals(1, getGaugeValue(metricRegistry, "monitoringCenter.registry.app.size"));
+
+        registrySizeTracker.close();
+        metricRegistry.counter("app.counter");
+        Assert.assertEquals(1, registrySizeTracker.getSize("app"));
+    }
+
+    private static int getGaugeValue(MetricRegistry metricRegistry, String name) {
+        Gauge gauge = metricRegistry.getGauges().get(name);
+        Assert.assertNotNull(name, gauge);
+        return (Integer) gauge.getValue();
+    }
+}
@@ -0,0 +1,157 @@
+package net.centro.rtb.monitoringcenter.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SamplingSchedulerTest {
+    @Test
+    public void coalesceTicks() throws Exception {
+        SamplingScheduler samplingScheduler = new SamplingScheduler("test-sampling");
+        final AtomicInteger fastSamples = new AtomicInteger();
+        final AtomicInteger slowSamples = new AtomicInteger();
+
+        samplingScheduler.schedule("fast", 100, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                fastSamples.incrementAndGet();
+            }
+        });
+        samplingScheduler.schedule("slow", 200, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                slowSamples.incrementAndGet();
+            }
+        });
+
+        Thread.sleep(1050);
+        samplingScheduler.shutdown();
+
+        Assert.assertTrue(fastSamples.get() >= 5);
+        Assert.assertTrue(slowSamples.get() >= 2);
+        Assert.assertTrue(slowSamples.get() < fastSamples.get());
+
+        // The slow ticks coincide with every other fast tick, so they cost no extra wakeups
+        long wakeups = ((Counter) samplingScheduler.getMetrics().get("wakeupCounter")).getCount();
+        Assert.assertTrue(wakeups <= fastSamples.get());
+        Assert.assertEquals(fastSamples.get(), ((Timer) samplingScheduler.getMetrics().get("sources.fast.sampleTimer")).getCount());
+
+        // Nothing runs after the shutdown
+        int fastSamplesAfterShutdown = fastSamples.get();
+        Thread.sleep(300);
+        Assert.assertEquals(fastSamplesAfterShutdown, fastSamples.get());
+    }
+
+    @Test
+    public void alignTicks() throws Exception {
+        SamplingScheduler samplingScheduler = new SamplingScheduler("test-sampling");
+        long intervalInNanos = TimeUnit.SECONDS.toNanos(5);
+
+        long now = System.nanoTime();
+        long nextSampleTime = samplingScheduler.computeNextSampleTime(intervalInNanos, now);
+        Assert.assertTrue(nextSampleTime - now > 0);
+        Assert.assertTrue(nextSampleTime - now <= intervalInNanos);
+
+        // Ticks of commensurate intervals coincide
+        long tenSecondTick = samplingScheduler.computeNextSampleTime(TimeUnit.SECONDS.toNanos(10), now);
+        Assert.assertEquals(0, (tenSecondTick - nextSampleTime) % intervalInNanos);
+
+        // A tick is strictly after the given time
+        Assert.assertEquals(nextSampleTime + intervalInNanos, samplingScheduler.computeNextSampleTime(intervalInNanos, nextSampleTime));
+        samplingScheduler.shutdown();
+    }
+
+    @Test
+    public void cancelWaitsForSample() throws Exception {
+        final SamplingScheduler samplingScheduler = new SamplingScheduler("test-sampling");
+        final CountDownLatch sampleStartedLatch = new CountDownLatch(1);
+        final CountDownLatch sampleReleaseLatch = new CountDownLatch(1);
+        final AtomicBoolean sampleRunning = new AtomicBoolean();
+
+        final List<String> addedMetricNames = new ArrayList<>();
+        final List<String> removedMetricNames = new ArrayList<>();
+        samplingScheduler.addListener(new DynamicMetricSet.Listener() {
+            @Override
+            public void onMetricAdded(String name, Metric metric) {
+                addedMetricNames.add(name);
+            }
+
+            @Override
+            public void onMetricRemoved(String name) {
+                removedMetricNames.add(name);
+            }
+        });
+
+        final SamplingScheduler.Registration registration = samplingScheduler.schedule("blocking", 50, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+                sampleRunning.set(true);
+                sampleStartedLatch.countDown();
+                try {
+                    sampleReleaseLatch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sampleRunning.set(false);
+            }
+        });
+        Assert.assertTrue(sampleStartedLatch.await(5, TimeUnit.SECONDS));
+
+        Thread releasingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sampleReleaseLatch.countDown();
+            }
+        });
+        releasingThread.start();
+
+        registration.cancel();
+        Assert.assertFalse(sampleRunning.get());
+        Assert.assertEquals(1, addedMetricNames.size());
+        Assert.assertEquals(addedMetricNames, removedMetricNames);
+        Assert.assertFalse(samplingScheduler.getMetrics().containsKey("sources.blocking.sampleTimer"));
+
+        // The name can be reused once cancelled, but not while scheduled
+        samplingScheduler.schedule("blocking", 1, TimeUnit.SECONDS, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        try {
+            samplingScheduler.schedule("blocking", 1, TimeUnit.SECONDS, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            Assert.fail("Source names must be unique");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        samplingScheduler.shutdown();
+        try {
+            samplingScheduler.schedule("another", 1, TimeUnit.SECONDS, new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            Assert.fail("A shut down scheduler must not accept sources");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import net.centro.rtb.monitoringcenter.util.ThreadAllocationUtil;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+
+public class ParallelMetricCollectorTest {
+    private static final int METRIC_COUNT = 5000;
+
+    @Test
+    public void collectInParallel() throws Exception {
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        MetricRegistry metricRegistry = createRegistry(threadNames);
+
+        ParallelMetricCollector parallelMetricCollector = new ParallelMetricCollector(4, 1000);
+        RegistrySnapshot parallelSnapshot = parallelMetricCollector.collect(metricRegistry);
+        Assert.assertFalse(threadNames.contains(Thread.currentThread().getName()));
+        Assert.assertTrue(threadNames.iterator().next().startsWith("ParallelMetricCollector-"));
+
+        threadNames.clear();
+        RegistrySnapshot sequentialSnapshot = RegistrySnapshot.collect(metricRegistry);
+        Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), threadNames);
+
+        Assert.assertEquals(sequentialSnapshot.size(), parallelSnapshot.size());
+        Assert.assertEquals(sequentialSnapshot.getGauges().keySet(), parallelSnapshot.getGauges().keySet());
+        Assert.assertEquals(sequentialSnapshot.getCounters().keySet(), parallelSnapshot.getCounters().keySet());
+        for (String name : sequentialSnapshot.getGauges().keySet()) {
+            Assert.assertEquals(sequentialSnapshot.getGauges().get(name).getValue(), parallelSnapshot.getGauges().get(name).getValue());
+        }
+        for (String name : sequentialSnapshot.getCounters().keySet()) {
+            Assert.assertEquals(sequentialSnapshot.getCounters().get(name).getCount(), parallelSnapshot.getCounters().get(name).getCount());
+        }
+
+        // After the shutdown, the collection falls back to the calling thread
+        parallelMetricCollector.shutdown();
+        threadNames.clear();
+        Assert.assertEquals(METRIC_COUNT, parallelMetricCollector.collect(metricRegistry).size());
+        Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), threadNames);
+    }
+
+    @Test
+    public void collectSmallRegistrySequentially() throws Exception {
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        MetricRegistry metricRegistry = createRegistry(threadNames);
+
+        ParallelMetricCollector parallelMetricCollector = new ParallelMetricCollector(4, METRIC_COUNT + 1);
+        Assert.assertEquals(METRIC_COUNT, parallelMetricCollector.collect(metricRegistry).size());
+        Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), threadNames);
+        parallelMetricCollector.shutdown();
+    }
+
+    @Test
+    public void attributeWorkerAllocationsToCallingThread() throws Exception {
+        Assume.assumeTrue(ThreadAllocationUtil.isSupported());
+
+        MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            metricRegistry.register("gauge" + i, new Gauge<byte[]>() {
+                @Override
+                public byte[] getValue() {
+                    return new byte[1024];
+                }
+            });
+        }
+
+        ParallelMetricCollector parallelMetricCollector = new ParallelMetricCollector(4, 0);
+        long allocatedBytesBefore = ThreadAllocationUtil.getAllocatedBytes();
+        parallelMetricCollector.collect(metricRegistry);
+        Assert.assertTrue(ThreadAllocationUtil.getAllocatedBytes() - allocatedBytesBefore >= METRIC_COUNT * 1024L);
+        parallelMetricCollector.shutdown();
+    }
+
+    @Test
+    public void filter() throws Exception {
+        MetricRegistry metricRegistry = createRegistry(Collections.synchronizedSet(new HashSet<String>()));
+
+        ParallelMetricCollector parallelMetricCollector = new ParallelMetricCollector(4, 0);
+        SortedMap<String, Metric> filteredMetrics = parallelMetricCollector.filter(metricRegistry.getMetrics(), new MetricFilter() {
+            @Override
+            public boolean matches(String name, Metric metric) {
+                return metric instanceof Counter && name.endsWith("7");
+            }
+        });
+
+        Assert.assertEquals(METRIC_COUNT / 2 / 10, filteredMetrics.size());
+        for (String name : filteredMetrics.keySet()) {
+            Assert.assertTrue(name.startsWith("counter") && name.endsWith("7"));
+        }
+        parallelMetricCollector.shutdown();
+    }
+
+    private static MetricRegistry createRegistry(final Set<String> threadNames) {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 0; i < METRIC_COUNT / 2; i++) {
+            final int value = i;
+            metricRegistry.register("gauge" + i, new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    threadNames.add(Thread.currentThread().getName());
+                    return value;
+                }
+            });
+            metricRegistry.counter("counter" + i).inc(i);
+        }
+        return metricRegistry;
+    }
+}
@@ -0,0 +1,185 @@
+package net.centro.rtb.monitoringcenter.metrics.snapshot;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegistrySnapshotTest {
+    @Test
+    public void collect() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Counter counter = metricRegistry.counter("counter");
+        counter.inc(5);
+        Histogram histogram = metricRegistry.histogram("histogram");
+        for (int i = 1; i <= 100; i++) {
+            histogram.update(i);
+        }
+        Timer timer = metricRegistry.timer("timer");
+        timer.update(10, TimeUnit.MILLISECONDS);
+        metricRegistry.register("failingGauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                throw new IllegalStateException("Failing gauge");
+            }
+        });
+
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+        counter.inc();
+        histogram.update(1000);
+
+        Assert.assertEquals(5, registrySnapshot.getCounters().get("counter").getCount());
+        Assert.assertEquals(100, registrySnapshot.getHistograms().get("histogram").getCount());
+
+        Snapshot originalSnapshot = metricRegistry.histogram("histogram").getSnapshot();
+        Snapshot frozenSnapshot = registrySnapshot.getHistograms().get("histogram").getSnapshot();
+        Assert.assertEquals(100, frozenSnapshot.getMax());
+        Assert.assertEquals(1, frozenSnapshot.getMin());
+        Assert.assertTrue(frozenSnapshot.get99thPercentile() < originalSnapshot.get99thPercentile() + 1);
+        Assert.assertEquals(50.0, frozenSnapshot.getMedian(), 1.0);
+
+        Assert.assertEquals(1, registrySnapshot.getTimers().get("timer").getCount());
+        Assert.assertEquals(4, registrySnapshot.size());
+
+        try {
+            registrySnapshot.getGauges().get("failingGauge").getValue();
+            Assert.fail("The frozen gauge must rethrow the exception of the original gauge");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        try {
+            registrySnapshot.getCounters().get("counter").inc();
+            Assert.fail("Frozen metrics must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void reuseWithinFreshnessWindow() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        final AtomicInteger evaluationCount = new AtomicInteger();
+        final CountDownLatch evaluationLatch = new CountDownLatch(1);
+        metricRegistry.register("slowGauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                try {
+                    evaluationLatch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return evaluationCount.incrementAndGet();
+            }
+        });
+
+        final RegistrySnapshotCollector registrySnapshotCollector = new RegistrySnapshotCollector(metricRegistry, TimeUnit.MINUTES.toMillis(1));
+
+        // Concurrent requests are coalesced onto a single collection
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<RegistrySnapshot>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(new Callable<RegistrySnapshot>() {
+                @Override
+                public RegistrySnapshot call() throws Exception {
+                    return registrySnapshotCollector.getSnapshot();
+                }
+            }));
+        }
+        Thread.sleep(100);
+        evaluationLatch.countDown();
+
+        RegistrySnapshot registrySnapshot = futures.get(0).get();
+        for (Future<RegistrySnapshot> future : futures) {
+            Assert.assertSame(registrySnapshot, future.get());
+        }
+        executorService.shutdown();
+        Assert.assertEquals(1, evaluationCount.get());
+        Assert.assertTrue(registrySnapshot.getGaugeEvaluationTimeInNanos() > 0);
+
+        // The cached snapshot is reused
+        Assert.assertSame(registrySnapshot, registrySnapshotCollector.getSnapshot());
+        Assert.assertEquals(1, evaluationCount.get());
+
+        // Registering a metric does not invalidate the cached snapshot
+        metricRegistry.counter("counter");
+        Assert.assertSame(registrySnapshot, registrySnapshotCollector.getSnapshot());
+        Assert.assertEquals(1, evaluationCount.get());
+
+        registrySnapshotCollector.invalidate();
+        RegistrySnapshot newRegistrySnapshot = registrySnapshotCollector.getSnapshot();
+        Assert.assertNotSame(registrySnapshot, newRegistrySnapshot);
+        Assert.assertTrue(newRegistrySnapshot.getCounters().containsKey("counter"));
+        Assert.assertEquals(2, evaluationCount.get());
+
+        // Only actual collections are timed
+        Assert.assertEquals(2, ((Timer) registrySnapshotCollector.getMetrics().get("collectionTimer")).getCount());
+        Assert.assertEquals(2, ((Timer) registrySnapshotCollector.getMetrics().get("gaugeEvaluationTimer")).getCount());
+
+        registrySnapshotCollector.close();
+    }
+
+    @Test
+    public void snapshotMetricRegistry() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Counter counter = metricRegistry.counter("counter");
+        counter.inc();
+
+        RegistrySnapshotCollector registrySnapshotCollector = new RegistrySnapshotCollector(metricRegistry, TimeUnit.MINUTES.toMillis(1));
+        SnapshotMetricRegistry snapshotMetricRegistry = new SnapshotMetricRegistry(metricRegistry, registrySnapshotCollector);
+
+        final List<Counter> mirroredCounters = new ArrayList<>();
+        snapshotMetricRegistry.addListener(new MetricRegistryListener.Base() {
+            @Override
+            public void onCounterAdded(String name, Counter counter) {
+                mirroredCounters.add(counter);
+            }
+        });
+
+        Assert.assertEquals(1, snapshotMetricRegistry.getCounters().get("counter").getCount());
+        Assert.assertEquals(1, mirroredCounters.size());
+        Assert.assertEquals(1, mirroredCounters.get(0).getCount());
+
+        // Values come from the cached snapshot
+        counter.inc();
+        Assert.assertEquals(1, snapshotMetricRegistry.getCounters().get("counter").getCount());
+        Assert.assertEquals(1, mirroredCounters.get(0).getCount());
+
+        // Mirrored metrics never trigger a collection; without a fresh snapshot, they are read live
+        registrySnapshotCollector.setFreshnessWindowInMillis(0);
+        Thread.sleep(2);
+        Assert.assertEquals(2, mirroredCounters.get(0).getCount());
+        Assert.assertEquals(1, ((Timer) registrySnapshotCollector.getMetrics().get("collectionTimer")).getCount());
+
+        Assert.assertEquals(2, snapshotMetricRegistry.getCounters().get("counter").getCount());
+
+        metricRegistry.timer("timer");
+        Thread.sleep(2);
+        Assert.assertTrue(snapshotMetricRegistry.getTimers().containsKey("timer"));
+
+        try {
+            snapshotMetricRegistry.counter("anotherCounter");
+            Assert.fail("Snapshot metric registry must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        snapshotMetricRegistry.close();
+        registrySnapshotCollector.close();
+    }
+}
@@ -0,0 +1,74 @@
+package net.centro.rtb.monitoringcenter.metrics.system.jvm;
+
+import com.codahale.metrics.Gauge;
+import net.centro.rtb.monitoringcenter.metrics.SamplingScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class ThreadMetricSetTest {
+    @Test
+    public void poolNames() throws Exception {
+        Assert.assertEquals("pool-3-thread", ThreadMetricSet.getPoolName("pool-3-thread-7"));
+        Assert.assertEquals("http-nio-8080-exec", ThreadMetricSet.getPoolName("http-nio-8080-exec-12"));
+        Assert.assertEquals("Finalizer", ThreadMetricSet.getPoolName("Finalizer"));
+        Assert.assertEquals("worker", ThreadMetricSet.getPoolName("worker #3"));
+        Assert.assertEquals("unnamed", ThreadMetricSet.getPoolName("42"));
+        Assert.assertEquals("unnamed", ThreadMetricSet.getPoolName(null));
+    }
+
+    @Test
+    public void sharedSnapshot() throws Exception {
+        final CountDownLatch stopLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stopLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "thread-metric-set-test-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        SamplingScheduler samplingScheduler = new SamplingScheduler("test-sampling");
+        ThreadMetricSet threadMetricSet = new ThreadMetricSet(samplingScheduler, 60);
+        try {
+            Gauge<Integer> poolThreadsGauge = threadMetricSet.getThreadsGaugesByPoolNames().get("thread-metric-set-test");
+            Assert.assertNotNull(poolThreadsGauge);
+            Assert.assertEquals(3, poolThreadsGauge.getValue().intValue());
+            Assert.assertSame(poolThreadsGauge, threadMetricSet.getMetrics().get("pools.thread-metric-set-test.count"));
+
+            // All gauges read within the freshness window share one snapshot, even though the threads are gone
+            stopLatch.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertEquals(3, poolThreadsGauge.getValue().intValue());
+
+            int threadCount = 0;
+            for (Gauge<Integer> threadsGauge : threadMetricSet.getThreadsGaugesByThreadStates().values()) {
+                threadCount += threadsGauge.getValue();
+            }
+            Assert.assertTrue(threadCount >= 4);
+
+            Thread.sleep(1100);
+            Assert.assertEquals(0, poolThreadsGauge.getValue().intValue());
+
+            Assert.assertEquals(0, threadMetricSet.getDeadlockedThreadsGauge().getValue().intValue());
+            Assert.assertTrue(threadMetricSet.getDaemonThreadsGauge().getValue() <= threadMetricSet.getCurrentThreadsGauge().getValue());
+        } finally {
+            threadMetricSet.shutdown();
+            samplingScheduler.shutdown();
+        }
+    }
+}
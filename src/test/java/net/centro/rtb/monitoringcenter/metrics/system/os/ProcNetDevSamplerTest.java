@@ -0,0 +1,104 @@
+package net.centro.rtb.monitoringcenter.metrics.system.os;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+public class ProcNetDevSamplerTest {
+    private static final String HEADER =
+            "Inter-|   Receive                                                |  Transmit\n" +
+            " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sampleDeltas() throws Exception {
+        File procNetDevFile = temporaryFolder.newFile("dev");
+        writeProcNetDev(procNetDevFile,
+                "    lo:  1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0",
+                "  eth0: 20000     200    1    2    0     0          0         0    40000     400    3    4    0     0       0          0");
+
+        ProcNetDevSampler sampler = new ProcNetDevSampler(procNetDevFile);
+        Assert.assertTrue(sampler.sample(0));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("lo", "eth0")), sampler.getNetworkInterfaceNames());
+        // No rates until an interface has been seen in two samples
+        Assert.assertEquals(0, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVED_BYTES));
+
+        writeProcNetDev(procNetDevFile,
+                "    lo:  1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0",
+                "  eth0: 40000     400    1   12    0     0          0         0   140000     600   13    4    0     0       0          0",
+                "veth12ab:   500       5    0    0    0     0          0         0      500       5    0    0    0     0       0          0");
+        Assert.assertTrue(sampler.sample(TimeUnit.SECONDS.toNanos(10)));
+
+        Assert.assertEquals(2000, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVED_BYTES));
+        Assert.assertEquals(20, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVED_PACKETS));
+        Assert.assertEquals(0, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVE_ERRORS));
+        Assert.assertEquals(1, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVE_DROPS));
+        Assert.assertEquals(10000, sampler.getRatePerSecond("eth0", ProcNetDevSampler.TRANSMITTED_BYTES));
+        Assert.assertEquals(20, sampler.getRatePerSecond("eth0", ProcNetDevSampler.TRANSMITTED_PACKETS));
+        Assert.assertEquals(1, sampler.getRatePerSecond("eth0", ProcNetDevSampler.TRANSMIT_ERRORS));
+        Assert.assertEquals(0, sampler.getRatePerSecond("eth0", ProcNetDevSampler.TRANSMIT_DROPS));
+        Assert.assertEquals(0, sampler.getRatePerSecond("lo", ProcNetDevSampler.RECEIVED_BYTES));
+
+        // Interfaces are rediscovered on every sample
+        Assert.assertEquals(new HashSet<>(Arrays.asList("lo", "eth0", "veth12ab")), sampler.getNetworkInterfaceNames());
+        Assert.assertEquals(0, sampler.getRatePerSecond("veth12ab", ProcNetDevSampler.RECEIVED_BYTES));
+
+        // Counters, which went backwards, yield no rate; interfaces, which disappeared, are dropped
+        writeProcNetDev(procNetDevFile,
+                "  eth0:   100       1    0    0    0     0          0         0   150000     700   13    4    0     0       0          0",
+                "veth12ab:  1500      15    0    0    0     0          0         0      500       5    0    0    0     0       0          0");
+        Assert.assertTrue(sampler.sample(TimeUnit.SECONDS.toNanos(20)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("eth0", "veth12ab")), sampler.getNetworkInterfaceNames());
+        Assert.assertEquals(0, sampler.getRatePerSecond("eth0", ProcNetDevSampler.RECEIVED_BYTES));
+        Assert.assertEquals(1000, sampler.getRatePerSecond("eth0", ProcNetDevSampler.TRANSMITTED_BYTES));
+        Assert.assertEquals(100, sampler.getRatePerSecond("veth12ab", ProcNetDevSampler.RECEIVED_BYTES));
+        Assert.assertEquals(0, sampler.getRatePerSecond("lo", ProcNetDevSampler.RECEIVED_BYTES));
+
+        sampler.close();
+    }
+
+    @Test
+    public void rejectUnexpectedFormat() throws Exception {
+        File procNetDevFile = temporaryFolder.newFile("dev");
+        writeProcNetDev(procNetDevFile, "  eth0: 20000 200 1 2");
+
+        ProcNetDevSampler sampler = new ProcNetDevSampler(procNetDevFile);
+        Assert.assertFalse(sampler.sample());
+        Assert.assertTrue(sampler.getNetworkInterfaceNames().isEmpty());
+        sampler.close();
+    }
+
+    @Test
+    public void growBuffer() throws Exception {
+        File procNetDevFile = temporaryFolder.newFile("dev");
+        String[] lines = new String[200];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "veth" + i + ": 1 1 0 0 0 0 0 0 1 1 0 0 0 0 0 0";
+        }
+        writeProcNetDev(procNetDevFile, lines);
+
+        ProcNetDevSampler sampler = new ProcNetDevSampler(procNetDevFile);
+        Assert.assertTrue(procNetDevFile.length() > 4096);
+        Assert.assertTrue(sampler.sample());
+        Assert.assertEquals(lines.length, sampler.getNetworkInterfaceNames().size());
+        sampler.close();
+    }
+
+    private static void writeProcNetDev(File procNetDevFile, String... lines) throws Exception {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.write(procNetDevFile.toPath(), content.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,61 @@
+package net.centro.rtb.monitoringcenter.metrics.system.os;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ProcStatCpuSamplerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sampleDeltas() throws Exception {
+        File procStatFile = temporaryFolder.newFile("stat");
+        writeProcStat(procStatFile, "cpu  100 0 100 700 50 10 20 20 0 0");
+
+        ProcStatCpuSampler sampler = new ProcStatCpuSampler(procStatFile);
+        Assert.assertTrue(sampler.sample());
+        // The first sample covers the time since the start-up
+        Assert.assertEquals(5.0, sampler.getPercentage(ProcStatCpuSampler.IO_WAIT), 0.001);
+        Assert.assertEquals(70.0, sampler.getPercentage(ProcStatCpuSampler.IDLE), 0.001);
+
+        writeProcStat(procStatFile, "cpu  120 0 110 740 60 10 30 30 5 0");
+        Assert.assertTrue(sampler.sample());
+        Assert.assertEquals(20.0, sampler.getPercentage(ProcStatCpuSampler.USER), 0.001);
+        Assert.assertEquals(10.0, sampler.getPercentage(ProcStatCpuSampler.SYSTEM), 0.001);
+        Assert.assertEquals(40.0, sampler.getPercentage(ProcStatCpuSampler.IDLE), 0.001);
+        Assert.assertEquals(10.0, sampler.getPercentage(ProcStatCpuSampler.IO_WAIT), 0.001);
+        Assert.assertEquals(0.0, sampler.getPercentage(ProcStatCpuSampler.IRQ), 0.001);
+        Assert.assertEquals(10.0, sampler.getPercentage(ProcStatCpuSampler.SOFT_IRQ), 0.001);
+        Assert.assertEquals(10.0, sampler.getPercentage(ProcStatCpuSampler.STEAL), 0.001);
+
+        // Counters, which did not advance, retain the previous percentages
+        Assert.assertTrue(sampler.sample());
+        Assert.assertEquals(10.0, sampler.getPercentage(ProcStatCpuSampler.IO_WAIT), 0.001);
+
+        writeProcStat(procStatFile, "intr 1 2 3");
+        Assert.assertFalse(sampler.sample());
+        sampler.close();
+    }
+
+    @Test
+    public void parseOldKernelFormat() throws Exception {
+        byte[] line = "cpu  10 20 30 40\ncpu0 10 20 30 40\n".getBytes(StandardCharsets.US_ASCII);
+        long[] ticks = {-1, -1, -1, -1, -1, -1, -1, -1};
+        Assert.assertTrue(ProcStatCpuSampler.parseAggregateLine(line, line.length, ticks));
+        Assert.assertArrayEquals(new long[] {10, 20, 30, 40, 0, 0, 0, 0}, ticks);
+
+        byte[] truncatedLine = "cpu  10 20".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertFalse(ProcStatCpuSampler.parseAggregateLine(truncatedLine, truncatedLine.length, ticks));
+    }
+
+    private static void writeProcStat(File procStatFile, String aggregateLine) throws Exception {
+        String content = aggregateLine + "\ncpu0 1 2 3 4 5 6 7 8 0 0\nintr 12345 0 0\nctxt 67890\n";
+        Files.write(procStatFile.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
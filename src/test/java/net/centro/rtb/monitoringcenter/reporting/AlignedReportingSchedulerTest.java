@@ -0,0 +1,108 @@
+package net.centro.rtb.monitoringcenter.reporting;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class AlignedReportingSchedulerTest {
+    @Test
+    public void computeNextTickTime() {
+        RecordingReporter reporter = new RecordingReporter(0);
+        AlignedReportingScheduler scheduler = new AlignedReportingScheduler(reporter, "test", 10, TimeUnit.SECONDS, 1000, "app.dc.group.node1", Clock.defaultClock());
+
+        long offsetInMillis = scheduler.computeOffsetInMillis();
+        Assert.assertTrue(offsetInMillis >= 0 && offsetInMillis <= 1000);
+
+        long time = 1500000003456L;
+        long nextTickTime = scheduler.computeNextTickTime(time);
+        Assert.assertEquals(1500000010000L + offsetInMillis, nextTickTime);
+
+        // A tick is never repeated
+        Assert.assertEquals(nextTickTime + 10000, scheduler.computeNextTickTime(nextTickTime));
+
+        // The offset is stable per node, and differs across nodes
+        AlignedReportingScheduler sameNodeScheduler = new AlignedReportingScheduler(reporter, "test", 10, TimeUnit.SECONDS, 1000, "app.dc.group.node1", Clock.defaultClock());
+        Assert.assertEquals(offsetInMillis, sameNodeScheduler.computeOffsetInMillis());
+        boolean differentOffsetFound = false;
+        for (int i = 2; i < 10; i++) {
+            AlignedReportingScheduler otherNodeScheduler = new AlignedReportingScheduler(reporter, "test", 10, TimeUnit.SECONDS, 1000, "app.dc.group.node" + i, Clock.defaultClock());
+            differentOffsetFound |= otherNodeScheduler.computeOffsetInMillis() != offsetInMillis;
+            otherNodeScheduler.stop();
+        }
+        Assert.assertTrue(differentOffsetFound);
+
+        // The offset stays within the interval
+        scheduler.setJitterBudgetInMillis(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(scheduler.computeOffsetInMillis() < 10000);
+        scheduler.setJitterBudgetInMillis(0);
+        Assert.assertEquals(0, scheduler.computeOffsetInMillis());
+        Assert.assertEquals(1500000010000L, scheduler.computeNextTickTime(time));
+
+        scheduler.stop();
+        sameNodeScheduler.stop();
+    }
+
+    @Test
+    public void skipMissedTicks() throws Exception {
+        RecordingReporter reporter = new RecordingReporter(350);
+        AlignedReportingScheduler scheduler = new AlignedReportingScheduler(reporter, "test", 200, TimeUnit.MILLISECONDS, 0, "node", Clock.defaultClock());
+        scheduler.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reporter.reportTimes.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        scheduler.stop();
+        reporter.stop();
+
+        Assert.assertTrue(reporter.reportTimes.size() >= 3);
+        Assert.assertTrue(scheduler.getSkippedTicks() >= 1);
+
+        // The ticks following the slow report are not queued up
+        long firstReportTime = reporter.reportTimes.get(0);
+        long secondReportTime = reporter.reportTimes.get(1);
+        Assert.assertTrue(secondReportTime - firstReportTime >= 350);
+
+        // Every report is timed
+        Timer reportTimer = (Timer) scheduler.getMetrics().get("reportTimer");
+        Assert.assertEquals(reporter.reportTimes.size(), reportTimer.getCount());
+        Assert.assertTrue(reportTimer.getSnapshot().getMax() >= TimeUnit.MILLISECONDS.toNanos(350));
+    }
+
+    private static class RecordingReporter extends ScheduledReporter {
+        private final long firstReportDurationInMillis;
+        private final List<Long> reportTimes = new CopyOnWriteArrayList<>();
+
+        private RecordingReporter(long firstReportDurationInMillis) {
+            super(new MetricRegistry(), "recording-reporter", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+            this.firstReportDurationInMillis = firstReportDurationInMillis;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms,
+                           SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+            reportTimes.add(System.currentTimeMillis());
+            if (reportTimes.size() == 1) {
+                try {
+                    Thread.sleep(firstReportDurationInMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.graphite.GraphiteSender;
+import net.centro.rtb.monitoringcenter.config.HostAndPort;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardedGraphiteSenderTest {
+    private static final String[] METRIC_NAMES = {
+            "bidder.east.thc.ltest3.system.jvm.threads.currentCount",
+            "bidder.east.thc.ltest3.tomcat.connectors.http-nio-8080.qps",
+            "app.none.none.none.AuctionService.bidsCounter.count",
+            "app.none.none.none.AuctionService.latencyTimer.p99",
+            "app.none.none.none.dbs.users.queriesTimer.mean_rate",
+            "foo",
+            "bar.baz"
+    };
+
+    @Test
+    public void hashRingMatchesCarbon() throws Exception {
+        // Expected values were produced by carbon.hashing.ConsistentHashRing
+        ConsistentHashRing hashRing = new ConsistentHashRing(Arrays.asList(
+                new HostAndPort("127.0.0.1", 2004, "a"),
+                new HostAndPort("127.0.0.1", 2104, "b"),
+                new HostAndPort("127.0.0.1", 2204, "c")));
+        int[] expectedNodes = {2, 0, 1, 0, 2, 2, 0};
+        for (int i = 0; i < METRIC_NAMES.length; i++) {
+            Assert.assertEquals(METRIC_NAMES[i], expectedNodes[i], hashRing.getNode(METRIC_NAMES[i]));
+        }
+
+        hashRing = new ConsistentHashRing(Arrays.asList(
+                new HostAndPort("10.0.0.1", 2003),
+                new HostAndPort("10.0.0.2", 2003)));
+        expectedNodes = new int[] {1, 0, 0, 1, 0, 0, 1};
+        for (int i = 0; i < METRIC_NAMES.length; i++) {
+            Assert.assertEquals(METRIC_NAMES[i], expectedNodes[i], hashRing.getNode(METRIC_NAMES[i]));
+        }
+    }
+
+    @Test
+    public void sendAndFailOver() throws Exception {
+        List<HostAndPort> addresses = Arrays.asList(
+                new HostAndPort("127.0.0.1", 2004, "a"),
+                new HostAndPort("127.0.0.1", 2104, "b"),
+                new HostAndPort("127.0.0.1", 2204, "c"));
+        List<RecordingGraphiteSender> recordingSenders = Arrays.asList(
+                new RecordingGraphiteSender(), new RecordingGraphiteSender(), new RecordingGraphiteSender());
+
+        ShardedGraphiteSender shardedGraphiteSender = new ShardedGraphiteSender(addresses,
+                new ArrayList<GraphiteSender>(recordingSenders), 5000);
+        try {
+            sendAll(shardedGraphiteSender);
+
+            Assert.assertEquals(Arrays.asList(METRIC_NAMES[1], METRIC_NAMES[3], METRIC_NAMES[6]), recordingSenders.get(0).sentNames);
+            Assert.assertEquals(Arrays.asList(METRIC_NAMES[2]), recordingSenders.get(1).sentNames);
+            Assert.assertEquals(Arrays.asList(METRIC_NAMES[0], METRIC_NAMES[4], METRIC_NAMES[5]), recordingSenders.get(2).sentNames);
+            Assert.assertEquals(0, shardedGraphiteSender.getFailures());
+
+            // Shard "a" goes down; its data points must move to the other shards, while the rest stay in place
+            for (RecordingGraphiteSender recordingSender : recordingSenders) {
+                recordingSender.sentNames.clear();
+            }
+            recordingSenders.get(0).available = false;
+
+            sendAll(shardedGraphiteSender);
+
+            Assert.assertTrue(recordingSenders.get(0).sentNames.isEmpty());
+            Assert.assertTrue(recordingSenders.get(1).sentNames.contains(METRIC_NAMES[2]));
+            Assert.assertTrue(recordingSenders.get(2).sentNames.containsAll(Arrays.asList(METRIC_NAMES[0], METRIC_NAMES[4], METRIC_NAMES[5])));
+            Assert.assertEquals(METRIC_NAMES.length, recordingSenders.get(1).sentNames.size() + recordingSenders.get(2).sentNames.size());
+            Assert.assertEquals(1, shardedGraphiteSender.getFailures());
+
+            Counter failedOverDataPointsCounter = (Counter) shardedGraphiteSender.getMetrics().get("failedOverDataPointsCounter");
+            Assert.assertEquals(3, failedOverDataPointsCounter.getCount());
+
+            Counter failuresCounter = (Counter) shardedGraphiteSender.getMetrics().get("shards.127-0-0-1_2004_a.failuresCounter");
+            Assert.assertEquals(1, failuresCounter.getCount());
+
+            Timer sendTimer = (Timer) shardedGraphiteSender.getMetrics().get("shards.127-0-0-1_2104_b.sendTimer");
+            Assert.assertTrue(sendTimer.getCount() >= 2);
+
+            // All shards go down
+            recordingSenders.get(1).available = false;
+            recordingSenders.get(2).available = false;
+
+            shardedGraphiteSender.connect();
+            for (String metricName : METRIC_NAMES) {
+                shardedGraphiteSender.send(metricName, "1", 1000L);
+            }
+            try {
+                shardedGraphiteSender.flush();
+                Assert.fail("Flush must fail when no shards are available");
+            } catch (UndeliveredDataPointsException e) {
+                Assert.assertEquals(METRIC_NAMES.length, e.getUndeliveredDataPoints().size());
+            } finally {
+                shardedGraphiteSender.close();
+            }
+        } finally {
+            shardedGraphiteSender.shutdown();
+        }
+    }
+
+    @Test
+    public void skipShardWithTimedOutSend() throws Exception {
+        List<HostAndPort> addresses = Arrays.asList(
+                new HostAndPort("127.0.0.1", 2004, "a"),
+                new HostAndPort("127.0.0.1", 2104, "b"));
+        List<RecordingGraphiteSender> recordingSenders = Arrays.asList(new RecordingGraphiteSender(), new RecordingGraphiteSender());
+        CountDownLatch flushLatch = new CountDownLatch(1);
+        recordingSenders.get(0).flushLatch = flushLatch;
+
+        ShardedGraphiteSender shardedGraphiteSender = new ShardedGraphiteSender(addresses,
+                new ArrayList<GraphiteSender>(recordingSenders), 200);
+        try {
+            // The send to shard "a" hangs, so its data points fail over to shard "b"
+            sendAll(shardedGraphiteSender);
+            Assert.assertEquals(1, recordingSenders.get(0).connectCount.get());
+            Assert.assertEquals(1, shardedGraphiteSender.getFailures());
+
+            // The sender of shard "a" is still in use, so it must not be touched
+            sendAll(shardedGraphiteSender);
+            Assert.assertEquals(1, recordingSenders.get(0).connectCount.get());
+            Assert.assertEquals(2, shardedGraphiteSender.getFailures());
+
+            // Once the hanging send completes, shard "a" is used again
+            flushLatch.countDown();
+            Thread.sleep(100);
+            sendAll(shardedGraphiteSender);
+            Assert.assertEquals(2, recordingSenders.get(0).connectCount.get());
+            Assert.assertEquals(2, shardedGraphiteSender.getFailures());
+        } finally {
+            flushLatch.countDown();
+            shardedGraphiteSender.shutdown();
+        }
+    }
+
+    private static void sendAll(ShardedGraphiteSender shardedGraphiteSender) throws IOException {
+        shardedGraphiteSender.connect();
+        try {
+            for (String metricName : METRIC_NAMES) {
+                shardedGraphiteSender.send(metricName, "1", 1000L);
+            }
+            shardedGraphiteSender.flush();
+        } finally {
+            shardedGraphiteSender.close();
+        }
+    }
+
+    private static class RecordingGraphiteSender implements GraphiteSender {
+        private final List<String> sentNames = new ArrayList<>();
+        private final AtomicInteger connectCount = new AtomicInteger();
+        private volatile boolean available = true;
+        private volatile CountDownLatch flushLatch;
+        private boolean connected;
+
+        @Override
+        public void connect() throws IllegalStateException, IOException {
+            connectCount.incrementAndGet();
+            if (!available) {
+                throw new IOException("Connection refused");
+            }
+            connected = true;
+        }
+
+        @Override
+        public void send(String name, String value, long timestamp) throws IOException {
+            sentNames.add(name);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (flushLatch != null) {
+                try {
+                    flushLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public int getFailures() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            connected = false;
+        }
+    }
+}
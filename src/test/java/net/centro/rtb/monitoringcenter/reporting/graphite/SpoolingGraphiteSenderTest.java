@@ -0,0 +1,188 @@
+package net.centro.rtb.monitoringcenter.reporting.graphite;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.graphite.GraphiteSender;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SpoolingGraphiteSenderTest {
+    private static final long MAX_SPOOL_SIZE_IN_BYTES = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void spoolAndReplay() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder("spool");
+        RecordingGraphiteSender recordingSender = new RecordingGraphiteSender();
+        recordingSender.available = false;
+
+        SpoolingGraphiteSender spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 2);
+        Assert.assertFalse(report(spoolingSender, 100L, "a", "b", "c"));
+        Assert.assertTrue(recordingSender.sentNames.isEmpty());
+        Assert.assertTrue(getGaugeValue(spoolingSender, "sizeInBytes") > 0);
+        Assert.assertTrue(getGaugeValue(spoolingSender, "replayLagInSeconds") > 0);
+
+        // Graphite is back: the oldest spooled data points go first, limited by the replay rate
+        recordingSender.available = true;
+        Assert.assertTrue(report(spoolingSender, 160L, "d"));
+        Assert.assertEquals(Arrays.asList("a@100", "b@100", "d@160"), recordingSender.sentNames);
+
+        recordingSender.sentNames.clear();
+        Assert.assertTrue(report(spoolingSender, 220L, "e"));
+        Assert.assertEquals(Arrays.asList("c@100", "e@220"), recordingSender.sentNames);
+        Assert.assertEquals(0L, getGaugeValue(spoolingSender, "sizeInBytes"));
+        Assert.assertEquals(0L, getGaugeValue(spoolingSender, "replayLagInSeconds"));
+        spoolingSender.shutdown();
+    }
+
+    @Test
+    public void recoverAfterRestart() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder("spool");
+        RecordingGraphiteSender recordingSender = new RecordingGraphiteSender();
+        recordingSender.available = false;
+
+        SpoolingGraphiteSender spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 1000);
+        Assert.assertFalse(report(spoolingSender, 100L, "a", "b"));
+        spoolingSender.shutdown();
+
+        recordingSender.available = true;
+        spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 1000);
+        Assert.assertTrue(report(spoolingSender, 160L, "c"));
+        Assert.assertEquals(Arrays.asList("a@100", "b@100", "c@160"), recordingSender.sentNames);
+        spoolingSender.shutdown();
+
+        // Nothing is replayed twice
+        recordingSender.sentNames.clear();
+        spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 1000);
+        Assert.assertTrue(report(spoolingSender, 220L, "d"));
+        Assert.assertEquals(Arrays.asList("d@220"), recordingSender.sentNames);
+        spoolingSender.shutdown();
+    }
+
+    @Test
+    public void discardOldestWhenFull() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder("spool");
+        RecordingGraphiteSender recordingSender = new RecordingGraphiteSender();
+        recordingSender.available = false;
+
+        SpoolingGraphiteSender spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 1000);
+        String[] names = new String[1000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "app.none.none.none.someService.someTimer.p99";
+        }
+        for (int i = 0; i < 100; i++) {
+            report(spoolingSender, i, names);
+        }
+
+        Assert.assertTrue(getGaugeValue(spoolingSender, "sizeInBytes") <= MAX_SPOOL_SIZE_IN_BYTES);
+        Assert.assertTrue(getGaugeValue(spoolingSender, "droppedDataPoints") > 0);
+
+        File[] segmentFiles = spoolDirectory.listFiles();
+        long spoolSizeOnDisk = 0;
+        for (File segmentFile : segmentFiles) {
+            spoolSizeOnDisk += segmentFile.length();
+        }
+        Assert.assertTrue(spoolSizeOnDisk <= MAX_SPOOL_SIZE_IN_BYTES);
+        spoolingSender.shutdown();
+    }
+
+    @Test
+    public void spoolOnlyUndeliveredDataPoints() throws Exception {
+        File spoolDirectory = temporaryFolder.newFolder("spool");
+        RecordingGraphiteSender recordingSender = new RecordingGraphiteSender();
+        recordingSender.undeliveredName = "b";
+
+        SpoolingGraphiteSender spoolingSender = new SpoolingGraphiteSender(recordingSender, spoolDirectory, MAX_SPOOL_SIZE_IN_BYTES, 1000);
+        Assert.assertFalse(report(spoolingSender, 100L, "a", "b", "c"));
+        Assert.assertEquals(Arrays.asList("a@100", "c@100"), recordingSender.sentNames);
+
+        // Only the undelivered data point is replayed
+        recordingSender.sentNames.clear();
+        recordingSender.undeliveredName = null;
+        Assert.assertTrue(report(spoolingSender, 160L, "d"));
+        Assert.assertEquals(Arrays.asList("b@100", "d@160"), recordingSender.sentNames);
+        Assert.assertEquals(0L, getGaugeValue(spoolingSender, "sizeInBytes"));
+        spoolingSender.shutdown();
+    }
+
+    private static boolean report(SpoolingGraphiteSender spoolingSender, long timestamp, String... names) {
+        try {
+            spoolingSender.connect();
+            for (String name : names) {
+                spoolingSender.send(name, "1", timestamp);
+            }
+            spoolingSender.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                spoolingSender.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static long getGaugeValue(SpoolingGraphiteSender spoolingSender, String name) {
+        return ((Gauge<Long>) spoolingSender.getMetrics().get(name)).getValue();
+    }
+
+    private static class RecordingGraphiteSender implements GraphiteSender {
+        private final List<String> sentNames = new ArrayList<>();
+        private boolean available = true;
+        private String undeliveredName;
+        private boolean connected;
+        private List<GraphiteSpool.DataPoint> undeliveredDataPoints = new ArrayList<>();
+
+        @Override
+        public void connect() throws IllegalStateException, IOException {
+            if (!available) {
+                throw new IOException("Connection refused");
+            }
+            connected = true;
+        }
+
+        @Override
+        public void send(String name, String value, long timestamp) throws IOException {
+            if (name.equals(undeliveredName)) {
+                undeliveredDataPoints.add(new GraphiteSpool.DataPoint(name, value, timestamp));
+            } else {
+                sentNames.add(name + "@" + timestamp);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!undeliveredDataPoints.isEmpty()) {
+                List<GraphiteSpool.DataPoint> dataPoints = undeliveredDataPoints;
+                undeliveredDataPoints = new ArrayList<>();
+                throw new UndeliveredDataPointsException("Shard unavailable", dataPoints);
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public int getFailures() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            connected = false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class MetricHistoryReporterTest {
+    private static final long SAMPLING_INTERVAL_IN_MILLIS = 10000;
+
+    @Test
+    public void recordIntoRingBuffers() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Counter counter = metricRegistry.counter("counter");
+        Timer timer = metricRegistry.timer("timer");
+        timer.update(2, TimeUnit.MILLISECONDS);
+        metricRegistry.register("gauge", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return 0.5;
+            }
+        });
+        metricRegistry.register("textGauge", new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return "text";
+            }
+        });
+
+        ManualClock clock = new ManualClock();
+        MetricHistoryReporter reporter = createReporter(metricRegistry, clock, 3, 10);
+
+        for (int i = 1; i <= 5; i++) {
+            counter.inc();
+            reporter.report();
+            clock.advance();
+        }
+
+        // Only the last samples fit into the ring buffer
+        MetricHistorySeries counterSeries = reporter.getSeries("counter", TimeUnit.HOURS.toMillis(1));
+        Assert.assertEquals(MetricHistorySeries.Type.COUNTER, counterSeries.getType());
+        Assert.assertArrayEquals(new long[] {30000, 40000, 50000}, counterSeries.getTimestamps());
+        Assert.assertArrayEquals(new double[] {3, 4, 5}, counterSeries.getValues("count"), 0.0);
+
+        // The range limits the age of the samples
+        counterSeries = reporter.getSeries("counter", 25000);
+        Assert.assertArrayEquals(new double[] {4, 5}, counterSeries.getValues("count"), 0.0);
+
+        MetricHistorySeries timerSeries = reporter.getSeries("timer", TimeUnit.HOURS.toMillis(1));
+        Assert.assertEquals(MetricHistorySeries.Type.TIMER, timerSeries.getType());
+        Assert.assertEquals(2000, timerSeries.getValues("p99")[0], 0.0);
+        Assert.assertEquals(0.5, reporter.getSeries("gauge", TimeUnit.HOURS.toMillis(1)).getValues("value")[2], 0.0);
+
+        Assert.assertNull(reporter.getSeries("textGauge", TimeUnit.HOURS.toMillis(1)));
+        Assert.assertEquals(Arrays.asList("counter", "gauge", "timer"), Arrays.asList(reporter.getMetricNames().toArray()));
+
+        // 3 samples of 1 timestamp + 1, 1, and 6 fields
+        Assert.assertEquals(8L * 3 * (2 + 2 + 7), ((Gauge<Long>) reporter.getMetrics().get("sizeInBytes")).getValue().longValue());
+        reporter.stop();
+    }
+
+    @Test
+    public void capAndExpiration() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("a");
+        metricRegistry.counter("b");
+        metricRegistry.counter("c");
+
+        ManualClock clock = new ManualClock();
+        MetricHistoryReporter reporter = createReporter(metricRegistry, clock, 2, 2);
+
+        reporter.report();
+        Assert.assertEquals(Arrays.asList("a", "b"), Arrays.asList(reporter.getMetricNames().toArray()));
+        Assert.assertEquals(1, ((Gauge<Integer>) reporter.getMetrics().get("untrackedMetrics")).getValue().intValue());
+
+        // The history of a removed metric expires after the span of the ring buffer, making room for other metrics
+        metricRegistry.remove("a");
+        clock.advance();
+        reporter.report();
+        Assert.assertEquals(Arrays.asList("a", "b"), Arrays.asList(reporter.getMetricNames().toArray()));
+
+        clock.advance();
+        clock.advance();
+        reporter.report();
+        Assert.assertEquals(Arrays.asList("b", "c"), Arrays.asList(reporter.getMetricNames().toArray()));
+        Assert.assertEquals(0, ((Gauge<Integer>) reporter.getMetrics().get("untrackedMetrics")).getValue().intValue());
+        reporter.stop();
+    }
+
+    private static MetricHistoryReporter createReporter(MetricRegistry metricRegistry, Clock clock, int samplesPerMetric, int maxMetrics) {
+        return MetricHistoryReporter.forRegistry(metricRegistry)
+                .withClock(clock)
+                .samplingInterval(SAMPLING_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS)
+                .samplesPerMetric(samplesPerMetric)
+                .maxMetrics(maxMetrics)
+                .build();
+    }
+
+    private static class ManualClock extends Clock {
+        private long timeInMillis = SAMPLING_INTERVAL_IN_MILLIS;
+
+        private void advance() {
+            timeInMillis += SAMPLING_INTERVAL_IN_MILLIS;
+        }
+
+        @Override
+        public long getTick() {
+            return TimeUnit.MILLISECONDS.toNanos(timeInMillis);
+        }
+
+        @Override
+        public long getTime() {
+            return timeInMillis;
+        }
+    }
+}
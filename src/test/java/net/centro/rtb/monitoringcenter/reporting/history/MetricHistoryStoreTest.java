@@ -0,0 +1,136 @@
+package net.centro.rtb.monitoringcenter.reporting.history;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class MetricHistoryStoreTest {
+    private static final long START_TIME_IN_MILLIS = TimeUnit.DAYS.toMillis(17000);
+    private static final long SAMPLING_INTERVAL_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void compressionRoundTrip() throws Exception {
+        long[] timestamps = {START_TIME_IN_MILLIS, START_TIME_IN_MILLIS + 10000, START_TIME_IN_MILLIS + 20000,
+                START_TIME_IN_MILLIS + 30001, START_TIME_IN_MILLIS + 90000, START_TIME_IN_MILLIS + 90000 + TimeUnit.DAYS.toMillis(3)};
+        double[][] samples = {
+                {1.0, 0.25},
+                {1.0, 0.25},
+                {2.0, -1234.5678},
+                {Double.NaN, Double.MAX_VALUE},
+                {1e-300, 0.0},
+                {-0.0, Double.NEGATIVE_INFINITY}
+        };
+
+        GorillaEncoder encoder = new GorillaEncoder(2);
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.add(timestamps[i], samples[i]);
+        }
+        Assert.assertEquals(timestamps.length, encoder.getSampleCount());
+
+        GorillaDecoder decoder = new GorillaDecoder(ByteBuffer.wrap(encoder.getBytes()), 0, 2);
+        for (int i = 0; i < timestamps.length; i++) {
+            decoder.next();
+            Assert.assertEquals(timestamps[i], decoder.getTimestamp());
+            for (int j = 0; j < 2; j++) {
+                Assert.assertEquals(Double.doubleToRawLongBits(samples[i][j]), Double.doubleToRawLongBits(decoder.getValue(j)));
+            }
+        }
+
+        // Regular samples of a steady value take a couple of bits each
+        encoder = new GorillaEncoder(1);
+        for (int i = 0; i < 1000; i++) {
+            encoder.add(START_TIME_IN_MILLIS + i * SAMPLING_INTERVAL_IN_MILLIS, new double[] {42.0});
+        }
+        Assert.assertTrue(encoder.getSizeInBytes() < 300);
+    }
+
+    @Test
+    public void persistRollUpAndRecover() throws Exception {
+        File directory = temporaryFolder.newFolder("history");
+        MetricHistoryStore store = new MetricHistoryStore(directory, TimeUnit.HOURS.toMillis(24));
+
+        // 3 hours of a counter incremented by 1 every 10 seconds, and of a gauge alternating between 0 and 10
+        long timeInMillis = START_TIME_IN_MILLIS;
+        for (int i = 0; i < 3 * 360; i++) {
+            store.add("counter", MetricHistorySeries.Type.COUNTER, timeInMillis, new double[] {i});
+            store.add("gauge", MetricHistorySeries.Type.GAUGE, timeInMillis, new double[] {(i % 2) * 10});
+            store.flush(timeInMillis);
+            timeInMillis += SAMPLING_INTERVAL_IN_MILLIS;
+        }
+        long lastTimeInMillis = timeInMillis - SAMPLING_INTERVAL_IN_MILLIS;
+        Assert.assertTrue(store.getSizeInBytes() > 0);
+        store.close();
+
+        store = new MetricHistoryStore(directory, TimeUnit.HOURS.toMillis(24));
+
+        // Raw samples are recovered
+        MetricHistorySeries series = store.getSeries("counter", lastTimeInMillis - TimeUnit.MINUTES.toMillis(10), lastTimeInMillis);
+        Assert.assertEquals(MetricHistorySeries.Type.COUNTER, series.getType());
+        Assert.assertEquals(61, series.size());
+        Assert.assertEquals(lastTimeInMillis, series.getTimestamps()[60]);
+        Assert.assertEquals(3 * 360 - 1, series.getValues("count")[60], 0.0);
+
+        // Longer ranges are served from the rollups
+        series = store.getSeries("gauge", lastTimeInMillis - TimeUnit.HOURS.toMillis(6), lastTimeInMillis);
+        Assert.assertTrue(series.size() >= 170 && series.size() <= 180);
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(1), series.getTimestamps()[1] - series.getTimestamps()[0]);
+        Assert.assertEquals(5.0, series.getValues("value")[0], 0.0);
+
+        series = store.getSeries("counter", lastTimeInMillis - TimeUnit.HOURS.toMillis(20), lastTimeInMillis);
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(10), series.getTimestamps()[1] - series.getTimestamps()[0]);
+        Assert.assertEquals(59, series.getValues("count")[0], 0.0);
+
+        Assert.assertNull(store.getSeries("unknown", lastTimeInMillis - TimeUnit.HOURS.toMillis(1), lastTimeInMillis));
+        store.close();
+    }
+
+    @Test
+    public void deleteExpiredSegments() throws Exception {
+        File directory = temporaryFolder.newFolder("history");
+        MetricHistoryStore store = new MetricHistoryStore(directory, TimeUnit.HOURS.toMillis(1));
+
+        long timeInMillis = START_TIME_IN_MILLIS;
+        for (int i = 0; i < 360; i++) {
+            store.add("counter", MetricHistorySeries.Type.COUNTER, timeInMillis, new double[] {i});
+            store.flush(timeInMillis);
+            timeInMillis += SAMPLING_INTERVAL_IN_MILLIS;
+        }
+        Assert.assertTrue(store.getSegmentCount() > 0);
+
+        // The metric is gone; its history expires with the retention
+        timeInMillis += TimeUnit.HOURS.toMillis(7);
+        store.flush(timeInMillis);
+        Assert.assertEquals(0, store.getSegmentCount());
+        Assert.assertEquals(0, directory.listFiles().length);
+        Assert.assertNull(store.getSeries("counter", START_TIME_IN_MILLIS, timeInMillis));
+        store.close();
+    }
+
+    @Test
+    public void unmapSegmentOnceReadsAreDone() throws Exception {
+        File file = new File(temporaryFolder.newFolder("history"), "history-raw-test.seg");
+        HistorySegment segment = HistorySegment.create(file, START_TIME_IN_MILLIS, 64 * 1024);
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        encoder.add(START_TIME_IN_MILLIS, new double[] {42.0});
+        HistorySegment.Block block = segment.append("gauge", MetricHistorySeries.Type.GAUGE, encoder);
+
+        // A reader keeps the mapping alive across close
+        Assert.assertTrue(segment.retain());
+        segment.close();
+        GorillaDecoder decoder = block.decode();
+        decoder.next();
+        Assert.assertEquals(42.0, decoder.getValue(0), 0.0);
+        segment.release();
+
+        Assert.assertFalse(segment.retain());
+        Assert.assertTrue(file.delete());
+    }
+}
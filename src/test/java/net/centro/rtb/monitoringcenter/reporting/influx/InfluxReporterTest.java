@@ -0,0 +1,159 @@
+package net.centro.rtb.monitoringcenter.reporting.influx;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+public class InfluxReporterTest {
+    private static final long TIMESTAMP = 1500000000000L;
+
+    private HttpServer influxServer;
+    private List<String> requestBodies;
+    private List<String> requestQueries;
+    private volatile int responseCode;
+
+    @Before
+    public void setUp() throws Exception {
+        requestBodies = new CopyOnWriteArrayList<>();
+        requestQueries = new CopyOnWriteArrayList<>();
+        responseCode = 204;
+
+        influxServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        influxServer.createContext("/write", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream requestBody = exchange.getRequestBody();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    requestBody = new GZIPInputStream(requestBody);
+                }
+                requestBodies.add(new String(ByteStreams.toByteArray(requestBody), StandardCharsets.UTF_8));
+                requestQueries.add(exchange.getRequestURI().getQuery());
+
+                exchange.sendResponseHeaders(responseCode, -1);
+                exchange.close();
+            }
+        });
+        influxServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        influxServer.stop(0);
+    }
+
+    @Test
+    public void report() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.register("gauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return 5;
+            }
+        });
+        metricRegistry.register("nanGauge", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return Double.NaN;
+            }
+        });
+        metricRegistry.counter("some counter").inc(3);
+        metricRegistry.timer("timer").update(2, TimeUnit.MILLISECONDS);
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("application", "app");
+        tags.put("node_id", "node=1");
+        tags.put("datacenter", null);
+
+        InfluxReporter influxReporter = createReporter(metricRegistry, new InfluxSender(getUrl(), "metrics", "week", true, 10, 1000), tags, 2);
+        influxReporter.report();
+
+        Assert.assertEquals(Arrays.asList("db=metrics&precision=ms&rp=week", "db=metrics&precision=ms&rp=week"), requestQueries);
+        Assert.assertEquals("gauge,application=app,node_id=node\\=1 value=5.0 " + TIMESTAMP + "\n" +
+                "some\\ counter,application=app,node_id=node\\=1 count=3i " + TIMESTAMP, requestBodies.get(0));
+
+        String timerLine = requestBodies.get(1);
+        Assert.assertTrue(timerLine.startsWith("timer,application=app,node_id=node\\=1 count=1i,m1_rate="));
+        Assert.assertTrue(timerLine.contains(",max=2.0,"));
+        Assert.assertTrue(timerLine.endsWith(" " + TIMESTAMP));
+
+        influxReporter.stop();
+    }
+
+    @Test
+    public void retry() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("counter").inc();
+
+        InfluxSender influxSender = new InfluxSender(getUrl(), "metrics", null, false, 1, 1000);
+        InfluxReporter influxReporter = createReporter(metricRegistry, influxSender, new LinkedHashMap<String, String>(), 100);
+
+        responseCode = 503;
+        influxReporter.report();
+        Assert.assertEquals(1, influxSender.getRetryQueueSize());
+
+        // While InfluxDB is unavailable, the oldest batches are discarded
+        metricRegistry.counter("counter").inc();
+        influxReporter.report();
+        Assert.assertEquals(1, influxSender.getRetryQueueSize());
+        Assert.assertEquals(2, requestBodies.size());
+
+        responseCode = 204;
+        requestBodies.clear();
+        metricRegistry.counter("counter").inc();
+        influxReporter.report();
+        Assert.assertEquals(0, influxSender.getRetryQueueSize());
+        Assert.assertEquals(Arrays.asList("counter count=2i " + TIMESTAMP, "counter count=3i " + TIMESTAMP), requestBodies);
+
+        // Malformed batches are not retried
+        responseCode = 400;
+        influxReporter.report();
+        Assert.assertEquals(0, influxSender.getRetryQueueSize());
+        Assert.assertEquals(2, ((Counter) influxSender.getMetrics().get("droppedBatchesCounter")).getCount());
+
+        influxReporter.stop();
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + influxServer.getAddress().getPort();
+    }
+
+    private static InfluxReporter createReporter(MetricRegistry metricRegistry, InfluxSender influxSender, Map<String, String> tags, int maxLinesPerRequest) {
+        return InfluxReporter.forRegistry(metricRegistry)
+                .withTags(tags)
+                .withClock(new Clock() {
+                    @Override
+                    public long getTick() {
+                        return 0;
+                    }
+
+                    @Override
+                    public long getTime() {
+                        return TIMESTAMP;
+                    }
+                })
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .maxLinesPerRequest(maxLinesPerRequest)
+                .build(influxSender);
+    }
+}
@@ -0,0 +1,94 @@
+package net.centro.rtb.monitoringcenter.reporting.jmx;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshotCollector;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.SnapshotMetricRegistry;
+import net.centro.rtb.monitoringcenter.util.CompiledMetricFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class NamespaceJmxReporterTest {
+    @Test
+    public void exportByNamespace() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("app.requests.counter").inc(5);
+        metricRegistry.timer("app.requests.timer").update(10, TimeUnit.MILLISECONDS);
+        metricRegistry.register("system.load", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return 1.5;
+            }
+        });
+        metricRegistry.counter("blocked.counter");
+
+        RegistrySnapshotCollector registrySnapshotCollector = new RegistrySnapshotCollector(metricRegistry, TimeUnit.MINUTES.toMillis(1));
+        SnapshotMetricRegistry snapshotMetricRegistry = new SnapshotMetricRegistry(metricRegistry, registrySnapshotCollector);
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+
+        NamespaceJmxReporter reporter = new NamespaceJmxReporter(snapshotMetricRegistry, mBeanServer, NamespaceJmxReporter.DEFAULT_DOMAIN,
+                CompiledMetricFilter.compile(Collections.<String>emptySet(), Collections.singleton("blocked"), 100),
+                TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        reporter.start();
+
+        Set<ObjectName> objectNames = mBeanServer.queryNames(new ObjectName(NamespaceJmxReporter.DEFAULT_DOMAIN + ":*"), null);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(reporter.getObjectName("app"), reporter.getObjectName("system"))), objectNames);
+
+        // Single reads never trigger a collection; without a fresh snapshot, they are read live
+        Timer collectionTimer = (Timer) registrySnapshotCollector.getMetrics().get("collectionTimer");
+        ObjectName appObjectName = reporter.getObjectName("app");
+        Assert.assertEquals(5.0, (Double) mBeanServer.getAttribute(appObjectName, "requests.counter.count"), 0.0);
+        Assert.assertEquals(10.0, (Double) mBeanServer.getAttribute(appObjectName, "requests.timer.max"), 0.01);
+        Assert.assertEquals(1.5, mBeanServer.getAttribute(reporter.getObjectName("system"), "load.value"));
+        Assert.assertEquals(0, collectionTimer.getCount());
+
+        // Bulk reads are served from a single snapshot; unknown attributes are omitted
+        AttributeList attributeList = mBeanServer.getAttributes(appObjectName, new String[] {"requests.counter.count", "requests.timer.count", "requests.counter.p99"});
+        Assert.assertEquals(2, attributeList.size());
+        Assert.assertEquals(1.0, (Double) ((Attribute) attributeList.get(1)).getValue(), 0.0);
+        Assert.assertEquals(1, collectionTimer.getCount());
+
+        // Single reads are then served from the fresh snapshot
+        metricRegistry.counter("app.requests.counter").inc();
+        Assert.assertEquals(5.0, (Double) mBeanServer.getAttribute(appObjectName, "requests.counter.count"), 0.0);
+        Assert.assertEquals(1, collectionTimer.getCount());
+
+        try {
+            mBeanServer.getAttribute(appObjectName, "requests.missing.count");
+            Assert.fail("Unknown attributes must not be resolved");
+        } catch (AttributeNotFoundException e) {
+            // Expected
+        }
+
+        MBeanAttributeInfo[] attributeInfos = mBeanServer.getMBeanInfo(appObjectName).getAttributes();
+        Assert.assertEquals(1 + 15, attributeInfos.length);
+
+        // The MBeanInfo follows the metrics of the namespace
+        metricRegistry.timer("app.responses.timer");
+        Assert.assertEquals(1 + 15 + 15, mBeanServer.getMBeanInfo(appObjectName).getAttributes().length);
+
+        // The namespace MBean goes away with its last metric
+        metricRegistry.remove("system.load");
+        Assert.assertFalse(mBeanServer.isRegistered(reporter.getObjectName("system")));
+
+        reporter.stop();
+        Assert.assertTrue(mBeanServer.queryNames(new ObjectName(NamespaceJmxReporter.DEFAULT_DOMAIN + ":*"), null).isEmpty());
+
+        snapshotMetricRegistry.close();
+        registrySnapshotCollector.close();
+    }
+}
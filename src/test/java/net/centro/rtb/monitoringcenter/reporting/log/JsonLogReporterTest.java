@@ -0,0 +1,91 @@
+package net.centro.rtb.monitoringcenter.reporting.log;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class JsonLogReporterTest {
+    private static final long TIMESTAMP = 1500000000000L;
+
+    @Test
+    public void report() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("app.requests.counter").inc(3);
+        metricRegistry.timer("app.requests.timer").update(2, TimeUnit.MILLISECONDS);
+        metricRegistry.register("app.failingGauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                throw new IllegalStateException("Failing gauge");
+            }
+        });
+        metricRegistry.register("system.load", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return 1.5;
+            }
+        });
+        metricRegistry.counter("uptime").inc();
+
+        Logger outputLogger = Mockito.mock(Logger.class);
+        Mockito.when(outputLogger.isInfoEnabled()).thenReturn(true);
+
+        JsonLogReporter reporter = JsonLogReporter.forRegistry(metricRegistry)
+                .withClock(new Clock() {
+                    @Override
+                    public long getTick() {
+                        return 0;
+                    }
+
+                    @Override
+                    public long getTime() {
+                        return TIMESTAMP;
+                    }
+                })
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .maxMetricsPerLine(2)
+                .build(outputLogger);
+        reporter.report();
+        reporter.report();
+
+        ArgumentCaptor<String> lineCaptor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(outputLogger, Mockito.times(8)).info(lineCaptor.capture());
+        List<String> lines = lineCaptor.getAllValues();
+
+        // The generator is reused across reports; the mean rate of the timer is the only difference
+        Assert.assertEquals(lines.get(0), lines.get(4));
+        Assert.assertEquals(lines.subList(2, 4), lines.subList(6, 8));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode firstLine = objectMapper.readTree(lines.get(0));
+        Assert.assertEquals(TIMESTAMP, firstLine.get("timestamp").asLong());
+        Assert.assertEquals("app", firstLine.get("namespace").asText());
+        Assert.assertTrue(firstLine.get("metrics").get("failingGauge").get("error").asText().contains("Failing gauge"));
+        Assert.assertEquals(3, firstLine.get("metrics").get("requests.counter").get("count").asLong());
+        Assert.assertFalse(firstLine.get("metrics").get("requests.counter").has("p99"));
+
+        // The third metric of the namespace spills over to another line
+        JsonNode secondLine = objectMapper.readTree(lines.get(1));
+        Assert.assertEquals("app", secondLine.get("namespace").asText());
+        Assert.assertEquals(2.0, secondLine.get("metrics").get("requests.timer").get("max").asDouble(), 0.01);
+
+        JsonNode thirdLine = objectMapper.readTree(lines.get(2));
+        Assert.assertEquals("system", thirdLine.get("namespace").asText());
+        Assert.assertEquals(1.5, thirdLine.get("metrics").get("load").get("value").asDouble(), 0.0);
+
+        JsonNode fourthLine = objectMapper.readTree(lines.get(3));
+        Assert.assertEquals("uptime", fourthLine.get("namespace").asText());
+        Assert.assertEquals(1, fourthLine.get("metrics").get("").get("count").asLong());
+
+        reporter.stop();
+    }
+}
@@ -0,0 +1,179 @@
+package net.centro.rtb.monitoringcenter.reporting.statsd;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class StatsdReporterTest {
+    private static final int MAX_PACKET_SIZE_IN_BYTES = 512;
+
+    private DatagramSocket agentSocket;
+    private List<Integer> packetSizes;
+
+    @Before
+    public void setUp() throws Exception {
+        agentSocket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        agentSocket.setSoTimeout(200);
+        packetSizes = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        agentSocket.close();
+    }
+
+    @Test
+    public void report() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.register("gauge", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return 0.25;
+            }
+        });
+        metricRegistry.register("negativeGauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return -3;
+            }
+        });
+        Counter counter = metricRegistry.counter("some:counter");
+        counter.inc(7);
+        Meter meter = metricRegistry.meter("meter");
+        meter.mark(5);
+        Timer timer = metricRegistry.timer("timer");
+        timer.update(20, TimeUnit.MILLISECONDS);
+        Histogram histogram = metricRegistry.histogram("histogram");
+        histogram.update(4);
+
+        StatsdReporter statsdReporter = createReporter(metricRegistry, "app.dc.group.node", Collections.<String, String>emptyMap());
+        statsdReporter.report();
+
+        List<String> lines = receiveLines();
+        Assert.assertTrue(lines.contains("app.dc.group.node.gauge:0.25|g"));
+        Assert.assertEquals(lines.indexOf("app.dc.group.node.negativeGauge:0|g") + 1, lines.indexOf("app.dc.group.node.negativeGauge:-3|g"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.some_counter:7|g"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.meter.count:5|c"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.timer.count:1|c"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.timer.p99:20|g"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.histogram.max:4|g"));
+        Assert.assertEquals(11, countLinesStartingWith(lines, "app.dc.group.node.histogram."));
+
+        // Counts are sent as deltas since the previous report
+        meter.mark(2);
+        statsdReporter.report();
+        lines = receiveLines();
+        Assert.assertTrue(lines.contains("app.dc.group.node.meter.count:2|c"));
+        Assert.assertTrue(lines.contains("app.dc.group.node.timer.count:0|c"));
+
+        statsdReporter.stop();
+    }
+
+    @Test
+    public void packing() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 0; i < 100; i++) {
+            metricRegistry.counter("someService.someCounter" + i).inc(i);
+        }
+
+        StatsdReporter statsdReporter = createReporter(metricRegistry, "app.dc.group.node", Collections.<String, String>emptyMap());
+        statsdReporter.report();
+
+        List<String> lines = receiveLines();
+        Assert.assertEquals(100, lines.size());
+        Assert.assertTrue(packetSizes.size() > 1);
+        Assert.assertTrue(packetSizes.size() < 100);
+        for (int packetSize : packetSizes) {
+            Assert.assertTrue(packetSize <= MAX_PACKET_SIZE_IN_BYTES);
+        }
+
+        statsdReporter.stop();
+    }
+
+    @Test
+    public void tags() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("counter").inc();
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("datacenter", "dc");
+        tags.put("node_id", "node,1");
+        StatsdReporter statsdReporter = createReporter(metricRegistry, "app", tags);
+        statsdReporter.report();
+
+        Assert.assertEquals(Arrays.asList("app.counter:1|g|#datacenter:dc,node_id:node_1"), receiveLines());
+
+        statsdReporter.stop();
+    }
+
+    @Test
+    public void unresolvedHost() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("counter").inc();
+
+        StatsdSender statsdSender = new StatsdSender("statsd.invalid", 8125, MAX_PACKET_SIZE_IN_BYTES);
+        StatsdReporter statsdReporter = StatsdReporter.forRegistry(metricRegistry).build(statsdSender);
+
+        // The failure is counted, rather than thrown out of the report
+        statsdReporter.report();
+        statsdReporter.report();
+        Assert.assertEquals(2, statsdSender.getFailures());
+
+        statsdReporter.stop();
+    }
+
+    private StatsdReporter createReporter(MetricRegistry metricRegistry, String prefix, Map<String, String> tags) {
+        StatsdSender statsdSender = new StatsdSender("127.0.0.1", agentSocket.getLocalPort(), MAX_PACKET_SIZE_IN_BYTES);
+        return StatsdReporter.forRegistry(metricRegistry)
+                .prefixedWith(prefix)
+                .withTags(tags)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build(statsdSender);
+    }
+
+    private List<String> receiveLines() throws Exception {
+        List<String> lines = new ArrayList<>();
+        byte[] buffer = new byte[65535];
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                agentSocket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return lines;
+            }
+            packetSizes.add(packet.getLength());
+            String payload = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+            lines.addAll(Arrays.asList(payload.split("\n")));
+        }
+    }
+
+    private static int countLinesStartingWith(List<String> lines, String start) {
+        int count = 0;
+        for (String line : lines) {
+            if (line.startsWith(start)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
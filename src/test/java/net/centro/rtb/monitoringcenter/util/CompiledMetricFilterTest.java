@@ -0,0 +1,102 @@
+package net.centro.rtb.monitoringcenter.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CompiledMetricFilterTest {
+    private static final List<String> NAMES = Arrays.asList(
+            "system.jvm.memory.heapUsage",
+            "system.jvm.threads.count",
+            "system.os.cpu.load",
+            "tomcat.connectors.http-8080.requests",
+            "tomcat.threadPools.http-8080.busy",
+            "bidder.requests.timer",
+            "bidder.requests.errors.counter",
+            "bidderX.requests",
+            "app.sys.tem",
+            "");
+
+    @Test
+    public void prefixFilters() throws Exception {
+        assertEquivalentToRegex(new String[] {"system.jvm", "tomcat."}, null);
+        assertEquivalentToRegex(new String[] {"bidder", "bidder.requests", " system "}, null);
+        assertEquivalentToRegex(null, new String[] {"system.jvm.threads"});
+        assertEquivalentToRegex(new String[] {"system"}, new String[] {"system.os", "system.jvm.memory"});
+    }
+
+    @Test
+    public void wildcardFilters() throws Exception {
+        assertEquivalentToRegex(new String[] {"*.requests"}, null);
+        assertEquivalentToRegex(new String[] {"tomcat.*.http-8080.*"}, null);
+        assertEquivalentToRegex(new String[] {"*sys*tem"}, null);
+        assertEquivalentToRegex(new String[] {"bidder*errors", "system.*.count"}, new String[] {"*jvm*"});
+        assertEquivalentToRegex(new String[] {"b**d*r.*.t"}, null);
+    }
+
+    @Test
+    public void blankFilters() throws Exception {
+        Assert.assertTrue(CompiledMetricFilter.compile(null).isMatchAll());
+        Assert.assertTrue(CompiledMetricFilter.compile(new String[0]).isMatchAll());
+        Assert.assertTrue(CompiledMetricFilter.compile(new String[] {"system", "  "}).isMatchAll());
+
+        // A blank blocked filter blocks everything
+        CompiledMetricFilter filter = CompiledMetricFilter.compile(null, Collections.singletonList(""), 0);
+        for (String name : NAMES) {
+            Assert.assertFalse(filter.matches(name));
+        }
+    }
+
+    @Test
+    public void decisionCache() throws Exception {
+        CompiledMetricFilter filter = CompiledMetricFilter.compile(Arrays.asList("system", "*.requests"), Collections.singletonList("system.os"), 3);
+        for (int i = 0; i < 3; i++) {
+            for (String name : NAMES) {
+                Assert.assertEquals(matchesByRegex(name, new String[] {"system", "*.requests"}, new String[] {"system.os"}), filter.matches(name, null));
+            }
+        }
+    }
+
+    private static void assertEquivalentToRegex(String[] startsWithFilters, String[] blockedStartsWithFilters) {
+        CompiledMetricFilter filter = CompiledMetricFilter.compile(
+                startsWithFilters != null ? Arrays.asList(startsWithFilters) : null,
+                blockedStartsWithFilters != null ? Arrays.asList(blockedStartsWithFilters) : null,
+                0);
+        for (String name : NAMES) {
+            Assert.assertEquals("Mismatch for " + name, matchesByRegex(name, startsWithFilters, blockedStartsWithFilters), filter.matches(name));
+        }
+    }
+
+    // The reference implementation, which compiled a regular expression for every name
+    private static boolean matchesByRegex(String name, String[] startsWithFilters, String[] blockedStartsWithFilters) {
+        if (startsWithFilters != null && startsWithFilters.length > 0 && !matchesAnyByRegex(name, startsWithFilters)) {
+            return false;
+        }
+        return blockedStartsWithFilters == null || blockedStartsWithFilters.length == 0 || !matchesAnyByRegex(name, blockedStartsWithFilters);
+    }
+
+    private static boolean matchesAnyByRegex(String name, String[] filters) {
+        for (String filter : filters) {
+            filter = filter.trim();
+            if (filter.isEmpty()) {
+                return true;
+            }
+            if (filter.indexOf('*') == -1) {
+                if (name.startsWith(filter)) {
+                    return true;
+                }
+            } else {
+                if (!filter.endsWith("*")) {
+                    filter += "*";
+                }
+                if (name.matches(("\\Q" + filter + "\\E").replace("*", "\\E.*\\Q"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.json.MetricsModule;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+public class MetricFieldProjectionTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new MetricsModule(TimeUnit.SECONDS, TimeUnit.MICROSECONDS, false));
+
+    @Test
+    public void matchMetricsModule() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Timer timer = metricRegistry.timer("timer");
+        Histogram histogram = metricRegistry.histogram("histogram");
+        for (int i = 1; i <= 100; i++) {
+            timer.update(i, TimeUnit.MILLISECONDS);
+            histogram.update(i);
+        }
+        Meter meter = metricRegistry.meter("meter");
+        meter.mark(10);
+        Counter counter = metricRegistry.counter("counter");
+        counter.inc(7);
+        metricRegistry.register("gauge", new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return "value";
+            }
+        });
+
+        // Frozen metrics keep the rates stable between the two serializations
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+        MetricFieldProjection allFields = MetricFieldProjection.parse(String.join(",", MetricFieldProjection.SUPPORTED_FIELDS),
+                TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+        for (Metric metric : registrySnapshot.getMetrics().values()) {
+            JsonNode projectedTree = OBJECT_MAPPER.readTree(project(allFields, metric));
+            JsonNode fullTree = OBJECT_MAPPER.readTree(OBJECT_MAPPER.writeValueAsString(metric));
+
+            Assert.assertTrue(projectedTree.size() > 0);
+            Iterator<String> fieldNames = projectedTree.fieldNames();
+            while (fieldNames.hasNext()) {
+                String fieldName = fieldNames.next();
+                Assert.assertEquals(metric + "." + fieldName, fullTree.get(fieldName), projectedTree.get(fieldName));
+            }
+        }
+    }
+
+    @Test
+    public void projectFields() throws Exception {
+        MetricFieldProjection projection = MetricFieldProjection.parse(" p99, count,p99 ", TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+        Assert.assertEquals(Arrays.asList("p99", "count"), projection.getFields());
+
+        Timer timer = new Timer();
+        timer.update(5, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("{\"p99\":5000.0,\"count\":1}", project(projection, timer));
+
+        Counter counter = new Counter();
+        counter.inc(3);
+        Assert.assertEquals("{\"count\":3}", project(projection, counter));
+
+        Gauge<Integer> gauge = new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return 1;
+            }
+        };
+        Assert.assertEquals("{}", project(projection, gauge));
+
+        try {
+            MetricFieldProjection.parse("count,p42", TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+            Assert.fail("Unsupported fields must be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static String project(MetricFieldProjection projection, Metric metric) throws Exception {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(writer)) {
+            projection.write(generator, metric);
+        }
+        return writer.toString();
+    }
+}
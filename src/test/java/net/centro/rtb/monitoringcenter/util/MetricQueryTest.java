@@ -0,0 +1,127 @@
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import net.centro.rtb.monitoringcenter.metrics.MetricNameIndex;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+public class MetricQueryTest {
+    @Test
+    public void aggregate() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        MetricNameIndex nameIndex = new MetricNameIndex(metricRegistry);
+
+        metricRegistry.counter("exchanges.google.bids.wonCounter").inc(3);
+        metricRegistry.counter("exchanges.openx.bids.wonCounter").inc(5);
+        metricRegistry.counter("exchanges.openx.bids.lostCounter").inc(100);
+        metricRegistry.timer("dbs.users.queryTimer").update(2, TimeUnit.MILLISECONDS);
+        metricRegistry.timer("dbs.orders.queryTimer").update(7, TimeUnit.MILLISECONDS);
+        metricRegistry.timer("dbs.carts.queryTimer").update(4, TimeUnit.MILLISECONDS);
+        metricRegistry.register("dbs.poolSize", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return 10;
+            }
+        });
+        RegistrySnapshot registrySnapshot = RegistrySnapshot.collect(metricRegistry);
+
+        for (MetricNameIndex index : Arrays.asList(nameIndex, null)) {
+            MetricQuery.Result result = evaluate("sum(*.bids.wonCounter)", registrySnapshot, index);
+            Assert.assertEquals(8.0, result.getValue(), 0.0);
+            Assert.assertEquals(2, result.getMatchedMetrics());
+
+            result = evaluate("max(dbs.*:p99)", registrySnapshot, index);
+            Assert.assertEquals(7000.0, result.getValue(), 0.0);
+            Assert.assertEquals("dbs.orders.queryTimer", result.getMetricName());
+            Assert.assertEquals(3, result.getMatchedMetrics());
+
+            result = evaluate("MIN( dbs.* : max )", registrySnapshot, index);
+            Assert.assertEquals(2000.0, result.getValue(), 0.0);
+
+            result = evaluate("avg(dbs.*.queryTimer:count)", registrySnapshot, index);
+            Assert.assertEquals(1.0, result.getValue(), 0.0);
+
+            result = evaluate("topk(2, dbs.*:p99)", registrySnapshot, index);
+            Assert.assertEquals(Arrays.asList("dbs.orders.queryTimer", "dbs.carts.queryTimer"), Arrays.asList(result.getValuesByNames().keySet().toArray()));
+            Assert.assertEquals(3, result.getMatchedMetrics());
+
+            // With no field, gauges yield their value and other metrics their count
+            result = evaluate("dbs.", registrySnapshot, index);
+            Assert.assertEquals(Arrays.asList("dbs.carts.queryTimer", "dbs.orders.queryTimer", "dbs.poolSize", "dbs.users.queryTimer"),
+                    Arrays.asList(result.getValuesByNames().keySet().toArray()));
+            Assert.assertEquals(10.0, result.getValuesByNames().get("dbs.poolSize"), 0.0);
+
+            result = evaluate("sum(nothing.*)", registrySnapshot, index);
+            Assert.assertNull(result.getValue());
+            Assert.assertEquals(0, result.getMatchedMetrics());
+
+            // The live metrics yield the same results, without freezing the registry
+            MetricQuery metricQuery = MetricQuery.parse("max(dbs.*:p99)", TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+            result = metricQuery.evaluate(metricRegistry, index);
+            Assert.assertEquals(7000.0, result.getValue(), 0.0);
+            Assert.assertEquals("dbs.orders.queryTimer", result.getMetricName());
+
+            result = MetricQuery.parse("dbs.", TimeUnit.SECONDS, TimeUnit.MICROSECONDS).evaluate(metricRegistry, index);
+            Assert.assertEquals(Arrays.asList("dbs.carts.queryTimer", "dbs.orders.queryTimer", "dbs.poolSize", "dbs.users.queryTimer"),
+                    Arrays.asList(result.getValuesByNames().keySet().toArray()));
+        }
+        nameIndex.close();
+    }
+
+    @Test
+    public void parse() throws Exception {
+        Assert.assertEquals(MetricQuery.Aggregation.TOPK, MetricQuery.parse(" topk(3, a.*:p99) ", TimeUnit.SECONDS, TimeUnit.MICROSECONDS).getAggregation());
+        Assert.assertNull(MetricQuery.parse("a.*:count", TimeUnit.SECONDS, TimeUnit.MICROSECONDS).getAggregation());
+
+        for (String invalidExpression : new String[] {"median(a.*)", "sum(a.*:p42)", "topk(0, a.*)", "sum(a b)", "sum(a.*", " "}) {
+            try {
+                MetricQuery.parse(invalidExpression, TimeUnit.SECONDS, TimeUnit.MICROSECONDS);
+                Assert.fail(invalidExpression + " must be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void narrowDownByNameIndex() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        MetricNameIndex nameIndex = new MetricNameIndex(metricRegistry);
+        metricRegistry.counter("a.bids.wonCounter");
+        metricRegistry.counter("b.bids.wonCounter");
+        metricRegistry.counter("b.asks.wonCounter");
+        metricRegistry.counter("bids");
+
+        // Candidates are the names holding the "bids" segment; they still have to be matched against the filter
+        Assert.assertEquals(Arrays.asList("a.bids.wonCounter", "b.bids.wonCounter", "bids"), Arrays.asList(nameIndex.getCandidateNames("*.bids.won").toArray()));
+        Assert.assertEquals(Arrays.asList("b.asks.wonCounter", "b.bids.wonCounter"), Arrays.asList(nameIndex.getCandidateNames("b.*").toArray()));
+        Assert.assertEquals(Arrays.asList("b.asks.wonCounter", "b.bids.wonCounter", "bids"), Arrays.asList(nameIndex.getCandidateNames("b").toArray()));
+        Assert.assertEquals(4, nameIndex.getCandidateNames("*won").size());
+        Assert.assertTrue(nameIndex.getCandidateNames("*.missing.*").isEmpty());
+
+        metricRegistry.remove("a.bids.wonCounter");
+        Assert.assertEquals(Arrays.asList("b.bids.wonCounter", "bids"), Arrays.asList(nameIndex.getCandidateNames("*.bids.won").toArray()));
+        Assert.assertEquals(3, nameIndex.size());
+
+        // Candidates are a read-only view of the index rather than a copy
+        SortedSet<String> candidateNames = nameIndex.getCandidateNames("b.");
+        metricRegistry.counter("b.bids.lostCounter");
+        Assert.assertEquals(3, candidateNames.size());
+        try {
+            candidateNames.clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException ignore) {
+        }
+        nameIndex.close();
+    }
+
+    private static MetricQuery.Result evaluate(String expression, RegistrySnapshot registrySnapshot, MetricNameIndex nameIndex) {
+        return MetricQuery.parse(expression, TimeUnit.SECONDS, TimeUnit.MICROSECONDS).evaluate(registrySnapshot, nameIndex);
+    }
+}
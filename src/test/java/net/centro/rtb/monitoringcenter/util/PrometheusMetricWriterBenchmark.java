@@ -0,0 +1,119 @@
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import net.centro.rtb.monitoringcenter.metrics.snapshot.RegistrySnapshot;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies that a scrape of 300k series fits well into a 10 second scrape timeout. This benchmark only runs if the
+ * "benchmarks" Maven profile is active (mvn test -Pbenchmarks).
+ */
+public class PrometheusMetricWriterBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusMetricWriterBenchmark.class);
+
+    private static final int SERIES_COUNT = 300000;
+    private static final long SCRAPE_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    @Test
+    public void write300kSeries() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("monitoringCenter.benchmarks"));
+
+        // Summaries produce 7 series, gauges and counters produce 1 series
+        MetricRegistry metricRegistry = new MetricRegistry();
+        int seriesCount = 0;
+        for (int i = 0; seriesCount < SERIES_COUNT; i++) {
+            String namespace = "bidder.endpoint" + (i % 100) + ".metric" + i;
+            switch (i % 4) {
+                case 0:
+                    Timer timer = metricRegistry.timer(namespace + "Timer");
+                    for (int j = 0; j < 100; j++) {
+                        timer.update(j, TimeUnit.MILLISECONDS);
+                    }
+                    seriesCount += 7;
+                    break;
+                case 1:
+                    Histogram histogram = metricRegistry.histogram(namespace + "Histogram");
+                    for (int j = 0; j < 100; j++) {
+                        histogram.update(j);
+                    }
+                    seriesCount += 7;
+                    break;
+                case 2:
+                    Counter counter = metricRegistry.counter(namespace + "Counter");
+                    counter.inc(i);
+                    seriesCount++;
+                    break;
+                default:
+                    final double value = i;
+                    metricRegistry.register(namespace + "Gauge", new Gauge<Double>() {
+                        @Override
+                        public Double getValue() {
+                            return value;
+                        }
+                    });
+                    seriesCount++;
+            }
+        }
+
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("application", "bidder");
+        labels.put("datacenter", "east");
+        labels.put("node_group", "thc");
+        labels.put("node_id", "ltest3");
+        PrometheusMetricWriter prometheusMetricWriter = new PrometheusMetricWriter(labels, false);
+
+        // Warm up
+        for (int i = 0; i < 3; i++) {
+            scrape(metricRegistry, prometheusMetricWriter, new CountingOutputStream());
+        }
+
+        CountingOutputStream outputStream = new CountingOutputStream();
+        long startTime = System.nanoTime();
+        scrape(metricRegistry, prometheusMetricWriter, outputStream);
+        long elapsedTimeInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        logger.info("Scraped {} series ({} bytes) in {} ms", seriesCount, outputStream.count, elapsedTimeInMillis);
+        Assert.assertTrue("Scrape took " + elapsedTimeInMillis + " ms", elapsedTimeInMillis < SCRAPE_TIMEOUT_IN_MILLIS);
+    }
+
+    private static void scrape(MetricRegistry metricRegistry, PrometheusMetricWriter prometheusMetricWriter, OutputStream outputStream) throws IOException {
+        SortedMap<String, Metric> metricsByNames = RegistrySnapshot.collect(metricRegistry).getMetrics();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024)) {
+            prometheusMetricWriter.write(metricsByNames, writer);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+}
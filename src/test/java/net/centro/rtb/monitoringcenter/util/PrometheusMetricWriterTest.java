@@ -0,0 +1,127 @@
+package net.centro.rtb.monitoringcenter.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+public class PrometheusMetricWriterTest {
+    @Test
+    public void write() throws Exception {
+        SortedMap<String, Metric> metricsByNames = new TreeMap<>();
+
+        Counter counter = new Counter();
+        counter.inc(3);
+        metricsByNames.put("bidder.bids.wonCounter", counter);
+
+        metricsByNames.put("system.jvm.heap-usage", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return 0.25;
+            }
+        });
+        metricsByNames.put("system.jvm.name", new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return "HotSpot";
+            }
+        });
+
+        Meter meter = new Meter();
+        meter.mark(7);
+        metricsByNames.put("bidder.requestsMeter", meter);
+
+        Histogram histogram = new Histogram(new UniformReservoir());
+        histogram.update(10);
+        metricsByNames.put("bidder.bidSizeHistogram", histogram);
+
+        Timer timer = new Timer();
+        timer.update(2, TimeUnit.SECONDS);
+        metricsByNames.put("1st.requestTimer", timer);
+
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("application", "bidder");
+        labels.put("node_id", "node\"1");
+
+        StringWriter writer = new StringWriter();
+        new PrometheusMetricWriter(labels, false).write(metricsByNames, writer);
+
+        String expectedLabels = "application=\"bidder\",node_id=\"node\\\"1\"";
+        String output = writer.toString();
+
+        Assert.assertTrue(output.contains("# TYPE _1st_requestTimer summary\n"));
+        Assert.assertTrue(output.contains("_1st_requestTimer{" + expectedLabels + ",quantile=\"0.99\"} 2\n"));
+        Assert.assertTrue(output.contains("_1st_requestTimer_count{" + expectedLabels + "} 1\n"));
+        Assert.assertTrue(output.contains("# TYPE bidder_bidSizeHistogram summary\n"));
+        Assert.assertTrue(output.contains("bidder_bidSizeHistogram{" + expectedLabels + ",quantile=\"0.5\"} 10\n"));
+        Assert.assertTrue(output.contains("# TYPE bidder_bids_wonCounter gauge\nbidder_bids_wonCounter{" + expectedLabels + "} 3\n"));
+        Assert.assertTrue(output.contains("# TYPE bidder_requestsMeter_total counter\nbidder_requestsMeter_total{" + expectedLabels + "} 7\n"));
+        Assert.assertTrue(output.contains("system_jvm_heap_usage{" + expectedLabels + "} 0.25\n"));
+        Assert.assertFalse(output.contains("system_jvm_name"));
+        Assert.assertFalse(output.contains("# EOF"));
+
+        writer = new StringWriter();
+        new PrometheusMetricWriter(new LinkedHashMap<String, String>(), true).write(metricsByNames, writer);
+        output = writer.toString();
+
+        Assert.assertTrue(output.contains("# TYPE bidder_requestsMeter counter\nbidder_requestsMeter_total 7\n"));
+        Assert.assertTrue(output.contains("_1st_requestTimer{quantile=\"0.5\"} 2\n"));
+        Assert.assertTrue(output.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void skipCollidingNames() throws Exception {
+        SortedMap<String, Metric> metricsByNames = new TreeMap<>();
+        metricsByNames.put("a.b", new Counter());
+        metricsByNames.put("a_b", new Counter());
+
+        StringWriter writer = new StringWriter();
+        new PrometheusMetricWriter(new LinkedHashMap<String, String>(), false).write(metricsByNames, writer);
+        Assert.assertEquals("# TYPE a_b gauge\na_b 0\n", writer.toString());
+
+        // Names colliding only after the digit prefix is added, and enough distinct names to grow the name set
+        metricsByNames.clear();
+        metricsByNames.put("0x", new Counter());
+        metricsByNames.put("_0x", new Counter());
+        for (int i = 0; i < 5000; i++) {
+            metricsByNames.put("m.counter" + i, new Counter());
+            metricsByNames.put("m-counter" + i, new Counter());
+        }
+
+        writer = new StringWriter();
+        new PrometheusMetricWriter(new LinkedHashMap<String, String>(), false).write(metricsByNames, writer);
+        String output = writer.toString();
+        Assert.assertEquals(5001, output.split("# TYPE ").length - 1);
+        Assert.assertTrue(output.contains("# TYPE _0x gauge\n"));
+        Assert.assertTrue(output.contains("# TYPE m_counter4999 gauge\n"));
+
+        // Names colliding with the samples of meters and summaries, whichever comes first
+        Map<String, Metric> orderedMetricsByNames = new LinkedHashMap<>();
+        orderedMetricsByNames.put("a", new Timer());
+        orderedMetricsByNames.put("a_count", new Counter());
+        orderedMetricsByNames.put("b", new Meter());
+        orderedMetricsByNames.put("b.total", new Counter());
+        orderedMetricsByNames.put("c.count", new Counter());
+        orderedMetricsByNames.put("c", new Histogram(new UniformReservoir()));
+
+        writer = new StringWriter();
+        new PrometheusMetricWriter(new LinkedHashMap<String, String>(), false).write(orderedMetricsByNames, writer);
+        Assert.assertEquals("# TYPE a summary\n" +
+                "a{quantile=\"0.5\"} 0\na{quantile=\"0.75\"} 0\na{quantile=\"0.95\"} 0\na{quantile=\"0.98\"} 0\na{quantile=\"0.99\"} 0\n" +
+                "a{quantile=\"0.999\"} 0\na_count 0\n" +
+                "# TYPE b_total counter\nb_total 0\n" +
+                "# TYPE c_count gauge\nc_count 0\n", writer.toString());
+    }
+}